@@ -0,0 +1,172 @@
+package sample;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Number of units of every product that can be assembled from the stock of its associated parts, kept so that
+ * products are only worked out again after the stock or the list of one of their parts changes
+ *
+ * A part listed several times by a product is needed that many times per unit, so a product can be built as many
+ * times as the scarcest of its parts allows. A part no longer in inventory counts as none in stock, so products
+ * with no associated parts, or missing any of them, cannot be built. Working out many products at once is split
+ * across the common fork/join pool.
+ *
+ * Inventory drops the kept units of every product whose associated parts change, of every product using a part
+ * that is deleted and of every product using a part whose stock is adjusted. Every stock adjustment moves the
+ * version on through {@link #stockChanged}, whether or not any units are kept, so units worked out from the stock
+ * before an adjustment are never kept after it.
+ *
+ * @author Long Tran
+ */
+public class Buildability {
+    /**
+     * The number of products a fork/join task works out itself rather than splitting further
+     */
+    private static final int THRESHOLD = 512;
+
+    /**
+     * The kept units of products, by product ID
+     */
+    private final IntIntMap units = new IntIntMap();
+
+    /**
+     * The number of times kept units have been dropped, used to tell if units worked out meanwhile are still current
+     */
+    private long version;
+
+    /**
+     * @param productId the ID of the product
+     * @return the kept units of the product, or -1 if they are not kept
+     */
+    public synchronized int get(int productId) {
+        return units.get(productId);
+    }
+
+    /**
+     * @return the version to be passed to {@link #keep} for units worked out from now on
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Keeps units worked out since the version was read, unless kept units have been dropped meanwhile
+     *
+     * @param productIds the IDs of the products
+     * @param buildable the units of each product
+     * @param count the number of products
+     * @param version the version read before the units were worked out
+     */
+    public synchronized void keep(int[] productIds, int[] buildable, int count, long version) {
+        if (this.version != version) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            units.put(productIds[i], buildable[i]);
+        }
+    }
+
+    /**
+     * @param productId the ID of a product whose associated parts or their stock changed
+     */
+    public synchronized void invalidate(int productId) {
+        version++;
+        units.remove(productId);
+    }
+
+    /**
+     * @return if no units are kept, in which case there is nothing to drop when stock changes
+     */
+    public synchronized boolean isEmpty() {
+        return units.size() == 0;
+    }
+
+    /**
+     * Moves the version on after the stock of a part has changed, so units being worked out from the old stock are
+     * not kept, and tells whether kept units of the products using the part may have to be dropped. Units kept
+     * after this returns false were worked out from the new stock.
+     *
+     * @return if any units are kept
+     */
+    public synchronized boolean stockChanged() {
+        version++;
+        return units.size() > 0;
+    }
+
+    /**
+     * @param partIds the IDs of the associated parts of a product, a part listed once for every unit needed
+     * @param stock gives the stock of a part by ID, or -1 if it is no longer in inventory
+     * @return the number of units of the product that can be built, which is none if any part is not in inventory
+     */
+    public static int units(int[] partIds, IntUnaryOperator stock) {
+        if (partIds.length == 0) {
+            return 0;
+        }
+        int[] sorted = partIds.clone();
+        Arrays.sort(sorted);
+        int buildable = Integer.MAX_VALUE;
+        for (int i = 0; i < sorted.length; ) {
+            int quantity = 1;
+            while (i + quantity < sorted.length && sorted[i + quantity] == sorted[i]) {
+                quantity++;
+            }
+            //a deleted part is none in stock
+            int available = Math.max(0, stock.applyAsInt(sorted[i]));
+            buildable = Math.min(buildable, available / quantity);
+            i += quantity;
+        }
+        return buildable;
+    }
+
+    /**
+     * Works out the units of many products in parallel
+     *
+     * @param count the number of products
+     * @param partIds gives the associated part IDs of each product by position, safely from any thread
+     * @param stock gives the stock of a part by ID, or -1 if it is no longer in inventory, safely from any thread
+     * @return the units of each product by position
+     */
+    public static int[] unitsOf(int count, IntFunction<int[]> partIds, IntUnaryOperator stock) {
+        int[] buildable = new int[count];
+        ForkJoinPool.commonPool().invoke(new UnitsTask(buildable, partIds, stock, 0, count));
+        return buildable;
+    }
+
+    /**
+     * Works out the units of a range of products, splitting the range in half until it is small enough
+     */
+    private static final class UnitsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] buildable;
+        private final IntFunction<int[]> partIds;
+        private final IntUnaryOperator stock;
+        private final int from;
+        private final int to;
+
+        UnitsTask(int[] buildable, IntFunction<int[]> partIds, IntUnaryOperator stock, int from, int to) {
+            this.buildable = buildable;
+            this.partIds = partIds;
+            this.stock = stock;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    buildable[i] = units(partIds.apply(i), stock);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new UnitsTask(buildable, partIds, stock, from, middle),
+                    new UnitsTask(buildable, partIds, stock, middle, to));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package sample;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Bill-of-materials cost of every product, the total price of its associated parts, kept so that products are only
+ * summed again after one of their associated parts changes
+ *
+ * A product's cost is computed the first time it is asked for and kept until the product is invalidated, which
+ * inventory does for every product whose associated parts are added, removed, replaced or deleted from inventory.
+ * Deleted parts are left out of the cost whether or not the product has been loaded from the snapshot. Replacing a
+ * part replaces it in every product using it, so a change of part price reaches only the products found through
+ * {@link PartUsage}, and a roll-up over every product sums only those again. Costs are held in primitive arrays.
+ *
+ * @author Long Tran
+ */
+public class CostRollup {
+    /**
+     * The position of every product's cost, by product ID
+     */
+    private final IntIntMap positions = new IntIntMap();
+
+    /**
+     * The product ID at every position
+     */
+    private int[] ids = new int[16];
+
+    /**
+     * The cost at every position
+     */
+    private double[] costs = new double[16];
+
+    /**
+     * The number of costs kept
+     */
+    private int size;
+
+    /**
+     * The number of costs computed so far, including recomputations
+     */
+    private long computed;
+
+    /**
+     * @param productId the ID of the product
+     * @param compute sums the prices of the product's associated parts, given the product ID
+     * @return the kept cost of the product, computed first if it is not kept
+     */
+    public synchronized double cost(int productId, IntToDoubleFunction compute) {
+        int position = positions.get(productId);
+        if (position >= 0) {
+            return costs[position];
+        }
+        double cost = compute.applyAsDouble(productId);
+        computed++;
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            costs = Arrays.copyOf(costs, size * 2);
+        }
+        ids[size] = productId;
+        costs[size] = cost;
+        positions.put(productId, size++);
+        return cost;
+    }
+
+    /**
+     * Drops the kept cost of a product, so it is summed again the next time it is asked for
+     *
+     * @param productId the ID of the product
+     */
+    public synchronized void invalidate(int productId) {
+        int position = positions.remove(productId);
+        if (position < 0) {
+            return;
+        }
+        //moves the last cost into the gap so the arrays stay dense
+        int last = --size;
+        if (position != last) {
+            ids[position] = ids[last];
+            costs[position] = costs[last];
+            positions.put(ids[position], position);
+        }
+    }
+
+    /**
+     * @return if no costs are kept, in which case there is nothing to drop when a part price changes
+     */
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of costs computed so far, including recomputations
+     */
+    public synchronized long getComputedCount() {
+        return computed;
+    }
+}
@@ -0,0 +1,170 @@
+package sample;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads delimited text one record at a time, so a file of any size is parsed in a fixed amount of memory
+ *
+ * Fields may be quoted with double quotes, in which case they may hold the delimiter, line breaks and doubled
+ * quotes. Records end with a line feed, a carriage return or both. The input is read in chunks into a single
+ * buffer that is reused for the whole file.
+ *
+ * @author Long Tran
+ */
+public class CsvReader {
+    /**
+     * The number of characters read from the input at a time
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The text being parsed
+     */
+    private final Reader in;
+
+    /**
+     * The character between fields, usually a comma or a tab
+     */
+    private final char delimiter;
+
+    /**
+     * The chunk of input being parsed
+     */
+    private final char[] buffer = new char[CHUNK_SIZE];
+
+    /**
+     * The position of the next character to parse in the buffer
+     */
+    private int position = 0;
+
+    /**
+     * The number of characters in the buffer
+     */
+    private int limit = 0;
+
+    /**
+     * The text of the field being parsed
+     */
+    private final StringBuilder field = new StringBuilder();
+
+    /**
+     * The number of the line the next record starts on
+     */
+    private int line = 1;
+
+    /**
+     * The number of the line the last record returned started on
+     */
+    private int recordLine = 0;
+
+    /**
+     * @param in the text to be parsed
+     * @param delimiter the character between fields
+     */
+    public CsvReader(Reader in, char delimiter) {
+        this.in = in;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * @return the fields of the next record, or null at the end of the input
+     * @throws IOException if the input cannot be read or ends inside a quoted field
+     */
+    public String[] next() throws IOException {
+        int c = read();
+        if (c < 0) {
+            return null;
+        }
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        field.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new IOException("Line " + recordLine + ": unterminated quoted field");
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c < 0) {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                if (c >= 0) {
+                    line++;
+                }
+                fields.add(field.toString());
+                return fields.toArray(new String[0]);
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * @return the number of the line the last record returned started on
+     */
+    public int getLine() {
+        return recordLine;
+    }
+
+    /**
+     * @return the next character, or -1 at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * @return the next character without consuming it, or -1 at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * @return if more input was read into the buffer
+     * @throws IOException if the input cannot be read
+     */
+    private boolean fill() throws IOException {
+        int count;
+        do {
+            count = in.read(buffer, 0, buffer.length);
+        } while (count == 0);
+        if (count < 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+}
@@ -0,0 +1,107 @@
+package sample;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Hands out unique IDs to any number of threads without locking
+ *
+ * IDs are taken from an atomic counter, one at a time or as a block reserved by a single call. The counter never
+ * goes back, so IDs freed by deletions are not issued again, and IDs given to items from elsewhere, such as an
+ * import, are skipped. So that IDs are not issued again after a restart either, the allocator keeps a limit that
+ * every ID issued stays below and saves it before issuing any ID at or above it. The limit is raised a lease of IDs
+ * at a time, so only one allocation in every lease has to wait for the limit to be saved.
+ *
+ * @author Long Tran
+ */
+public class IdAllocator {
+    /**
+     * The number of IDs the limit is raised past the highest ID issued
+     */
+    public static final int LEASE = 1000;
+
+    /**
+     * The next ID to be issued
+     */
+    private final AtomicInteger next;
+
+    /**
+     * The saved limit every ID issued so far is below
+     */
+    private volatile int limit;
+
+    /**
+     * Saves a new limit
+     */
+    private final IntConsumer limitSaver;
+
+    /**
+     * @param first the first ID to be issued
+     * @param limitSaver the action saving a new limit before any ID at or above the old limit is issued
+     */
+    public IdAllocator(int first, IntConsumer limitSaver) {
+        this.next = new AtomicInteger(first);
+        this.limit = first;
+        this.limitSaver = limitSaver;
+    }
+
+    /**
+     * @return a new ID
+     */
+    public int next() {
+        return reserve(1);
+    }
+
+    /**
+     * Reserves a block of consecutive IDs, such as for a bulk import
+     *
+     * @param count the number of IDs to be reserved
+     * @return the first ID of the block
+     */
+    public int reserve(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be at least 1: " + count);
+        }
+        int first = next.getAndAdd(count);
+        if (first > Integer.MAX_VALUE - count) {
+            throw new IllegalStateException("No IDs left");
+        }
+        ensureLimit(first + count);
+        return first;
+    }
+
+    /**
+     * Makes sure an ID given to an item from elsewhere is never issued
+     *
+     * @param id an ID already in use
+     */
+    public void observe(int id) {
+        if (id >= next.get()) {
+            next.accumulateAndGet(id + 1, Math::max);
+            ensureLimit(id + 1);
+        }
+    }
+
+    /**
+     * @return the next ID to be issued, without issuing it
+     */
+    public int peek() {
+        return next.get();
+    }
+
+    /**
+     * @param end the ID after the highest ID about to be issued
+     */
+    private void ensureLimit(int end) {
+        if (end <= limit) {
+            return;
+        }
+        synchronized (this) {
+            if (end > limit) {
+                int newLimit = end > Integer.MAX_VALUE - LEASE ? Integer.MAX_VALUE : end + LEASE;
+                limitSaver.accept(newLimit);
+                limit = newLimit;
+            }
+        }
+    }
+}
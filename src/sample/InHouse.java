@@ -32,7 +32,11 @@ public class InHouse extends Part {
      *
      * @param machineId the machine ID of in-house part */
     public void setMachineId(int machineId){
-        this.machineId = machineId;
+        if (getColumns() == null) {
+            this.machineId = machineId;
+        } else {
+            getColumns().setMachineId(getSlot(), machineId);
+        }
     }
 
     /**
@@ -40,6 +44,12 @@ public class InHouse extends Part {
      *
      * @return the machine ID*/
     public int getMachineId(){
-        return machineId;
+        return getColumns() == null ? machineId : getColumns().getMachineId(getSlot());
+    }
+
+    @Override
+    void detach(Part last) {
+        super.detach(last);
+        machineId = ((InHouse) last).machineId;
     }
 }
\ No newline at end of file
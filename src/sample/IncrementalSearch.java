@@ -0,0 +1,113 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Remembers the last search of a search box so that typing more characters only re-checks the previous matches
+ *
+ * Keystrokes typed before a debounced search runs arrive together, so any text appended to the last search is
+ * narrowed. Any other edit, such as deleting or replacing text, or any change to inventory since the last search
+ * runs a full search instead, since the previous matches may no longer contain every result.
+ *
+ * @param <T> the type of item being searched
+ * @author Long Tran
+ */
+public class IncrementalSearch<T> {
+    /**
+     * Runs a full search for the given text
+     */
+    private final Function<String, List<T>> fullSearch;
+
+    /**
+     * Checks if an item matches the given lower case text
+     */
+    private final BiPredicate<T, String> matcher;
+
+    /**
+     * Supplies the current inventory modification count
+     */
+    private final IntSupplier modCount;
+
+    /**
+     * The lower case text of the last search
+     */
+    private String lastQuery;
+
+    /**
+     * The results of the last search
+     */
+    private List<T> lastResults;
+
+    /**
+     * The inventory modification count at the time of the last search
+     */
+    private int lastModCount;
+
+    /**
+     * @param fullSearch the search over the whole inventory
+     * @param matcher the check if an item matches lower case search text
+     * @param modCount the supplier of the inventory modification count
+     */
+    public IncrementalSearch(Function<String, List<T>> fullSearch, BiPredicate<T, String> matcher, IntSupplier modCount) {
+        this.fullSearch = fullSearch;
+        this.matcher = matcher;
+        this.modCount = modCount;
+    }
+
+    /**
+     * @param text the search text
+     * @return the items matching the search text
+     */
+    public synchronized List<T> search(String text) {
+        String query = text == null ? "" : text.toLowerCase();
+        int currentModCount = modCount.getAsInt();
+        List<T> results;
+        if (extendsLastQuery(query) && currentModCount == lastModCount) {
+            results = new ArrayList<>();
+            for (T item : lastResults) {
+                if (matcher.test(item, query)) {
+                    results.add(item);
+                }
+            }
+        } else {
+            results = fullSearch.apply(query);
+        }
+        lastQuery = query;
+        lastResults = results;
+        lastModCount = currentModCount;
+        return results;
+    }
+
+    /**
+     * Checks a single item, such as one changed in place, without touching the last search
+     *
+     * @param item the item to be checked
+     * @param text the search text
+     * @return if the item matches the search text
+     */
+    public boolean matches(T item, String text) {
+        return matcher.test(item, text == null ? "" : text.toLowerCase());
+    }
+
+    /**
+     * Forgets the last search so the next one is a full search
+     */
+    public synchronized void reset() {
+        lastQuery = null;
+        lastResults = null;
+    }
+
+    /**
+     * @param query the lower case text of the new search
+     * @return if the new search only appends text to a non-empty last search
+     */
+    private boolean extendsLastQuery(String query) {
+        return lastQuery != null
+                && !lastQuery.isEmpty()
+                && query.startsWith(lastQuery);
+    }
+}
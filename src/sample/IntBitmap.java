@@ -0,0 +1,581 @@
+package sample;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints, such as part IDs, that is intersected and joined a block at a time rather
+ * than one value at a time
+ *
+ * Values are split by their upper 16 bits into blocks, in the manner of a Roaring bitmap. A block holding few
+ * values keeps them as a sorted array, and one holding more than {@link #ARRAY_MAX} as a bitmap of all 65536, so
+ * a block never takes more than 8 KB and sparse IDs take two bytes each. Intersecting or joining two sets only
+ * visits the blocks of both, and two bitmap blocks are combined 64 values at a time.
+ *
+ * @author Long Tran
+ */
+public class IntBitmap {
+    /**
+     * The most values an array block holds before it becomes a bitmap block
+     */
+    static final int ARRAY_MAX = 4096;
+
+    /**
+     * The upper 16 bits of the values of each block, in increasing order
+     */
+    private char[] keys = new char[4];
+
+    /**
+     * The blocks, in the order of their keys
+     */
+    private Block[] blocks = new Block[4];
+
+    /**
+     * The number of blocks
+     */
+    private int size;
+
+    /**
+     * @param value the value to be added
+     * @return if the value was not in the set
+     */
+    public boolean add(int value) {
+        char key = (char) (value >>> 16);
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            insert(i, key, new ArrayBlock());
+        }
+        int before = blocks[i].cardinality();
+        blocks[i] = blocks[i].add((char) value);
+        return blocks[i].cardinality() > before;
+    }
+
+    /**
+     * @param value the value to be removed
+     * @return if the value was in the set
+     */
+    public boolean remove(int value) {
+        int i = find((char) (value >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        int before = blocks[i].cardinality();
+        blocks[i] = blocks[i].remove((char) value);
+        if (blocks[i].cardinality() == 0) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(blocks, i + 1, blocks, i, size - i - 1);
+            blocks[--size] = null;
+            return true;
+        }
+        return blocks[i].cardinality() < before;
+    }
+
+    /**
+     * @param value a value
+     * @return if the value is in the set
+     */
+    public boolean contains(int value) {
+        int i = find((char) (value >>> 16));
+        return i >= 0 && blocks[i].contains((char) value);
+    }
+
+    /**
+     * @return the number of values in the set
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += blocks[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return if the set has no values
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param other another set
+     * @return a new set of the values in both sets
+     */
+    public IntBitmap and(IntBitmap other) {
+        IntBitmap result = new IntBitmap();
+        for (int i = 0, j = 0; i < size && j < other.size; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Block block = blocks[i].and(other.blocks[j]);
+                if (block.cardinality() > 0) {
+                    result.insert(result.size, keys[i], block);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param other another set
+     * @return a new set of the values in either set
+     */
+    public IntBitmap or(IntBitmap other) {
+        IntBitmap result = new IntBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || i < size && keys[i] < other.keys[j]) {
+                result.insert(result.size, keys[i], blocks[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.insert(result.size, other.keys[j], other.blocks[j].copy());
+                j++;
+            } else {
+                result.insert(result.size, keys[i], blocks[i].or(other.blocks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds every value of another set to this one, so many sets can be joined without copying the result each time
+     *
+     * @param other another set
+     */
+    public void addAll(IntBitmap other) {
+        for (int j = 0; j < other.size; j++) {
+            int i = find(other.keys[j]);
+            if (i >= 0) {
+                blocks[i] = blocks[i].addAll(other.blocks[j]);
+            } else {
+                insert(-i - 1, other.keys[j], other.blocks[j].copy());
+            }
+        }
+    }
+
+    /**
+     * @param other another set
+     * @return a new set of the values in this set but not the other
+     */
+    public IntBitmap andNot(IntBitmap other) {
+        IntBitmap result = new IntBitmap();
+        for (int i = 0, j = 0; i < size; ) {
+            if (j == other.size || keys[i] < other.keys[j]) {
+                result.insert(result.size, keys[i], blocks[i].copy());
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Block block = blocks[i].andNot(other.blocks[j]);
+                if (block.cardinality() > 0) {
+                    result.insert(result.size, keys[i], block);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes every value
+     */
+    public void clear() {
+        Arrays.fill(blocks, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @return a new set of the same values
+     */
+    public IntBitmap copy() {
+        IntBitmap copy = new IntBitmap();
+        for (int i = 0; i < size; i++) {
+            copy.insert(i, keys[i], blocks[i].copy());
+        }
+        return copy;
+    }
+
+    /**
+     * @param action the action given every value, in increasing order
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            blocks[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * @return the values in increasing order
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] count = {0};
+        forEach(value -> values[count[0]++] = value);
+        return values;
+    }
+
+    /**
+     * @param key the upper 16 bits of a block
+     * @return the position of the block, or -(insertion point) - 1 if there is none
+     */
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    /**
+     * @param i the position of the new block
+     * @param key the upper 16 bits of its values
+     * @param block the block
+     */
+    private void insert(int i, char key, Block block) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            blocks = Arrays.copyOf(blocks, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(blocks, i, blocks, i + 1, size - i);
+        keys[i] = key;
+        blocks[i] = block;
+        size++;
+    }
+
+    /**
+     * The values sharing their upper 16 bits. Changing a block may turn it into the other kind, so the block
+     * returned replaces it.
+     */
+    private abstract static class Block {
+        abstract Block add(char value);
+
+        abstract Block remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract Block and(Block other);
+
+        abstract Block or(Block other);
+
+        /**
+         * @param other another block
+         * @return this block with the other's values added, changed in place where it can be
+         */
+        abstract Block addAll(Block other);
+
+        abstract Block andNot(Block other);
+
+        abstract Block copy();
+
+        /**
+         * @param high the upper 16 bits of the values, already shifted into place
+         * @param action the action given every value, in increasing order
+         */
+        abstract void forEach(int high, IntConsumer action);
+
+        /**
+         * @return the block as a bitmap block
+         */
+        abstract BitmapBlock toBitmap();
+    }
+
+    /**
+     * A block of at most {@link #ARRAY_MAX} values kept as a sorted array
+     */
+    private static final class ArrayBlock extends Block {
+        private char[] values;
+        private int cardinality;
+
+        ArrayBlock() {
+            this(new char[4], 0);
+        }
+
+        ArrayBlock(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Block add(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Block remove(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Block and(Block other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayBlock) {
+                ArrayBlock array = (ArrayBlock) other;
+                for (int i = 0, j = 0; i < cardinality && j < array.cardinality; ) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayBlock(result, count);
+        }
+
+        @Override
+        Block or(Block other) {
+            if (other instanceof BitmapBlock || cardinality + other.cardinality() > ARRAY_MAX) {
+                return toBitmap().or(other);
+            }
+            ArrayBlock array = (ArrayBlock) other;
+            char[] result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || i < cardinality && values[i] < array.values[j]) {
+                    result[count++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                } else {
+                    result[count++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayBlock(result, count);
+        }
+
+        @Override
+        Block addAll(Block other) {
+            return or(other);
+        }
+
+        @Override
+        Block andNot(Block other) {
+            char[] result = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayBlock(result, count);
+        }
+
+        @Override
+        Block copy() {
+            return new ArrayBlock(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(high | values[i]);
+            }
+        }
+
+        @Override
+        BitmapBlock toBitmap() {
+            BitmapBlock bitmap = new BitmapBlock();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * A block of more than {@link #ARRAY_MAX} values kept as one bit for each of the 65536 possible values
+     */
+    private static final class BitmapBlock extends Block {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapBlock() {
+            this(new long[1024], 0);
+        }
+
+        BitmapBlock(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Block add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Block remove(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) != 0) {
+                words[value >>> 6] &= ~bit;
+                cardinality--;
+                if (cardinality <= ARRAY_MAX) {
+                    return toArray();
+                }
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & 1L << value) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Block and(Block other) {
+            if (other instanceof ArrayBlock) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapBlock) other).words;
+            long[] result = new long[1024];
+            int count = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] = words[i] & otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            return shrink(new BitmapBlock(result, count));
+        }
+
+        @Override
+        Block or(Block other) {
+            long[] otherWords = other.toBitmap().words;
+            long[] result = new long[1024];
+            int count = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] = words[i] | otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            return new BitmapBlock(result, count);
+        }
+
+        @Override
+        Block addAll(Block other) {
+            if (other instanceof ArrayBlock) {
+                ArrayBlock array = (ArrayBlock) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    add(array.values[i]);
+                }
+                return this;
+            }
+            long[] otherWords = ((BitmapBlock) other).words;
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                words[i] |= otherWords[i];
+                count += Long.bitCount(words[i]);
+            }
+            cardinality = count;
+            return this;
+        }
+
+        @Override
+        Block andNot(Block other) {
+            long[] otherWords = other.toBitmap().words;
+            long[] result = new long[1024];
+            int count = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] = words[i] & ~otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            return shrink(new BitmapBlock(result, count));
+        }
+
+        @Override
+        Block copy() {
+            return new BitmapBlock(words.clone(), cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(high | i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        BitmapBlock toBitmap() {
+            return this;
+        }
+
+        /**
+         * @return the block as an array block
+         */
+        private ArrayBlock toArray() {
+            char[] values = new char[Math.max(cardinality, 1)];
+            int[] count = {0};
+            forEach(0, value -> values[count[0]++] = (char) value);
+            return new ArrayBlock(values, cardinality);
+        }
+
+        /**
+         * @param block a block worked out from others
+         * @return the block, as an array block if it holds few enough values
+         */
+        private static Block shrink(BitmapBlock block) {
+            return block.cardinality <= ARRAY_MAX ? block.toArray() : block;
+        }
+    }
+}
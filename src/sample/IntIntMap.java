@@ -0,0 +1,186 @@
+package sample;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Open-addressing hash map from int keys to non-negative int values, used to find column slots by ID without
+ * boxing either
+ *
+ * Collisions are resolved with linear probing and removals use backward-shift deletion, as in {@link IntMap}. A
+ * negative value marks an empty slot, which is why negative values cannot be stored.
+ *
+ * @author Long Tran
+ */
+public class IntIntMap {
+    /**
+     * The largest fraction of slots that may be filled before the table grows
+     */
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /**
+     * The keys of every slot
+     */
+    private int[] keys;
+
+    /**
+     * The values of every slot, -1 for empty slots
+     */
+    private int[] values;
+
+    /**
+     * The number of entries in the map
+     */
+    private int size;
+
+    /**
+     * The number of entries allowed before the table grows
+     */
+    private int threshold;
+
+    /**
+     * Creates an empty map with a small default capacity
+     */
+    public IntIntMap() {
+        allocate(16);
+    }
+
+    /**
+     * @param key the key to be searched
+     * @return the value mapped to the key, or -1 if there is none
+     */
+    public int get(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] >= 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param key the key of the entry
+     * @param value the value to be mapped to the key, not negative
+     * @return the value previously mapped to the key, or -1 if there was none
+     */
+    public int put(int key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] >= 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+            resize(keys.length << 1);
+        }
+        return -1;
+    }
+
+    /**
+     * @param key the key of the entry to be removed
+     * @return the value that was mapped to the key, or -1 if there was none
+     */
+    public int remove(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] >= 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int old = values[i];
+                shiftBack(i, mask);
+                size--;
+                return old;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of entries in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param action the action given the key of every entry
+     */
+    public void forEachKey(IntConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] >= 0) {
+                action.accept(keys[i]);
+            }
+        }
+    }
+
+    /**
+     * Closes the gap left by a removed entry by moving later entries of the same probe run back into it
+     *
+     * @param gap the slot that was emptied
+     * @param mask the table mask
+     */
+    private void shiftBack(int gap, int mask) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] < 0) {
+                break;
+            }
+            int home = slot(keys[i], mask);
+            //moves the entry only if its home slot does not lie cyclically between the gap and its current slot
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        values[gap] = -1;
+    }
+
+    /**
+     * @param capacity the new table capacity, a power of two
+     */
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] >= 0) {
+                int i = slot(oldKeys[j], mask);
+                while (values[i] >= 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * @param capacity the table capacity, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, -1);
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @param key the key to be hashed
+     * @param mask the table mask
+     * @return the home slot of the key
+     */
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,224 @@
+package sample;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash map with primitive int keys, used to look up inventory items by ID without boxing
+ *
+ * Collisions are resolved with linear probing and removals use backward-shift deletion, so no tombstones
+ * are left behind. A null value marks an empty slot, which is why null values cannot be stored.
+ *
+ * @param <V> the type of value stored in the map
+ * @author Long Tran
+ */
+public class IntMap<V> {
+    /**
+     * The largest fraction of slots that may be filled before the table grows
+     */
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /**
+     * The keys of every slot
+     */
+    private int[] keys;
+
+    /**
+     * The values of every slot, null for empty slots
+     */
+    private Object[] values;
+
+    /**
+     * The number of entries in the map
+     */
+    private int size;
+
+    /**
+     * The number of entries allowed before the table grows
+     */
+    private int threshold;
+
+    /**
+     * Creates an empty map with a small default capacity
+     */
+    public IntMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map should hold without growing
+     */
+    public IntMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * @param key the key to be searched
+     * @return the value mapped to the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key the key to be searched
+     * @return if the key is mapped to a value
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key the key of the entry
+     * @param value the value to be mapped to the key, null removes the entry
+     * @return the value previously mapped to the key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            return remove(key);
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @param key the key of the entry to be removed
+     * @return the value that was mapped to the key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                shiftBack(i, mask);
+                size--;
+                return old;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes every entry while keeping the current capacity
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return the number of entries in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return if the map has no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param action the action to be run for every value in the map
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    /**
+     * Closes the gap left by a removed entry by moving later entries of the same probe run back into it
+     *
+     * @param gap the slot that was emptied
+     * @param mask the table mask
+     */
+    private void shiftBack(int gap, int mask) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == null) {
+                break;
+            }
+            int home = slot(keys[i], mask);
+            //moves the entry only if its home slot does not lie cyclically between the gap and its current slot
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        values[gap] = null;
+    }
+
+    /**
+     * @param capacity the new table capacity, a power of two
+     */
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldKeys[j], mask);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * @param capacity the table capacity, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @param key the key to be hashed
+     * @param mask the table mask
+     * @return the home slot of the key
+     */
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,212 @@
+package sample;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Open-addressing hash set of primitive ints, used to hold sets of part and product IDs without boxing
+ *
+ * @author Long Tran
+ */
+public class IntSet {
+    /**
+     * The largest fraction of slots that may be filled before the table grows
+     */
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /**
+     * The value of every slot
+     */
+    private int[] keys;
+
+    /**
+     * Marks which slots hold a value
+     */
+    private boolean[] used;
+
+    /**
+     * The number of values in the set
+     */
+    private int size;
+
+    /**
+     * The number of values allowed before the table grows
+     */
+    private int threshold;
+
+    /**
+     * Creates an empty set with a small default capacity
+     */
+    public IntSet() {
+        this(4);
+    }
+
+    /**
+     * @param expectedSize the number of values the set should hold without growing
+     */
+    public IntSet(int expectedSize) {
+        int capacity = 8;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * @param key the value to be searched
+     * @return if the set holds the value
+     */
+    public boolean contains(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key the value to be added
+     * @return if the value was not already in the set
+     */
+    public boolean add(int key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return false;
+            }
+        }
+        keys[i] = key;
+        used[i] = true;
+        if (++size > threshold) {
+            resize(keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * @param key the value to be removed
+     * @return if the value was in the set
+     */
+    public boolean remove(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                shiftBack(i, mask);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes every value while keeping the current capacity
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * @return the number of values in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return if the set has no values
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param action the action to be run for every value in the set
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                action.accept(keys[i]);
+            }
+        }
+    }
+
+    /**
+     * @return every value in the set, in no particular order
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Closes the gap left by a removed value by moving later values of the same probe run back into it
+     *
+     * @param gap the slot that was emptied
+     * @param mask the table mask
+     */
+    private void shiftBack(int gap, int mask) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            if (!used[i]) {
+                break;
+            }
+            int home = slot(keys[i], mask);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                gap = i;
+            }
+        }
+        used[gap] = false;
+    }
+
+    /**
+     * @param capacity the new table capacity, a power of two
+     */
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldUsed[j]) {
+                int i = slot(oldKeys[j], mask);
+                while (used[i]) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                used[i] = true;
+            }
+        }
+    }
+
+    /**
+     * @param capacity the table capacity, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        used = new boolean[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @param key the value to be hashed
+     * @param mask the table mask
+     * @return the home slot of the value
+     */
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
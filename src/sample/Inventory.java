@@ -1,6 +1,13 @@
 package sample;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.text.Collator;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.collections.*;
 import javafx.event.ActionEvent;
@@ -18,36 +25,138 @@ import javafx.stage.Stage;
 /**
  * Contains inventory information and methods used to add, modify, search and remove items in inventory
  *
+ * The inventory itself is held by a headless {@link InventoryCore}. This class holds the one inventory used by the
+ * desktop application and shows its parts and products as observable lists for the tables of the main window.
+ *
+ * When the inventory.concurrent system property is true, other threads, such as scanners receiving stock, may
+ * change inventory while the application runs. The observable lists are then copies changed only on the JavaFX
+ * Application Thread, which applies the changes other threads make, and rows of the tables are matched to items in
+ * inventory by the items themselves rather than by position.
+ *
  * @author Long Tran
  */
 public class Inventory {
 
+    /**
+     * The inventory of the application, kept in the store in the directory named by the inventory.dir system
+     * property, or only in memory if the store cannot be opened
+     */
+    private static final InventoryCore core = new InventoryCore(openStore(),
+            Arrays.asList(
+                    new InHouse(1, "Brakes", 15, 10, 1, 10, 101),
+                    new Outsourced(2, "Seat", 10, 10, 4, 40, "Car Parts")),
+            Arrays.asList(
+                    new Product(1000, "Giant Bike", 300, 50, 10, 100),
+                    new Product(1001, "Tricycle", 100, 30, 10, 100)));
+
+    /**
+     * Whether threads other than the JavaFX Application Thread may change inventory
+     */
+    private static final boolean concurrent = Boolean.getBoolean("inventory.concurrent");
+
     /**
      * All parts in inventory
      */
-    private static ObservableList<Part> allParts = FXCollections.observableArrayList(
-            new InHouse(1, "Brakes", 15, 10, 1, 10, 101),
-            new Outsourced(2, "Seat", 10, 10, 4, 40, "Car Parts"));
+    private static final ObservableInventoryList<Part> allParts = core.read(() -> {
+        ObservableInventoryList<Part> view = concurrent
+                ? new ObservableInventoryList<>(core.getParts(), Platform::runLater)
+                : new ObservableInventoryList<>(core.getParts());
+        core.addPartListener(view);
+        return view;
+    });
 
     /**
      * All products in inventory
      */
-    private static ObservableList<Product> allProducts = FXCollections.observableArrayList(
-            new Product(1000, "Giant Bike", 300, 50, 10, 100),
-            new Product(1001, "Tricycle", 100, 30, 10, 100)
-    );
+    private static final ObservableInventoryList<Product> allProducts = core.read(() -> {
+        ObservableInventoryList<Product> view = concurrent
+                ? new ObservableInventoryList<>(core.getProducts(), Platform::runLater)
+                : new ObservableInventoryList<>(core.getProducts());
+        core.addProductListener(view);
+        return view;
+    });
+
+    /**
+     * @return the headless inventory behind this class, for code that does not use JavaFX
+     */
+    public static InventoryCore getCore() {
+        return core;
+    }
+
+    /**
+     * Issues a new part ID without taking the inventory lock
+     *
+     * @return an ID no part has had
+     */
+    public static int allocatePartId() {
+        return core.allocatePartId();
+    }
+
+    /**
+     * Issues a new product ID without taking the inventory lock
+     *
+     * @return an ID no product has had
+     */
+    public static int allocateProductId() {
+        return core.allocateProductId();
+    }
+
+    /**
+     * Reserves a block of part IDs with a single allocation, such as for a bulk import
+     *
+     * @param count the number of IDs to be reserved
+     * @return the first of count consecutive IDs no part has had
+     */
+    public static int reservePartIds(int count) {
+        return core.reservePartIds(count);
+    }
+
+    /**
+     * Reserves a block of product IDs with a single allocation, such as for a bulk import
+     *
+     * @param count the number of IDs to be reserved
+     * @return the first of count consecutive IDs no product has had
+     */
+    public static int reserveProductIds(int count) {
+        return core.reserveProductIds(count);
+    }
 
     /**
      * @param newPart a new part to be added to inventory
      * */
     public static void addPart(Part newPart) {
-        allParts.addAll(newPart);
+        core.addPart(newPart);
     }
     /**
      * @param newProduct a new product to be added to inventory
      * */
     public static void addProduct(Product newProduct) {
-        allProducts.add(newProduct);
+        core.addProduct(newProduct);
+    }
+
+    /**
+     * Adds many parts with a single change to the parts list, so tables showing it are only refreshed once
+     *
+     * @param newParts the new parts to be added to inventory
+     */
+    public static void addParts(Collection<? extends Part> newParts) {
+        core.addParts(newParts);
+    }
+    /**
+     * Adds many products with a single change to the products list, so tables showing it are only refreshed once
+     *
+     * @param newProducts the new products to be added to inventory
+     */
+    public static void addProducts(Collection<? extends Product> newProducts) {
+        core.addProducts(newProducts);
+    }
+    /**
+     * Associates parts with products already in inventory, changing each product's associated parts only once
+     *
+     * @param links the parts to be associated with each product
+     */
+    public static void addAssociatedParts(Map<Product, List<Part>> links) {
+        core.addAssociatedParts(links);
     }
 
     /**
@@ -55,12 +164,7 @@ public class Inventory {
      * @return the part to be found
      * */
     public static Part lookupPart(int partId) {
-        for(Part part : allParts) {
-            if(partId == part.getId()) {
-                return part;
-            }
-        }
-        return null;
+        return core.lookupPart(partId);
     }
 
     /**
@@ -76,18 +180,46 @@ public class Inventory {
         return false;
     }
 
+    /**
+     * @param partId the id of the part
+     * @return the products whose associated parts include the part, ordered by id
+     */
+    public static List<Product> lookupProductsUsing(int partId) {
+        return core.lookupProductsUsing(partId);
+    }
+
+    /**
+     * @param productId the id of the product
+     * @return the total price of the product's associated parts, or NaN if there is no such product
+     */
+    public static double getPartCost(int productId) {
+        return core.getPartCost(productId);
+    }
+
+    /**
+     * @param productId the id of the product
+     * @return the product's price less the total price of its associated parts, or NaN if there is no such product
+     */
+    public static double getMargin(int productId) {
+        return core.getMargin(productId);
+    }
+
+    /**
+     * @param productId the id of the product
+     * @return the number of units of the product that can be built from the stock of its associated parts, or -1 if
+     * there is no such product
+     */
+    public static int getBuildable(int productId) {
+        return core.getBuildable(productId);
+    }
+
     /**
      *
      * @param productId the id of the product to be searched
      * @return the product to be found
      */
     public static Product lookupProduct(int productId) {
-        for(Product product : allProducts) {
-            if(productId == product.getId()) {
-                return product;
-            }
-        }
-        return null;
+        return core.lookupProduct(productId);
     }
 
     /**
@@ -109,18 +241,11 @@ public class Inventory {
      * @return the list of parts matching the search
      */
     public static ObservableList<Part> lookupPart(String partName) {
-        ObservableList <Part> searchParts = FXCollections.observableArrayList();
-        if (allParts.size() >= 1){
-            for (Part part : allParts){
-                if (part.getName().contains(partName)){
-                    searchParts.add(part);
-                }
-            }
-            return searchParts;
-        }
-        else {
+        if (core.getParts().isEmpty()) {
             return null;
         }
+        return FXCollections.observableArrayList(
+                partName.isEmpty() ? core.searchParts("") : core.lookupParts(partName));
     }
 
     /**
@@ -129,18 +254,172 @@ public class Inventory {
      * @return the list of products matching the search
      */
     public static ObservableList<Product> lookupProduct(String productName) {
-        ObservableList <Product> searchProducts = FXCollections.observableArrayList();
-        if(allProducts.size() >= 1){
-            for (Product product : allProducts){
-                if (product.getName().contains(productName)){
-                    searchProducts.add(product);
-                }
-            }
-            return searchProducts;
-        }
-        else {
+        if (core.getProducts().isEmpty()) {
             return null;
         }
+        return FXCollections.observableArrayList(
+                productName.isEmpty() ? core.searchProducts("") : core.lookupProducts(productName));
+    }
+
+    /**
+     * Finds parts the same way as the search box: the name ignoring case or the ID contains the search text
+     *
+     * @param text the search text
+     * @return the IDs of the matching parts, or null if the search text is empty and every part matches
+     */
+    public static IntSet searchPartIds(String text) {
+        return core.searchPartIds(text);
+    }
+
+    /**
+     * Finds products the same way as the search box: the name ignoring case or the ID contains the search text
+     *
+     * @param text the search text
+     * @return the IDs of the matching products, or null if the search text is empty and every product matches
+     */
+    public static IntSet searchProductIds(String text) {
+        return core.searchProductIds(text);
+    }
+
+    /**
+     * @param text the search text
+     * @return the parts whose name ignoring case or ID contains the search text, or every part if it is empty
+     */
+    public static List<Part> searchParts(String text) {
+        return core.searchParts(text);
+    }
+
+    /**
+     * @param text the search text
+     * @param filter the criteria the parts are filtered by, or null to keep every match
+     * @return the parts matching both, ordered by ID, or every part if the search text is empty and there is no filter
+     */
+    public static List<Part> searchParts(String text, PartFilter filter) {
+        return core.searchParts(text, filter);
+    }
+
+    /**
+     * @param filter the criteria the parts are filtered by
+     * @return the matching parts, ordered by ID
+     */
+    public static List<Part> filterParts(PartFilter filter) {
+        return core.filterParts(filter);
+    }
+
+    /**
+     * @param filter the criteria the parts are filtered by
+     * @return the IDs of the matching parts
+     */
+    public static IntBitmap filterPartIds(PartFilter filter) {
+        return core.filterPartIds(filter);
+    }
+
+    /**
+     * @param min the lowest price
+     * @param max the highest price
+     * @param offset the number of matching parts skipped before the page
+     * @param limit the most parts returned
+     * @return a page of the parts priced from min to max inclusive, ordered by price and then by ID
+     */
+    public static List<Part> partsPricedBetween(double min, double max, int offset, int limit) {
+        return core.partsPricedBetween(min, max, offset, limit);
+    }
+
+    /**
+     * @param min the lowest stock
+     * @param max the highest stock
+     * @param offset the number of matching parts skipped before the page
+     * @param limit the most parts returned
+     * @return a page of the parts with stock from min to max inclusive, ordered by stock and then by ID
+     */
+    public static List<Part> partsStockedBetween(int min, int max, int offset, int limit) {
+        return core.partsStockedBetween(min, max, offset, limit);
+    }
+
+    /**
+     * @param min the lowest price
+     * @param max the highest price
+     * @param offset the number of matching products skipped before the page
+     * @param limit the most products returned
+     * @return a page of the products priced from min to max inclusive, ordered by price and then by ID
+     */
+    public static List<Product> productsPricedBetween(double min, double max, int offset, int limit) {
+        return core.productsPricedBetween(min, max, offset, limit);
+    }
+
+    /**
+     * @param min the lowest stock
+     * @param max the highest stock
+     * @param offset the number of matching products skipped before the page
+     * @param limit the most products returned
+     * @return a page of the products with stock from min to max inclusive, ordered by stock and then by ID
+     */
+    public static List<Product> productsStockedBetween(int min, int max, int offset, int limit) {
+        return core.productsStockedBetween(min, max, offset, limit);
+    }
+
+    /**
+     * @param listener the listener to be told every time a part's stock goes below its min or above its max, or
+     * comes back between them, on the thread that changed it
+     */
+    public static void addPartAlertListener(StockAlertListener<Part> listener) {
+        core.addPartAlertListener(listener);
+    }
+
+    /**
+     * @param listener the listener to be told every time a product's stock goes below its min or above its max, or
+     * comes back between them, on the thread that changed it
+     */
+    public static void addProductAlertListener(StockAlertListener<Product> listener) {
+        core.addProductAlertListener(listener);
+    }
+
+    /**
+     * @param listener the listener to be told of every snapshot that cannot be written, on the thread that tried
+     * to write it
+     */
+    public static void addCompactionFailureListener(Consumer<RuntimeException> listener) {
+        core.addCompactionFailureListener(listener);
+    }
+
+    /**
+     * @return an alert for every part whose stock is now below its min or above its max
+     */
+    public static List<StockAlert<Part>> getPartAlerts() {
+        return core.getPartAlerts();
+    }
+
+    /**
+     * @return an alert for every product whose stock is now below its min or above its max
+     */
+    public static List<StockAlert<Product>> getProductAlerts() {
+        return core.getProductAlerts();
+    }
+
+    /**
+     * @param text the search text
+     * @return the products whose name ignoring case or ID contains the search text, or every product if it is empty
+     */
+    public static List<Product> searchProducts(String text) {
+        return core.searchProducts(text);
+    }
+
+    /**
+     * @param part the part to be checked
+     * @param query the lower case search text
+     * @return if the part's name or ID contains the search text
+     */
+    public static boolean partMatches(Part part, String query) {
+        return InventoryCore.partMatches(part, query);
+    }
+
+    /**
+     * @param product the product to be checked
+     * @param query the lower case search text
+     * @return if the product's name or ID contains the search text
+     */
+    public static boolean productMatches(Product product, String query) {
+        return InventoryCore.productMatches(product, query);
     }
 
     /**
@@ -148,7 +427,11 @@ public class Inventory {
      * @param selectedPart the selected part in the table
      * */
     public static void updatePart(int index, Part selectedPart) {
-        allParts.set(index, selectedPart);
+        if (concurrent) {
+            core.replaceParts(Collections.singletonMap(allParts.get(index), selectedPart));
+        } else {
+            core.updatePart(index, selectedPart);
+        }
     }
 
     /**
@@ -156,7 +439,95 @@ public class Inventory {
      * @param newProduct the selected product in the table
      */
     public static void updateProduct(int index, Product newProduct) {
-        allProducts.set(index, newProduct);
+        if (concurrent) {
+            core.replaceProducts(Collections.singletonMap(allProducts.get(index), newProduct));
+        } else {
+            core.updateProduct(index, newProduct);
+        }
+    }
+
+    /**
+     * Changes a part in place by ID rather than by row, so it works however the table is sorted or filtered and
+     * whatever other threads have moved, and tables only redraw the part's row
+     *
+     * @param partId the ID of the part
+     * @param values a part holding the new values
+     * @return if the part was in inventory
+     */
+    public static boolean updatePartFields(int partId, Part values) {
+        return core.updatePartFields(partId, values);
+    }
+
+    /**
+     * Changes a product in place by ID rather than by row, so it works however the table is sorted or filtered and
+     * whatever other threads have moved, and tables only redraw the product's row
+     *
+     * @param productId the ID of the product
+     * @param values a product holding the new values, including its associated parts and their quantities
+     * @return if the product was in inventory
+     */
+    public static boolean updateProductFields(int productId, Product values) {
+        return core.updateProductFields(productId, values);
+    }
+
+    /**
+     * Replaces many parts with a single change to the parts list, so tables showing it are only refreshed once
+     *
+     * @param updates the new part for each row index of the parts table
+     */
+    public static void updateParts(Map<Integer, ? extends Part> updates) {
+        if (concurrent) {
+            Map<Part, Part> replacements = new HashMap<>();
+            for (Map.Entry<Integer, ? extends Part> update : updates.entrySet()) {
+                replacements.put(allParts.get(update.getKey()), update.getValue());
+            }
+            core.replaceParts(replacements);
+        } else {
+            core.updateParts(updates);
+        }
+    }
+
+    /**
+     * Replaces many products with a single change to the products list, so tables showing it are only refreshed once
+     *
+     * @param updates the new product for each row index of the products table
+     */
+    public static void updateProducts(Map<Integer, ? extends Product> updates) {
+        if (concurrent) {
+            Map<Product, Product> replacements = new HashMap<>();
+            for (Map.Entry<Integer, ? extends Product> update : updates.entrySet()) {
+                replacements.put(allProducts.get(update.getKey()), update.getValue());
+            }
+            core.replaceProducts(replacements);
+        } else {
+            core.updateProducts(updates);
+        }
+    }
+
+    /**
+     * Adds to the stock of a part with a compare-and-set rather than replacing the part. Threads other than the
+     * JavaFX Application Thread may only adjust stock if the inventory.concurrent system property is true.
+     *
+     * @param partId the ID of the part
+     * @param delta the amount added, or taken away if negative
+     * @return if the part was adjusted; the stock is left unchanged if there is no such part or the new stock
+     * would be below its min or above its max
+     */
+    public static boolean adjustPartStock(int partId, int delta) {
+        return core.adjustPartStock(partId, delta);
+    }
+
+    /**
+     * Adds to the stock of a product with a compare-and-set rather than replacing the product. Threads other than the
+     * JavaFX Application Thread may only adjust stock if the inventory.concurrent system property is true.
+     *
+     * @param productId the ID of the product
+     * @param delta the amount added, or taken away if negative
+     * @return if the product was adjusted; the stock is left unchanged if there is no such product or the new
+     * stock would be below its min or above its max
+     */
+    public static boolean adjustProductStock(int productId, int delta) {
+        return core.adjustProductStock(productId, delta);
     }
 
     /**
@@ -164,7 +535,7 @@ public class Inventory {
      * @return if the selected part matches the part from the table
      * */
     public static boolean deletePart(Part selectedPart) {
-        getAllParts().remove(selectedPart);
+        core.deletePart(selectedPart);
         return true;
     }
 
@@ -173,17 +544,74 @@ public class Inventory {
      * @return if the product matches the product from the table
      * */
     public static boolean deleteProduct(Product selectedProduct) {
-        getAllProducts().remove(selectedProduct);
+        core.deleteProduct(selectedProduct);
         return true;
     }
 
+    /**
+     * Deletes many parts with a single change to the parts list, so tables showing it are only refreshed once.
+     * Parts that are not in inventory are ignored.
+     *
+     * @param parts the parts to be deleted
+     */
+    public static void deleteParts(Collection<? extends Part> parts) {
+        core.deleteParts(parts);
+    }
+
+    /**
+     * Deletes many products with a single change to the products list, so tables showing it are only refreshed once.
+     * Products that are not in inventory are ignored.
+     *
+     * @param products the products to be deleted
+     */
+    public static void deleteProducts(Collection<? extends Product> products) {
+        core.deleteProducts(products);
+    }
+
+    /**
+     * Visits every part in inventory order without loading parts that have not been read
+     *
+     * @param action the action given each part
+     */
+    public static void forEachPart(Consumer<Part> action) {
+        core.forEachPart(action);
+    }
+
+    /**
+     * Visits every product in inventory order along with the IDs of its associated parts, without loading products
+     * that have not been read
+     *
+     * @param action the action given each product and the IDs of its associated parts, each repeated once per unit
+     * needed
+     */
+    public static void forEachProduct(BiConsumer<Product, int[]> action) {
+        core.forEachProduct(action);
+    }
+
+    /**
+     * @return the store in the directory named by the inventory.dir system property, or null if it cannot be opened
+     */
+    private static InventoryStore openStore() {
+        try {
+            return new InventoryStore(Paths.get(System.getProperty("inventory.dir", "inventory-data")));
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of changes made to inventory so far
+     */
+    public static int getModCount() {
+        return core.getModCount();
+    }
     /**
      * @return every part from inventory
      * */
     public static ObservableList<Part> getAllParts() {
         return allParts;
     }
-
     /**
      * @return every product from inventory
      * */
@@ -191,5 +619,40 @@ public class Inventory {
         return allProducts;
     }
 
+    /**
+     * Creates a view of every part for a table that sorts its "id", "name", "stock" and "price" columns from
+     * kept orders. When other threads may change inventory the parts list itself is returned instead, since the
+     * view finds parts in inventory by ID and they may be gone before the table learns of it.
+     *
+     * @return a new sortable view of the parts, for a single table
+     */
+    public static ObservableList<Part> sortableParts() {
+        if (concurrent) {
+            return allParts;
+        }
+        SortIndex<Part> index = new SortIndex<>(Part::getId, core::lookupPart);
+        index.addIntColumn("id", Part::getId);
+        index.addTextColumn("name", Part::getName, Collator.getInstance());
+        index.addIntColumn("stock", Part::getStock);
+        index.addDoubleColumn("price", Part::getPrice);
+        return new SortedInventoryList<>(allParts, index, Part::getId);
+    }
 
+    /**
+     * Creates a view of every product for a table that sorts its "id", "name", "stock" and "price" columns from
+     * kept orders. When other threads may change inventory the products list itself is returned instead.
+     *
+     * @return a new sortable view of the products, for a single table
+     */
+    public static ObservableList<Product> sortableProducts() {
+        if (concurrent) {
+            return allProducts;
+        }
+        SortIndex<Product> index = new SortIndex<>(Product::getId, core::lookupProduct);
+        index.addIntColumn("id", Product::getId);
+        index.addTextColumn("name", Product::getName, Collator.getInstance());
+        index.addIntColumn("stock", Product::getStock);
+        index.addDoubleColumn("price", Product::getPrice);
+        return new SortedInventoryList<>(allProducts, index, Product::getId);
+    }
 }
@@ -0,0 +1,137 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A batch of changes made to the parts or the products of inventory at once
+ *
+ * The batch is a sequence of steps in the order they were applied. Each step removes a run of items starting at a
+ * position and adds other items in their place, and its position refers to the list as it was after the steps
+ * before it. A step that only adds, only removes or replaces items in place has no removed, no added, or equally
+ * many removed and added items. Items whose fields were changed in place, such as by a stock adjustment, keep their
+ * positions and are listed apart from the steps, each with the names of the properties that changed, such as
+ * "name", "price" or "stock", so a view can tell whether an update affects it.
+ *
+ * @param <T> the type of item changed
+ * @author Long Tran
+ */
+public class InventoryChange<T> {
+    /**
+     * One run of items removed and added at the same position
+     *
+     * @param <T> the type of item changed
+     */
+    public static class Step<T> {
+        private final int from;
+        private final List<T> removed;
+        private final List<T> added;
+
+        private Step(int from, List<T> removed, List<T> added) {
+            this.from = from;
+            this.removed = removed;
+            this.added = added;
+        }
+
+        /**
+         * @return the position of the first item removed or added
+         */
+        public int getFrom() {
+            return from;
+        }
+
+        /**
+         * @return the items removed, in list order
+         */
+        public List<T> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return the items added, in list order
+         */
+        public List<T> getAdded() {
+            return added;
+        }
+    }
+
+    /**
+     * The steps of the batch in the order they were applied
+     */
+    private final List<Step<T>> steps = new ArrayList<>();
+
+    /**
+     * The items changed in place
+     */
+    private final List<T> updated = new ArrayList<>();
+
+    /**
+     * The names of the properties changed of each item changed in place
+     */
+    private final List<Set<String>> updatedProperties = new ArrayList<>();
+
+    /**
+     * @param from the position of the first item added
+     * @param items the items added
+     */
+    void added(int from, List<T> items) {
+        steps.add(new Step<>(from, Collections.emptyList(), items));
+    }
+
+    /**
+     * @param from the position of the first item removed
+     * @param items the items removed
+     */
+    void removed(int from, List<T> items) {
+        steps.add(new Step<>(from, items, Collections.emptyList()));
+    }
+
+    /**
+     * @param index the position of the item replaced
+     * @param oldItem the item that was replaced
+     * @param newItem the item that replaced it
+     */
+    void replaced(int index, T oldItem, T newItem) {
+        steps.add(new Step<>(index, Collections.singletonList(oldItem), Collections.singletonList(newItem)));
+    }
+
+    /**
+     * @param item the item whose fields were changed in place
+     * @param properties the names of the properties changed
+     */
+    void updated(T item, Set<String> properties) {
+        updated.add(item);
+        updatedProperties.add(Collections.unmodifiableSet(properties));
+    }
+
+    /**
+     * @return the steps of the batch in the order they were applied
+     */
+    public List<Step<T>> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * @return the items whose fields were changed in place, which are still in the list after the steps
+     */
+    public List<T> getUpdated() {
+        return Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * @return the names of the properties changed of each item changed in place, in the order of
+     * {@link #getUpdated}
+     */
+    public List<Set<String>> getUpdatedProperties() {
+        return Collections.unmodifiableList(updatedProperties);
+    }
+
+    /**
+     * @return if the batch changed nothing
+     */
+    public boolean isEmpty() {
+        return steps.isEmpty() && updated.isEmpty();
+    }
+}
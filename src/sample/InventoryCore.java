@@ -0,0 +1,2068 @@
+package sample;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Holds inventory and the methods used to add, modify, search and remove items, without depending on JavaFX
+ *
+ * Inventory can be shared by any number of threads, such as a server handling requests, a batch job or scanners
+ * receiving stock. Adding, replacing and removing items takes the write lock, since it moves items in the lists,
+ * while lookups and searches share the read lock. Stock adjustments also only share the read lock and then change
+ * the stock with a compare-and-set, so adjustments never wait for each other. Changes are reported to
+ * {@link InventoryListener}s once per batch. The desktop application views the same inventory through
+ * {@link ObservableInventoryList}s.
+ *
+ * @author Long Tran
+ */
+public class InventoryCore {
+    /**
+     * The thread that writes snapshots once stock adjustments have grown the journal long enough, shared by every
+     * inventory
+     */
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "inventory-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The on-disk store that inventory is loaded from and every change is journaled to, or null if inventory is
+     * only kept in memory
+     */
+    private final InventoryStore store;
+
+    /**
+     * Whether a snapshot is waiting to be written on the compaction thread
+     */
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /**
+     * The failure of the last snapshot written, or null if it was written
+     */
+    private volatile RuntimeException compactionFailure;
+
+    /**
+     * The listeners told whenever a snapshot cannot be written
+     */
+    private final List<Consumer<RuntimeException>> compactionFailureListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Guards the lists and indexes. Lookups and stock adjustments share the read lock; every other change takes
+     * the write lock.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The snapshot the lists were loaded from, or null if they were not
+     */
+    private final SnapshotFile snapshot;
+
+    /**
+     * All parts in inventory
+     */
+    private final PartList parts;
+
+    /**
+     * All products in inventory
+     */
+    private final LazyRowList<Product> products;
+
+    /**
+     * Products in inventory keyed by product ID
+     */
+    private final IntMap<Product> productIndex = new IntMap<>();
+
+    /**
+     * Substring index over part names and IDs
+     */
+    private final NGramIndex partSearchIndex = new NGramIndex();
+
+    /**
+     * Substring index over product names and IDs
+     */
+    private final NGramIndex productSearchIndex = new NGramIndex();
+
+    /**
+     * The total price of the associated parts of products, kept until their associated parts change
+     */
+    private final CostRollup costs = new CostRollup();
+
+    /**
+     * The number of units of products that can be built from stock, kept until their parts or their stock change
+     */
+    private final Buildability buildable = new Buildability();
+
+    /**
+     * The products using each part, kept up to date by the products in inventory as their associated parts change
+     */
+    private final PartUsage partUsage = new PartUsage(productId -> {
+        costs.invalidate(productId);
+        buildable.invalidate(productId);
+    });
+
+    /**
+     * Whether the search indexes have been built. They are built on the first search so that startup does not
+     * have to read every name in the snapshot.
+     */
+    private volatile boolean searchIndexesBuilt = false;
+
+    /**
+     * Bitmaps of the parts matching each criterion parts can be filtered by, built on the first filter
+     */
+    private final PartFilterIndex partFilters = new PartFilterIndex(this::partPrice);
+
+    /**
+     * Part IDs ordered by price, built on the first range query
+     */
+    private final RangeIndex partPrices = new RangeIndex();
+
+    /**
+     * Part IDs ordered by stock, built on the first range query
+     */
+    private final RangeIndex partStocks = new RangeIndex();
+
+    /**
+     * Product IDs ordered by price, built on the first range query
+     */
+    private final RangeIndex productPrices = new RangeIndex();
+
+    /**
+     * Product IDs ordered by stock, built on the first range query
+     */
+    private final RangeIndex productStocks = new RangeIndex();
+
+    /**
+     * The parts whose stock is below their min or above their max, filled when alerts are first wanted
+     */
+    private final StockAlerts<Part> partAlerts = new StockAlerts<>(Part::getId, Part::getStock, Part::getMin,
+            Part::getMax);
+
+    /**
+     * The products whose stock is below their min or above their max, filled when alerts are first wanted
+     */
+    private final StockAlerts<Product> productAlerts = new StockAlerts<>(Product::getId, Product::getStock,
+            Product::getMin, Product::getMax);
+
+    /**
+     * The number of changes made to inventory, used to tell if earlier search results are still current
+     */
+    private volatile int modCount = 0;
+
+    /**
+     * Issues the IDs of new parts
+     */
+    private final IdAllocator partIds;
+
+    /**
+     * Issues the IDs of new products
+     */
+    private final IdAllocator productIds;
+
+    /**
+     * The listeners told of changes to the parts
+     */
+    private final List<InventoryListener<Part>> partListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The listeners told of changes to the products
+     */
+    private final List<InventoryListener<Product>> productListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param store the store inventory is loaded from and journaled to, or null to keep inventory in memory only
+     * @param initialParts the parts to start with if the store is null or empty
+     * @param initialProducts the products to start with if the store is null or empty
+     */
+    public InventoryCore(InventoryStore store, Collection<? extends Part> initialParts,
+                         Collection<? extends Product> initialProducts) {
+        this.store = store;
+        if (store != null && !store.isEmpty()) {
+            snapshot = store.getSnapshot();
+            parts = store.createPartList();
+            products = store.createProductList(this::partById, product -> product.setUsage(partUsage));
+        } else {
+            snapshot = null;
+            parts = new PartList(initialParts);
+            products = new LazyRowList<>(initialProducts);
+            if (store != null) {
+                //saves the initial inventory as the first snapshot
+                store.compact(parts, products);
+            }
+        }
+        //part columns find parts by ID themselves, and snapshot products are found through the snapshot's own ID
+        //column, so only products already created are indexed
+        int maxPartId = parts.getColumns().getMaxId();
+        int maxProductId = snapshot == null ? 0 : snapshot.getMaxProductId();
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.peek(i);
+            if (product != null) {
+                indexProduct(product);
+                maxProductId = Math.max(maxProductId, product.getId());
+            }
+        }
+        partIds = new IdAllocator(Math.max(Math.max(1, maxPartId + 1), store == null ? 0 : store.getPartIdLimit()),
+                limit -> {
+                    if (store != null) {
+                        store.savePartIdLimit(limit);
+                    }
+                });
+        productIds = new IdAllocator(Math.max(Math.max(1000, maxProductId + 1),
+                store == null ? 0 : store.getProductIdLimit()),
+                limit -> {
+                    if (store != null) {
+                        store.saveProductIdLimit(limit);
+                    }
+                });
+    }
+
+    /**
+     * @param listener the listener to be told of every batch of changes to the parts
+     */
+    public void addPartListener(InventoryListener<Part> listener) {
+        partListeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to stop telling of changes to the parts
+     */
+    public void removePartListener(InventoryListener<Part> listener) {
+        partListeners.remove(listener);
+    }
+
+    /**
+     * @param listener the listener to be told of every batch of changes to the products
+     */
+    public void addProductListener(InventoryListener<Product> listener) {
+        productListeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to stop telling of changes to the products
+     */
+    public void removeProductListener(InventoryListener<Product> listener) {
+        productListeners.remove(listener);
+    }
+
+    /**
+     * Snapshots are written once the journal has grown long enough, by whichever change or compaction thread gets
+     * there, so a failure is reported here rather than to a change that was itself journaled. The journal is kept
+     * until a snapshot is written, so nothing is lost.
+     *
+     * @param listener the listener to be told of every snapshot that cannot be written, on the thread that tried
+     * to write it while it holds the inventory lock
+     */
+    public void addCompactionFailureListener(Consumer<RuntimeException> listener) {
+        compactionFailureListeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to stop telling of snapshots that cannot be written
+     */
+    public void removeCompactionFailureListener(Consumer<RuntimeException> listener) {
+        compactionFailureListeners.remove(listener);
+    }
+
+    /**
+     * @return the failure of the last snapshot written, or null if it was written
+     */
+    public RuntimeException getCompactionFailure() {
+        return compactionFailure;
+    }
+
+    /**
+     * Starts tracking which parts are out of range, if that has not started yet
+     *
+     * @param listener the listener to be told every time a part's stock goes below its min or above its max, or
+     * comes back between them
+     */
+    public void addPartAlertListener(StockAlertListener<Part> listener) {
+        lock.readLock().lock();
+        try {
+            //added first, so no alert raised once the sets are filled is missed
+            partAlerts.addListener(listener);
+            buildPartAlerts();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param listener the listener to stop telling of part alerts
+     */
+    public void removePartAlertListener(StockAlertListener<Part> listener) {
+        partAlerts.removeListener(listener);
+    }
+
+    /**
+     * Starts tracking which products are out of range, if that has not started yet
+     *
+     * @param listener the listener to be told every time a product's stock goes below its min or above its max, or
+     * comes back between them
+     */
+    public void addProductAlertListener(StockAlertListener<Product> listener) {
+        lock.readLock().lock();
+        try {
+            productAlerts.addListener(listener);
+            buildProductAlerts();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param listener the listener to stop telling of product alerts
+     */
+    public void removeProductAlertListener(StockAlertListener<Product> listener) {
+        productAlerts.removeListener(listener);
+    }
+
+    /**
+     * @return an alert for every part whose stock is now below its min or above its max
+     */
+    public List<StockAlert<Part>> getPartAlerts() {
+        lock.readLock().lock();
+        try {
+            buildPartAlerts();
+            return partAlerts.current(this::partById);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return an alert for every product whose stock is now below its min or above its max
+     */
+    public List<StockAlert<Product>> getProductAlerts() {
+        lock.readLock().lock();
+        try {
+            buildProductAlerts();
+            return productAlerts.current(this::productById);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Issues a new part ID without taking the inventory lock
+     *
+     * @return an ID no part has had
+     */
+    public int allocatePartId() {
+        return partIds.next();
+    }
+
+    /**
+     * Issues a new product ID without taking the inventory lock
+     *
+     * @return an ID no product has had
+     */
+    public int allocateProductId() {
+        return productIds.next();
+    }
+
+    /**
+     * Reserves a block of part IDs with a single allocation, such as for a bulk import
+     *
+     * @param count the number of IDs to be reserved
+     * @return the first of count consecutive IDs no part has had
+     */
+    public int reservePartIds(int count) {
+        return partIds.reserve(count);
+    }
+
+    /**
+     * Reserves a block of product IDs with a single allocation, such as for a bulk import
+     *
+     * @param count the number of IDs to be reserved
+     * @return the first of count consecutive IDs no product has had
+     */
+    public int reserveProductIds(int count) {
+        return productIds.reserve(count);
+    }
+
+    /**
+     * @param newPart a new part to be added to inventory
+     */
+    public void addPart(Part newPart) {
+        addParts(Collections.singletonList(newPart));
+    }
+
+    /**
+     * @param newProduct a new product to be added to inventory
+     */
+    public void addProduct(Product newProduct) {
+        addProducts(Collections.singletonList(newProduct));
+    }
+
+    /**
+     * Adds many parts as a single change
+     *
+     * @param newParts the new parts to be added to inventory
+     */
+    public void addParts(Collection<? extends Part> newParts) {
+        lock.writeLock().lock();
+        try {
+            if (newParts.isEmpty()) {
+                return;
+            }
+            modCount++;
+            for (Part part : newParts) {
+                partIds.observe(part.getId());
+                indexPart(part);
+                partFilters.add(part);
+                indexRanges(part);
+            }
+            InventoryChange<Part> change = new InventoryChange<>();
+            change.added(parts.size(), new ArrayList<>(newParts));
+            parts.addAll(newParts);
+            fire(partListeners, change);
+            if (partAlerts.isBuilt()) {
+                for (int i = parts.size() - newParts.size(); i < parts.size(); i++) {
+                    partAlerts.check(parts.get(i));
+                }
+            }
+            persist(store -> store.partsAdded(newParts));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds many products as a single change
+     *
+     * @param newProducts the new products to be added to inventory
+     */
+    public void addProducts(Collection<? extends Product> newProducts) {
+        lock.writeLock().lock();
+        try {
+            if (newProducts.isEmpty()) {
+                return;
+            }
+            modCount++;
+            for (Product product : newProducts) {
+                productIds.observe(product.getId());
+                indexProduct(product);
+            }
+            InventoryChange<Product> change = new InventoryChange<>();
+            change.added(products.size(), new ArrayList<>(newProducts));
+            products.addAll(newProducts);
+            fire(productListeners, change);
+            for (Product product : newProducts) {
+                productAlerts.check(product);
+            }
+            persist(store -> store.productsAdded(newProducts));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Associates parts with products already in inventory, changing each product's associated parts only once
+     *
+     * @param links the parts to be associated with each product
+     */
+    public void addAssociatedParts(Map<Product, List<Part>> links) {
+        lock.writeLock().lock();
+        try {
+            if (links.isEmpty()) {
+                return;
+            }
+            modCount++;
+            for (Map.Entry<Product, List<Part>> link : links.entrySet()) {
+                for (Part part : link.getValue()) {
+                    link.getKey().addAssociatedPart(part);
+                }
+            }
+            pin(links.keySet());
+            persist(store -> store.productsChanged(links.keySet()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param index the position of the part in inventory
+     * @param selectedPart the part replacing it
+     */
+    public void updatePart(int index, Part selectedPart) {
+        updateParts(Collections.singletonMap(index, selectedPart));
+    }
+
+    /**
+     * @param index the position of the product in inventory
+     * @param newProduct the product replacing it
+     */
+    public void updateProduct(int index, Product newProduct) {
+        updateProducts(Collections.singletonMap(index, newProduct));
+    }
+
+    /**
+     * Replaces many parts as a single change. Products using a replaced part are changed to use its replacement,
+     * finding them through the reverse index rather than reading every product.
+     *
+     * @param updates the new part for each position in inventory
+     */
+    public void updateParts(Map<Integer, ? extends Part> updates) {
+        lock.writeLock().lock();
+        try {
+            if (updates.isEmpty()) {
+                return;
+            }
+            modCount++;
+            int[] oldIds = new int[updates.size()];
+            List<Part> newParts = new ArrayList<>(updates.size());
+            Map<Part, Part> replacements = new HashMap<>();
+            int i = 0;
+            //unindexes every replaced part first, so parts trading IDs with each other stay indexed
+            for (Map.Entry<Integer, ? extends Part> update : updates.entrySet()) {
+                Part oldPart = parts.get(update.getKey());
+                oldIds[i++] = oldPart.getId();
+                unindexPart(oldPart);
+                partFilters.remove(oldPart);
+                unindexRanges(oldPart);
+                if (oldPart.getId() != update.getValue().getId()) {
+                    //a part keeping its ID is checked again below rather than cleared first
+                    partAlerts.remove(oldPart);
+                }
+                newParts.add(update.getValue());
+                replacements.put(oldPart, update.getValue());
+            }
+            //products are loaded and relinked before the parts are replaced, so they link to the old parts by their
+            //old IDs and no slot has been released, and perhaps reclaimed, while the old parts are looked up
+            Set<Product> relinked = new LinkedHashSet<>();
+            for (Product product : productsUsing(oldIds)) {
+                for (Part part : product.getAllAssociatedParts()) {
+                    Part replacement = replacements.get(part);
+                    //the store links products to parts by ID, so only a changed ID has to be journaled
+                    if (replacement != null && replacement.getId() != part.getId()) {
+                        relinked.add(product);
+                    }
+                }
+                product.replaceAssociatedParts(replacements);
+            }
+            InventoryChange<Part> change = new InventoryChange<>();
+            for (Map.Entry<Integer, ? extends Part> update : updates.entrySet()) {
+                partIds.observe(update.getValue().getId());
+                indexPart(update.getValue());
+                partFilters.add(update.getValue());
+                indexRanges(update.getValue());
+                change.replaced(update.getKey(), parts.set(update.getKey(), update.getValue()), update.getValue());
+            }
+            pin(relinked);
+            fire(partListeners, change);
+            if (partAlerts.isBuilt()) {
+                for (int index : updates.keySet()) {
+                    partAlerts.check(parts.get(index));
+                }
+            }
+            persist(store -> store.partsUpdated(oldIds, newParts));
+            if (!relinked.isEmpty()) {
+                persist(store -> store.productsChanged(relinked));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces many products as a single change
+     *
+     * @param updates the new product for each position in inventory
+     */
+    public void updateProducts(Map<Integer, ? extends Product> updates) {
+        lock.writeLock().lock();
+        try {
+            if (updates.isEmpty()) {
+                return;
+            }
+            modCount++;
+            int[] oldIds = new int[updates.size()];
+            List<Product> newProducts = new ArrayList<>(updates.size());
+            int i = 0;
+            for (Map.Entry<Integer, ? extends Product> update : updates.entrySet()) {
+                Product oldProduct = products.get(update.getKey());
+                oldIds[i++] = oldProduct.getId();
+                unindexProduct(oldProduct);
+                if (oldProduct.getId() != update.getValue().getId()) {
+                    //a product keeping its ID is checked again below rather than cleared first
+                    productAlerts.remove(oldProduct);
+                }
+                newProducts.add(update.getValue());
+            }
+            InventoryChange<Product> change = new InventoryChange<>();
+            for (Map.Entry<Integer, ? extends Product> update : updates.entrySet()) {
+                productIds.observe(update.getValue().getId());
+                indexProduct(update.getValue());
+                change.replaced(update.getKey(), products.set(update.getKey(), update.getValue()), update.getValue());
+            }
+            fire(productListeners, change);
+            for (Product product : newProducts) {
+                productAlerts.check(product);
+            }
+            persist(store -> store.productsUpdated(oldIds, newProducts));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param part the part to be deleted
+     * @return if the part was in inventory
+     */
+    public boolean deletePart(Part part) {
+        return deleteParts(Collections.singletonList(part)) > 0;
+    }
+
+    /**
+     * @param product the product to be deleted
+     * @return if the product was in inventory
+     */
+    public boolean deleteProduct(Product product) {
+        return deleteProducts(Collections.singletonList(product)) > 0;
+    }
+
+    /**
+     * Deletes many parts as a single change. Parts that are not in inventory are ignored.
+     *
+     * @param deleted the parts to be deleted
+     * @return the number of parts deleted
+     */
+    public int deleteParts(Collection<? extends Part> deleted) {
+        lock.writeLock().lock();
+        try {
+            int[] indexes = parts.indexesOf(deleted);
+            if (indexes.length == 0) {
+                return 0;
+            }
+            modCount++;
+            int[] ids = new int[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                Part part = parts.get(indexes[i]);
+                ids[i] = part.getId();
+                unindexPart(part);
+                partFilters.remove(part);
+                unindexRanges(part);
+                partAlerts.remove(part);
+            }
+            if (!costs.isEmpty() || !buildable.isEmpty()) {
+                //products using a deleted part no longer count its price and can no longer be built; they are found
+                //without loading them
+                buildPartUsage();
+                for (int id : ids) {
+                    partUsage.productsUsing(id).forEach(productId -> {
+                        costs.invalidate(productId);
+                        buildable.invalidate(productId);
+                    });
+                }
+            }
+            InventoryChange<Part> change = removeAll(parts, indexes, parts::removeAll);
+            fire(partListeners, change);
+            persist(store -> store.partsDeleted(ids));
+            return indexes.length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes many products as a single change. Products that are not in inventory are ignored.
+     *
+     * @param deleted the products to be deleted
+     * @return the number of products deleted
+     */
+    public int deleteProducts(Collection<? extends Product> deleted) {
+        lock.writeLock().lock();
+        try {
+            int[] indexes = products.indexesOf(deleted);
+            if (indexes.length == 0) {
+                return 0;
+            }
+            modCount++;
+            int[] ids = new int[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                Product product = products.get(indexes[i]);
+                ids[i] = product.getId();
+                unindexProduct(product);
+                productAlerts.remove(product);
+            }
+            InventoryChange<Product> change = removeAll(products, indexes, products::removeAll);
+            fire(productListeners, change);
+            persist(store -> store.productsDeleted(ids));
+            return indexes.length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces parts wherever they are in inventory, for callers that cannot know their positions because other
+     * threads may have moved them. Parts no longer in inventory are ignored.
+     *
+     * @param replacements the new part for each part replaced
+     * @return the number of parts replaced
+     */
+    public int replaceParts(Map<? extends Part, ? extends Part> replacements) {
+        lock.writeLock().lock();
+        try {
+            Map<Integer, Part> updates = new LinkedHashMap<>();
+            for (int index : parts.indexesOf(replacements.keySet())) {
+                updates.put(index, replacements.get(parts.get(index)));
+            }
+            updateParts(updates);
+            return updates.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces products wherever they are in inventory, for callers that cannot know their positions because other
+     * threads may have moved them. Products no longer in inventory are ignored.
+     *
+     * @param replacements the new product for each product replaced
+     * @return the number of products replaced
+     */
+    public int replaceProducts(Map<? extends Product, ? extends Product> replacements) {
+        lock.writeLock().lock();
+        try {
+            Map<Integer, Product> updates = new LinkedHashMap<>();
+            for (int index : products.indexesOf(replacements.keySet())) {
+                updates.put(index, replacements.get(products.get(index)));
+            }
+            updateProducts(updates);
+            return updates.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Changes the fields of a part in place, keeping its position, so listeners are only told which properties
+     * changed rather than that the part was replaced. A part of another type or with another ID replaces the part
+     * instead, since products and the store link parts by ID.
+     *
+     * @param partId the ID of the part to be changed
+     * @param values a part holding the new values
+     * @return if the part was in inventory
+     */
+    public boolean updatePartFields(int partId, Part values) {
+        lock.writeLock().lock();
+        try {
+            Part part = partById(partId);
+            if (part == null) {
+                return false;
+            }
+            if (values.getId() != partId || values.getClass() != part.getClass()) {
+                return replaceParts(Collections.singletonMap(part, values)) > 0;
+            }
+            Set<String> changed = new LinkedHashSet<>();
+            //taken out of the filter bitmaps under its old values and put back under its new ones
+            partFilters.remove(part);
+            if (!Objects.equals(part.getName(), values.getName())) {
+                //only a new name can change which searches the part matches
+                modCount++;
+                unindexPart(part);
+                part.setName(values.getName());
+                indexPart(part);
+                changed.add("name");
+            }
+            if (Double.compare(part.getPrice(), values.getPrice()) != 0) {
+                partPrices.remove(partId, RangeIndex.key(part.getPrice()));
+                part.setPrice(values.getPrice());
+                partPrices.add(partId, RangeIndex.key(part.getPrice()));
+                changed.add("price");
+            }
+            if (part.getStock() != values.getStock()) {
+                partStocks.remove(partId, RangeIndex.key(part.getStock()));
+                part.setStock(values.getStock());
+                partStocks.add(partId, RangeIndex.key(part.getStock()));
+                changed.add("stock");
+            }
+            if (part.getMin() != values.getMin()) {
+                part.setMin(values.getMin());
+                changed.add("min");
+            }
+            if (part.getMax() != values.getMax()) {
+                part.setMax(values.getMax());
+                changed.add("max");
+            }
+            if (part instanceof InHouse) {
+                InHouse inHouse = (InHouse) part;
+                if (inHouse.getMachineId() != ((InHouse) values).getMachineId()) {
+                    inHouse.setMachineId(((InHouse) values).getMachineId());
+                    changed.add("machineId");
+                }
+            } else {
+                Outsourced outsourced = (Outsourced) part;
+                if (!Objects.equals(outsourced.getCompanyName(), ((Outsourced) values).getCompanyName())) {
+                    outsourced.setCompanyName(((Outsourced) values).getCompanyName());
+                    changed.add("companyName");
+                }
+            }
+            partFilters.add(part);
+            if (changed.isEmpty()) {
+                return true;
+            }
+            //products hold views of the part, so they see the new values; only what was derived from them is dropped
+            boolean priceChanged = changed.contains("price") && !costs.isEmpty();
+            boolean stockChanged = changed.contains("stock") && buildable.stockChanged();
+            if (priceChanged || stockChanged) {
+                buildPartUsage();
+                IntSet users = partUsage.productsUsing(partId);
+                if (priceChanged) {
+                    users.forEach(costs::invalidate);
+                }
+                if (stockChanged) {
+                    users.forEach(buildable::invalidate);
+                }
+            }
+            if (!partListeners.isEmpty()) {
+                InventoryChange<Part> change = new InventoryChange<>();
+                change.updated(part, changed);
+                fire(partListeners, change);
+            }
+            if (changed.contains("stock") || changed.contains("min") || changed.contains("max")) {
+                partAlerts.check(part);
+            }
+            persist(store -> store.partsUpdated(new int[]{partId}, Collections.singletonList(part)));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Changes the fields of a product in place, keeping its position, so listeners are only told which properties
+     * changed rather than that the product was replaced. A product with another ID replaces the product instead.
+     * The product is journaled even if nothing changed, so changes made through the product itself are kept.
+     *
+     * @param productId the ID of the product to be changed
+     * @param values a product holding the new values, including its associated parts and their quantities
+     * @return if the product was in inventory
+     */
+    public boolean updateProductFields(int productId, Product values) {
+        lock.writeLock().lock();
+        try {
+            Product product = productById(productId);
+            if (product == null) {
+                return false;
+            }
+            if (values.getId() != productId) {
+                return replaceProducts(Collections.singletonMap(product, values)) > 0;
+            }
+            Set<String> changed = new LinkedHashSet<>();
+            if (!Objects.equals(product.getName(), values.getName())) {
+                //only a new name can change which searches the product matches
+                modCount++;
+                productSearchIndex.remove(productId);
+                product.setName(values.getName());
+                if (searchIndexesBuilt) {
+                    productSearchIndex.add(productId, product.getName(), String.valueOf(productId));
+                }
+                changed.add("name");
+            }
+            if (Double.compare(product.getPrice(), values.getPrice()) != 0) {
+                productPrices.remove(productId, RangeIndex.key(product.getPrice()));
+                product.setPrice(values.getPrice());
+                productPrices.add(productId, RangeIndex.key(product.getPrice()));
+                changed.add("price");
+            }
+            if (product.getStock() != values.getStock()) {
+                productStocks.remove(productId, RangeIndex.key(product.getStock()));
+                product.setStock(values.getStock());
+                productStocks.add(productId, RangeIndex.key(product.getStock()));
+                changed.add("stock");
+            }
+            if (product.getMin() != values.getMin()) {
+                product.setMin(values.getMin());
+                changed.add("min");
+            }
+            if (product.getMax() != values.getMax()) {
+                product.setMax(values.getMax());
+                changed.add("max");
+            }
+            if (product.setAssociatedParts(values)) {
+                changed.add("associatedParts");
+            }
+            pin(Collections.singletonList(product));
+            if (!changed.isEmpty() && !productListeners.isEmpty()) {
+                InventoryChange<Product> change = new InventoryChange<>();
+                change.updated(product, changed);
+                fire(productListeners, change);
+            }
+            if (changed.contains("stock") || changed.contains("min") || changed.contains("max")) {
+                productAlerts.check(product);
+            }
+            persist(store -> store.productsUpdated(new int[]{productId}, Collections.singletonList(product)));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds to the stock of a part without moving it or taking a lock of its own, so it never waits for other
+     * adjustments to be made. It does wait for the adjustment to be journaled, which is written along with any others
+     * made meanwhile.
+     *
+     * @param partId the ID of the part
+     * @param delta the amount added, or taken away if negative
+     * @return if the part was adjusted; the stock is left unchanged if there is no such part or the new stock
+     * would be below its min or above its max
+     * @throws UncheckedIOException if the adjustment cannot be journaled, after it has been made and reported
+     */
+    public boolean adjustPartStock(int partId, int delta) {
+        lock.readLock().lock();
+        try {
+            Part part = partById(partId);
+            if (part == null) {
+                return false;
+            }
+            long before = part.adjustStock(delta);
+            if (before == Part.NOT_ADJUSTED) {
+                return false;
+            }
+            //the stock index is only filled under the write lock, so none is filled while this adjustment is made
+            if (partStocks.isBuilt()) {
+                partStocks.move(partId, RangeIndex.key((int) before), RangeIndex.key((int) before + delta));
+            }
+            partFilters.stockChanged(part);
+            //moves the version on even if nothing is kept, so units being worked out from the old stock are not kept
+            if (buildable.stockChanged()) {
+                buildPartUsage();
+                partUsage.productsUsing(partId).forEach(buildable::invalidate);
+            }
+            if (!partListeners.isEmpty()) {
+                InventoryChange<Part> change = new InventoryChange<>();
+                change.updated(part, Collections.singleton("stock"));
+                fire(partListeners, change);
+            }
+            partAlerts.check(part);
+            if (store != null) {
+                store.partStockAdjusted(partId, delta);
+                compactLater();
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds to the stock of a product without moving it or taking a lock of its own, so it never waits for other
+     * adjustments to be made. It does wait for the adjustment to be journaled, which is written along with any others
+     * made meanwhile.
+     *
+     * @param productId the ID of the product
+     * @param delta the amount added, or taken away if negative
+     * @return if the product was adjusted; the stock is left unchanged if there is no such product or the new
+     * stock would be below its min or above its max
+     * @throws UncheckedIOException if the adjustment cannot be journaled, after it has been made and reported
+     */
+    public boolean adjustProductStock(int productId, int delta) {
+        lock.readLock().lock();
+        try {
+            Product product = productById(productId);
+            if (product == null) {
+                return false;
+            }
+            long before = product.adjustStock(delta);
+            if (before == Part.NOT_ADJUSTED) {
+                return false;
+            }
+            if (productStocks.isBuilt()) {
+                productStocks.move(productId, RangeIndex.key((int) before), RangeIndex.key((int) before + delta));
+            }
+            if (snapshot != null) {
+                products.pin(snapshot.findProductRow(productId));
+            }
+            if (!productListeners.isEmpty()) {
+                InventoryChange<Product> change = new InventoryChange<>();
+                change.updated(product, Collections.singleton("stock"));
+                fire(productListeners, change);
+            }
+            productAlerts.check(product);
+            if (store != null) {
+                store.productStockAdjusted(productId, delta);
+                compactLater();
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param partId the ID of the part
+     * @return the part, or null if there is none
+     */
+    public Part lookupPart(int partId) {
+        lock.readLock().lock();
+        try {
+            return partById(partId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param productId the ID of the product
+     * @return the product, or null if there is none
+     */
+    public Product lookupProduct(int productId) {
+        lock.readLock().lock();
+        try {
+            return productById(productId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds where a part is used through the reverse index, reading only the products using it
+     *
+     * @param partId the ID of the part
+     * @return the products whose associated parts include the part, ordered by ID
+     */
+    public List<Product> lookupProductsUsing(int partId) {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(productsUsing(new int[]{partId}));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param productId the ID of the product
+     * @return the total price of the product's associated parts, or NaN if there is no such product
+     */
+    public double getPartCost(int productId) {
+        lock.readLock().lock();
+        try {
+            Product product = productById(productId);
+            return product == null ? Double.NaN : costs.cost(productId, id -> sumPartPrices(product));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param productId the ID of the product
+     * @return the product's price less the total price of its associated parts, or NaN if there is no such product
+     */
+    public double getMargin(int productId) {
+        lock.readLock().lock();
+        try {
+            Product product = productById(productId);
+            return product == null ? Double.NaN : product.getPrice() - getPartCost(productId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rolls up the cost of every product in inventory order. Only products whose associated parts changed since
+     * their cost was last asked for are summed again. Products not loaded from the snapshot yet are summed from
+     * the snapshot and read into temporary objects that are not kept.
+     *
+     * @param action the action given each product and the total price of its associated parts; its margin is its
+     * price less that total
+     */
+    public void forEachPartCost(ObjDoubleConsumer<Product> action) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.peek(i);
+                if (product != null) {
+                    action.accept(product, costs.cost(product.getId(), id -> sumPartPrices(product)));
+                } else {
+                    int row = products.rowAt(i);
+                    double cost = costs.cost(snapshot.productId(row),
+                            id -> sumPartPrices(snapshot.productPartIds(row)));
+                    action.accept(snapshot.product(row), cost);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param productId the ID of the product
+     * @return the number of units of the product that can be built from the stock of its associated parts, or -1
+     * if there is no such product
+     */
+    public int getBuildable(int productId) {
+        lock.readLock().lock();
+        try {
+            Product product = productById(productId);
+            if (product == null) {
+                return -1;
+            }
+            int units = buildable.get(productId);
+            if (units < 0) {
+                long version = buildable.getVersion();
+                units = Buildability.units(product.getAssociatedPartUnits(), this::partStock);
+                buildable.keep(new int[]{productId}, new int[]{units}, 1, version);
+            }
+            return units;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Works out how many units of every product in inventory can be built from stock, splitting the products not
+     * worked out since their parts last changed across the fork/join pool, then visits every product in inventory
+     * order. Products not loaded from the snapshot yet are worked out from the snapshot and read into temporary
+     * objects that are not kept.
+     *
+     * @param action the action given each product and the number of units that can be built
+     */
+    public void forEachBuildable(ObjIntConsumer<Product> action) {
+        lock.readLock().lock();
+        try {
+            int count = products.size();
+            int[] units = new int[count];
+            //reads the lists once on this thread; the workers only read the associated parts and the part stock
+            int[] missing = new int[count];
+            int[] missingIds = new int[count];
+            Product[] missingProducts = new Product[count];
+            int missingCount = 0;
+            for (int i = 0; i < count; i++) {
+                Product product = products.peek(i);
+                int id = product != null ? product.getId() : snapshot.productId(products.rowAt(i));
+                units[i] = buildable.get(id);
+                if (units[i] < 0) {
+                    missing[missingCount] = i;
+                    missingIds[missingCount] = id;
+                    missingProducts[missingCount++] = product;
+                }
+            }
+            if (missingCount > 0) {
+                long version = buildable.getVersion();
+                int[] rows = new int[missingCount];
+                for (int m = 0; m < missingCount; m++) {
+                    rows[m] = missingProducts[m] == null ? products.rowAt(missing[m]) : -1;
+                }
+                int[] found = Buildability.unitsOf(missingCount,
+                        m -> rows[m] < 0
+                                ? missingProducts[m].getAssociatedPartUnits() : snapshot.productPartIds(rows[m]),
+                        this::partStock);
+                for (int m = 0; m < missingCount; m++) {
+                    units[missing[m]] = found[m];
+                }
+                buildable.keep(missingIds, found, missingCount, version);
+            }
+            for (int i = 0; i < count; i++) {
+                Product product = products.peek(i);
+                action.accept(product != null ? product : snapshot.product(products.rowAt(i)), units[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param partName the text to be searched, matching case
+     * @return the parts whose name contains the text, ordered by ID
+     */
+    public List<Part> lookupParts(String partName) {
+        lock.readLock().lock();
+        try {
+            buildSearchIndexes();
+            List<Part> found = new ArrayList<>();
+            for (Part part : partsById(partSearchIndex.candidates(partName.toLowerCase()))) {
+                if (part.getName().contains(partName)) {
+                    found.add(part);
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param productName the text to be searched, matching case
+     * @return the products whose name contains the text, ordered by ID
+     */
+    public List<Product> lookupProducts(String productName) {
+        lock.readLock().lock();
+        try {
+            buildSearchIndexes();
+            List<Product> found = new ArrayList<>();
+            for (Product product : productsById(productSearchIndex.candidates(productName.toLowerCase()))) {
+                if (product.getName().contains(productName)) {
+                    found.add(product);
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds parts the same way as the search box: the name ignoring case or the ID contains the search text
+     *
+     * @param text the search text
+     * @return the IDs of the matching parts, or null if the search text is empty and every part matches
+     */
+    public IntSet searchPartIds(String text) {
+        lock.readLock().lock();
+        try {
+            if (text == null || text.isEmpty()) {
+                return null;
+            }
+            String query = text.toLowerCase();
+            buildSearchIndexes();
+            IntSet ids = partSearchIndex.candidates(query);
+            if (!partSearchIndex.isExact(query)) {
+                for (int id : ids.toArray()) {
+                    if (!partMatches(partById(id), query)) {
+                        ids.remove(id);
+                    }
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds products the same way as the search box: the name ignoring case or the ID contains the search text
+     *
+     * @param text the search text
+     * @return the IDs of the matching products, or null if the search text is empty and every product matches
+     */
+    public IntSet searchProductIds(String text) {
+        lock.readLock().lock();
+        try {
+            if (text == null || text.isEmpty()) {
+                return null;
+            }
+            String query = text.toLowerCase();
+            buildSearchIndexes();
+            IntSet ids = productSearchIndex.candidates(query);
+            if (!productSearchIndex.isExact(query)) {
+                for (int id : ids.toArray()) {
+                    if (!productMatches(productById(id), query)) {
+                        ids.remove(id);
+                    }
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param text the search text
+     * @return the parts whose name ignoring case or ID contains the search text, or every part if it is empty
+     */
+    public List<Part> searchParts(String text) {
+        lock.readLock().lock();
+        try {
+            IntSet ids = searchPartIds(text);
+            return ids == null ? new ArrayList<>(parts) : partsById(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Filters parts by joining the bitmaps of the filter's criteria rather than testing every part
+     *
+     * @param filter the criteria the parts are filtered by
+     * @return the IDs of the matching parts, as a new bitmap
+     */
+    public IntBitmap filterPartIds(PartFilter filter) {
+        lock.readLock().lock();
+        try {
+            buildPartFilters();
+            return filter.evaluate(partFilters);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param filter the criteria the parts are filtered by
+     * @return the matching parts, ordered by ID
+     */
+    public List<Part> filterParts(PartFilter filter) {
+        return searchParts("", filter);
+    }
+
+    /**
+     * Finds parts the same way as the search box, keeping only those matching a filter
+     *
+     * @param text the search text
+     * @param filter the criteria the parts are filtered by, or null to keep every match
+     * @return the parts matching both, ordered by ID, or every part if the search text is empty and there is no filter
+     */
+    public List<Part> searchParts(String text, PartFilter filter) {
+        lock.readLock().lock();
+        try {
+            if (filter == null) {
+                return searchParts(text);
+            }
+            IntBitmap filtered = filterPartIds(filter);
+            IntSet matched = searchPartIds(text);
+            List<Part> found = new ArrayList<>();
+            filtered.forEach(id -> {
+                if (matched == null || matched.contains(id)) {
+                    found.add(partById(id));
+                }
+            });
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param min the lowest price
+     * @param max the highest price
+     * @param offset the number of matching parts skipped before the page
+     * @param limit the most parts returned
+     * @return a page of the parts priced from min to max inclusive, ordered by price and then by ID
+     */
+    public List<Part> partsPricedBetween(double min, double max, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            buildPartRange(partPrices, part -> RangeIndex.key(part.getPrice()));
+            return partsInOrder(partPrices.range(RangeIndex.key(min), RangeIndex.key(max), offset, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param min the lowest stock
+     * @param max the highest stock
+     * @param offset the number of matching parts skipped before the page
+     * @param limit the most parts returned
+     * @return a page of the parts with stock from min to max inclusive, ordered by stock and then by ID
+     * @throws IllegalStateException if this is the first stock query and it is made inside {@link #read}, as the
+     * stock index is filled under the write lock
+     */
+    public List<Part> partsStockedBetween(int min, int max, int offset, int limit) {
+        buildStockRange(partStocks, () -> buildPartRange(partStocks, part -> RangeIndex.key(part.getStock())));
+        lock.readLock().lock();
+        try {
+            return partsInOrder(partStocks.range(RangeIndex.key(min), RangeIndex.key(max), offset, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param min the lowest price
+     * @param max the highest price
+     * @param offset the number of matching products skipped before the page
+     * @param limit the most products returned
+     * @return a page of the products priced from min to max inclusive, ordered by price and then by ID
+     */
+    public List<Product> productsPricedBetween(double min, double max, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            buildProductRange(productPrices, product -> RangeIndex.key(product.getPrice()),
+                    row -> RangeIndex.key(snapshot.productPrice(row)));
+            return productsInOrder(productPrices.range(RangeIndex.key(min), RangeIndex.key(max), offset, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param min the lowest stock
+     * @param max the highest stock
+     * @param offset the number of matching products skipped before the page
+     * @param limit the most products returned
+     * @return a page of the products with stock from min to max inclusive, ordered by stock and then by ID
+     * @throws IllegalStateException if this is the first stock query and it is made inside {@link #read}, as the
+     * stock index is filled under the write lock
+     */
+    public List<Product> productsStockedBetween(int min, int max, int offset, int limit) {
+        buildStockRange(productStocks, () -> buildProductRange(productStocks,
+                product -> RangeIndex.key(product.getStock()), row -> RangeIndex.key(snapshot.productStock(row))));
+        lock.readLock().lock();
+        try {
+            return productsInOrder(productStocks.range(RangeIndex.key(min), RangeIndex.key(max), offset, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param text the search text
+     * @return the products whose name ignoring case or ID contains the search text, or every product if it is empty
+     */
+    public List<Product> searchProducts(String text) {
+        lock.readLock().lock();
+        try {
+            IntSet ids = searchProductIds(text);
+            return ids == null ? new ArrayList<>(products) : productsById(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param part the part to be checked
+     * @param query the lower case search text
+     * @return if the part's name or ID contains the search text
+     */
+    public static boolean partMatches(Part part, String query) {
+        return part.getName().toLowerCase().contains(query)
+                || String.valueOf(part.getId()).contains(query);
+    }
+
+    /**
+     * @param product the product to be checked
+     * @param query the lower case search text
+     * @return if the product's name or ID contains the search text
+     */
+    public static boolean productMatches(Product product, String query) {
+        return product.getName().toLowerCase().contains(query)
+                || String.valueOf(product.getId()).contains(query);
+    }
+
+    /**
+     * Visits every part in inventory order. Each part is a view of the part columns that is not kept, so visiting a
+     * large inventory does not create an object for every part.
+     *
+     * @param action the action given each part
+     */
+    public void forEachPart(Consumer<Part> action) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < parts.size(); i++) {
+                action.accept(parts.get(i));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visits every product in inventory order along with the IDs of its associated parts. Products not loaded from
+     * the snapshot yet are read into temporary objects that are not kept and have no associated parts of their own.
+     *
+     * @param action the action given each product and the IDs of its associated parts, each repeated once per unit
+     * needed
+     */
+    public void forEachProduct(BiConsumer<Product, int[]> action) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.peek(i);
+                if (product == null) {
+                    int row = products.rowAt(i);
+                    action.accept(snapshot.product(row), snapshot.productPartIds(row));
+                } else {
+                    action.accept(product, product.getAssociatedPartUnits());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the parts in inventory order, loaded from the snapshot as they are read. The list cannot be changed
+     * through this view and must only be read inside {@link #read} or from a listener.
+     */
+    public List<Part> getParts() {
+        return Collections.unmodifiableList(parts);
+    }
+
+    /**
+     * @return the products in inventory order, loaded from the snapshot as they are read. The list cannot be
+     * changed through this view and must only be read inside {@link #read} or from a listener.
+     */
+    public List<Product> getProducts() {
+        return Collections.unmodifiableList(products);
+    }
+
+    /**
+     * Runs an action while inventory cannot be changed, such as copying a list and adding a listener with no
+     * change made in between
+     *
+     * @param action the action to be run
+     * @param <R> the type of result
+     * @return the result of the action
+     */
+    public <R> R read(Supplier<R> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of changes made to inventory so far
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Closes the store, after which inventory must no longer be changed
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (store != null) {
+                store.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes items in one pass, describing each run of adjacent items removed as one step. The runs are described
+     * from the end of the list so the positions of the runs before each one are unchanged.
+     *
+     * @param items the list the items are removed from
+     * @param indexes the positions of the items, in increasing order without repeats
+     * @param remover removes the items at the positions from the list in one pass
+     * @param <T> the type of item
+     * @return the change removing the items
+     */
+    private static <T> InventoryChange<T> removeAll(List<T> items, int[] indexes, Consumer<int[]> remover) {
+        List<Integer> starts = new ArrayList<>();
+        List<List<T>> runs = new ArrayList<>();
+        for (int i = 0; i < indexes.length; i++) {
+            if (i == 0 || indexes[i] != indexes[i - 1] + 1) {
+                starts.add(indexes[i]);
+                runs.add(new ArrayList<>());
+            }
+            runs.get(runs.size() - 1).add(items.get(indexes[i]));
+        }
+        remover.accept(indexes);
+        InventoryChange<T> change = new InventoryChange<>();
+        for (int run = runs.size() - 1; run >= 0; run--) {
+            change.removed(starts.get(run), runs.get(run));
+        }
+        return change;
+    }
+
+    /**
+     * @param listeners the listeners to be told of the change
+     * @param change the batch of changes made
+     * @param <T> the type of item changed
+     */
+    private static <T> void fire(List<InventoryListener<T>> listeners, InventoryChange<T> change) {
+        for (InventoryListener<T> listener : listeners) {
+            listener.onChanged(change);
+        }
+    }
+
+    /**
+     * @param ids the IDs of the parts
+     * @return the parts with the given IDs, ordered by ID
+     */
+    private List<Part> partsById(IntSet ids) {
+        int[] sorted = ids.toArray();
+        Arrays.sort(sorted);
+        List<Part> found = new ArrayList<>(sorted.length);
+        for (int id : sorted) {
+            found.add(partById(id));
+        }
+        return found;
+    }
+
+    /**
+     * @param ids the IDs of parts in inventory
+     * @return the parts in the same order
+     */
+    private List<Part> partsInOrder(int[] ids) {
+        List<Part> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            found.add(partById(id));
+        }
+        return found;
+    }
+
+    /**
+     * @param ids the IDs of products in inventory
+     * @return the products in the same order
+     */
+    private List<Product> productsInOrder(int[] ids) {
+        List<Product> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            found.add(productById(id));
+        }
+        return found;
+    }
+
+    /**
+     * @param ids the IDs of the products
+     * @return the products with the given IDs, ordered by ID
+     */
+    private List<Product> productsById(IntSet ids) {
+        int[] sorted = ids.toArray();
+        Arrays.sort(sorted);
+        List<Product> found = new ArrayList<>(sorted.length);
+        for (int id : sorted) {
+            found.add(productById(id));
+        }
+        return found;
+    }
+
+    /**
+     * @param partIds the IDs of parts
+     * @return the products whose associated parts include any of the parts, ordered by ID
+     */
+    private Set<Product> productsUsing(int[] partIds) {
+        buildPartUsage();
+        IntSet productIds = new IntSet();
+        for (int partId : partIds) {
+            partUsage.productsUsing(partId).forEach(productIds::add);
+        }
+        IntSet wanted = new IntSet(partIds.length);
+        for (int partId : partIds) {
+            wanted.add(partId);
+        }
+        Set<Product> users = new LinkedHashSet<>();
+        for (Product product : productsById(productIds)) {
+            //a product loaded from the snapshot after one of its parts was deleted no longer lists the part
+            if (product != null && uses(product, wanted)) {
+                users.add(product);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * @param product a product
+     * @param partIds the IDs of parts
+     * @return if the product's associated parts include any of the parts
+     */
+    private static boolean uses(Product product, IntSet partIds) {
+        for (int partId : product.getAssociatedPartIds()) {
+            if (partIds.contains(partId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sums the prices of a product's associated parts, leaving out deleted parts the same way as for a product not
+     * loaded from the snapshot yet, so a product costs the same whether or not it has been loaded
+     *
+     * @param product a product
+     * @return the total price of its associated parts still in inventory
+     */
+    private double sumPartPrices(Product product) {
+        double cost = 0;
+        for (Part part : product.getAllAssociatedParts()) {
+            //a product loaded before one of its parts was deleted still lists the part
+            if (partById(part.getId()) != null) {
+                cost += part.getPrice() * product.getAssociatedPartQuantity(part.getId());
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Sums the prices of parts the way a product loaded from the snapshot links them, leaving out deleted parts
+     *
+     * @param partIds the IDs of the associated parts of a snapshot row
+     * @return the total price of the parts still in inventory
+     */
+    private double sumPartPrices(int[] partIds) {
+        double cost = 0;
+        for (int partId : partIds) {
+            Part part = partById(partId);
+            if (part != null) {
+                cost += part.getPrice();
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Reads the stock of a part without creating a view of it, so it can be used from fork/join workers
+     *
+     * @param partId the ID of the part
+     * @return the stock of the part, or -1 if it is not in inventory
+     */
+    private int partStock(int partId) {
+        PartColumns columns = parts.getColumns();
+        int slot = columns.find(partId);
+        return slot < 0 ? -1 : columns.getStock(slot);
+    }
+
+    /**
+     * Reads the price of a part without creating a view of it, as the filter bitmaps check many prices at once
+     *
+     * @param partId the ID of a part in inventory
+     * @return the price of the part
+     */
+    private double partPrice(int partId) {
+        PartColumns columns = parts.getColumns();
+        return columns.getPrice(columns.find(partId));
+    }
+
+    /**
+     * Builds the reverse index the first time it is needed, reading the associated part IDs of snapshot rows that
+     * have not been loaded straight from the snapshot
+     */
+    private void buildPartUsage() {
+        if (partUsage.isBuilt()) {
+            return;
+        }
+        partUsage.build(() -> {
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.peek(i);
+                if (product != null) {
+                    partUsage.addProduct(product.getId(), product.getAssociatedPartIds());
+                } else {
+                    int row = products.rowAt(i);
+                    partUsage.addProduct(snapshot.productId(row), snapshot.productPartIds(row));
+                }
+            }
+        });
+    }
+
+    /**
+     * Keeps products read from the snapshot that were changed in place, which would otherwise be read from the
+     * snapshot again once nothing uses them
+     *
+     * @param changed the products changed in place
+     */
+    private void pin(Collection<Product> changed) {
+        if (snapshot != null) {
+            for (Product product : changed) {
+                products.pin(snapshot.findProductRow(product.getId()));
+            }
+        }
+    }
+
+    /**
+     * Journals a change to the store and writes a new snapshot once the journal has grown long enough. Only called
+     * under the write lock, so no stock is adjusted while the snapshot is written, and only once the change has been
+     * made and reported, so listeners hear of it even if it cannot be journaled.
+     *
+     * @param change the change to be written to the store
+     * @throws UncheckedIOException if the change cannot be journaled
+     */
+    private void persist(Consumer<InventoryStore> change) {
+        if (store != null) {
+            change.accept(store);
+            if (store.needsCompaction(parts.size() + products.size())) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Writes a new snapshot on the compaction thread once stock adjustments have grown the journal long enough, so
+     * the thread adjusting stock neither writes it nor waits for the write lock it needs
+     */
+    private void compactLater() {
+        if (store.needsCompaction(parts.size() + products.size()) && compactionScheduled.compareAndSet(false, true)) {
+            COMPACTOR.execute(this::compactNow);
+        }
+    }
+
+    /**
+     * Writes a new snapshot under the write lock if the journal is still long enough
+     */
+    private void compactNow() {
+        lock.writeLock().lock();
+        try {
+            compactionScheduled.set(false);
+            if (store.isOpen() && store.needsCompaction(parts.size() + products.size())) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a new snapshot, telling the compaction failure listeners if it cannot be written rather than failing
+     * the change that happened to grow the journal long enough
+     */
+    private void compact() {
+        try {
+            store.compact(parts, products);
+            compactionFailure = null;
+        } catch (RuntimeException e) {
+            compactionFailure = e;
+            for (Consumer<RuntimeException> listener : compactionFailureListeners) {
+                listener.accept(e);
+            }
+        }
+    }
+
+    /**
+     * Finds a part by ID without taking the inventory lock, so it can be used while lazily loading products
+     *
+     * @param partId the ID of the part
+     * @return the part, or null if there is none
+     */
+    private Part partById(int partId) {
+        return parts.findById(partId);
+    }
+
+    /**
+     * @param productId the ID of the product
+     * @return the product, or null if there is none
+     */
+    private Product productById(int productId) {
+        Product product = productIndex.get(productId);
+        if (product == null && snapshot != null) {
+            product = products.getByRow(snapshot.findProductRow(productId));
+        }
+        return product;
+    }
+
+    /**
+     * Finds the parts out of range the first time alerts are wanted
+     */
+    private void buildPartAlerts() {
+        if (partAlerts.isBuilt()) {
+            return;
+        }
+        partAlerts.build(() -> {
+            for (int i = 0; i < parts.size(); i++) {
+                partAlerts.check(parts.get(i));
+            }
+        });
+    }
+
+    /**
+     * Finds the products out of range the first time alerts are wanted, reading snapshot rows that have not been
+     * loaded straight from the snapshot
+     */
+    private void buildProductAlerts() {
+        if (productAlerts.isBuilt()) {
+            return;
+        }
+        productAlerts.build(() -> {
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.peek(i);
+                productAlerts.check(product != null ? product : snapshot.product(products.rowAt(i)));
+            }
+        });
+    }
+
+    /**
+     * Fills a stock index the first time it is queried. Stock adjustments only share the read lock and report their
+     * changes to the index once made, so the index is filled under the write lock, where every adjustment has either
+     * finished before the fill reads its stock or sees the index filled and reports its change.
+     *
+     * @param index the index
+     * @param build fills the index
+     */
+    private void buildStockRange(RangeIndex index, Runnable build) {
+        if (index.isBuilt()) {
+            return;
+        }
+        if (lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException("Stock is first queried by range while reading inventory");
+        }
+        lock.writeLock().lock();
+        try {
+            build.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Fills a part range index the first time it is queried
+     *
+     * @param index the index
+     * @param key gives the key of a part
+     */
+    private void buildPartRange(RangeIndex index, ToLongFunction<Part> key) {
+        if (index.isBuilt()) {
+            return;
+        }
+        index.build(() -> {
+            for (int i = 0; i < parts.size(); i++) {
+                Part part = parts.get(i);
+                index.add(part.getId(), key.applyAsLong(part));
+            }
+        });
+    }
+
+    /**
+     * Fills a product range index the first time it is queried, reading snapshot rows that have not been loaded
+     * straight from the snapshot
+     *
+     * @param index the index
+     * @param key gives the key of a product
+     * @param rowKey gives the key of a snapshot row
+     */
+    private void buildProductRange(RangeIndex index, ToLongFunction<Product> key, IntToLongFunction rowKey) {
+        if (index.isBuilt()) {
+            return;
+        }
+        index.build(() -> {
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.peek(i);
+                if (product != null) {
+                    index.add(product.getId(), key.applyAsLong(product));
+                } else {
+                    int row = products.rowAt(i);
+                    index.add(snapshot.productId(row), rowKey.applyAsLong(row));
+                }
+            }
+        });
+    }
+
+    /**
+     * @param part the part to be added to the price and stock indexes
+     */
+    private void indexRanges(Part part) {
+        partPrices.add(part.getId(), RangeIndex.key(part.getPrice()));
+        partStocks.add(part.getId(), RangeIndex.key(part.getStock()));
+    }
+
+    /**
+     * @param part the part to be removed from the price and stock indexes
+     */
+    private void unindexRanges(Part part) {
+        partPrices.remove(part.getId(), RangeIndex.key(part.getPrice()));
+        partStocks.remove(part.getId(), RangeIndex.key(part.getStock()));
+    }
+
+    /**
+     * Fills the filter bitmaps the first time a filter is run
+     */
+    private void buildPartFilters() {
+        if (partFilters.isBuilt()) {
+            return;
+        }
+        partFilters.build(() -> {
+            for (int i = 0; i < parts.size(); i++) {
+                partFilters.add(parts.get(i));
+            }
+        });
+    }
+
+    /**
+     * Builds the search indexes the first time they are needed, reading names of snapshot rows that have not been
+     * loaded straight from the snapshot
+     */
+    private void buildSearchIndexes() {
+        if (searchIndexesBuilt) {
+            return;
+        }
+        //readers sharing the read lock may get here together, so only the first builds the indexes
+        synchronized (partSearchIndex) {
+            if (!searchIndexesBuilt) {
+                addToSearchIndexes();
+                searchIndexesBuilt = true;
+            }
+        }
+    }
+
+    /**
+     * Adds every item to the search indexes
+     */
+    private void addToSearchIndexes() {
+        for (int i = 0; i < parts.size(); i++) {
+            Part part = parts.get(i);
+            partSearchIndex.add(part.getId(), part.getName(), String.valueOf(part.getId()));
+        }
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.peek(i);
+            if (product != null) {
+                productSearchIndex.add(product.getId(), product.getName(), String.valueOf(product.getId()));
+            } else {
+                int row = products.rowAt(i);
+                int id = snapshot.productId(row);
+                productSearchIndex.add(id, snapshot.productName(row), String.valueOf(id));
+            }
+        }
+    }
+
+    /**
+     * @param part the part to be added to the search index. Part columns index parts by ID themselves.
+     */
+    private void indexPart(Part part) {
+        if (searchIndexesBuilt) {
+            partSearchIndex.add(part.getId(), part.getName(), String.valueOf(part.getId()));
+        }
+    }
+
+    /**
+     * @param part the part to be removed from the search index
+     */
+    private void unindexPart(Part part) {
+        partSearchIndex.remove(part.getId());
+    }
+
+    /**
+     * @param product the product to be added to the ID, search, reverse, price and stock indexes
+     */
+    private void indexProduct(Product product) {
+        productIndex.put(product.getId(), product);
+        product.setUsage(partUsage);
+        costs.invalidate(product.getId());
+        buildable.invalidate(product.getId());
+        if (partUsage.isBuilt()) {
+            partUsage.addProduct(product.getId(), product.getAssociatedPartIds());
+        }
+        if (searchIndexesBuilt) {
+            productSearchIndex.add(product.getId(), product.getName(), String.valueOf(product.getId()));
+        }
+        productPrices.add(product.getId(), RangeIndex.key(product.getPrice()));
+        productStocks.add(product.getId(), RangeIndex.key(product.getStock()));
+    }
+
+    /**
+     * @param product the product to be removed from the ID, search, reverse, price and stock indexes
+     */
+    private void unindexProduct(Product product) {
+        productIndex.remove(product.getId());
+        product.setUsage(null);
+        costs.invalidate(product.getId());
+        buildable.invalidate(product.getId());
+        if (partUsage.isBuilt()) {
+            partUsage.removeProduct(product.getId(), product.getAssociatedPartIds());
+        }
+        productSearchIndex.remove(product.getId());
+        productPrices.remove(product.getId(), RangeIndex.key(product.getPrice()));
+        productStocks.remove(product.getId(), RangeIndex.key(product.getStock()));
+    }
+}
@@ -0,0 +1,538 @@
+package sample;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Imports and exports parts, products and the parts associated with products as comma or tab separated text
+ *
+ * Every file starts with a header naming its columns, which tells an import what the file holds:
+ * <pre>
+ * type,id,name,price,stock,min,max,source      parts, where type is InHouse or Outsourced and source is the
+ *                                              machine ID or the company name
+ * id,name,price,stock,min,max                  products
+ * productId,partId                             parts associated with products
+ * </pre>
+ * Imports read the file a record at a time and commit it to inventory in batches, each added with one change to
+ * the inventory lists and one write to the journal. The next batch is only read once the last one is committed, so
+ * an import holds at most one batch in memory however large the file is. Parts and products with an empty ID are
+ * given new IDs from blocks reserved from the ID allocator. Rows whose ID is already in inventory, and associations
+ * naming a product or part that does not exist, are skipped. A malformed row stops the import; the batches before it
+ * stay in inventory.
+ *
+ * @author Long Tran
+ */
+public class InventoryCsv {
+    /**
+     * The number of rows committed to inventory at a time
+     */
+    public static final int BATCH_SIZE = 10_000;
+
+    private static final String[] PART_HEADER = {"type", "id", "name", "price", "stock", "min", "max", "source"};
+    private static final String[] PRODUCT_HEADER = {"id", "name", "price", "stock", "min", "max"};
+    private static final String[] LINK_HEADER = {"productId", "partId"};
+
+    /**
+     * The number of IDs reserved at a time for rows with an empty ID
+     */
+    private static final int ID_BLOCK = IdAllocator.LEASE;
+
+    private static final String IN_HOUSE = "InHouse";
+    private static final String OUTSOURCED = "Outsourced";
+
+    /**
+     * The number of rows imported and skipped by an import
+     */
+    public static class Result {
+        private final int imported;
+        private final int skipped;
+
+        private Result(int imported, int skipped) {
+            this.imported = imported;
+            this.skipped = skipped;
+        }
+
+        /**
+         * @return the number of rows added to inventory
+         */
+        public int getImported() {
+            return imported;
+        }
+
+        /**
+         * @return the number of rows skipped because their ID was taken or what they named did not exist
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+    }
+
+    /**
+     * The IDs reserved for the rows of an import that have no ID
+     */
+    private static class IdBlock {
+        private final IntUnaryOperator reserve;
+        private int next;
+        private int end;
+
+        /**
+         * @param reserve the function reserving a given number of IDs and returning the first
+         */
+        private IdBlock(IntUnaryOperator reserve) {
+            this.reserve = reserve;
+        }
+
+        /**
+         * @param taken the IDs already used by rows of the batch being read
+         * @return the next reserved ID not used by the batch
+         */
+        private int next(IntSet taken) {
+            while (true) {
+                if (next == end) {
+                    next = reserve.applyAsInt(ID_BLOCK);
+                    end = next + ID_BLOCK;
+                }
+                int id = next++;
+                if (!taken.contains(id)) {
+                    return id;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param file a file of delimited text
+     * @return a tab for .tsv and .tab files, otherwise a comma
+     */
+    public static char delimiterFor(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".tsv") || name.endsWith(".tab") ? '\t' : ',';
+    }
+
+    /**
+     * Imports a file of parts, products or associated parts, telling which from its header
+     *
+     * @param file the file to be imported
+     * @param committer the executor committing each batch to inventory, such as Platform::runLater when inventory
+     *                  is shown in the user interface
+     * @return the number of rows imported and skipped
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static Result importFile(Path file, Executor committer) throws IOException {
+        return importFile(Inventory.getCore(), file, committer);
+    }
+
+    /**
+     * Imports a file of parts, products or associated parts into any inventory, telling which from its header
+     *
+     * @param inventory the inventory the rows are added to
+     * @param file the file to be imported
+     * @param committer the executor committing each batch to inventory
+     * @return the number of rows imported and skipped
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static Result importFile(InventoryCore inventory, Path file, Executor committer) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(inventory, in, delimiterFor(file), committer);
+        }
+    }
+
+    /**
+     * @param in the text to be imported
+     * @param delimiter the character between fields
+     * @param committer the executor committing each batch to inventory
+     * @return the number of rows imported and skipped
+     * @throws IOException if the text cannot be read or is malformed
+     */
+    public static Result importFrom(Reader in, char delimiter, Executor committer) throws IOException {
+        return importFrom(Inventory.getCore(), in, delimiter, committer);
+    }
+
+    /**
+     * @param inventory the inventory the rows are added to
+     * @param in the text to be imported
+     * @param delimiter the character between fields
+     * @param committer the executor committing each batch to inventory
+     * @return the number of rows imported and skipped
+     * @throws IOException if the text cannot be read or is malformed
+     */
+    public static Result importFrom(InventoryCore inventory, Reader in, char delimiter, Executor committer)
+            throws IOException {
+        CsvReader csv = new CsvReader(in, delimiter);
+        String[] header = csv.next();
+        if (header == null) {
+            return new Result(0, 0);
+        }
+        if (header.length > 0 && header[0].startsWith("\uFEFF")) {
+            header[0] = header[0].substring(1);
+        }
+        if (matches(header, PART_HEADER)) {
+            return importParts(inventory, csv, committer);
+        } else if (matches(header, PRODUCT_HEADER)) {
+            return importProducts(inventory, csv, committer);
+        } else if (matches(header, LINK_HEADER)) {
+            return importLinks(inventory, csv, committer);
+        }
+        throw new IOException("Line 1: unknown header " + String.join(String.valueOf(delimiter), header));
+    }
+
+    /**
+     * @param file the file the parts are written to
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportParts(Path file) throws IOException {
+        exportParts(Inventory.getCore(), file);
+    }
+
+    /**
+     * @param inventory the inventory to be exported
+     * @param file the file the parts are written to
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportParts(InventoryCore inventory, Path file) throws IOException {
+        char delimiter = delimiterFor(file);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeRow(out, delimiter, PART_HEADER);
+            inventory.forEachPart(part -> {
+                boolean inHouse = part instanceof InHouse;
+                writeRow(out, delimiter, inHouse ? IN_HOUSE : OUTSOURCED, String.valueOf(part.getId()),
+                        part.getName(), String.valueOf(part.getPrice()), String.valueOf(part.getStock()),
+                        String.valueOf(part.getMin()), String.valueOf(part.getMax()),
+                        inHouse ? String.valueOf(((InHouse) part).getMachineId())
+                                : ((Outsourced) part).getCompanyName());
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param file the file the products are written to
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportProducts(Path file) throws IOException {
+        exportProducts(Inventory.getCore(), file);
+    }
+
+    /**
+     * @param inventory the inventory to be exported
+     * @param file the file the products are written to
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportProducts(InventoryCore inventory, Path file) throws IOException {
+        char delimiter = delimiterFor(file);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeRow(out, delimiter, PRODUCT_HEADER);
+            inventory.forEachProduct((product, partIds) ->
+                    writeRow(out, delimiter, String.valueOf(product.getId()), product.getName(),
+                            String.valueOf(product.getPrice()), String.valueOf(product.getStock()),
+                            String.valueOf(product.getMin()), String.valueOf(product.getMax())));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param file the file the parts associated with every product are written to
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportLinks(Path file) throws IOException {
+        exportLinks(Inventory.getCore(), file);
+    }
+
+    /**
+     * @param inventory the inventory to be exported
+     * @param file the file the parts associated with every product are written to
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportLinks(InventoryCore inventory, Path file) throws IOException {
+        char delimiter = delimiterFor(file);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeRow(out, delimiter, LINK_HEADER);
+            inventory.forEachProduct((product, partIds) -> {
+                String productId = String.valueOf(product.getId());
+                for (int partId : partIds) {
+                    writeRow(out, delimiter, productId, String.valueOf(partId));
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param inventory the inventory the rows are added to
+     * @param csv the records following the header
+     * @param committer the executor committing each batch to inventory
+     * @return the number of parts imported and skipped
+     * @throws IOException if the text cannot be read or is malformed
+     */
+    private static Result importParts(InventoryCore inventory, CsvReader csv, Executor committer) throws IOException {
+        List<Part> batch = new ArrayList<>();
+        IntSet batchIds = new IntSet();
+        IdBlock newIds = new IdBlock(inventory::reservePartIds);
+        int imported = 0;
+        int skipped = 0;
+        String[] row;
+        while ((row = csv.next()) != null) {
+            if (isBlank(row)) {
+                continue;
+            }
+            Part part = parsePart(csv, row);
+            if (row[1].trim().isEmpty()) {
+                part.setId(newIds.next(batchIds));
+            } else if (batchIds.contains(part.getId()) || inventory.lookupPart(part.getId()) != null) {
+                skipped++;
+                continue;
+            }
+            batch.add(part);
+            batchIds.add(part.getId());
+            if (batch.size() == BATCH_SIZE) {
+                commit(batch, inventory::addParts, committer);
+                imported += batch.size();
+                batch = new ArrayList<>();
+                batchIds.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            commit(batch, inventory::addParts, committer);
+            imported += batch.size();
+        }
+        return new Result(imported, skipped);
+    }
+
+    /**
+     * @param inventory the inventory the rows are added to
+     * @param csv the records following the header
+     * @param committer the executor committing each batch to inventory
+     * @return the number of products imported and skipped
+     * @throws IOException if the text cannot be read or is malformed
+     */
+    private static Result importProducts(InventoryCore inventory, CsvReader csv, Executor committer) throws IOException {
+        List<Product> batch = new ArrayList<>();
+        IntSet batchIds = new IntSet();
+        IdBlock newIds = new IdBlock(inventory::reserveProductIds);
+        int imported = 0;
+        int skipped = 0;
+        String[] row;
+        while ((row = csv.next()) != null) {
+            if (isBlank(row)) {
+                continue;
+            }
+            checkFieldCount(csv, row, PRODUCT_HEADER.length);
+            boolean newId = row[0].trim().isEmpty();
+            Product product = new Product(newId ? newIds.next(batchIds) : parseInt(csv, row[0]), row[1],
+                    parseDouble(csv, row[2]), parseInt(csv, row[3]), parseInt(csv, row[4]), parseInt(csv, row[5]));
+            if (!newId && (batchIds.contains(product.getId()) || inventory.lookupProduct(product.getId()) != null)) {
+                skipped++;
+                continue;
+            }
+            batch.add(product);
+            batchIds.add(product.getId());
+            if (batch.size() == BATCH_SIZE) {
+                commit(batch, inventory::addProducts, committer);
+                imported += batch.size();
+                batch = new ArrayList<>();
+                batchIds.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            commit(batch, inventory::addProducts, committer);
+            imported += batch.size();
+        }
+        return new Result(imported, skipped);
+    }
+
+    /**
+     * @param inventory the inventory the rows are added to
+     * @param csv the records following the header
+     * @param committer the executor committing each batch to inventory
+     * @return the number of associations imported and skipped
+     * @throws IOException if the text cannot be read or is malformed
+     */
+    private static Result importLinks(InventoryCore inventory, CsvReader csv, Executor committer) throws IOException {
+        Map<Product, List<Part>> batch = new LinkedHashMap<>();
+        int batchSize = 0;
+        int imported = 0;
+        int skipped = 0;
+        String[] row;
+        while ((row = csv.next()) != null) {
+            if (isBlank(row)) {
+                continue;
+            }
+            checkFieldCount(csv, row, LINK_HEADER.length);
+            Product product = inventory.lookupProduct(parseInt(csv, row[0]));
+            Part part = inventory.lookupPart(parseInt(csv, row[1]));
+            if (product == null || part == null) {
+                skipped++;
+                continue;
+            }
+            batch.computeIfAbsent(product, p -> new ArrayList<>()).add(part);
+            if (++batchSize == BATCH_SIZE) {
+                commit(batch, inventory::addAssociatedParts, committer);
+                imported += batchSize;
+                batch = new LinkedHashMap<>();
+                batchSize = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            commit(batch, inventory::addAssociatedParts, committer);
+            imported += batchSize;
+        }
+        return new Result(imported, skipped);
+    }
+
+    /**
+     * @param csv the reader of the row, used to report its line
+     * @param row the fields of a part row
+     * @return the part described by the row, with ID 0 if its ID is empty
+     * @throws IOException if the row is malformed
+     */
+    private static Part parsePart(CsvReader csv, String[] row) throws IOException {
+        checkFieldCount(csv, row, PART_HEADER.length);
+        int id = row[1].trim().isEmpty() ? 0 : parseInt(csv, row[1]);
+        double price = parseDouble(csv, row[3]);
+        int stock = parseInt(csv, row[4]);
+        int min = parseInt(csv, row[5]);
+        int max = parseInt(csv, row[6]);
+        if (row[0].equalsIgnoreCase(IN_HOUSE)) {
+            return new InHouse(id, row[2], price, stock, min, max, parseInt(csv, row[7]));
+        } else if (row[0].equalsIgnoreCase(OUTSOURCED)) {
+            return new Outsourced(id, row[2], price, stock, min, max, row[7]);
+        }
+        throw new IOException("Line " + csv.getLine() + ": unknown part type " + row[0]);
+    }
+
+    /**
+     * Hands a batch to the committer and waits for it to be committed, so the next batch is not read before then
+     *
+     * @param batch the batch of rows, which is not committed if it is empty
+     * @param commit the inventory method committing the batch
+     * @param committer the executor running the commit
+     * @param <B> the type of batch
+     * @throws IOException if the import was interrupted while waiting
+     */
+    private static <B> void commit(B batch, Consumer<B> commit, Executor committer) throws IOException {
+        FutureTask<Void> task = new FutureTask<>(() -> commit.accept(batch), null);
+        committer.execute(task);
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * @param out the output the row is written to
+     * @param delimiter the character between fields
+     * @param fields the fields of the row
+     * @throws UncheckedIOException if the row cannot be written, since rows are written while visiting inventory
+     */
+    private static void writeRow(Writer out, char delimiter, String... fields) {
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    out.write(delimiter);
+                }
+                String field = fields[i] == null ? "" : fields[i];
+                if (field.indexOf(delimiter) >= 0 || field.indexOf('"') >= 0
+                        || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                    out.write('"');
+                    out.write(field.replace("\"", "\"\""));
+                    out.write('"');
+                } else {
+                    out.write(field);
+                }
+            }
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param row the fields of a row
+     * @param header the expected header
+     * @return if the row is the header, ignoring case
+     */
+    private static boolean matches(String[] row, String[] header) {
+        if (row.length != header.length) {
+            return false;
+        }
+        for (int i = 0; i < row.length; i++) {
+            if (!row[i].trim().equalsIgnoreCase(header[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param row the fields of a row
+     * @return if the row is an empty line
+     */
+    private static boolean isBlank(String[] row) {
+        return row.length == 1 && row[0].trim().isEmpty();
+    }
+
+    /**
+     * @param csv the reader of the row, used to report its line
+     * @param row the fields of a row
+     * @param count the number of fields expected
+     * @throws IOException if the row has a different number of fields
+     */
+    private static void checkFieldCount(CsvReader csv, String[] row, int count) throws IOException {
+        if (row.length != count) {
+            throw new IOException("Line " + csv.getLine() + ": expected " + count + " fields but found " + row.length);
+        }
+    }
+
+    /**
+     * @param csv the reader of the field, used to report its line
+     * @param field the text of a whole number
+     * @return the number
+     * @throws IOException if the field is not a whole number
+     */
+    private static int parseInt(CsvReader csv, String field) throws IOException {
+        try {
+            return Integer.parseInt(field.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Line " + csv.getLine() + ": " + field + " is not a whole number");
+        }
+    }
+
+    /**
+     * @param csv the reader of the field, used to report its line
+     * @param field the text of a number
+     * @return the number
+     * @throws IOException if the field is not a number
+     */
+    private static double parseDouble(CsvReader csv, String field) throws IOException {
+        try {
+            return Double.parseDouble(field.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Line " + csv.getLine() + ": " + field + " is not a number");
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package sample;
+
+/**
+ * Listens for changes to the parts or the products of an {@link InventoryCore}
+ *
+ * A listener is called once for every batch of changes, on the thread that made the changes and while it still
+ * holds the inventory lock, so the list it views does not change again until the listener returns. Listeners must
+ * not change inventory themselves; one updating a user interface from another thread should hand the change over
+ * to the user interface thread, as {@link ObservableInventoryList} does.
+ *
+ * @param <T> the type of item listened to
+ * @author Long Tran
+ */
+public interface InventoryListener<T> {
+    /**
+     * @param change the changes made to the list of items
+     */
+    void onChanged(InventoryChange<T> change);
+}
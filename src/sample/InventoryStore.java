@@ -0,0 +1,1118 @@
+package sample;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps inventory on disk as a snapshot plus an append-only journal of the changes made since the snapshot
+ *
+ * Every change is appended to the journal as one record holding a length, a checksum and a sequence number, so a
+ * record cut short by a crash is detected and dropped on the next start. Once the journal has grown long enough
+ * the whole inventory is written to a new snapshot and the journal is emptied, which keeps startup time bounded by
+ * the size of inventory rather than by its history. Snapshots are named after the sequence number of the last
+ * change they contain, so records left in the journal by a crash during compaction are skipped rather than applied
+ * twice.
+ *
+ * Snapshots are memory-mapped {@link SnapshotFile}s. On startup the journal is replayed into a small overlay of
+ * added, replaced and deleted items, which is laid over the snapshot rows without loading them.
+ *
+ * Stock adjustments are journaled as the amounts added rather than as whole items. Threads adjusting stock at the
+ * same time queue their adjustments, and whichever finds no batch being written writes every adjustment queued so
+ * far as one record with a single sync while the others wait for it, so a burst of adjustments from many threads
+ * costs a few syncs rather than one each. Amounts added give the same stock in any order, so a batch may hold
+ * adjustments in another order than they were made.
+ *
+ * @author Long Tran
+ */
+public class InventoryStore {
+    /**
+     * The smallest number of journal records after which a new snapshot is written
+     */
+    public static final int COMPACT_EVERY = 1000;
+
+    private static final byte ADD_PART = 1;
+    private static final byte UPDATE_PART = 2;
+    private static final byte DELETE_PART = 3;
+    private static final byte ADD_PRODUCT = 4;
+    private static final byte UPDATE_PRODUCT = 5;
+    private static final byte DELETE_PRODUCT = 6;
+    private static final byte ADJUST_STOCK = 7;
+
+    private static final byte IN_HOUSE = 0;
+    private static final byte OUTSOURCED = 1;
+
+    /**
+     * The directory holding the store files
+     */
+    private final Path directory;
+
+    /**
+     * The snapshot that inventory was loaded from, or null if there was none
+     */
+    private SnapshotFile snapshot;
+
+    /**
+     * The file of the snapshot that inventory was loaded from
+     */
+    private Path snapshotFile;
+
+    /**
+     * The open journal, positioned at its end
+     */
+    private final FileChannel journal;
+
+    /**
+     * The sequence number of the last change written
+     */
+    private long sequence;
+
+    /**
+     * The number of records in the journal
+     */
+    private int journalRecords;
+
+    /**
+     * The parts added by the journal that are not in the snapshot, in inventory order
+     */
+    private final AddedItems<Part> addedParts = new AddedItems<>();
+
+    /**
+     * The snapshot parts changed by the journal by their snapshot ID, mapped to null if they were deleted
+     */
+    private final HashMap<Integer, Part> replacedParts = new HashMap<>();
+
+    /**
+     * The snapshot ID of every replaced part, by its current ID
+     */
+    private final HashMap<Integer, Integer> partOrigins = new HashMap<>();
+
+    /**
+     * The products added by the journal that are not in the snapshot, in inventory order
+     */
+    private final AddedItems<Product> addedProducts = new AddedItems<>();
+
+    /**
+     * The snapshot products changed by the journal by their snapshot ID, mapped to null if they were deleted
+     */
+    private final HashMap<Integer, Product> replacedProducts = new HashMap<>();
+
+    /**
+     * The snapshot ID of every replaced product, by its current ID
+     */
+    private final HashMap<Integer, Integer> productOrigins = new HashMap<>();
+
+    /**
+     * The IDs of the associated parts of every product read from the journal
+     */
+    private final HashMap<Integer, int[]> associations = new HashMap<>();
+
+    /**
+     * The saved limits below which every part and product ID has been issued
+     */
+    private final int[] idLimits = new int[2];
+
+    /**
+     * Guards the stock adjustments waiting to be journaled and the hand-off of writing them
+     */
+    private final Object adjustmentLock = new Object();
+
+    /**
+     * The stock adjustments waiting to be journaled
+     */
+    private StockAdjustments queued = new StockAdjustments();
+
+    /**
+     * An empty batch put in place of the queued adjustments when a thread takes them to be written, so batches are
+     * reused rather than created for every write
+     */
+    private StockAdjustments spare = new StockAdjustments();
+
+    /**
+     * The number of stock adjustments queued so far
+     */
+    private long adjustmentsQueued;
+
+    /**
+     * The number of stock adjustments journaled so far, which are the first adjustments queued
+     */
+    private long adjustmentsJournaled;
+
+    /**
+     * Whether a thread is writing a batch of stock adjustments
+     */
+    private boolean writingAdjustments;
+
+    /**
+     * Opens the store in a directory, maps the newest snapshot found there and replays the journal
+     *
+     * @param directory the directory holding the store files, created if missing
+     * @throws IOException if the files cannot be read or opened
+     */
+    public InventoryStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        openNewestSnapshot();
+        long snapshotSequence = snapshot == null ? 0 : snapshot.getSequence();
+        sequence = snapshotSequence;
+        journal = FileChannel.open(directory.resolve("journal.dat"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end = replayJournal(snapshotSequence);
+        //drops a record cut short by a crash so new records follow the last complete one
+        journal.truncate(end);
+        journal.position(end);
+        Path ids = directory.resolve("ids.dat");
+        if (Files.exists(ids)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(ids))) {
+                idLimits[0] = in.readInt();
+                idLimits[1] = in.readInt();
+            } catch (EOFException e) {
+                //an unfinished file is never moved into place, so this is left from before IDs were saved
+            }
+        }
+    }
+
+    /**
+     * @return if the store holds no inventory yet
+     */
+    public boolean isEmpty() {
+        return snapshot == null && sequence == 0;
+    }
+
+    /**
+     * @return the snapshot that inventory was loaded from, or null if there was none
+     */
+    public SnapshotFile getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the saved limit below which every part ID has been issued, or 0 if none was saved
+     */
+    public synchronized int getPartIdLimit() {
+        return idLimits[0];
+    }
+
+    /**
+     * @return the saved limit below which every product ID has been issued, or 0 if none was saved
+     */
+    public synchronized int getProductIdLimit() {
+        return idLimits[1];
+    }
+
+    /**
+     * @param limit the new limit below which every part ID will be issued
+     */
+    public synchronized void savePartIdLimit(int limit) {
+        idLimits[0] = limit;
+        saveIdLimits();
+    }
+
+    /**
+     * @param limit the new limit below which every product ID will be issued
+     */
+    public synchronized void saveProductIdLimit(int limit) {
+        idLimits[1] = limit;
+        saveIdLimits();
+    }
+
+    /**
+     * @return every stored part in columns whose first slots are the snapshot rows, so no part is created
+     */
+    public PartList createPartList() {
+        SnapshotFile rows = snapshot;
+        PartColumns columns = new PartColumns(rows);
+        int rowCount = rows == null ? 0 : rows.getPartCount();
+        int[] slots = new int[rowCount + addedParts.size()];
+        int size = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (replacedParts.isEmpty() || !replacedParts.containsKey(rows.partId(row))) {
+                slots[size++] = row;
+                continue;
+            }
+            columns.release(row);
+            Part replacement = replacedParts.get(rows.partId(row));
+            if (replacement != null) {
+                slots[size++] = columns.add(replacement);
+            }
+        }
+        for (Part part : addedParts.values()) {
+            slots[size++] = columns.add(part);
+        }
+        return new PartList(columns, Arrays.copyOf(slots, size));
+    }
+
+    /**
+     * @param partLookup the function finding a part by ID, used to link products to their associated parts
+     * @param loaded given every product created from a snapshot row once it is linked to its associated parts
+     * @return every stored product, with snapshot rows created only when they are read
+     */
+    public LazyRowList<Product> createProductList(IntFunction<Part> partLookup, Consumer<Product> loaded) {
+        SnapshotFile rows = snapshot;
+        LazyRowList<Product> products = new LazyRowList<>(rows == null ? 0 : rows.getProductCount(), row -> {
+            Product product = rows.product(row);
+            link(product, rows.productPartIds(row), partLookup);
+            loaded.accept(product);
+            return product;
+        });
+        for (Product product : addedProducts.values()) {
+            link(product, associations.get(product.getId()), partLookup);
+        }
+        for (Product product : replacedProducts.values()) {
+            if (product != null) {
+                link(product, associations.get(product.getId()), partLookup);
+            }
+        }
+        if (!replacedProducts.isEmpty()) {
+            products.overlay(row -> isDeleted(replacedProducts, rows.productId(row)),
+                    row -> replacedProducts.get(rows.productId(row)));
+        }
+        products.addAll(addedProducts.values());
+        return products;
+    }
+
+    /**
+     * @param part the part added to inventory
+     */
+    public void partAdded(Part part) {
+        append(out -> {
+            out.writeByte(ADD_PART);
+            writePart(out, part);
+        });
+    }
+
+    /**
+     * @param parts the parts added to inventory together, journaled with a single write to disk
+     */
+    public void partsAdded(Collection<? extends Part> parts) {
+        List<RecordWriter> records = new ArrayList<>(parts.size());
+        for (Part part : parts) {
+            records.add(out -> {
+                out.writeByte(ADD_PART);
+                writePart(out, part);
+            });
+        }
+        appendAll(records);
+    }
+
+    /**
+     * @param oldId the ID of the part that was replaced
+     * @param part the part that replaced it
+     */
+    public void partUpdated(int oldId, Part part) {
+        append(out -> {
+            out.writeByte(UPDATE_PART);
+            out.writeInt(oldId);
+            writePart(out, part);
+        });
+    }
+
+    /**
+     * @param oldIds the IDs of the parts that were replaced
+     * @param parts the parts that replaced them, in the same order, journaled with a single write to disk
+     */
+    public void partsUpdated(int[] oldIds, List<? extends Part> parts) {
+        List<RecordWriter> records = new ArrayList<>(parts.size());
+        for (int i = 0; i < oldIds.length; i++) {
+            int oldId = oldIds[i];
+            Part part = parts.get(i);
+            records.add(out -> {
+                out.writeByte(UPDATE_PART);
+                out.writeInt(oldId);
+                writePart(out, part);
+            });
+        }
+        appendAll(records);
+    }
+
+    /**
+     * @param id the ID of the part deleted from inventory
+     */
+    public void partDeleted(int id) {
+        append(out -> {
+            out.writeByte(DELETE_PART);
+            out.writeInt(id);
+        });
+    }
+
+    /**
+     * @param ids the IDs of the parts deleted from inventory together, journaled with a single write to disk
+     */
+    public void partsDeleted(int[] ids) {
+        List<RecordWriter> records = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            records.add(out -> {
+                out.writeByte(DELETE_PART);
+                out.writeInt(id);
+            });
+        }
+        appendAll(records);
+    }
+
+    /**
+     * @param product the product added to inventory
+     */
+    public void productAdded(Product product) {
+        append(out -> {
+            out.writeByte(ADD_PRODUCT);
+            writeProduct(out, product);
+        });
+    }
+
+    /**
+     * @param products the products added to inventory together, journaled with a single write to disk
+     */
+    public void productsAdded(Collection<? extends Product> products) {
+        List<RecordWriter> records = new ArrayList<>(products.size());
+        for (Product product : products) {
+            records.add(out -> {
+                out.writeByte(ADD_PRODUCT);
+                writeProduct(out, product);
+            });
+        }
+        appendAll(records);
+    }
+
+    /**
+     * @param oldId the ID of the product that was replaced
+     * @param product the product that replaced it
+     */
+    public void productUpdated(int oldId, Product product) {
+        append(out -> {
+            out.writeByte(UPDATE_PRODUCT);
+            out.writeInt(oldId);
+            writeProduct(out, product);
+        });
+    }
+
+    /**
+     * @param oldIds the IDs of the products that were replaced
+     * @param products the products that replaced them, in the same order, journaled with a single write to disk
+     */
+    public void productsUpdated(int[] oldIds, List<? extends Product> products) {
+        List<RecordWriter> records = new ArrayList<>(products.size());
+        for (int i = 0; i < oldIds.length; i++) {
+            int oldId = oldIds[i];
+            Product product = products.get(i);
+            records.add(out -> {
+                out.writeByte(UPDATE_PRODUCT);
+                out.writeInt(oldId);
+                writeProduct(out, product);
+            });
+        }
+        appendAll(records);
+    }
+
+    /**
+     * @param products the products changed in place together, such as by linking parts to them, journaled with a
+     *                 single write to disk
+     */
+    public void productsChanged(Collection<Product> products) {
+        List<Product> changed = new ArrayList<>(products);
+        int[] ids = new int[changed.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = changed.get(i).getId();
+        }
+        productsUpdated(ids, changed);
+    }
+
+    /**
+     * @param id the ID of the product deleted from inventory
+     */
+    public void productDeleted(int id) {
+        append(out -> {
+            out.writeByte(DELETE_PRODUCT);
+            out.writeInt(id);
+        });
+    }
+
+    /**
+     * @param ids the IDs of the products deleted from inventory together, journaled with a single write to disk
+     */
+    public void productsDeleted(int[] ids) {
+        List<RecordWriter> records = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            records.add(out -> {
+                out.writeByte(DELETE_PRODUCT);
+                out.writeInt(id);
+            });
+        }
+        appendAll(records);
+    }
+
+    /**
+     * Journals an adjustment of a part's stock, returning once it is on disk
+     *
+     * @param id the ID of the part
+     * @param delta the amount added to its stock, or taken away if negative
+     */
+    public void partStockAdjusted(int id, int delta) {
+        stockAdjusted(false, id, delta);
+    }
+
+    /**
+     * Journals an adjustment of a product's stock, returning once it is on disk
+     *
+     * @param id the ID of the product
+     * @param delta the amount added to its stock, or taken away if negative
+     */
+    public void productStockAdjusted(int id, int delta) {
+        stockAdjusted(true, id, delta);
+    }
+
+    /**
+     * Replaying the journal should never take long compared to loading a snapshot, so the journal may grow to a
+     * tenth of inventory before it is compacted
+     *
+     * @param itemCount the number of parts and products in inventory
+     * @return if enough records have built up in the journal that a new snapshot should be written
+     */
+    public synchronized boolean needsCompaction(int itemCount) {
+        return journalRecords >= Math.max(COMPACT_EVERY, itemCount / 10);
+    }
+
+    /**
+     * @return if the journal is still open
+     */
+    public boolean isOpen() {
+        return journal.isOpen();
+    }
+
+    /**
+     * Writes the whole inventory to a new snapshot and empties the journal. The snapshot inventory was loaded from
+     * stays mapped, since lazily loaded lists still read from it. No stock may be adjusted meanwhile, or an
+     * adjustment could be both in the snapshot and journaled after it.
+     *
+     * @param parts every part in inventory
+     * @param products every product in inventory
+     */
+    public synchronized void compact(List<Part> parts, List<Product> products) {
+        try {
+            Path temp = directory.resolve("snapshot.tmp");
+            Path file = directory.resolve("snapshot-" + sequence + ".dat");
+            SnapshotFile.write(temp, sequence, parts, products, snapshot);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journal.truncate(0);
+            journal.position(0);
+            journal.force(true);
+            journalRecords = 0;
+            deleteSnapshotsExcept(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the journal
+     */
+    public void close() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The body of a journal record
+     */
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Appends one record to the journal and forces it to disk
+     *
+     * @param body the writer of the record body
+     */
+    private void append(RecordWriter body) {
+        appendAll(Collections.singletonList(body));
+    }
+
+    /**
+     * Queues a stock adjustment and returns once it is on disk, writing every adjustment queued so far if no other
+     * thread is writing a batch
+     *
+     * @param product if a product's stock was adjusted rather than a part's
+     * @param id the ID of the item
+     * @param delta the amount added to its stock, or taken away if negative
+     */
+    private void stockAdjusted(boolean product, int id, int delta) {
+        long number;
+        synchronized (adjustmentLock) {
+            queued.add(product, id, delta);
+            number = ++adjustmentsQueued;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                StockAdjustments batch;
+                long last;
+                synchronized (adjustmentLock) {
+                    while (writingAdjustments && adjustmentsJournaled < number) {
+                        try {
+                            adjustmentLock.wait();
+                        } catch (InterruptedException e) {
+                            //the adjustment is made, so it is waited for whatever happens
+                            interrupted = true;
+                        }
+                    }
+                    if (adjustmentsJournaled >= number) {
+                        return;
+                    }
+                    writingAdjustments = true;
+                    batch = queued;
+                    queued = spare;
+                    spare = null;
+                    last = adjustmentsQueued;
+                }
+                boolean written = false;
+                try {
+                    appendAll(Collections.singletonList(out -> writeAdjustments(out, batch)));
+                    written = true;
+                } finally {
+                    synchronized (adjustmentLock) {
+                        if (written) {
+                            adjustmentsJournaled = last;
+                            batch.clear();
+                            spare = batch;
+                        } else {
+                            //puts the batch back ahead of the adjustments queued meanwhile for the next writer
+                            batch.addAll(queued);
+                            queued.clear();
+                            spare = queued;
+                            queued = batch;
+                        }
+                        writingAdjustments = false;
+                        adjustmentLock.notifyAll();
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @param out the stream to write to
+     * @param batch the stock adjustments to be written as one record
+     * @throws IOException if the adjustments cannot be written
+     */
+    private static void writeAdjustments(DataOutputStream out, StockAdjustments batch) throws IOException {
+        out.writeByte(ADJUST_STOCK);
+        out.writeInt(batch.size);
+        for (int i = 0; i < batch.size; i++) {
+            out.writeBoolean(batch.products[i]);
+            out.writeInt(batch.ids[i]);
+            out.writeInt(batch.deltas[i]);
+        }
+    }
+
+    /**
+     * Appends records to the journal and forces them to disk once, so a batch of changes costs a single sync
+     *
+     * @param bodies the writers of the record bodies
+     */
+    private synchronized void appendAll(List<RecordWriter> bodies) {
+        try {
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream recordOut = new DataOutputStream(records);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            CRC32 crc = new CRC32();
+            long next = sequence;
+            for (RecordWriter body : bodies) {
+                bytes.reset();
+                out.writeLong(++next);
+                body.write(out);
+                out.flush();
+                byte[] payload = bytes.toByteArray();
+                crc.reset();
+                crc.update(payload);
+                recordOut.writeInt(payload.length);
+                recordOut.writeLong(crc.getValue());
+                recordOut.write(payload);
+            }
+            recordOut.flush();
+            ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+            journal.force(false);
+            sequence = next;
+            journalRecords += bodies.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the ID limits to a new file that replaces the old one only once it is on disk
+     */
+    private void saveIdLimits() {
+        try {
+            Path temp = directory.resolve("ids.tmp");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer limits = ByteBuffer.allocate(8);
+                limits.putInt(idLimits[0]).putInt(idLimits[1]).flip();
+                while (limits.hasRemaining()) {
+                    out.write(limits);
+                }
+                out.force(true);
+            }
+            Files.move(temp, directory.resolve("ids.dat"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Maps the snapshot with the highest sequence number
+     *
+     * @throws IOException if the directory cannot be listed, the snapshot cannot be opened or older snapshots cannot
+     * be deleted
+     */
+    private void openNewestSnapshot() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> found = Files.newDirectoryStream(directory, "snapshot-*.dat")) {
+            found.forEach(files::add);
+        }
+        files.sort(Comparator.comparingLong(InventoryStore::snapshotSequence).reversed());
+        if (!files.isEmpty()) {
+            //the journal only holds changes made after the newest snapshot, so an older one cannot stand in for it
+            Path file = files.get(0);
+            snapshot = new SnapshotFile(file);
+            snapshotFile = file;
+            deleteSnapshotsExcept(file);
+        }
+    }
+
+    /**
+     * @param file a snapshot file
+     * @return the sequence number in the file name, or -1 if the name has none
+     */
+    private static long snapshotSequence(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring("snapshot-".length(), name.length() - ".dat".length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Deletes older snapshots, leaving the one still mapped for a later start if it cannot be deleted yet
+     *
+     * @param keep the snapshot to be kept
+     * @throws IOException if the directory cannot be listed or a snapshot cannot be deleted
+     */
+    private void deleteSnapshotsExcept(Path keep) throws IOException {
+        try (DirectoryStream<Path> found = Files.newDirectoryStream(directory, "snapshot-*.dat")) {
+            for (Path file : found) {
+                if (!file.equals(keep) && !file.equals(snapshotFile)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies every complete journal record newer than the snapshot to the overlay
+     *
+     * @param snapshotSequence the sequence number of the last change in the snapshot
+     * @return the journal position after the last complete record
+     * @throws IOException if the journal cannot be read
+     */
+    private long replayJournal(long snapshotSequence) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        long position = 0;
+        long size = journal.size();
+        while (position + 12 <= size) {
+            header.clear();
+            journal.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            long checksum = header.getLong();
+            if (length < 8 || position + 12 + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            journal.read(payload, position + 12);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if (crc.getValue() != checksum) {
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+            long recordSequence = in.readLong();
+            if (recordSequence > snapshotSequence) {
+                apply(in);
+                sequence = recordSequence;
+            }
+            journalRecords++;
+            position += 12 + length;
+        }
+        return position;
+    }
+
+    /**
+     * @param in the body of a journal record after its sequence number
+     * @throws IOException if the record cannot be read
+     */
+    private void apply(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        switch (op) {
+            case ADD_PART:
+                Part added = readPart(in);
+                addedParts.put(added.getId(), added);
+                break;
+            case UPDATE_PART:
+                int oldPartId = in.readInt();
+                Part updatedPart = readPart(in);
+                update(addedParts, replacedParts, partOrigins, oldPartId, updatedPart.getId(), updatedPart);
+                break;
+            case DELETE_PART:
+                delete(addedParts, replacedParts, partOrigins, in.readInt());
+                break;
+            case ADD_PRODUCT:
+                Product product = readProduct(in);
+                addedProducts.put(product.getId(), product);
+                break;
+            case UPDATE_PRODUCT:
+                int oldProductId = in.readInt();
+                Product updatedProduct = readProduct(in);
+                update(addedProducts, replacedProducts, productOrigins, oldProductId, updatedProduct.getId(),
+                        updatedProduct);
+                break;
+            case DELETE_PRODUCT:
+                int deletedId = in.readInt();
+                delete(addedProducts, replacedProducts, productOrigins, deletedId);
+                associations.remove(deletedId);
+                break;
+            case ADJUST_STOCK:
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    boolean isProduct = in.readBoolean();
+                    int id = in.readInt();
+                    int delta = in.readInt();
+                    if (isProduct) {
+                        Product adjusted = current(addedProducts, replacedProducts, productOrigins, id,
+                                this::snapshotProduct);
+                        if (adjusted != null) {
+                            adjusted.setStock(adjusted.getStock() + delta);
+                        }
+                    } else {
+                        Part adjusted = current(addedParts, replacedParts, partOrigins, id, this::snapshotPart);
+                        if (adjusted != null) {
+                            adjusted.setStock(adjusted.getStock() + delta);
+                        }
+                    }
+                }
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + op);
+        }
+    }
+
+    /**
+     * Records that an item was replaced, keeping its place in inventory order even if its ID changed
+     *
+     * @param added the items added by the journal
+     * @param replaced the snapshot items replaced by the journal
+     * @param origins the snapshot ID of every replaced item by its current ID
+     * @param oldId the ID of the item being replaced
+     * @param newId the ID of the new item
+     * @param item the new item
+     * @param <T> the type of item
+     */
+    private static <T> void update(AddedItems<T> added, HashMap<Integer, T> replaced,
+                                   HashMap<Integer, Integer> origins, int oldId, int newId, T item) {
+        if (!added.containsKey(oldId)) {
+            Integer origin = origins.remove(oldId);
+            int snapshotId = origin == null ? oldId : origin;
+            replaced.put(snapshotId, item);
+            origins.put(newId, snapshotId);
+        } else {
+            added.replace(oldId, newId, item);
+        }
+    }
+
+    /**
+     * Finds the item an ID refers to while replaying the journal, moving a snapshot item into the replaced items so
+     * it can be changed
+     *
+     * @param added the items added by the journal
+     * @param replaced the snapshot items replaced by the journal
+     * @param origins the snapshot ID of every replaced item by its current ID
+     * @param id the current ID of the item
+     * @param snapshotItem reads a snapshot item by ID, or gives null if there is none
+     * @param <T> the type of item
+     * @return the item, or null if there is no item with the ID
+     */
+    private static <T> T current(AddedItems<T> added, HashMap<Integer, T> replaced,
+                                 HashMap<Integer, Integer> origins, int id, IntFunction<T> snapshotItem) {
+        T item = added.get(id);
+        if (item != null) {
+            return item;
+        }
+        Integer origin = origins.get(id);
+        if (origin != null) {
+            return replaced.get(origin);
+        }
+        if (replaced.containsKey(id)) {
+            //the snapshot item with this ID was deleted or given another ID
+            return null;
+        }
+        item = snapshotItem.apply(id);
+        if (item != null) {
+            replaced.put(id, item);
+            origins.put(id, id);
+        }
+        return item;
+    }
+
+    /**
+     * @param id the ID of a part
+     * @return a new part read from the snapshot, or null if the snapshot has no part with the ID
+     */
+    private Part snapshotPart(int id) {
+        int row = snapshot == null ? -1 : snapshot.findPartRow(id);
+        return row < 0 ? null : snapshot.part(row);
+    }
+
+    /**
+     * @param id the ID of a product
+     * @return a new product read from the snapshot, whose associated part IDs are remembered, or null if the
+     * snapshot has no product with the ID
+     */
+    private Product snapshotProduct(int id) {
+        int row = snapshot == null ? -1 : snapshot.findProductRow(id);
+        if (row < 0) {
+            return null;
+        }
+        associations.put(id, snapshot.productPartIds(row));
+        return snapshot.product(row);
+    }
+
+    /**
+     * Records that an item was deleted
+     *
+     * @param added the items added by the journal
+     * @param replaced the snapshot items replaced by the journal
+     * @param origins the snapshot ID of every replaced item by its current ID
+     * @param id the ID of the deleted item
+     * @param <T> the type of item
+     */
+    private static <T> void delete(AddedItems<T> added, HashMap<Integer, T> replaced,
+                                   HashMap<Integer, Integer> origins, int id) {
+        if (added.remove(id) == null) {
+            Integer origin = origins.remove(id);
+            replaced.put(origin == null ? id : origin, null);
+        }
+    }
+
+    /**
+     * @param replaced the snapshot items replaced by the journal
+     * @param snapshotId the ID of a snapshot item
+     * @param <T> the type of item
+     * @return if the journal deleted the item
+     */
+    private static <T> boolean isDeleted(HashMap<Integer, T> replaced, int snapshotId) {
+        return replaced.containsKey(snapshotId) && replaced.get(snapshotId) == null;
+    }
+
+    /**
+     * @param product the product to be linked
+     * @param partIds the IDs of its associated parts, or null if it has none
+     * @param partLookup the function finding a part by ID
+     */
+    private static void link(Product product, int[] partIds, IntFunction<Part> partLookup) {
+        if (partIds == null) {
+            return;
+        }
+        for (int partId : partIds) {
+            Part part = partLookup.apply(partId);
+            if (part != null) {
+                product.addAssociatedPart(part);
+            }
+        }
+    }
+
+    /**
+     * @param out the stream to write to
+     * @param part the part to be written
+     * @throws IOException if the part cannot be written
+     */
+    private static void writePart(DataOutputStream out, Part part) throws IOException {
+        out.writeByte(part instanceof Outsourced ? OUTSOURCED : IN_HOUSE);
+        out.writeInt(part.getId());
+        out.writeUTF(part.getName());
+        out.writeDouble(part.getPrice());
+        out.writeInt(part.getStock());
+        out.writeInt(part.getMin());
+        out.writeInt(part.getMax());
+        if (part instanceof Outsourced) {
+            out.writeUTF(((Outsourced) part).getCompanyName());
+        } else {
+            out.writeInt(((InHouse) part).getMachineId());
+        }
+    }
+
+    /**
+     * @param in the stream to read from
+     * @return the part that was read
+     * @throws IOException if the part cannot be read
+     */
+    private static Part readPart(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        int id = in.readInt();
+        String name = in.readUTF();
+        double price = in.readDouble();
+        int stock = in.readInt();
+        int min = in.readInt();
+        int max = in.readInt();
+        if (kind == OUTSOURCED) {
+            return new Outsourced(id, name, price, stock, min, max, in.readUTF());
+        }
+        return new InHouse(id, name, price, stock, min, max, in.readInt());
+    }
+
+    /**
+     * Writes a product with the IDs of its associated parts
+     *
+     * @param out the stream to write to
+     * @param product the product to be written
+     * @throws IOException if the product cannot be written
+     */
+    private static void writeProduct(DataOutputStream out, Product product) throws IOException {
+        out.writeInt(product.getId());
+        out.writeUTF(product.getName());
+        out.writeDouble(product.getPrice());
+        out.writeInt(product.getStock());
+        out.writeInt(product.getMin());
+        out.writeInt(product.getMax());
+        int[] partIds = product.getAssociatedPartUnits();
+        out.writeInt(partIds.length);
+        for (int partId : partIds) {
+            out.writeInt(partId);
+        }
+    }
+
+    /**
+     * Reads a product and remembers the IDs of its associated parts
+     *
+     * @param in the stream to read from
+     * @return the product that was read
+     * @throws IOException if the product cannot be read
+     */
+    private Product readProduct(DataInputStream in) throws IOException {
+        Product product = new Product(in.readInt(), in.readUTF(), in.readDouble(), in.readInt(), in.readInt(),
+                in.readInt());
+        int[] partIds = new int[in.readInt()];
+        for (int i = 0; i < partIds.length; i++) {
+            partIds[i] = in.readInt();
+        }
+        associations.put(product.getId(), partIds);
+        return product;
+    }
+
+    /**
+     * Stock adjustments queued to be journaled together
+     */
+    private static final class StockAdjustments {
+        private boolean[] products = new boolean[64];
+        private int[] ids = new int[64];
+        private int[] deltas = new int[64];
+        private int size;
+
+        void add(boolean product, int id, int delta) {
+            if (size == ids.length) {
+                products = Arrays.copyOf(products, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+                deltas = Arrays.copyOf(deltas, size * 2);
+            }
+            products[size] = product;
+            ids[size] = id;
+            deltas[size++] = delta;
+        }
+
+        void addAll(StockAdjustments other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.products[i], other.ids[i], other.deltas[i]);
+            }
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * The items added by the journal in inventory order, found by their current ID. An item keeps its place when
+     * its ID changes, without moving any other item.
+     *
+     * @param <T> the type of item
+     */
+    private static final class AddedItems<T> {
+        /**
+         * The items in inventory order, by the number of the entry they were added as
+         */
+        private final LinkedHashMap<Integer, T> items = new LinkedHashMap<>();
+
+        /**
+         * The entry of every item, by its current ID
+         */
+        private final HashMap<Integer, Integer> entries = new HashMap<>();
+
+        /**
+         * The number of the next entry added
+         */
+        private int nextEntry;
+
+        T get(int id) {
+            Integer entry = entries.get(id);
+            return entry == null ? null : items.get(entry);
+        }
+
+        boolean containsKey(int id) {
+            return entries.containsKey(id);
+        }
+
+        void put(int id, T item) {
+            Integer entry = entries.get(id);
+            if (entry == null) {
+                entry = nextEntry++;
+                entries.put(id, entry);
+            }
+            items.put(entry, item);
+        }
+
+        void replace(int oldId, int newId, T item) {
+            Integer entry = entries.remove(oldId);
+            entries.put(newId, entry);
+            items.put(entry, item);
+        }
+
+        T remove(int id) {
+            Integer entry = entries.remove(id);
+            return entry == null ? null : items.remove(entry);
+        }
+
+        int size() {
+            return items.size();
+        }
+
+        Collection<T> values() {
+            return items.values();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package sample;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * List whose items start out as rows of a snapshot and are only created when they are first read
+ *
+ * Each position either holds an item or the number of the snapshot row it will be created from. An item created
+ * from a row is remembered for that row only as long as something else still uses it, so reading the same row
+ * again gives the same object while it is in use, and scrolling through millions of rows does not keep them all.
+ * An item changed in place no longer matches its row, so it is pinned and held from then on. Rows replaced or
+ * removed from the list are marked dead so they are never created again. Items added later are held as usual.
+ *
+ * @param <T> the type of item in the list
+ * @author Long Tran
+ */
+public class LazyRowList<T> extends AbstractList<T> implements RandomAccess {
+    /**
+     * Creates the item stored in a snapshot row
+     */
+    private final IntFunction<T> materializer;
+
+    /**
+     * The item at every position that does not hold a snapshot row
+     */
+    private Object[] items;
+
+    /**
+     * The snapshot row at every position, or -1 if the item did not come from the snapshot
+     */
+    private int[] rows;
+
+    /**
+     * The number of items in the list
+     */
+    private int size;
+
+    /**
+     * The items created so far, by snapshot row: a weak reference to an item nothing has changed, or the item
+     * itself once it is pinned
+     */
+    private final Object[] byRow;
+
+    /**
+     * The snapshot rows no longer in the list
+     */
+    private final BitSet deadRows = new BitSet();
+
+    /**
+     * Creates a list holding every row of a snapshot, in row order, without creating any item
+     *
+     * @param rowCount the number of rows in the snapshot
+     * @param materializer the function creating the item stored in a row
+     */
+    public LazyRowList(int rowCount, IntFunction<T> materializer) {
+        this.materializer = materializer;
+        items = new Object[Math.max(rowCount, 10)];
+        rows = new int[items.length];
+        for (int row = 0; row < rowCount; row++) {
+            rows[row] = row;
+        }
+        size = rowCount;
+        byRow = new Object[rowCount];
+    }
+
+    /**
+     * Creates a list holding the given items and no snapshot rows
+     *
+     * @param items the items in the list
+     */
+    public LazyRowList(Collection<? extends T> items) {
+        this(0, row -> null);
+        addAll(items);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized T get(int index) {
+        checkIndex(index);
+        return rows[index] >= 0 ? create(rows[index]) : (T) items[index];
+    }
+
+    @Override
+    public synchronized T set(int index, T item) {
+        T old = get(index);
+        kill(index);
+        items[index] = item;
+        return old;
+    }
+
+    @Override
+    public synchronized void add(int index, T item) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (size == items.length) {
+            int capacity = items.length + (items.length >> 1) + 1;
+            items = Arrays.copyOf(items, capacity);
+            rows = Arrays.copyOf(rows, capacity);
+        }
+        System.arraycopy(items, index, items, index + 1, size - index);
+        System.arraycopy(rows, index, rows, index + 1, size - index);
+        items[index] = item;
+        rows[index] = -1;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public synchronized T remove(int index) {
+        T old = get(index);
+        kill(index);
+        System.arraycopy(items, index + 1, items, index, size - index - 1);
+        System.arraycopy(rows, index + 1, rows, index, size - index - 1);
+        items[--size] = null;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * Removes many items in one pass over the list rather than shifting the list once for every item
+     *
+     * @param indexes the positions of the items to be removed, in increasing order without repeats
+     */
+    public synchronized void removeAll(int[] indexes) {
+        if (indexes.length == 0) {
+            return;
+        }
+        int kept = indexes[0];
+        int next = 0;
+        for (int i = kept; i < size; i++) {
+            if (next < indexes.length && indexes[next] == i) {
+                kill(i);
+                next++;
+                continue;
+            }
+            items[kept] = items[i];
+            rows[kept] = rows[i];
+            kept++;
+        }
+        Arrays.fill(items, kept, size, null);
+        size = kept;
+        modCount++;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Finds an item without creating the items that have not been read, since those cannot be the item searched
+     *
+     * @param o the item to be searched
+     * @return the position of the item, or -1 if it is not in the list
+     */
+    @Override
+    public synchronized int indexOf(Object o) {
+        if (o == null) {
+            return -1;
+        }
+        for (int i = 0; i < size; i++) {
+            if (o.equals(itemAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized int lastIndexOf(Object o) {
+        if (o == null) {
+            return -1;
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            if (o.equals(itemAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Finds many items with one pass over the list, skipping rows that have not been read since those cannot be
+     * any of the items
+     *
+     * @param targets the items to be found
+     * @return the positions of the items in the list, in increasing order
+     */
+    public synchronized int[] indexesOf(Collection<?> targets) {
+        Set<Object> wanted = new HashSet<>(targets);
+        int[] found = new int[wanted.size()];
+        int count = 0;
+        for (int i = 0; i < size && count < found.length; i++) {
+            Object item = itemAt(i);
+            if (item != null && wanted.contains(item)) {
+                found[count++] = i;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @param index the position of an item
+     * @return the item, or null if it has not been created from its row or is no longer in use
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T peek(int index) {
+        checkIndex(index);
+        return (T) itemAt(index);
+    }
+
+    /**
+     * @param index the position of an item
+     * @return the snapshot row of the item, or -1 if the item did not come from the snapshot
+     */
+    public synchronized int rowAt(int index) {
+        checkIndex(index);
+        return rows[index];
+    }
+
+    /**
+     * @param row a snapshot row
+     * @return the item created from the row, or null if the row is no longer in the list
+     */
+    public synchronized T getByRow(int row) {
+        if (row < 0 || row >= byRow.length || deadRows.get(row)) {
+            return null;
+        }
+        return create(row);
+    }
+
+    /**
+     * Holds the item of a row from now on, since it was changed in place and creating it from the row again would
+     * lose the change
+     *
+     * @param row a snapshot row, or -1 for none
+     */
+    public synchronized void pin(int row) {
+        if (row >= 0 && row < byRow.length && !deadRows.get(row)) {
+            byRow[row] = create(row);
+        }
+    }
+
+    /**
+     * Replaces or drops snapshot rows in one pass, used to apply journaled changes on top of a snapshot
+     *
+     * @param removed the test if a row was deleted
+     * @param replacement the item that replaced a row, or null if the row is unchanged
+     */
+    public synchronized void overlay(IntPredicate removed, IntFunction<T> replacement) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int row = rows[i];
+            if (row >= 0 && removed.test(row)) {
+                deadRows.set(row);
+                continue;
+            }
+            items[kept] = items[i];
+            rows[kept] = row;
+            if (row >= 0) {
+                T item = replacement.apply(row);
+                if (item != null) {
+                    deadRows.set(row);
+                    items[kept] = item;
+                    rows[kept] = -1;
+                }
+            }
+            kept++;
+        }
+        Arrays.fill(items, kept, size, null);
+        size = kept;
+        modCount++;
+    }
+
+    /**
+     * @param row a snapshot row
+     * @return the item of the row, created if it has not been read or is no longer in use
+     */
+    private T create(int row) {
+        T item = held(row);
+        if (item == null) {
+            item = materializer.apply(row);
+            byRow[row] = new WeakReference<>(item);
+        }
+        return item;
+    }
+
+    /**
+     * @param row a snapshot row
+     * @return the item created from the row, or null if it has not been created or is no longer in use
+     */
+    @SuppressWarnings("unchecked")
+    private T held(int row) {
+        Object held = byRow[row];
+        return held instanceof WeakReference ? ((WeakReference<T>) held).get() : (T) held;
+    }
+
+    /**
+     * @param index the position of an item
+     * @return the item, or null if it has not been created from its row or is no longer in use
+     */
+    private Object itemAt(int index) {
+        return rows[index] >= 0 ? held(rows[index]) : items[index];
+    }
+
+    /**
+     * Marks the row at a position as no longer in the list
+     *
+     * @param index the position being replaced or removed
+     */
+    private void kill(int index) {
+        if (rows[index] >= 0) {
+            deadRows.set(rows[index]);
+            byRow[rows[index]] = null;
+            rows[index] = -1;
+        }
+    }
+
+    /**
+     * @param index the position to be checked
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package sample;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.ToIntFunction;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.*;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.*;
 import javafx.collections.transformation.*;
 import javafx.fxml.FXMLLoader;
@@ -12,7 +18,6 @@ import javafx.scene.*;
 import javafx.scene.layout.*;
 import javafx.scene.text.*;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.*;
 import javafx.event.*;
 /**
  * An Inventory Management System that supports adding, modifying and removing manufactured parts and products
@@ -24,14 +29,6 @@ import javafx.event.*;
  * @author Long Tran
  * */
 public class Main extends Application {
-    /**
-     * The auto-generated ID for new parts
-     */
-    public static int partID = Inventory.getAllParts().size()+1;
-    /**
-     * The auto-generated ID for new products
-     */
-    public static int productID = Inventory.getAllProducts().size()+1000;
     /**
      * The placeholder for a product to be modified
      */
@@ -72,6 +69,16 @@ public class Main extends Application {
      */
     private static Text productError = new Text();
 
+    /**
+     * The parts and products whose stock is below their min or above their max, shown in the stock alerts window
+     */
+    private static final ObservableList<StockAlert<?>> stockAlerts = FXCollections.observableArrayList();
+
+    /**
+     * The progress or result of the last import or export
+     */
+    private static Text transferStatus = new Text();
+
     /**
      * The search field for parts
      */
@@ -87,6 +94,11 @@ public class Main extends Application {
      */
     private Label imsTitle;
 
+    /**
+     * The time to wait after a keystroke in a search box before searching, in milliseconds
+     */
+    private static final long SEARCH_DELAY = 150;
+
     /**
      * The boolean to check if a window is already open
      */
@@ -116,38 +128,39 @@ public class Main extends Application {
         //Create a TextField for searching a product
         SearchProduct.setPromptText("Search by Product ID or Name");
 
-        //Create search function for Parts Table
-        FilteredList<Part> filteredParts = new FilteredList<>(Inventory.getAllParts(), p -> true);
-        SearchPart.textProperty().addListener((observable, oldValue, newValue) -> {
-            filteredParts.setPredicate(Part -> {
-                if (newValue == null || newValue.isEmpty()) {
-                    return true;
-                }
-                if (Inventory.lookupPart(Part.getName().toLowerCase(), newValue.toLowerCase())) {
-                    return true;
-                }
-                if(Inventory.lookupPart(Integer.valueOf(Part.getId()).toString(), newValue.toLowerCase())){
-                    return true;
-                }
-                return false;
-            });
-        });
+        //Create filters for the Parts Table, combined with each other and with the search text
+        ComboBox<String> partType = new ComboBox<>(FXCollections.observableArrayList("All Parts", "In-House",
+                "Outsourced"));
+        partType.getSelectionModel().selectFirst();
+        TextField partSource = new TextField();
+        partSource.setPromptText("Machine ID or Company");
+        partSource.setPrefWidth(150);
+        TextField partMinPrice = new TextField();
+        partMinPrice.setPromptText("Min Price");
+        partMinPrice.setPrefWidth(80);
+        TextField partMaxPrice = new TextField();
+        partMaxPrice.setPromptText("Max Price");
+        partMaxPrice.setPrefWidth(80);
+        CheckBox partLowStock = new CheckBox("Low Stock");
+        ObjectProperty<PartFilter> partFilter = new SimpleObjectProperty<>();
+        Runnable updatePartFilter = () -> partFilter.set(partFilter(partType.getValue(), partSource.getText(),
+                partMinPrice.getText(), partMaxPrice.getText(), partLowStock.isSelected()));
+        partType.valueProperty().addListener((observable, oldValue, newValue) -> updatePartFilter.run());
+        partSource.textProperty().addListener((observable, oldValue, newValue) -> updatePartFilter.run());
+        partMinPrice.textProperty().addListener((observable, oldValue, newValue) -> updatePartFilter.run());
+        partMaxPrice.textProperty().addListener((observable, oldValue, newValue) -> updatePartFilter.run());
+        partLowStock.selectedProperty().addListener((observable, oldValue, newValue) -> updatePartFilter.run());
 
-        FilteredList<Product> filteredProducts = new FilteredList<>(Inventory.getAllProducts(), p -> true);
-        SearchProduct.textProperty().addListener((observable, oldValue, newValue) -> {
-            filteredProducts.setPredicate(Product -> {
-                if (newValue == null || newValue.isEmpty()) {
-                    return true;
-                }
-                if (Inventory.lookupProduct(Product.getName().toLowerCase(), newValue.toLowerCase())) {
-                    return true;
-                }
-                if (Inventory.lookupProduct(Integer.valueOf(Product.getId()).toString(), newValue.toLowerCase())){
-                    return true;
-                }
-                return false;
-            });
-        });
+        //Create search function for Parts Table
+        bindSearch(SearchPart, PartsTable, Inventory.sortableParts(),
+                new IncrementalSearch<Part>(text -> Inventory.searchParts(text, partFilter.get()),
+                        (part, text) -> Inventory.partMatches(part, text)
+                                && (partFilter.get() == null || partFilter.get().test(part)),
+                        Inventory::getModCount),
+                Part::getId, partFilter);
+        bindSearch(SearchProduct, ProductsTable, Inventory.sortableProducts(),
+                new IncrementalSearch<>(Inventory::searchProducts, Inventory::productMatches, Inventory::getModCount),
+                Product::getId, null);
 
         /**
          * I ran into a problem where the parts table appeared to be empty despite having items in
@@ -158,32 +171,43 @@ public class Main extends Application {
          * changed the value factories. I edited the columns to match the Part class fields and the items reappeared
          * in the table.
          */
-        TableColumn PartID = new TableColumn("Part ID");
-        PartID.setCellValueFactory(new PropertyValueFactory<Part, Integer>("id"));
-        TableColumn PartName = new TableColumn("Part Name");
-        PartName.setCellValueFactory(new PropertyValueFactory<Part, String>("name"));
-        TableColumn ProductID = new TableColumn("Product ID");
-        ProductID.setCellValueFactory(new PropertyValueFactory<Part, Integer>("id"));
-        TableColumn ProductName = new TableColumn("Product Name");
-        ProductName.setCellValueFactory(new PropertyValueFactory<Part, String>("name"));
-
-        TableColumn PartInvLevel = new TableColumn("Inventory Level");
-        PartInvLevel.setCellValueFactory(new PropertyValueFactory<Part, Integer>("stock"));
-        TableColumn ProdInvLevel = new TableColumn("Inventory Level");
-        ProdInvLevel.setCellValueFactory(new PropertyValueFactory<Part, Integer>("stock"));
-        TableColumn PartPCPU = new TableColumn("Price/Cost per Unit");
+        //columns call the getters directly rather than looking them up by name for every cell shown
+        TableColumn<Part, Integer> PartID = new TableColumn<>("Part ID");
+        PartID.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        TableColumn<Part, String> PartName = new TableColumn<>("Part Name");
+        PartName.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getName()));
+        TableColumn<Product, Integer> ProductID = new TableColumn<>("Product ID");
+        ProductID.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        TableColumn<Product, String> ProductName = new TableColumn<>("Product Name");
+        ProductName.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getName()));
+
+        TableColumn<Part, Integer> PartInvLevel = new TableColumn<>("Inventory Level");
+        PartInvLevel.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getStock()));
+        TableColumn<Product, Integer> ProdInvLevel = new TableColumn<>("Inventory Level");
+        ProdInvLevel.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getStock()));
+        TableColumn<Part, Double> PartPCPU = new TableColumn<>("Price/Cost per Unit");
         PartPCPU.setMinWidth(120);
-        PartPCPU.setCellValueFactory(new PropertyValueFactory<Part, Double>("price"));
-        TableColumn ProdPCPU = new TableColumn("Price/Cost per Unit");
+        PartPCPU.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getPrice()));
+        TableColumn<Product, Double> ProdPCPU = new TableColumn<>("Price/Cost per Unit");
         ProdPCPU.setMinWidth(120);
-        ProdPCPU.setCellValueFactory(new PropertyValueFactory<Part, Double>("price"));
+        ProdPCPU.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getPrice()));
         PartsTable.getColumns().addAll(PartID, PartName, PartInvLevel, PartPCPU);
         ProductsTable.getColumns().addAll(ProductID, ProductName, ProdInvLevel, ProdPCPU);
+        Map<TableColumn<Part, ?>, String> partSortColumns = new HashMap<>();
+        partSortColumns.put(PartID, "id");
+        partSortColumns.put(PartName, "name");
+        partSortColumns.put(PartInvLevel, "stock");
+        partSortColumns.put(PartPCPU, "price");
+        bindSort(PartsTable, partSortColumns);
+        Map<TableColumn<Product, ?>, String> productSortColumns = new HashMap<>();
+        productSortColumns.put(ProductID, "id");
+        productSortColumns.put(ProductName, "name");
+        productSortColumns.put(ProdInvLevel, "stock");
+        productSortColumns.put(ProdPCPU, "price");
+        bindSort(ProductsTable, productSortColumns);
 
         //Insert data into tables
-        PartsTable.setItems(filteredParts);
         PartsTable.setPlaceholder(new Label ("No part found."));
-        ProductsTable.setItems(filteredProducts);
         ProductsTable.setPlaceholder(new Label ("No product found."));
 
         ListView partsView = new ListView < > (); //Create a ListView of Parts
@@ -259,7 +283,10 @@ public class Main extends Application {
         deletePartButton.setOnAction(event -> {
             try {
                 int i = PartsTable.getSelectionModel().getSelectedItem().getId();
-                message.setText("Do you want to delete this part?");
+                int users = Inventory.lookupProductsUsing(i).size();
+                message.setText(users == 0 ? "Do you want to delete this part?"
+                        : "This part is used by " + users + (users == 1 ? " product" : " products")
+                        + ". Do you want to delete it?");
                 deleteStage.show();
                 partError.setText("");
                 productError.setText("");
@@ -331,12 +358,45 @@ public class Main extends Application {
         });
         Button exitButton = new Button("Exit");
         exitButton.setOnAction(event -> { System.exit(0);        });
+        Button importButton = new Button("Import...");
+        importButton.setOnAction(event -> {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Import Parts, Products or Associated Parts");
+            chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV or TSV", "*.csv", "*.tsv"));
+            File file = chooser.showOpenDialog(primaryStage);
+            if (file != null) {
+                importFile(file.toPath());
+            }
+        });
+        //Tracks parts and products out of range as alerts arrive, handing each to the JavaFX Application Thread
+        Button alertsButton = new Button("Stock Alerts (0)");
+        stockAlerts.addListener((ListChangeListener<StockAlert<?>>) change ->
+                alertsButton.setText("Stock Alerts (" + stockAlerts.size() + ")"));
+        Inventory.addPartAlertListener(alert -> Platform.runLater(() -> showStockAlert(alert)));
+        Inventory.addProductAlertListener(alert -> Platform.runLater(() -> showStockAlert(alert)));
+        //the change that grew the journal was still saved, so a failed snapshot is only shown
+        Inventory.addCompactionFailureListener(e -> Platform.runLater(() ->
+                transferStatus.setText("Could not save a snapshot: " + e.getMessage())));
+        stockAlerts.addAll(Inventory.getPartAlerts());
+        stockAlerts.addAll(Inventory.getProductAlerts());
+        alertsButton.setOnAction(event -> stockAlertsWindow());
+        Button exportButton = new Button("Export...");
+        exportButton.setOnAction(event -> {
+            DirectoryChooser chooser = new DirectoryChooser();
+            chooser.setTitle("Export Inventory");
+            File directory = chooser.showDialog(primaryStage);
+            if (directory != null) {
+                exportFiles(directory.toPath());
+            }
+        });
 
 
         //Organizes GUI elements in window
         HBox HTitle = new HBox(imsTitle);
         HTitle.setPadding(new Insets(10));
         HBox HPartsTop = new HBox(150, partsTitle, SearchPart);
+        HBox HPartsFilter = new HBox(10, partType, partSource, partMinPrice, partMaxPrice, partLowStock);
+        HPartsFilter.setAlignment(Pos.CENTER_LEFT);
         HBox HPartsCenter = new HBox(PartsTable);
         HBox HPartsBottom = new HBox(10, partError, addPartButton, modifyPartButton, deletePartButton);
         HPartsBottom.setAlignment(Pos.CENTER_RIGHT);
@@ -346,15 +406,18 @@ public class Main extends Application {
         HProductsBottom.setAlignment(Pos.CENTER_RIGHT);
 
         //Creates Parts & Products boxes and organizes them
-        VBox vparts = new VBox(10, HPartsTop, HPartsCenter, HPartsBottom);
+        VBox vparts = new VBox(10, HPartsTop, HPartsFilter, HPartsCenter, HPartsBottom);
         VBox vproducts = new VBox(10, HProductsTop, HProductsCenter, HProductsBottom);
         HBox HMain = new HBox(50, vparts, vproducts);
         HMain.setAlignment(Pos.CENTER); //Set the HBox's alignment to center.
 
-        VBox VMain = new VBox(10, HTitle, HMain, exitButton);
+        HBox HMainBottom = new HBox(10, transferStatus, alertsButton, importButton, exportButton, exitButton);
+        HMainBottom.setAlignment(Pos.CENTER_RIGHT);
+
+        VBox VMain = new VBox(10, HTitle, HMain, HMainBottom);
         VMain.setAlignment(Pos.BOTTOM_RIGHT);
         VMain.setPadding(new Insets (20));
-        Scene scene = new Scene(VMain, 900, 350); //Creates a Scene with the HBox as the root node.
+        Scene scene = new Scene(VMain, 900, 390); //Creates a Scene with the HBox as the root node.
 
         //Adds the Scene to the Stage.
         primaryStage.setScene(scene);
@@ -362,6 +425,129 @@ public class Main extends Application {
         primaryStage.show();
     }
 
+    /**
+     * Adds, replaces or removes the shown alert for an item
+     *
+     * @param alert the alert raised for the item
+     */
+    private static void showStockAlert(StockAlert<?> alert) {
+        boolean part = alert.getItem() instanceof Part;
+        for (int i = 0; i < stockAlerts.size(); i++) {
+            StockAlert<?> shown = stockAlerts.get(i);
+            if (shown.getId() == alert.getId() && shown.getItem() instanceof Part == part) {
+                if (alert.getKind() == StockAlert.Kind.CLEARED) {
+                    stockAlerts.remove(i);
+                } else {
+                    stockAlerts.set(i, alert);
+                }
+                return;
+            }
+        }
+        if (alert.getKind() != StockAlert.Kind.CLEARED) {
+            stockAlerts.add(alert);
+        }
+    }
+
+    /**
+     * The window listing the parts and products whose stock is below their min or above their max, kept up to date
+     * as alerts arrive
+     */
+    private static void stockAlertsWindow() {
+        Label title = new Label("Stock Alerts");
+        title.setFont(Font.font(null, FontWeight.BOLD, 14));
+
+        TableView<StockAlert<?>> alertsTable = new TableView<>(stockAlerts);
+        TableColumn<StockAlert<?>, String> alertType = new TableColumn<>("Type");
+        alertType.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(
+                cell.getValue().getItem() instanceof Part ? "Part" : "Product"));
+        TableColumn<StockAlert<?>, Integer> alertId = new TableColumn<>("ID");
+        alertId.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        TableColumn<StockAlert<?>, String> alertName = new TableColumn<>("Name");
+        alertName.setMinWidth(150);
+        alertName.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getItem() instanceof Part
+                ? ((Part) cell.getValue().getItem()).getName()
+                : ((Product) cell.getValue().getItem()).getName()));
+        TableColumn<StockAlert<?>, Integer> alertStock = new TableColumn<>("Inventory Level");
+        alertStock.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getStock()));
+        TableColumn<StockAlert<?>, Integer> alertMin = new TableColumn<>("Min");
+        alertMin.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getMin()));
+        TableColumn<StockAlert<?>, Integer> alertMax = new TableColumn<>("Max");
+        alertMax.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getMax()));
+        TableColumn<StockAlert<?>, String> alertKind = new TableColumn<>("Alert");
+        alertKind.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(
+                cell.getValue().getKind() == StockAlert.Kind.LOW ? "Below Min" : "Above Max"));
+        //added one at a time, as passing columns of a generic row type as varargs is unchecked
+        List<TableColumn<StockAlert<?>, ?>> alertColumns = alertsTable.getColumns();
+        alertColumns.add(alertType);
+        alertColumns.add(alertId);
+        alertColumns.add(alertName);
+        alertColumns.add(alertStock);
+        alertColumns.add(alertMin);
+        alertColumns.add(alertMax);
+        alertColumns.add(alertKind);
+        alertsTable.setPlaceholder(new Label("No stock alerts."));
+
+        Button closeButton = new Button("Close");
+        closeButton.setPrefWidth(80);
+        HBox HButtons = new HBox(closeButton);
+        HButtons.setAlignment(Pos.CENTER_RIGHT);
+        VBox VAlertsMain = new VBox(10, title, alertsTable, HButtons);
+        VAlertsMain.setPadding(new Insets(20));
+
+        Scene scene = new Scene(VAlertsMain, 650, 400);
+        Stage stage = new Stage();
+        stage.setTitle("Stock Alerts");
+        stage.setScene(scene);
+        stage.show();
+        closeButton.setOnAction(event -> stage.close());
+    }
+
+    /**
+     * Imports a file on a background thread, committing each batch on the JavaFX Application Thread
+     *
+     * @param file the file of parts, products or associated parts to be imported
+     */
+    private static void importFile(Path file) {
+        transferStatus.setText("Importing " + file.getFileName() + "...");
+        Thread thread = new Thread(() -> {
+            String status;
+            try {
+                InventoryCsv.Result result = InventoryCsv.importFile(file, Platform::runLater);
+                status = "Imported " + result.getImported() + " rows, skipped " + result.getSkipped() + ".";
+            } catch (IOException | RuntimeException e) {
+                status = "Import failed: " + e.getMessage();
+            }
+            String message = status;
+            Platform.runLater(() -> transferStatus.setText(message));
+        }, "inventory-import");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Exports parts, products and associated parts to CSV files on a background thread
+     *
+     * @param directory the directory the files are written to
+     */
+    private static void exportFiles(Path directory) {
+        transferStatus.setText("Exporting...");
+        Thread thread = new Thread(() -> {
+            String status;
+            try {
+                InventoryCsv.exportParts(directory.resolve("parts.csv"));
+                InventoryCsv.exportProducts(directory.resolve("products.csv"));
+                InventoryCsv.exportLinks(directory.resolve("product-parts.csv"));
+                status = "Exported to " + directory + ".";
+            } catch (IOException | RuntimeException e) {
+                status = "Export failed: " + e.getMessage();
+            }
+            String message = status;
+            Platform.runLater(() -> transferStatus.setText(message));
+        }, "inventory-export");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     /**
      * The form for adding new parts to inventory
      */
@@ -590,6 +776,7 @@ public class Main extends Application {
 
 
                 if (validCheck == 5){
+                    int partID = Inventory.allocatePartId();
                     if (ihButton.isSelected()){
                         InHouse in = (InHouse) inPart;
                         in.setId(partID);
@@ -602,7 +789,6 @@ public class Main extends Application {
                         out.setCompanyName(lastField.getText());
                         Inventory.addPart(out);
                     }
-                    partID++;
                     stage.close();
                     isWindowOpen = false;
                     partError.setText("");
@@ -897,20 +1083,19 @@ public class Main extends Application {
                     validCheck = 0;
                 }
 
-                int index = PartsTable.getSelectionModel().getSelectedIndex();
                 if (validCheck == 5) {
                     if (ihButton.isSelected()){
                         InHouse in = (InHouse) inPart;
                         in.setId(Integer.parseInt(idField.getText()));
                         in.setMachineId(machineid);
-                        Inventory.updatePart(index, in);
+                        Inventory.updatePartFields(id, in);
                     }
 
                 else if (osButton.isSelected()){
                         Outsourced out = (Outsourced) outPart;
                         out.setId(Integer.parseInt(idField.getText()));
                         out.setCompanyName(lastField.getText());
-                        Inventory.updatePart(index, out);
+                        Inventory.updatePartFields(id, out);
                     }
                     stage.close();
                     isWindowOpen = false;
@@ -936,50 +1121,40 @@ public class Main extends Application {
         title.setFont(Font.font(null, FontWeight.BOLD, 14));
 
         //Create tables with columns
-        TableColumn PartID1 = new TableColumn("Part ID");
-        PartID1.setCellValueFactory(new PropertyValueFactory<Part, Integer>("id"));
-        TableColumn PartName1 = new TableColumn("Part Name");
-        PartName1.setCellValueFactory(new PropertyValueFactory<Part, String>("name"));
-        TableColumn PartInvLevel1 = new TableColumn("Inventory Level");
-        PartInvLevel1.setCellValueFactory(new PropertyValueFactory<Part, Integer>("stock"));
-        TableColumn PartPCPU1 = new TableColumn("Price/Cost per Unit");
+        TableColumn<Part, Integer> PartID1 = new TableColumn<>("Part ID");
+        PartID1.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        TableColumn<Part, String> PartName1 = new TableColumn<>("Part Name");
+        PartName1.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getName()));
+        TableColumn<Part, Integer> PartInvLevel1 = new TableColumn<>("Inventory Level");
+        PartInvLevel1.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getStock()));
+        TableColumn<Part, Double> PartPCPU1 = new TableColumn<>("Price/Cost per Unit");
         PartPCPU1.setMinWidth(120);
-        PartPCPU1.setCellValueFactory(new PropertyValueFactory<Part, Double>("price"));
-
-        TableColumn PartID2 = new TableColumn("Part ID");
-        PartID2.setCellValueFactory(new PropertyValueFactory<Part, Integer>("id"));
-        TableColumn PartName2 = new TableColumn("Part Name");
-        PartName2.setCellValueFactory(new PropertyValueFactory<Part, String>("name"));
-        TableColumn PartInvLevel2 = new TableColumn("Inventory Level");
-        PartInvLevel2.setCellValueFactory(new PropertyValueFactory<Part, Integer>("stock"));
-        TableColumn PartPCPU2 = new TableColumn("Price/Cost per Unit");
+        PartPCPU1.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getPrice()));
+
+        TableColumn<Part, Integer> PartID2 = new TableColumn<>("Part ID");
+        PartID2.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        TableColumn<Part, String> PartName2 = new TableColumn<>("Part Name");
+        PartName2.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getName()));
+        TableColumn<Part, Integer> PartInvLevel2 = new TableColumn<>("Inventory Level");
+        PartInvLevel2.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getStock()));
+        TableColumn<Part, Double> PartPCPU2 = new TableColumn<>("Price/Cost per Unit");
         PartPCPU2.setMinWidth(120);
-        PartPCPU2.setCellValueFactory(new PropertyValueFactory<Part, Double>("price"));
+        PartPCPU2.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getPrice()));
 
         TextField searchPart = new TextField();
         searchPart.setPromptText("Search by Part ID or Name");
 
-        FilteredList<Part> filteredParts = new FilteredList<>(Inventory.getAllParts(), p -> true);
-        searchPart.textProperty().addListener((observable, oldValue, newValue) -> {
-            filteredParts.setPredicate(Part -> {
-                if (newValue == null || newValue.isEmpty()) {
-                    return true;
-                }
-                if (Inventory.lookupPart(Part.getName().toLowerCase(),newValue.toLowerCase())) {
-                    return true;
-                }
-                if (Inventory.lookupPart(Integer.valueOf(Part.getId()).toString(),(newValue.toLowerCase()))) {
-                    return true;
-                }
-                return false;
-            });
-        });
+        ListChangeListener<Part> refreshSearch = bindSearch(searchPart, PartsTable1, Inventory.getAllParts(),
+                new IncrementalSearch<>(Inventory::searchParts, Inventory::partMatches, Inventory::getModCount),
+                Part::getId, null);
 
         PartsTable1.getColumns().addAll(PartID1, PartName1, PartInvLevel1, PartPCPU1);
-        PartsTable1.setItems(filteredParts);
         PartsTable1.setPlaceholder(new Label("No parts found."));
         Product product = new Product(0,"",0,0,0,0);
-        PartsTable2.getColumns().addAll(PartID2, PartName2, PartInvLevel2, PartPCPU2);
+        TableColumn<Part, Integer> PartQuantity2 = new TableColumn<>("Quantity");
+        PartQuantity2.setCellValueFactory(cell ->
+                new ReadOnlyObjectWrapper<>(product.getAssociatedPartQuantity(cell.getValue().getId())));
+        PartsTable2.getColumns().addAll(PartID2, PartName2, PartInvLevel2, PartPCPU2, PartQuantity2);
         PartsTable2.setItems(product.getAllAssociatedParts());
         PartsTable2.setPlaceholder(new Label("No associated parts."));
 
@@ -1072,11 +1247,14 @@ public class Main extends Application {
         Scene scene = new Scene(grid, 850, 600);
         Stage stage = new Stage();
         stage.setScene(scene);
+        stage.setOnHidden(event -> Inventory.getAllParts().removeListener(refreshSearch));
         stage.show();
         addButton.setOnAction(new EventHandler<ActionEvent>(){
             @Override public void handle(ActionEvent e){
                 Part part = PartsTable1.getSelectionModel().getSelectedItem();
                 product.addAssociatedPart(part);
+                //adding a part already associated only changes its quantity, which the list does not report
+                PartsTable2.refresh();
             }
         });
         //Creates delete confirmation dialogue
@@ -1118,6 +1296,7 @@ public class Main extends Application {
             confirmButton.setOnAction(e -> {
                 Part selectedPart = PartsTable2.getSelectionModel().getSelectedItem();
                 product.deleteAssociatedPart(selectedPart);
+                PartsTable2.refresh();
                 //partID--;
                 removeStage.close();});
             //calls deletePart method from Inventory
@@ -1232,9 +1411,8 @@ public class Main extends Application {
                 }
 
                 if (validCheck == 5) {
-                    product.setId(productID);
+                    product.setId(Inventory.allocateProductId());
                     Inventory.addProduct(product);
-                    productID++;
                     stage.close();
                     isWindowOpen = false;
                     partError.setText("");
@@ -1259,51 +1437,45 @@ public class Main extends Application {
         title.setFont(Font.font(null, FontWeight.BOLD, 14));
 
         //Create tables with columns
-        TableColumn PartID1 = new TableColumn("Part ID");
-        PartID1.setCellValueFactory(new PropertyValueFactory<Part, Integer>("id"));
-        TableColumn PartName1 = new TableColumn("Part Name");
-        PartName1.setCellValueFactory(new PropertyValueFactory<Part, String>("name"));
-        TableColumn PartInvLevel1 = new TableColumn("Inventory Level");
-        PartInvLevel1.setCellValueFactory(new PropertyValueFactory<Part, Integer>("stock"));
-        TableColumn PartPCPU1 = new TableColumn("Price/Cost per Unit");
+        TableColumn<Part, Integer> PartID1 = new TableColumn<>("Part ID");
+        PartID1.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        TableColumn<Part, String> PartName1 = new TableColumn<>("Part Name");
+        PartName1.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getName()));
+        TableColumn<Part, Integer> PartInvLevel1 = new TableColumn<>("Inventory Level");
+        PartInvLevel1.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getStock()));
+        TableColumn<Part, Double> PartPCPU1 = new TableColumn<>("Price/Cost per Unit");
         PartPCPU1.setMinWidth(120);
-        PartPCPU1.setCellValueFactory(new PropertyValueFactory<Part, Double>("price"));
-
-        TableColumn PartID2 = new TableColumn("Part ID");
-        PartID2.setCellValueFactory(new PropertyValueFactory<Part, Integer>("id"));
-        TableColumn PartName2 = new TableColumn("Part Name");
-        PartName2.setCellValueFactory(new PropertyValueFactory<Part, String>("name"));
-        TableColumn PartInvLevel2 = new TableColumn("Inventory Level");
-        PartInvLevel2.setCellValueFactory(new PropertyValueFactory<Part, Integer>("stock"));
-        TableColumn PartPCPU2 = new TableColumn("Price/Cost per Unit");
+        PartPCPU1.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getPrice()));
+
+        TableColumn<Part, Integer> PartID2 = new TableColumn<>("Part ID");
+        PartID2.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        TableColumn<Part, String> PartName2 = new TableColumn<>("Part Name");
+        PartName2.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getName()));
+        TableColumn<Part, Integer> PartInvLevel2 = new TableColumn<>("Inventory Level");
+        PartInvLevel2.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getStock()));
+        TableColumn<Part, Double> PartPCPU2 = new TableColumn<>("Price/Cost per Unit");
         PartPCPU2.setMinWidth(120);
-        PartPCPU2.setCellValueFactory(new PropertyValueFactory<Part, Double>("price"));
+        PartPCPU2.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getPrice()));
 
         TextField searchPart = new TextField();
         searchPart.setPromptText("Search by Part ID or Name");
 
-        FilteredList<Part> filteredParts = new FilteredList<>(Inventory.getAllParts(), p -> true);
-        searchPart.textProperty().addListener((observable, oldValue, newValue) -> {
-            filteredParts.setPredicate(Part -> {
-                if (newValue == null || newValue.isEmpty()) {
-                    return true;
-                }
-                if (Inventory.lookupPart(Part.getName().toLowerCase(),(newValue.toLowerCase()))) {
-                    return true;
-                }
-                if (Inventory.lookupPart(Integer.valueOf(Part.getId()).toString(),(newValue.toLowerCase()))) {
-                    return true;
-                }
-                return false;
-            });
-        });
+        ListChangeListener<Part> refreshSearch = bindSearch(searchPart, PartsTable1, Inventory.getAllParts(),
+                new IncrementalSearch<>(Inventory::searchParts, Inventory::partMatches, Inventory::getModCount),
+                Part::getId, null);
 
         PartsTable1.getColumns().addAll(PartID1, PartName1, PartInvLevel1, PartPCPU1);
-        PartsTable1.setItems(filteredParts);
         PartsTable1.setPlaceholder(new Label("No parts found."));
         product1 = ProductsTable.getSelectionModel().getSelectedItem();
-        PartsTable2.getColumns().addAll(PartID2, PartName2, PartInvLevel2, PartPCPU2);
-        PartsTable2.setItems(product1.getAllAssociatedParts());
+        //Edits a copy of the associated parts, which only replaces the product's on Save
+        Product draft = new Product(product1.getId(), product1.getName(), product1.getPrice(), product1.getStock(),
+                product1.getMin(), product1.getMax());
+        draft.setAssociatedParts(product1);
+        TableColumn<Part, Integer> PartQuantity2 = new TableColumn<>("Quantity");
+        PartQuantity2.setCellValueFactory(cell ->
+                new ReadOnlyObjectWrapper<>(draft.getAssociatedPartQuantity(cell.getValue().getId())));
+        PartsTable2.getColumns().addAll(PartID2, PartName2, PartInvLevel2, PartPCPU2, PartQuantity2);
+        PartsTable2.setItems(draft.getAllAssociatedParts());
         PartsTable2.setPlaceholder(new Label("No associated parts."));
 
         //Creates text boxes and buttons
@@ -1400,11 +1572,13 @@ public class Main extends Application {
         Scene scene = new Scene(grid, 850, 600);
         Stage stage = new Stage();
         stage.setScene(scene);
+        stage.setOnHidden(event -> Inventory.getAllParts().removeListener(refreshSearch));
         stage.show();
         addButton.setOnAction(new EventHandler<ActionEvent>(){
             @Override public void handle(ActionEvent e){
                 Part part = PartsTable1.getSelectionModel().getSelectedItem();
-                product1.addAssociatedPart(part);
+                draft.addAssociatedPart(part);
+                PartsTable2.refresh();
             }
         });
         //Creates delete confirmation dialogue
@@ -1443,7 +1617,8 @@ public class Main extends Application {
             }
             confirmButton.setOnAction(e -> {
                 Part selectedPart = PartsTable2.getSelectionModel().getSelectedItem();
-                product1.deleteAssociatedPart(selectedPart);
+                draft.deleteAssociatedPart(selectedPart);
+                PartsTable2.refresh();
                 removeStage.close();});
             //calls deletePart method from Inventory
         });
@@ -1458,6 +1633,10 @@ public class Main extends Application {
                 exceptionError.setText("");
                 exceptionErrors.setText("");
                 exceptionText = ("");
+                /*Collects the new values apart from the product, which is only changed once they are all valid*/
+                Product values = new Product(id, product1.getName(), product1.getPrice(), product1.getStock(),
+                        product1.getMin(), product1.getMax());
+                values.setAssociatedParts(draft);
                 int max = 0;
                 int min = 0;
                 int inv = 0;
@@ -1475,7 +1654,7 @@ public class Main extends Application {
                 try {
                     int i = nameField.getText().length();
                     int j = 1/i;
-                    product1.setName(nameField.getText());
+                    values.setName(nameField.getText());
                     validCheck++;
                 } catch (ArithmeticException f){
                     exceptionError.setText("Exception:");
@@ -1486,7 +1665,7 @@ public class Main extends Application {
 
                 try {
                     inv = Integer.parseInt(invField.getText());
-                    product1.setStock(inv);
+                    values.setStock(inv);
                     invIsValid = true;
                     validCheck++;
                 } catch (NumberFormatException f){
@@ -1499,7 +1678,7 @@ public class Main extends Application {
 
                 try {
                     double d = Double.parseDouble(pcField.getText());
-                    product1.setPrice(d);
+                    values.setPrice(d);
                     validCheck++;
                 } catch (NumberFormatException f){
                     exceptionError.setText("Exception:");
@@ -1510,7 +1689,7 @@ public class Main extends Application {
 
                 try {
                     max = Integer.parseInt(maxField.getText());
-                    product1.setMax(max);
+                    values.setMax(max);
                     maxInput = true;
                     validCheck++;
                 } catch (NumberFormatException f){
@@ -1523,7 +1702,7 @@ public class Main extends Application {
 
                 try {
                     min = Integer.parseInt(minField.getText());
-                    product1.setMin(min);
+                    values.setMin(min);
                     minInput = true;
                     validCheck++;
                 } catch (NumberFormatException f){
@@ -1556,9 +1735,7 @@ public class Main extends Application {
                 }
 
                 if (validCheck == 5){
-                    product1.setId(id);
-                    int index = ProductsTable.getSelectionModel().getSelectedIndex();
-                    Inventory.updateProduct(index, product1);
+                    Inventory.updateProductFields(id, values);
                     stage.close();
                     isWindowOpen = false;
                     partError.setText("");
@@ -1574,6 +1751,173 @@ public class Main extends Application {
         });
     }
 
+    /**
+     * Fills a table from a search box. The table shows the whole inventory list while the search box is empty and
+     * no other criteria are set, and otherwise a list of matches, which is searched in the background once typing
+     * pauses and refreshed when inventory changes. Items only changed in place are checked again one by one and
+     * moved in or out of the matches, so editing an item does not search the whole inventory again.
+     *
+     * @param searchField the search box
+     * @param table the table to be filled
+     * @param source the inventory list being searched
+     * @param search the search over the inventory list
+     * @param idOf gives the ID of an item, which the matches are ordered by
+     * @param criteria other criteria the search applies, such as a filter, which narrow the table while not null,
+     * or null if there are none
+     * @param <T> the type of item in the table
+     * @return the listener that refreshes the matches when inventory changes
+     */
+    private static <T> ListChangeListener<T> bindSearch(TextField searchField, TableView<T> table,
+                                                       ObservableList<T> source, IncrementalSearch<T> search,
+                                                       ToIntFunction<T> idOf, ObservableValue<?> criteria) {
+        SearchExecutor<List<T>> executor = new SearchExecutor<>(SEARCH_DELAY);
+        table.setItems(source);
+        Runnable refresh = () -> {
+            String text = searchField.getText();
+            if ((text == null || text.isEmpty()) && (criteria == null || criteria.getValue() == null)) {
+                executor.cancel();
+                search.reset();
+                table.setItems(source);
+            } else {
+                executor.submit(() -> search.search(text),
+                        matches -> table.setItems(FXCollections.observableArrayList(matches)));
+            }
+        };
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> refresh.run());
+        if (criteria != null) {
+            //the last matches were found with the old criteria, so they cannot be narrowed
+            criteria.addListener((observable, oldValue, newValue) -> {
+                search.reset();
+                refresh.run();
+            });
+        }
+        ListChangeListener<T> refreshSearch = change -> {
+            String text = searchField.getText();
+            if ((text == null || text.isEmpty()) && (criteria == null || criteria.getValue() == null)) {
+                return;
+            }
+            List<T> updated = new ArrayList<>();
+            while (change.next()) {
+                if (!change.wasUpdated()) {
+                    executor.submit(() -> search.search(text),
+                            matches -> table.setItems(FXCollections.observableArrayList(matches)));
+                    return;
+                }
+                updated.addAll(source.subList(change.getFrom(), change.getTo()));
+            }
+            ObservableList<T> shown = table.getItems();
+            if (shown == source) {
+                return;
+            }
+            for (T item : updated) {
+                int index = shown.indexOf(item);
+                if (search.matches(item, text)) {
+                    if (index >= 0) {
+                        //replacing the item with itself redraws its row
+                        shown.set(index, item);
+                    } else {
+                        shown.add(insertionPoint(shown, idOf.applyAsInt(item), idOf), item);
+                    }
+                } else if (index >= 0) {
+                    shown.remove(index);
+                }
+            }
+        };
+        source.addListener(refreshSearch);
+        return refreshSearch;
+    }
+
+    /**
+     * Sorts a table showing a {@link SortedInventoryList} from the list's kept column orders rather than sorting
+     * the items. Only the first column of the sort order is used. Other lists, such as search matches, are sorted
+     * as usual.
+     *
+     * @param table the table to be sorted
+     * @param columns the name of the kept order of each sortable column
+     * @param <T> the type of item in the table
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void bindSort(TableView<T> table, Map<TableColumn<T, ?>, String> columns) {
+        table.setSortPolicy(view -> {
+            if (!(view.getItems() instanceof SortedInventoryList)) {
+                return TableView.DEFAULT_SORT_POLICY.call(view);
+            }
+            TableColumn<T, ?> sortColumn = view.getSortOrder().isEmpty() ? null : view.getSortOrder().get(0);
+            ((SortedInventoryList<T>) view.getItems()).sortBy(sortColumn == null ? null : columns.get(sortColumn),
+                    sortColumn != null && sortColumn.getSortType() == TableColumn.SortType.DESCENDING);
+            return true;
+        });
+    }
+
+    /**
+     * Combines the filters chosen for the Parts Table. Blank or unreadable fields are left out.
+     *
+     * @param type the type of part chosen
+     * @param source a machine ID or company name
+     * @param minPrice the lowest price
+     * @param maxPrice the highest price
+     * @param lowStock whether only parts with stock below their min are shown
+     * @return the filters combined with AND, or null if none is chosen
+     */
+    private static PartFilter partFilter(String type, String source, String minPrice, String maxPrice,
+                                         boolean lowStock) {
+        List<PartFilter> criteria = new ArrayList<>();
+        if ("In-House".equals(type)) {
+            criteria.add(PartFilter.inHouse());
+        } else if ("Outsourced".equals(type)) {
+            criteria.add(PartFilter.outsourced());
+        }
+        String supplier = source == null ? "" : source.trim();
+        if (!supplier.isEmpty()) {
+            //a number may be a machine ID or a company's name, so either is matched
+            PartFilter company = PartFilter.company(supplier);
+            try {
+                criteria.add(PartFilter.machine(Integer.parseInt(supplier)).or(company));
+            } catch (NumberFormatException e) {
+                criteria.add(company);
+            }
+        }
+        String min = minPrice == null ? "" : minPrice.trim();
+        String max = maxPrice == null ? "" : maxPrice.trim();
+        if (!min.isEmpty() || !max.isEmpty()) {
+            try {
+                criteria.add(PartFilter.priceBetween(min.isEmpty() ? Double.NEGATIVE_INFINITY : Double.parseDouble(min),
+                        max.isEmpty() ? Double.POSITIVE_INFINITY : Double.parseDouble(max)));
+            } catch (NumberFormatException e) {
+                //an unfinished price is ignored until it can be read
+            }
+        }
+        if (lowStock) {
+            criteria.add(PartFilter.lowStock());
+        }
+        PartFilter filter = null;
+        for (PartFilter criterion : criteria) {
+            filter = filter == null ? criterion : filter.and(criterion);
+        }
+        return filter;
+    }
+
+    /**
+     * @param items items ordered by ID
+     * @param id the ID of an item to be added
+     * @param idOf gives the ID of an item
+     * @param <T> the type of item
+     * @return the position the item goes at to keep the items ordered
+     */
+    private static <T> int insertionPoint(List<T> items, int id, ToIntFunction<T> idOf) {
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (idOf.applyAsInt(items.get(middle)) < id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
     /**
      *
      * @param args command-line arguments
@@ -0,0 +1,124 @@
+package sample;
+
+import java.util.HashMap;
+
+/**
+ * Inverted index from every substring of up to three characters to the IDs of the items containing it
+ *
+ * A query of up to three characters is answered exactly by a single posting set. Longer queries intersect the
+ * postings of their trigrams, which gives a small set of candidates that still have to be checked with a real
+ * substring match. Text is indexed in lower case so the index serves case-insensitive search.
+ *
+ * @author Long Tran
+ */
+public class NGramIndex {
+    /**
+     * The longest gram stored in the index
+     */
+    public static final int N = 3;
+
+    /**
+     * The indexed text of every item, kept so an item can be removed after its fields have changed
+     */
+    private final IntMap<String[]> texts = new IntMap<>();
+
+    /**
+     * The IDs of the items containing each gram
+     */
+    private final HashMap<String, IntSet> postings = new HashMap<>();
+
+    /**
+     * @param id the ID of the item
+     * @param fields the text of the item to be searchable, such as its name and ID
+     */
+    public void add(int id, String... fields) {
+        remove(id);
+        String[] lower = new String[fields.length];
+        for (int f = 0; f < fields.length; f++) {
+            lower[f] = fields[f] == null ? "" : fields[f].toLowerCase();
+            String text = lower[f];
+            for (int i = 0; i < text.length(); i++) {
+                for (int n = 1; n <= N && i + n <= text.length(); n++) {
+                    postings.computeIfAbsent(text.substring(i, i + n), g -> new IntSet()).add(id);
+                }
+            }
+        }
+        texts.put(id, lower);
+    }
+
+    /**
+     * @param id the ID of the item to be removed from the index
+     */
+    public void remove(int id) {
+        String[] lower = texts.remove(id);
+        if (lower == null) {
+            return;
+        }
+        for (String text : lower) {
+            for (int i = 0; i < text.length(); i++) {
+                for (int n = 1; n <= N && i + n <= text.length(); n++) {
+                    String gram = text.substring(i, i + n);
+                    IntSet ids = postings.get(gram);
+                    if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param query the lower case text to be searched, at least one character long
+     * @return the IDs of the items that may contain the query
+     */
+    public IntSet candidates(String query) {
+        if (query.length() <= N) {
+            IntSet ids = postings.get(query);
+            return ids == null ? new IntSet() : copy(ids);
+        }
+        //starts from the rarest trigram so the intersection never grows
+        IntSet smallest = null;
+        IntSet[] grams = new IntSet[query.length() - N + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = postings.get(query.substring(i, i + N));
+            if (grams[i] == null) {
+                return new IntSet();
+            }
+            if (smallest == null || grams[i].size() < smallest.size()) {
+                smallest = grams[i];
+            }
+        }
+        IntSet result = new IntSet(smallest.size());
+        for (int id : smallest.toArray()) {
+            boolean inAll = true;
+            for (IntSet ids : grams) {
+                if (ids != smallest && !ids.contains(id)) {
+                    inAll = false;
+                    break;
+                }
+            }
+            if (inAll) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param query the lower case text that was searched
+     * @return if every candidate for the query is known to contain it, so no substring check is needed
+     */
+    public boolean isExact(String query) {
+        return query.length() <= N;
+    }
+
+    /**
+     * @param ids the set to be copied
+     * @return a new set with the same values
+     */
+    private static IntSet copy(IntSet ids) {
+        IntSet result = new IntSet(ids.size());
+        ids.forEach(result::add);
+        return result;
+    }
+}
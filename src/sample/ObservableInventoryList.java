@@ -0,0 +1,234 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javafx.collections.ObservableListBase;
+
+/**
+ * JavaFX view of the parts or the products of an {@link InventoryCore}, used as the items of a TableView
+ *
+ * The view turns every batch of changes made to inventory into a single change notification, so a table is
+ * refreshed once however many items a batch added, replaced or removed. The view cannot be changed directly;
+ * changes go through the inventory.
+ *
+ * A view made without an owner thread reads the inventory list itself, so inventory must only be changed on the
+ * JavaFX Application Thread. It reads the list a page at a time, together with the next page in the direction the
+ * table is scrolling, and keeps the pages used last, so a table only holds the items near the rows it shows and
+ * redrawing a row does not create its item again. A view made with one keeps its own copy of the list, which only
+ * that thread changes:
+ * other threads hand their changes over, and the owner applies every change waiting at once, so any number of
+ * threads may change inventory while a table shows it.
+ *
+ * @param <E> the type of item in the list
+ * @author Long Tran
+ */
+public class ObservableInventoryList<E> extends ObservableListBase<E>
+        implements InventoryListener<E>, RandomAccess {
+    /**
+     * The items shown, the inventory list itself or the owner thread's copy of it
+     */
+    private final List<E> items;
+
+    /**
+     * Runs tasks on the thread owning the copy, or null if the view reads the inventory list itself
+     */
+    private final Executor owner;
+
+    /**
+     * The changes made by other threads that the owner has not applied yet, in the order they were made
+     */
+    private final Queue<InventoryChange<E>> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether the owner has been asked to apply the pending changes and has not started yet
+     */
+    private final AtomicBoolean applyScheduled = new AtomicBoolean();
+
+    /**
+     * The number of items in a page
+     */
+    private static final int PAGE_SIZE = 256;
+
+    /**
+     * The number of pages kept
+     */
+    private static final int PAGE_COUNT = 16;
+
+    /**
+     * The pages read from the inventory list, by page number, least recently used first. Pages are dropped whenever
+     * items are added, replaced or removed, since the items may have moved.
+     */
+    private final Map<Integer, Object[]> pages = new LinkedHashMap<Integer, Object[]>(PAGE_COUNT * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+            return size() > PAGE_COUNT;
+        }
+    };
+
+    /**
+     * The page read last, used to tell which way the table is scrolling
+     */
+    private int lastPage = -1;
+
+    /**
+     * @param items the inventory list to be viewed
+     */
+    public ObservableInventoryList(List<E> items) {
+        this.items = items;
+        this.owner = null;
+    }
+
+    /**
+     * Copies the inventory list, which must not change until the view is added as a listener, such as by doing
+     * both inside {@link InventoryCore#read}
+     *
+     * @param items the inventory list to be viewed
+     * @param owner runs tasks on the thread the view belongs to, such as Platform::runLater
+     */
+    public ObservableInventoryList(List<E> items, Executor owner) {
+        this.items = new ArrayList<>(items);
+        this.owner = owner;
+    }
+
+    @Override
+    public void onChanged(InventoryChange<E> change) {
+        if (change.isEmpty()) {
+            return;
+        }
+        if (owner == null) {
+            apply(Collections.singletonList(change));
+            return;
+        }
+        pending.add(change);
+        if (applyScheduled.compareAndSet(false, true)) {
+            owner.execute(this::applyPending);
+        }
+    }
+
+    /**
+     * Applies every pending change on the owner thread
+     */
+    private void applyPending() {
+        applyScheduled.set(false);
+        List<InventoryChange<E>> changes = new ArrayList<>();
+        for (InventoryChange<E> change = pending.poll(); change != null; change = pending.poll()) {
+            changes.add(change);
+        }
+        if (!changes.isEmpty()) {
+            apply(changes);
+        }
+    }
+
+    /**
+     * Reports changes as one notification, first changing the copy if there is one
+     *
+     * @param changes the changes in the order they were made
+     */
+    private void apply(List<InventoryChange<E>> changes) {
+        //parts read from inventory are views, so an updated item is found by equality rather than identity
+        Set<E> updated = new HashSet<>();
+        beginChange();
+        try {
+            for (InventoryChange<E> change : changes) {
+                if (!change.getSteps().isEmpty()) {
+                    pages.clear();
+                }
+                for (InventoryChange.Step<E> step : change.getSteps()) {
+                    int from = step.getFrom();
+                    int to = from + step.getAdded().size();
+                    if (owner != null) {
+                        items.subList(from, from + step.getRemoved().size()).clear();
+                        items.addAll(from, step.getAdded());
+                    }
+                    if (step.getRemoved().isEmpty()) {
+                        nextAdd(from, to);
+                    } else if (step.getAdded().isEmpty()) {
+                        nextRemove(from, step.getRemoved());
+                    } else {
+                        nextReplace(from, to, step.getRemoved());
+                    }
+                }
+                updated.addAll(change.getUpdated());
+            }
+            if (owner == null) {
+                for (E item : updated) {
+                    int index = items.indexOf(item);
+                    if (index >= 0) {
+                        nextUpdate(index);
+                    }
+                }
+            } else if (!updated.isEmpty()) {
+                //one pass finds every updated item however many were adjusted since the last notification
+                for (int i = 0; i < items.size(); i++) {
+                    if (updated.contains(items.get(i))) {
+                        nextUpdate(i);
+                    }
+                }
+            }
+        } finally {
+            endChange();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (owner != null) {
+            return items.get(index);
+        }
+        if (index < 0 || index >= items.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + items.size());
+        }
+        int number = index / PAGE_SIZE;
+        Object[] page = pages.get(number);
+        if (page == null) {
+            int ahead = number >= lastPage ? number + 1 : number - 1;
+            if (ahead >= 0 && ahead * PAGE_SIZE < items.size() && !pages.containsKey(ahead)) {
+                pages.put(ahead, readPage(ahead));
+            }
+            page = readPage(number);
+            pages.put(number, page);
+        }
+        lastPage = number;
+        return (E) page[index - number * PAGE_SIZE];
+    }
+
+    /**
+     * @param number the number of a page
+     * @return the items of the page
+     */
+    private Object[] readPage(int number) {
+        int from = number * PAGE_SIZE;
+        return items.subList(from, Math.min(from + PAGE_SIZE, items.size())).toArray();
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return items.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return items.lastIndexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return items.contains(o);
+    }
+}
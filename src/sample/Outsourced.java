@@ -32,7 +32,11 @@ public class Outsourced extends Part{
      *
      * @param companyName the name of the company of the outsourced part*/
     public void setCompanyName(String companyName){
-        this.companyName = companyName;
+        if (getColumns() == null) {
+            this.companyName = companyName;
+        } else {
+            getColumns().setCompanyName(getSlot(), companyName);
+        }
     }
 
     /**
@@ -40,6 +44,12 @@ public class Outsourced extends Part{
      *
      * @return the company name*/
     public String getCompanyName(){
-        return companyName;
+        return getColumns() == null ? companyName : getColumns().getCompanyName(getSlot());
+    }
+
+    @Override
+    void detach(Part last) {
+        super.detach(last);
+        companyName = ((Outsourced) last).companyName;
     }
 }
@@ -2,17 +2,66 @@
 * Supplied class Part.java 
  */
 package sample;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
  *
  * @author Long Tran
  */
 public abstract class Part {
+    /**
+     * Returned by {@link #adjustStock} when the stock was left unchanged
+     */
+    public static final long NOT_ADJUSTED = Long.MIN_VALUE;
+
+    /**
+     * Compares and sets the stock, so stock can be adjusted from many threads without a lock
+     */
+    private static final VarHandle STOCK;
+
+    static {
+        try {
+            STOCK = MethodHandles.lookup().findVarHandle(Part.class, "stock", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private int id;
     private String name;
     private double price;
-    private int stock;
+    private volatile int stock;
     private int min;
     private int max;    
+
+    /**
+     * The columns holding this part's values once it is in inventory, or null while the fields above hold them
+     */
+    private PartColumns columns;
+
+    /**
+     * The slot of this part in its columns
+     */
+    private int slot;
+
+    /**
+     * The era of reclamations of the columns this view was made or last read in, or null if this is not a view
+     */
+    private PartColumns.Era era;
+
+    /**
+     * The copy of this part's last values held by the era its slot was reclaimed in, shared by every view of the
+     * part, or null if this part has never been a view whose slot was reclaimed
+     */
+    private Part lastValues;
+
+    /**
+     * The hash code of this part while it is a view, kept once it stops being one so it can stay a map key
+     */
+    private int viewHash;
+
     public Part(int id, String name, double price, int stock, int min, int max) {
         this.id = id;
         this.name = name;
@@ -26,84 +75,234 @@ public abstract class Part {
      * @return the id
      */
     public int getId() {
-        return id;
+        PartColumns bound = getColumns();
+        return bound == null ? id : bound.getId(slot);
     }
 
     /**
      * @param id the id to set
      */
     public void setId(int id) {
-        this.id = id;
+        PartColumns bound = getColumns();
+        if (bound == null) {
+            this.id = id;
+        } else {
+            bound.setId(slot, id);
+        }
     }
 
     /**
      * @return the name
      */
     public String getName() {
-        return name;
+        PartColumns bound = getColumns();
+        return bound == null ? name : bound.getName(slot);
     }
 
     /**
      * @param name the name to set
      */
     public void setName(String name) {
-        this.name = name;
+        PartColumns bound = getColumns();
+        if (bound == null) {
+            this.name = name;
+        } else {
+            bound.setName(slot, name);
+        }
     }
 
     /**
      * @return the price
      */
     public double getPrice() {
-        return price;
+        PartColumns bound = getColumns();
+        return bound == null ? price : bound.getPrice(slot);
     }
 
     /**
      * @param price the price to set
      */
     public void setPrice(double price) {
-        this.price = price;
+        PartColumns bound = getColumns();
+        if (bound == null) {
+            this.price = price;
+        } else {
+            bound.setPrice(slot, price);
+        }
     }
     
     /**
      * @return the stock
      */
     public int getStock() {
-        return stock;
+        PartColumns bound = getColumns();
+        return bound == null ? stock : bound.getStock(slot);
     }
 
     /**
      * @param stock the stock to set
      */
     public void setStock(int stock) {
-        this.stock = stock;
+        PartColumns bound = getColumns();
+        if (bound == null) {
+            this.stock = stock;
+        } else {
+            bound.setStock(slot, stock);
+        }
+    }
+
+    /**
+     * Adds to the stock atomically, retrying if another thread changed it meanwhile
+     *
+     * @param delta the amount added, or taken away if negative
+     * @return the stock this adjustment changed, which is now that plus delta, or {@link #NOT_ADJUSTED} if the
+     * stock was left unchanged because it would end up below min or above max
+     */
+    public long adjustStock(int delta) {
+        PartColumns bound = getColumns();
+        if (bound != null) {
+            return bound.adjustStock(slot, delta);
+        }
+        while (true) {
+            int current = stock;
+            long adjusted = (long) current + delta;
+            if (adjusted < min || adjusted > max) {
+                return NOT_ADJUSTED;
+            }
+            if (STOCK.compareAndSet(this, current, (int) adjusted)) {
+                return current;
+            }
+        }
     }
 
     /**
      * @return the min
      */
     public int getMin() {
-        return min;
+        PartColumns bound = getColumns();
+        return bound == null ? min : bound.getMin(slot);
     }
 
     /**
      * @param min the min to set
      */
     public void setMin(int min) {
-        this.min = min;
+        PartColumns bound = getColumns();
+        if (bound == null) {
+            this.min = min;
+        } else {
+            bound.setMin(slot, min);
+        }
     }
 
     /**
      * @return the max
      */
     public int getMax() {
-        return max;
+        PartColumns bound = getColumns();
+        return bound == null ? max : bound.getMax(slot);
     }
 
     /**
      * @param max the max to set
      */
     public void setMax(int max) {
-        this.max = max;
+        PartColumns bound = getColumns();
+        if (bound == null) {
+            this.max = max;
+        } else {
+            bound.setMax(slot, max);
+        }
+    }
+
+    /**
+     * Makes this part a view of a slot of part columns, which hold its values from then on
+     *
+     * @param columns the columns holding the part
+     * @param slot the slot of the part
+     */
+    void bind(PartColumns columns, int slot) {
+        this.columns = columns;
+        this.slot = slot;
+        this.era = columns.era();
+        this.lastValues = null;
+        this.viewHash = 31 * System.identityHashCode(columns) + slot;
+    }
+
+    /**
+     * Checks whether the slot of this view has been reclaimed since it was last read, in which case the view is
+     * given the values its part last had and stops being a view
+     *
+     * @return the columns holding this part's values, or null if it is not in inventory
+     */
+    PartColumns getColumns() {
+        PartColumns.Era current = era;
+        if (current == null || current.next() == null) {
+            return columns;
+        }
+        for (PartColumns.Era next = current.next(); next != null; next = current.next()) {
+            Part last = current.reclaimed(slot);
+            if (last != null) {
+                detach(last);
+                return null;
+            }
+            current = next;
+        }
+        era = current;
+        return columns;
+    }
+
+    /**
+     * Stops this part being a view, holding the given part's values itself from then on
+     *
+     * @param last a part holding its values itself
+     */
+    void detach(Part last) {
+        columns = null;
+        era = null;
+        lastValues = last;
+        id = last.id;
+        name = last.name;
+        price = last.price;
+        stock = last.stock;
+        min = last.min;
+        max = last.max;
+    }
+
+    /**
+     * @return the slot of this part in its columns
+     */
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Parts in inventory are views created as they are read, so two views of the same slot are the same part. Views
+     * whose slot was reclaimed stay equal to each other, since they share the copy of their part's last values,
+     * and keep their hash code, so they are still found as map keys. Any other part is only equal to itself.
+     *
+     * @param o the object to be compared
+     * @return if the object is the same part
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Part)) {
+            return false;
+        }
+        Part other = (Part) o;
+        PartColumns bound = getColumns();
+        PartColumns otherBound = other.getColumns();
+        if (bound != null) {
+            return otherBound == bound && other.slot == slot;
+        }
+        return lastValues != null && otherBound == null && other.lastValues == lastValues;
+    }
+
+    @Override
+    public int hashCode() {
+        return columns != null || lastValues != null ? viewHash : System.identityHashCode(this);
     }
-    
 }
\ No newline at end of file
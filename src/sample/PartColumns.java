@@ -0,0 +1,818 @@
+package sample;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Column-oriented storage of parts, holding each field of every part in a primitive array rather than in a Part
+ * object per part
+ *
+ * Every part added gets a slot, and the Part objects of inventory are views of their slot that hold no values of
+ * their own. Views are created as parts are read and are not kept, so a part costs about 40 bytes of columns plus
+ * its name, and scanning one field of many parts reads consecutive memory. Company names are stored once in a
+ * dictionary and referred to by code.
+ *
+ * The rows of a snapshot can be the first slots, in which case their names are read from the snapshot whenever
+ * they are needed rather than kept.
+ *
+ * Slots of deleted or replaced parts are released, and once enough have been released they are reclaimed for new
+ * parts, along with the arena space of their names. Views remember the era of reclamations they were made in, and
+ * a view whose slot has since been reclaimed is given a copy of its part's last values held by that era, so it
+ * keeps showing them rather than the part now in the slot. An era is dropped by the garbage collector once no view
+ * made in it or before it is left. Snapshot rows are not reclaimed, so their names can still be read from the
+ * snapshot.
+ *
+ * Columns are allocated in chunks that never move, so adding parts never loses a change made to another part at
+ * the same time. Slots are added while holding the inventory write lock.
+ *
+ * Chunks are either Java arrays or, for catalogs of tens of millions of parts, direct buffers outside the Java
+ * heap holding a fixed-width record per slot, with names kept in a {@link StringArena}. Off-heap columns leave the
+ * garbage collector nothing to scan but the slot lists, so heap size and pause times do not grow with the
+ * catalog. They are used when the inventory.offHeap system property is true.
+ *
+ * @author Long Tran
+ */
+public class PartColumns {
+    /**
+     * The number of slots in a chunk is 2 to this power
+     */
+    private static final int CHUNK_BITS = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final byte IN_HOUSE = 0;
+    private static final byte OUTSOURCED = 1;
+
+    /**
+     * Set in the kind of a slot once its part has been deleted or replaced
+     */
+    private static final byte RELEASED = 2;
+
+    /**
+     * The int fields of a slot, as passed to {@link Chunk#getInt} and {@link Chunk#setInt}
+     */
+    private static final int ID = 0;
+    private static final int STOCK = 1;
+    private static final int MIN = 2;
+    private static final int MAX = 3;
+
+    /**
+     * The machine ID of in-house parts, and the company code of outsourced parts
+     */
+    private static final int EXTRA = 4;
+
+    /**
+     * The fields of CHUNK_SIZE consecutive slots, indexed by the low bits of the slot
+     */
+    private abstract static class Chunk {
+        abstract byte getKind(int i);
+
+        abstract void setKind(int i, byte kind);
+
+        abstract int getInt(int field, int i);
+
+        abstract void setInt(int field, int i, int value);
+
+        abstract double getPrice(int i);
+
+        abstract void setPrice(int i, double price);
+
+        abstract int getStockVolatile(int i);
+
+        abstract void setStockVolatile(int i, int stock);
+
+        abstract boolean compareAndSetStock(int i, int expected, int stock);
+
+        /**
+         * @param i the index of the slot in the chunk
+         * @return the name, null for snapshot rows whose names are read from the snapshot
+         */
+        abstract String getName(int i);
+
+        abstract void setName(int i, String name);
+
+        /**
+         * Moves the name of a slot to the arena block being filled if it is in one of the given blocks
+         *
+         * @param i the index of the slot in the chunk
+         * @param sparse whether each block of the arena is to be emptied
+         */
+        abstract void moveName(int i, boolean[] sparse);
+    }
+
+    /**
+     * Chunk holding each field in a Java array
+     */
+    private static final class HeapChunk extends Chunk {
+        /**
+         * Compares and sets elements of the stock column
+         */
+        private static final VarHandle ELEMENT = MethodHandles.arrayElementVarHandle(int[].class);
+
+        private final byte[] kind = new byte[CHUNK_SIZE];
+        private final double[] price = new double[CHUNK_SIZE];
+        private final String[] name = new String[CHUNK_SIZE];
+
+        /**
+         * The int fields, one column per field
+         */
+        private final int[][] ints = new int[EXTRA + 1][CHUNK_SIZE];
+
+        @Override
+        byte getKind(int i) {
+            return kind[i];
+        }
+
+        @Override
+        void setKind(int i, byte kind) {
+            this.kind[i] = kind;
+        }
+
+        @Override
+        int getInt(int field, int i) {
+            return ints[field][i];
+        }
+
+        @Override
+        void setInt(int field, int i, int value) {
+            ints[field][i] = value;
+        }
+
+        @Override
+        double getPrice(int i) {
+            return price[i];
+        }
+
+        @Override
+        void setPrice(int i, double price) {
+            this.price[i] = price;
+        }
+
+        @Override
+        int getStockVolatile(int i) {
+            return (int) ELEMENT.getVolatile(ints[STOCK], i);
+        }
+
+        @Override
+        void setStockVolatile(int i, int stock) {
+            ELEMENT.setVolatile(ints[STOCK], i, stock);
+        }
+
+        @Override
+        boolean compareAndSetStock(int i, int expected, int stock) {
+            return ELEMENT.compareAndSet(ints[STOCK], i, expected, stock);
+        }
+
+        @Override
+        String getName(int i) {
+            return name[i];
+        }
+
+        @Override
+        void setName(int i, String name) {
+            this.name[i] = name;
+        }
+
+        @Override
+        void moveName(int i, boolean[] sparse) {
+        }
+    }
+
+    /**
+     * Chunk holding a fixed-width record per slot in a direct buffer, with names in a string arena
+     *
+     * A record is the kind, the five int fields, the price at the next 8-byte boundary, and the arena reference
+     * and byte length of the name, where a length of -1 means the name is read from the snapshot. Renaming a part
+     * frees its old name in the arena.
+     */
+    private static final class DirectChunk extends Chunk {
+        private static final int RECORD = 48;
+        private static final int KIND = 0;
+        private static final int INTS = 4;
+        private static final int PRICE = 24;
+        private static final int NAME_REF = 32;
+        private static final int NAME_LENGTH = 40;
+
+        /**
+         * Compares and sets the stock field; records are 4-byte aligned as direct buffers are at least 8-byte aligned
+         */
+        private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class,
+                ByteOrder.nativeOrder());
+
+        private final ByteBuffer records = ByteBuffer.allocateDirect(CHUNK_SIZE * RECORD)
+                .order(ByteOrder.nativeOrder());
+
+        private final StringArena names;
+
+        /**
+         * @param names the arena holding the names
+         */
+        DirectChunk(StringArena names) {
+            this.names = names;
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                records.putInt(i * RECORD + NAME_LENGTH, -1);
+            }
+        }
+
+        @Override
+        byte getKind(int i) {
+            return records.get(i * RECORD + KIND);
+        }
+
+        @Override
+        void setKind(int i, byte kind) {
+            records.put(i * RECORD + KIND, kind);
+        }
+
+        @Override
+        int getInt(int field, int i) {
+            return records.getInt(i * RECORD + INTS + field * 4);
+        }
+
+        @Override
+        void setInt(int field, int i, int value) {
+            records.putInt(i * RECORD + INTS + field * 4, value);
+        }
+
+        @Override
+        double getPrice(int i) {
+            return records.getDouble(i * RECORD + PRICE);
+        }
+
+        @Override
+        void setPrice(int i, double price) {
+            records.putDouble(i * RECORD + PRICE, price);
+        }
+
+        @Override
+        int getStockVolatile(int i) {
+            return (int) INT.getVolatile(records, i * RECORD + INTS + STOCK * 4);
+        }
+
+        @Override
+        void setStockVolatile(int i, int stock) {
+            INT.setVolatile(records, i * RECORD + INTS + STOCK * 4, stock);
+        }
+
+        @Override
+        boolean compareAndSetStock(int i, int expected, int stock) {
+            return INT.compareAndSet(records, i * RECORD + INTS + STOCK * 4, expected, stock);
+        }
+
+        @Override
+        String getName(int i) {
+            int length = records.getInt(i * RECORD + NAME_LENGTH);
+            return length < 0 ? null : names.get(records.getLong(i * RECORD + NAME_REF), length);
+        }
+
+        @Override
+        void setName(int i, String name) {
+            int length = records.getInt(i * RECORD + NAME_LENGTH);
+            if (length >= 0) {
+                names.free(records.getLong(i * RECORD + NAME_REF), length);
+            }
+            if (name == null) {
+                records.putInt(i * RECORD + NAME_LENGTH, -1);
+                return;
+            }
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            records.putLong(i * RECORD + NAME_REF, names.add(bytes));
+            records.putInt(i * RECORD + NAME_LENGTH, bytes.length);
+        }
+
+        @Override
+        void moveName(int i, boolean[] sparse) {
+            long ref = records.getLong(i * RECORD + NAME_REF);
+            if (records.getInt(i * RECORD + NAME_LENGTH) >= 0 && sparse[StringArena.block(ref)]) {
+                setName(i, getName(i));
+            }
+        }
+    }
+
+    /**
+     * The slots released between two reclamations. Each view holds the era it was made in, and the eras after it
+     * hold copies of the parts whose slots were reclaimed at their ends.
+     */
+    static final class Era {
+        /**
+         * The era after this one, or null while this is the current era
+         */
+        private volatile Era next;
+
+        /**
+         * Copies of the parts whose slots were reclaimed at the end of this era, by slot
+         */
+        private IntMap<Part> reclaimed;
+
+        /**
+         * @return the era after this one, or null while this is the current era
+         */
+        Era next() {
+            return next;
+        }
+
+        /**
+         * @param slot a slot
+         * @return a copy of the part that was in the slot if it was reclaimed at the end of this era, otherwise null
+         */
+        Part reclaimed(int slot) {
+            return reclaimed.get(slot);
+        }
+    }
+
+    /**
+     * The chunks holding every slot, followed by room for more. The array is replaced when it grows, but the chunks
+     * are never copied.
+     */
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    /**
+     * The number of slots used
+     */
+    private int size;
+
+    /**
+     * The era views made now are in
+     */
+    private volatile Era era = new Era();
+
+    /**
+     * The slots released since the last reclamation, other than snapshot rows
+     */
+    private int[] released = new int[16];
+    private int releasedCount;
+
+    /**
+     * The reclaimed slots not yet given to new parts
+     */
+    private int[] free = new int[0];
+    private int freeCount;
+
+    /**
+     * Whether chunks are allocated outside the Java heap
+     */
+    private final boolean offHeap;
+
+    /**
+     * Holds the names of off-heap chunks, or null if chunks are on the heap
+     */
+    private final StringArena names;
+
+    /**
+     * The snapshot whose rows are the first slots, or null if there is none
+     */
+    private final SnapshotFile base;
+
+    /**
+     * The number of slots taken by snapshot rows
+     */
+    private final int baseRows;
+
+    /**
+     * The slot of every part not found through the snapshot's ID column, by ID
+     */
+    private final IntIntMap slotsById = new IntIntMap();
+
+    /**
+     * The company names by code
+     */
+    private final List<String> companies = new ArrayList<>();
+
+    /**
+     * The code of every company name
+     */
+    private final HashMap<String, Integer> companyCodes = new HashMap<>();
+
+    /**
+     * The highest ID any slot has had
+     */
+    private int maxId;
+
+    /**
+     * Creates empty columns, off the heap if the inventory.offHeap system property is true
+     */
+    public PartColumns() {
+        this(null);
+    }
+
+    /**
+     * Copies every field of the snapshot's parts into the columns except their names, off the heap if the
+     * inventory.offHeap system property is true
+     *
+     * @param base the snapshot whose rows become the first slots, or null to start empty
+     */
+    public PartColumns(SnapshotFile base) {
+        this(base, Boolean.getBoolean("inventory.offHeap"));
+    }
+
+    /**
+     * Copies every field of the snapshot's parts into the columns except their names
+     *
+     * @param base the snapshot whose rows become the first slots, or null to start empty
+     * @param offHeap whether the columns are kept outside the Java heap
+     */
+    public PartColumns(SnapshotFile base, boolean offHeap) {
+        this.offHeap = offHeap;
+        this.names = offHeap ? new StringArena() : null;
+        this.base = base;
+        baseRows = base == null ? 0 : base.getPartCount();
+        if (base == null) {
+            return;
+        }
+        //codes are kept as they are in the snapshot so the extra column can be copied as is
+        for (int code = 0; code < base.getCompanyCount(); code++) {
+            String company = base.companyName(code);
+            companies.add(company);
+            companyCodes.putIfAbsent(company, code);
+        }
+        for (int row = 0; row < baseRows; row++) {
+            Chunk chunk = chunkFor(row);
+            int i = row & CHUNK_MASK;
+            chunk.setKind(i, base.isOutsourced(row) ? OUTSOURCED : IN_HOUSE);
+            chunk.setInt(ID, i, base.partId(row));
+            chunk.setPrice(i, base.partPrice(row));
+            chunk.setInt(STOCK, i, base.partStock(row));
+            chunk.setInt(MIN, i, base.partMin(row));
+            chunk.setInt(MAX, i, base.partMax(row));
+            chunk.setInt(EXTRA, i, base.partExtra(row));
+        }
+        size = baseRows;
+        maxId = base.getMaxPartId();
+    }
+
+    /**
+     * Copies a part into a new slot and makes the part a view of the slot
+     *
+     * @param part the part to be added
+     * @return the slot of the part
+     */
+    public int add(Part part) {
+        int slot = freeCount > 0 ? free[--freeCount] : size++;
+        Chunk chunk = chunkFor(slot);
+        int i = slot & CHUNK_MASK;
+        chunk.setInt(ID, i, part.getId());
+        chunk.setName(i, part.getName());
+        chunk.setPrice(i, part.getPrice());
+        chunk.setInt(STOCK, i, part.getStock());
+        chunk.setInt(MIN, i, part.getMin());
+        chunk.setInt(MAX, i, part.getMax());
+        if (part instanceof Outsourced) {
+            chunk.setKind(i, OUTSOURCED);
+            chunk.setInt(EXTRA, i, companyCode(((Outsourced) part).getCompanyName()));
+        } else {
+            chunk.setKind(i, IN_HOUSE);
+            chunk.setInt(EXTRA, i, ((InHouse) part).getMachineId());
+        }
+        slotsById.put(part.getId(), slot);
+        maxId = Math.max(maxId, part.getId());
+        part.bind(this, slot);
+        return slot;
+    }
+
+    /**
+     * @param slot a slot of these columns
+     * @return a new view of the slot's part
+     */
+    public Part view(int slot) {
+        Part part;
+        if (isOutsourced(slot)) {
+            part = new Outsourced(0, null, 0, 0, 0, 0, null);
+        } else {
+            part = new InHouse(0, null, 0, 0, 0, 0, 0);
+        }
+        part.bind(this, slot);
+        return part;
+    }
+
+    /**
+     * Marks a slot as no longer in inventory, so its ID no longer finds it, and reclaims the released slots once
+     * there are a quarter as many as slots added
+     *
+     * @param slot the slot of a deleted or replaced part
+     */
+    public void release(int slot) {
+        Chunk chunk = chunk(slot);
+        int i = slot & CHUNK_MASK;
+        if ((chunk.getKind(i) & RELEASED) != 0) {
+            return;
+        }
+        chunk.setKind(i, (byte) (chunk.getKind(i) | RELEASED));
+        if (slotsById.get(chunk.getInt(ID, i)) == slot) {
+            slotsById.remove(chunk.getInt(ID, i));
+        }
+        if (slot < baseRows) {
+            return;
+        }
+        if (releasedCount == released.length) {
+            released = Arrays.copyOf(released, releasedCount * 2);
+        }
+        released[releasedCount++] = slot;
+        if (releasedCount >= Math.max(CHUNK_SIZE, (size - baseRows) / 4)) {
+            reclaim();
+        }
+    }
+
+    /**
+     * Ends the current era, keeping a copy of every part released in it for the views made so far, and frees the
+     * slots and names of those parts for new parts. Arena blocks at most half full are emptied by moving the names
+     * left in them, so the arena shrinks along with the columns.
+     */
+    private void reclaim() {
+        IntMap<Part> last = new IntMap<>(releasedCount);
+        for (int n = 0; n < releasedCount; n++) {
+            int slot = released[n];
+            last.put(slot, copy(slot));
+            chunk(slot).setName(slot & CHUNK_MASK, null);
+        }
+        if (free.length < freeCount + releasedCount) {
+            free = Arrays.copyOf(free, Math.max(freeCount + releasedCount, free.length * 2));
+        }
+        System.arraycopy(released, 0, free, freeCount, releasedCount);
+        freeCount += releasedCount;
+        releasedCount = 0;
+        if (offHeap) {
+            boolean[] sparse = names.sparseBlocks();
+            for (int slot = 0; slot < size; slot++) {
+                chunk(slot).moveName(slot & CHUNK_MASK, sparse);
+            }
+            names.dropEmptyBlocks();
+        }
+        Era ended = era;
+        ended.reclaimed = last;
+        Era next = new Era();
+        era = next;
+        ended.next = next;
+    }
+
+    /**
+     * @param slot a slot
+     * @return a part holding the slot's values itself
+     */
+    private Part copy(int slot) {
+        if (isOutsourced(slot)) {
+            return new Outsourced(getId(slot), getName(slot), getPrice(slot), getStock(slot), getMin(slot),
+                    getMax(slot), getCompanyName(slot));
+        }
+        return new InHouse(getId(slot), getName(slot), getPrice(slot), getStock(slot), getMin(slot), getMax(slot),
+                getMachineId(slot));
+    }
+
+    /**
+     * @return the era views made now are in
+     */
+    Era era() {
+        return era;
+    }
+
+    /**
+     * @param id the ID of a part
+     * @return the slot of the part with the ID that is in inventory, or -1 if there is none
+     */
+    public int find(int id) {
+        int slot = slotsById.get(id);
+        if (slot < 0 && base != null) {
+            slot = base.findPartRow(id);
+        }
+        if (slot < 0) {
+            return -1;
+        }
+        Chunk chunk = chunk(slot);
+        int i = slot & CHUNK_MASK;
+        //a snapshot row may have been released or given another ID since the snapshot was written
+        return (chunk.getKind(i) & RELEASED) == 0 && chunk.getInt(ID, i) == id ? slot : -1;
+    }
+
+    /**
+     * @return the number of slots used, including released and reclaimed ones
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the highest ID any part added has had
+     */
+    public int getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * @param slot a slot
+     * @return if the part is outsourced rather than in-house
+     */
+    public boolean isOutsourced(int slot) {
+        return (chunk(slot).getKind(slot & CHUNK_MASK) & OUTSOURCED) != 0;
+    }
+
+    /**
+     * @param slot a slot
+     * @return the ID
+     */
+    public int getId(int slot) {
+        return chunk(slot).getInt(ID, slot & CHUNK_MASK);
+    }
+
+    /**
+     * @param slot a slot
+     * @param id the new ID, which also finds the slot from now on
+     */
+    public void setId(int slot, int id) {
+        Chunk chunk = chunk(slot);
+        int i = slot & CHUNK_MASK;
+        if (slotsById.get(chunk.getInt(ID, i)) == slot) {
+            slotsById.remove(chunk.getInt(ID, i));
+        }
+        chunk.setInt(ID, i, id);
+        maxId = Math.max(maxId, id);
+        if ((chunk.getKind(i) & RELEASED) == 0) {
+            slotsById.put(id, slot);
+        }
+    }
+
+    /**
+     * @param slot a slot
+     * @return the name
+     */
+    public String getName(int slot) {
+        String name = chunk(slot).getName(slot & CHUNK_MASK);
+        return name == null && slot < baseRows ? base.partName(slot) : name;
+    }
+
+    /**
+     * @param slot a slot
+     * @param name the new name
+     */
+    public void setName(int slot, String name) {
+        chunk(slot).setName(slot & CHUNK_MASK, name);
+    }
+
+    /**
+     * @param slot a slot
+     * @return the price
+     */
+    public double getPrice(int slot) {
+        return chunk(slot).getPrice(slot & CHUNK_MASK);
+    }
+
+    /**
+     * @param slot a slot
+     * @param price the new price
+     */
+    public void setPrice(int slot, double price) {
+        chunk(slot).setPrice(slot & CHUNK_MASK, price);
+    }
+
+    /**
+     * @param slot a slot
+     * @return the stock
+     */
+    public int getStock(int slot) {
+        return chunk(slot).getStockVolatile(slot & CHUNK_MASK);
+    }
+
+    /**
+     * @param slot a slot
+     * @param stock the new stock
+     */
+    public void setStock(int slot, int stock) {
+        chunk(slot).setStockVolatile(slot & CHUNK_MASK, stock);
+    }
+
+    /**
+     * Adds to the stock of a slot atomically, retrying if another thread changed it meanwhile
+     *
+     * @param slot a slot
+     * @param delta the amount added, or taken away if negative
+     * @return the stock this adjustment changed, which is now that plus delta, or {@link Part#NOT_ADJUSTED} if the
+     * stock was left unchanged because it would end up below min or above max
+     */
+    public long adjustStock(int slot, int delta) {
+        Chunk chunk = chunk(slot);
+        int i = slot & CHUNK_MASK;
+        while (true) {
+            int current = chunk.getStockVolatile(i);
+            long adjusted = (long) current + delta;
+            if (adjusted < chunk.getInt(MIN, i) || adjusted > chunk.getInt(MAX, i)) {
+                return Part.NOT_ADJUSTED;
+            }
+            if (chunk.compareAndSetStock(i, current, (int) adjusted)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * @param slot a slot
+     * @return the min
+     */
+    public int getMin(int slot) {
+        return chunk(slot).getInt(MIN, slot & CHUNK_MASK);
+    }
+
+    /**
+     * @param slot a slot
+     * @param min the new min
+     */
+    public void setMin(int slot, int min) {
+        chunk(slot).setInt(MIN, slot & CHUNK_MASK, min);
+    }
+
+    /**
+     * @param slot a slot
+     * @return the max
+     */
+    public int getMax(int slot) {
+        return chunk(slot).getInt(MAX, slot & CHUNK_MASK);
+    }
+
+    /**
+     * @param slot a slot
+     * @param max the new max
+     */
+    public void setMax(int slot, int max) {
+        chunk(slot).setInt(MAX, slot & CHUNK_MASK, max);
+    }
+
+    /**
+     * @param slot the slot of an in-house part
+     * @return the machine ID
+     */
+    public int getMachineId(int slot) {
+        return chunk(slot).getInt(EXTRA, slot & CHUNK_MASK);
+    }
+
+    /**
+     * @param slot the slot of an in-house part
+     * @param machineId the new machine ID
+     */
+    public void setMachineId(int slot, int machineId) {
+        chunk(slot).setInt(EXTRA, slot & CHUNK_MASK, machineId);
+    }
+
+    /**
+     * @param slot the slot of an outsourced part
+     * @return the company name
+     */
+    public synchronized String getCompanyName(int slot) {
+        int code = chunk(slot).getInt(EXTRA, slot & CHUNK_MASK);
+        return code < 0 ? null : companies.get(code);
+    }
+
+    /**
+     * @param slot the slot of an outsourced part
+     * @param companyName the new company name
+     */
+    public void setCompanyName(int slot, String companyName) {
+        chunk(slot).setInt(EXTRA, slot & CHUNK_MASK, companyCode(companyName));
+    }
+
+    /**
+     * @param companyName a company name, or null
+     * @return the code of the name, added to the dictionary if it is new, or -1 for null
+     */
+    private synchronized int companyCode(String companyName) {
+        if (companyName == null) {
+            return -1;
+        }
+        Integer code = companyCodes.get(companyName);
+        if (code == null) {
+            code = companies.size();
+            companies.add(companyName);
+            companyCodes.put(companyName, code);
+        }
+        return code;
+    }
+
+    /**
+     * @param slot a slot in use
+     * @return the chunk holding the slot
+     */
+    private Chunk chunk(int slot) {
+        return chunks[slot >>> CHUNK_BITS];
+    }
+
+    /**
+     * @param slot a slot being filled
+     * @return the chunk holding the slot, allocated if this is its first slot
+     */
+    private Chunk chunkFor(int slot) {
+        int index = slot >>> CHUNK_BITS;
+        Chunk[] current = chunks;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        if (index >= current.length) {
+            current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+        }
+        current[index] = offHeap ? new DirectChunk(names) : new HeapChunk();
+        chunks = current;
+        return current[index];
+    }
+}
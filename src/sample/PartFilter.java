@@ -0,0 +1,202 @@
+package sample;
+
+import java.util.Objects;
+
+/**
+ * Criteria parts are filtered by, such as their type, supplier, stock or price, combined with AND and OR
+ *
+ * Inventory answers a filter from a {@link PartFilterIndex}, joining the bitmap of the parts matching each
+ * criterion rather than testing every part, so a filter combining several criteria costs little more than one.
+ * Filters are immutable; {@link #and} and {@link #or} return new filters.
+ *
+ * @author Long Tran
+ */
+public abstract class PartFilter {
+    /**
+     * @return a filter matching in-house parts
+     */
+    public static PartFilter inHouse() {
+        return new Criterion("in-house") {
+            @Override
+            IntBitmap evaluate(PartFilterIndex index) {
+                return index.inHouse();
+            }
+
+            @Override
+            public boolean test(Part part) {
+                return part instanceof InHouse;
+            }
+        };
+    }
+
+    /**
+     * @return a filter matching outsourced parts
+     */
+    public static PartFilter outsourced() {
+        return new Criterion("outsourced") {
+            @Override
+            IntBitmap evaluate(PartFilterIndex index) {
+                return index.outsourced();
+            }
+
+            @Override
+            public boolean test(Part part) {
+                return part instanceof Outsourced;
+            }
+        };
+    }
+
+    /**
+     * @param companyName the name of a company, ignoring case
+     * @return a filter matching the outsourced parts supplied by the company
+     */
+    public static PartFilter company(String companyName) {
+        String key = PartFilterIndex.companyKey(companyName);
+        return new Criterion("company " + companyName) {
+            @Override
+            IntBitmap evaluate(PartFilterIndex index) {
+                return index.company(key);
+            }
+
+            @Override
+            public boolean test(Part part) {
+                return part instanceof Outsourced
+                        && key.equals(PartFilterIndex.companyKey(((Outsourced) part).getCompanyName()));
+            }
+        };
+    }
+
+    /**
+     * @param machineId the ID of a machine
+     * @return a filter matching the in-house parts made by the machine
+     */
+    public static PartFilter machine(int machineId) {
+        return new Criterion("machine " + machineId) {
+            @Override
+            IntBitmap evaluate(PartFilterIndex index) {
+                return index.machine(machineId);
+            }
+
+            @Override
+            public boolean test(Part part) {
+                return part instanceof InHouse && ((InHouse) part).getMachineId() == machineId;
+            }
+        };
+    }
+
+    /**
+     * @return a filter matching parts whose stock is below their min
+     */
+    public static PartFilter lowStock() {
+        return new Criterion("low stock") {
+            @Override
+            IntBitmap evaluate(PartFilterIndex index) {
+                return index.lowStock();
+            }
+
+            @Override
+            public boolean test(Part part) {
+                return part.getStock() < part.getMin();
+            }
+        };
+    }
+
+    /**
+     * @param min the lowest price matched
+     * @param max the highest price matched
+     * @return a filter matching parts priced from min to max inclusive
+     */
+    public static PartFilter priceBetween(double min, double max) {
+        return new Criterion("price " + min + " to " + max) {
+            @Override
+            IntBitmap evaluate(PartFilterIndex index) {
+                return index.priceBetween(min, max);
+            }
+
+            @Override
+            public boolean test(Part part) {
+                return part.getPrice() >= min && part.getPrice() <= max;
+            }
+        };
+    }
+
+    /**
+     * @param other another filter
+     * @return a filter matching parts matched by both filters
+     */
+    public PartFilter and(PartFilter other) {
+        Objects.requireNonNull(other);
+        PartFilter first = this;
+        return new PartFilter() {
+            @Override
+            IntBitmap evaluate(PartFilterIndex index) {
+                return first.evaluate(index).and(other.evaluate(index));
+            }
+
+            @Override
+            public boolean test(Part part) {
+                return first.test(part) && other.test(part);
+            }
+
+            @Override
+            public String toString() {
+                return "(" + first + " and " + other + ")";
+            }
+        };
+    }
+
+    /**
+     * @param other another filter
+     * @return a filter matching parts matched by either filter
+     */
+    public PartFilter or(PartFilter other) {
+        Objects.requireNonNull(other);
+        PartFilter first = this;
+        return new PartFilter() {
+            @Override
+            IntBitmap evaluate(PartFilterIndex index) {
+                return first.evaluate(index).or(other.evaluate(index));
+            }
+
+            @Override
+            public boolean test(Part part) {
+                return first.test(part) || other.test(part);
+            }
+
+            @Override
+            public String toString() {
+                return "(" + first + " or " + other + ")";
+            }
+        };
+    }
+
+    /**
+     * @param index the index of the parts in inventory
+     * @return the IDs of the parts matched, as a new bitmap the caller may change
+     */
+    abstract IntBitmap evaluate(PartFilterIndex index);
+
+    /**
+     * Tests a single part without the index, such as a part that was just changed
+     *
+     * @param part a part
+     * @return if the filter matches the part
+     */
+    public abstract boolean test(Part part);
+
+    /**
+     * A single criterion, described by its name
+     */
+    private abstract static class Criterion extends PartFilter {
+        private final String description;
+
+        Criterion(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
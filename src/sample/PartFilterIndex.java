@@ -0,0 +1,271 @@
+package sample;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Bitmaps of the IDs of the parts matching each criterion a {@link PartFilter} can name, so a filter is answered by
+ * joining bitmaps rather than testing every part
+ *
+ * Parts are kept by type, by company, by machine and by whether their stock is below their min. Prices are kept in
+ * bands of a sixty-fourth of a power of two each; a price range joins the bands wholly inside it and checks the
+ * prices of the parts in the two bands at its ends. Like {@link PartUsage}, the index is filled the first time it is
+ * needed, and changes reported before then are ignored. A part must be removed before its fields change and added
+ * again after, except for stock changes, which are reported on their own.
+ *
+ * @author Long Tran
+ */
+public class PartFilterIndex {
+    /**
+     * The number of low bits of a price's sortable bits dropped to give its band, keeping the sign, the exponent and
+     * the six highest bits of the fraction
+     */
+    private static final int BAND_SHIFT = 46;
+
+    /**
+     * The IDs of every in-house part
+     */
+    private final IntBitmap inHouse = new IntBitmap();
+
+    /**
+     * The IDs of every outsourced part
+     */
+    private final IntBitmap outsourced = new IntBitmap();
+
+    /**
+     * The IDs of the parts whose stock is below their min
+     */
+    private final IntBitmap lowStock = new IntBitmap();
+
+    /**
+     * The IDs of the outsourced parts by company name in lower case
+     */
+    private final Map<String, IntBitmap> byCompany = new HashMap<>();
+
+    /**
+     * The IDs of the in-house parts by machine ID
+     */
+    private final IntMap<IntBitmap> byMachine = new IntMap<>();
+
+    /**
+     * The IDs of the parts by price band
+     */
+    private final TreeMap<Long, IntBitmap> byPriceBand = new TreeMap<>();
+
+    /**
+     * Gives the price of a part in inventory by ID, used to check the parts in the bands at the ends of a range
+     */
+    private final IntToDoubleFunction price;
+
+    /**
+     * Whether the index has been filled
+     */
+    private volatile boolean built = false;
+
+    /**
+     * @param price gives the price of a part in inventory by ID
+     */
+    public PartFilterIndex(IntToDoubleFunction price) {
+        this.price = price;
+    }
+
+    /**
+     * @return if the index has been filled
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Fills the index unless it already has been. Other threads reporting changes meanwhile wait until it is done.
+     *
+     * @param fill adds every part in inventory
+     */
+    public synchronized void build(Runnable fill) {
+        if (built) {
+            return;
+        }
+        built = true;
+        try {
+            fill.run();
+        } catch (RuntimeException e) {
+            clear();
+            built = false;
+            throw e;
+        }
+    }
+
+    /**
+     * @param part a part joining inventory, or whose fields have just changed
+     */
+    public synchronized void add(Part part) {
+        if (!built) {
+            return;
+        }
+        int id = part.getId();
+        if (part instanceof InHouse) {
+            inHouse.add(id);
+            int machineId = ((InHouse) part).getMachineId();
+            IntBitmap machine = byMachine.get(machineId);
+            if (machine == null) {
+                machine = new IntBitmap();
+                byMachine.put(machineId, machine);
+            }
+            machine.add(id);
+        } else if (part instanceof Outsourced) {
+            outsourced.add(id);
+            byCompany.computeIfAbsent(companyKey(((Outsourced) part).getCompanyName()), k -> new IntBitmap()).add(id);
+        }
+        if (part.getStock() < part.getMin()) {
+            lowStock.add(id);
+        }
+        byPriceBand.computeIfAbsent(band(part.getPrice()), k -> new IntBitmap()).add(id);
+    }
+
+    /**
+     * @param part a part leaving inventory, or whose fields are about to change
+     */
+    public synchronized void remove(Part part) {
+        if (!built) {
+            return;
+        }
+        int id = part.getId();
+        if (part instanceof InHouse) {
+            inHouse.remove(id);
+            int machineId = ((InHouse) part).getMachineId();
+            IntBitmap machine = byMachine.get(machineId);
+            if (machine != null && machine.remove(id) && machine.isEmpty()) {
+                byMachine.remove(machineId);
+            }
+        } else if (part instanceof Outsourced) {
+            outsourced.remove(id);
+            String company = companyKey(((Outsourced) part).getCompanyName());
+            IntBitmap companyIds = byCompany.get(company);
+            if (companyIds != null && companyIds.remove(id) && companyIds.isEmpty()) {
+                byCompany.remove(company);
+            }
+        }
+        lowStock.remove(id);
+        long band = band(part.getPrice());
+        IntBitmap bandIds = byPriceBand.get(band);
+        if (bandIds != null && bandIds.remove(id) && bandIds.isEmpty()) {
+            byPriceBand.remove(band);
+        }
+    }
+
+    /**
+     * Rechecks whether a part's stock is below its min. The stock is read here, so whichever of several threads
+     * adjusting the part reports last leaves the index matching the final stock.
+     *
+     * @param part a part whose stock has been adjusted
+     */
+    public synchronized void stockChanged(Part part) {
+        if (!built) {
+            return;
+        }
+        if (part.getStock() < part.getMin()) {
+            lowStock.add(part.getId());
+        } else {
+            lowStock.remove(part.getId());
+        }
+    }
+
+    /**
+     * @return the IDs of the in-house parts
+     */
+    synchronized IntBitmap inHouse() {
+        return inHouse.copy();
+    }
+
+    /**
+     * @return the IDs of the outsourced parts
+     */
+    synchronized IntBitmap outsourced() {
+        return outsourced.copy();
+    }
+
+    /**
+     * @param company a company name as given by {@link #companyKey}
+     * @return the IDs of the outsourced parts supplied by the company
+     */
+    synchronized IntBitmap company(String company) {
+        IntBitmap ids = byCompany.get(company);
+        return ids == null ? new IntBitmap() : ids.copy();
+    }
+
+    /**
+     * @param machineId the ID of a machine
+     * @return the IDs of the in-house parts made by the machine
+     */
+    synchronized IntBitmap machine(int machineId) {
+        IntBitmap ids = byMachine.get(machineId);
+        return ids == null ? new IntBitmap() : ids.copy();
+    }
+
+    /**
+     * @return the IDs of the parts whose stock is below their min
+     */
+    synchronized IntBitmap lowStock() {
+        return lowStock.copy();
+    }
+
+    /**
+     * @param min the lowest price matched
+     * @param max the highest price matched
+     * @return the IDs of the parts priced from min to max inclusive
+     */
+    synchronized IntBitmap priceBetween(double min, double max) {
+        IntBitmap ids = new IntBitmap();
+        if (!(min <= max)) {
+            return ids;
+        }
+        long first = band(min);
+        long last = band(max);
+        for (Map.Entry<Long, IntBitmap> entry : byPriceBand.subMap(first, true, last, true).entrySet()) {
+            long band = entry.getKey();
+            if (band != first && band != last) {
+                ids.addAll(entry.getValue());
+            } else {
+                entry.getValue().forEach(id -> {
+                    double partPrice = price.applyAsDouble(id);
+                    if (partPrice >= min && partPrice <= max) {
+                        ids.add(id);
+                    }
+                });
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Empties the index
+     */
+    private void clear() {
+        inHouse.clear();
+        outsourced.clear();
+        lowStock.clear();
+        byCompany.clear();
+        byMachine.clear();
+        byPriceBand.clear();
+    }
+
+    /**
+     * @param companyName the name of a company
+     * @return the name the company is kept under, ignoring case
+     */
+    static String companyKey(String companyName) {
+        return companyName == null ? "" : companyName.toLowerCase();
+    }
+
+    /**
+     * @param price a price
+     * @return the band of the price, ordered the same way as prices
+     */
+    private static long band(double price) {
+        //+0.0 so zero has one band, and the bits of negative prices flipped so they order as longs
+        long bits = Double.doubleToLongBits(price + 0.0);
+        return (bits ^ (bits >> 63 & Long.MAX_VALUE)) >> BAND_SHIFT;
+    }
+}
@@ -0,0 +1,213 @@
+package sample;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * List of parts kept in {@link PartColumns}, holding only the slot of the part at every position
+ *
+ * Reading a position creates a new view of its slot, and views of the same slot are equal, so the list does not
+ * keep a Part object for any part. A part added to the list is copied into a new slot and becomes a view of it.
+ * Parts replaced or removed from the list have their slots released.
+ *
+ * @author Long Tran
+ */
+public class PartList extends AbstractList<Part> implements RandomAccess {
+    /**
+     * The columns holding the parts
+     */
+    private final PartColumns columns;
+
+    /**
+     * The slot at every position
+     */
+    private int[] slots;
+
+    /**
+     * The number of parts in the list
+     */
+    private int size;
+
+    /**
+     * @param columns the columns holding the parts
+     * @param slots the slot at every position
+     */
+    public PartList(PartColumns columns, int[] slots) {
+        this.columns = columns;
+        this.slots = slots.length < 10 ? Arrays.copyOf(slots, 10) : slots;
+        this.size = slots.length;
+    }
+
+    /**
+     * Creates a list holding the given parts in new columns
+     *
+     * @param parts the parts in the list
+     */
+    public PartList(Collection<? extends Part> parts) {
+        this(new PartColumns(), new int[0]);
+        addAll(parts);
+    }
+
+    /**
+     * @return the columns holding the parts
+     */
+    public PartColumns getColumns() {
+        return columns;
+    }
+
+    @Override
+    public synchronized Part get(int index) {
+        checkIndex(index);
+        return columns.view(slots[index]);
+    }
+
+    @Override
+    public synchronized Part set(int index, Part part) {
+        checkIndex(index);
+        Part old = columns.view(slots[index]);
+        columns.release(slots[index]);
+        slots[index] = columns.add(part);
+        return old;
+    }
+
+    @Override
+    public synchronized void add(int index, Part part) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (size == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length + (slots.length >> 1) + 1);
+        }
+        System.arraycopy(slots, index, slots, index + 1, size - index);
+        slots[index] = columns.add(part);
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public synchronized Part remove(int index) {
+        checkIndex(index);
+        Part old = columns.view(slots[index]);
+        columns.release(slots[index]);
+        System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * Removes many parts in one pass over the list rather than shifting the list once for every part
+     *
+     * @param indexes the positions of the parts to be removed, in increasing order without repeats
+     */
+    public synchronized void removeAll(int[] indexes) {
+        if (indexes.length == 0) {
+            return;
+        }
+        int kept = indexes[0];
+        int next = 0;
+        for (int i = kept; i < size; i++) {
+            if (next < indexes.length && indexes[next] == i) {
+                columns.release(slots[i]);
+                next++;
+                continue;
+            }
+            slots[kept++] = slots[i];
+        }
+        size = kept;
+        modCount++;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Finds a part by comparing slots, without creating a view of every position
+     *
+     * @param o the part to be searched
+     * @return the position of the part, or -1 if it is not in the list
+     */
+    @Override
+    public synchronized int indexOf(Object o) {
+        int slot = slotOf(o);
+        for (int i = 0; slot >= 0 && i < size; i++) {
+            if (slots[i] == slot) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized int lastIndexOf(Object o) {
+        int slot = slotOf(o);
+        for (int i = size - 1; slot >= 0 && i >= 0; i--) {
+            if (slots[i] == slot) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Finds many parts with one pass over the list
+     *
+     * @param targets the parts to be found
+     * @return the positions of the parts found, in increasing order
+     */
+    public synchronized int[] indexesOf(Collection<?> targets) {
+        IntSet wanted = new IntSet();
+        for (Object target : targets) {
+            int slot = slotOf(target);
+            if (slot >= 0) {
+                wanted.add(slot);
+            }
+        }
+        int[] found = new int[Math.min(wanted.size(), size)];
+        int count = 0;
+        for (int i = 0; i < size && count < found.length; i++) {
+            if (wanted.contains(slots[i])) {
+                found[count++] = i;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @param id the ID of a part
+     * @return a view of the part in the list with the ID, or null if there is none
+     */
+    public Part findById(int id) {
+        int slot = columns.find(id);
+        return slot < 0 ? null : columns.view(slot);
+    }
+
+    /**
+     * @param o an object
+     * @return the slot of the object if it is a part held by these columns, otherwise -1
+     */
+    private int slotOf(Object o) {
+        if (o instanceof Part && ((Part) o).getColumns() == columns) {
+            return ((Part) o).getSlot();
+        }
+        return -1;
+    }
+
+    /**
+     * @param index the position to be checked
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
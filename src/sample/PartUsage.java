@@ -0,0 +1,145 @@
+package sample;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Reverse index from part IDs to the IDs of the products whose associated parts include them, so finding where a
+ * part is used reads only those products rather than the associated parts of every product
+ *
+ * Products keep the quantity of each part themselves and report a part when it is first associated and when its last
+ * unit is removed, so the index only records which products use a part. The index is filled the first time it is
+ * needed, and changes reported before then are ignored. Whoever keeps values derived from the associated parts of
+ * products can also be told of every product whose associated parts change, whether or not the index has been
+ * filled.
+ *
+ * @author Long Tran
+ */
+public class PartUsage {
+    /**
+     * The IDs of the products using each part, by part ID
+     */
+    private final IntMap<IntSet> productsByPart = new IntMap<>();
+
+    /**
+     * Whether the index has been filled
+     */
+    private volatile boolean built = false;
+
+    /**
+     * Told the ID of every product whose associated parts change
+     */
+    private final IntConsumer changed;
+
+    /**
+     * Creates an index nobody else is told of changes through
+     */
+    public PartUsage() {
+        this(productId -> { });
+    }
+
+    /**
+     * @param changed told the ID of every product whose associated parts change
+     */
+    public PartUsage(IntConsumer changed) {
+        this.changed = changed;
+    }
+
+    /**
+     * @return if the index has been filled
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Fills the index unless it already has been. Other threads reporting changes meanwhile wait until it is done.
+     *
+     * @param fill adds the associated parts of every product in inventory
+     */
+    public synchronized void build(Runnable fill) {
+        if (built) {
+            return;
+        }
+        built = true;
+        try {
+            fill.run();
+        } catch (RuntimeException e) {
+            productsByPart.clear();
+            built = false;
+            throw e;
+        }
+    }
+
+    /**
+     * @param partId the ID of a part newly associated with a product
+     * @param productId the ID of the product
+     */
+    public synchronized void add(int partId, int productId) {
+        if (!built) {
+            return;
+        }
+        IntSet products = productsByPart.get(partId);
+        if (products == null) {
+            products = new IntSet();
+            productsByPart.put(partId, products);
+        }
+        products.add(productId);
+    }
+
+    /**
+     * @param partId the ID of a part no longer associated with a product
+     * @param productId the ID of the product
+     */
+    public synchronized void remove(int partId, int productId) {
+        if (!built) {
+            return;
+        }
+        IntSet products = productsByPart.get(partId);
+        if (products != null && products.remove(productId) && products.isEmpty()) {
+            productsByPart.remove(partId);
+        }
+    }
+
+    /**
+     * Reports that a product's associated parts or their quantities changed, after the parts added and removed have
+     * been reported
+     *
+     * @param productId the ID of the product
+     */
+    public void productChanged(int productId) {
+        changed.accept(productId);
+    }
+
+    /**
+     * @param productId the ID of a product joining inventory
+     * @param partIds the IDs of its associated parts, which may repeat
+     */
+    public synchronized void addProduct(int productId, int[] partIds) {
+        for (int partId : partIds) {
+            add(partId, productId);
+        }
+    }
+
+    /**
+     * @param productId the ID of a product leaving inventory
+     * @param partIds the IDs of its associated parts
+     */
+    public synchronized void removeProduct(int productId, int[] partIds) {
+        for (int partId : partIds) {
+            remove(partId, productId);
+        }
+    }
+
+    /**
+     * @param partId the ID of a part
+     * @return the IDs of the products using the part
+     */
+    public synchronized IntSet productsUsing(int partId) {
+        IntSet ids = new IntSet();
+        IntSet products = productsByPart.get(partId);
+        if (products != null) {
+            products.forEach(ids::add);
+        }
+        return ids;
+    }
+}
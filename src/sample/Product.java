@@ -1,5 +1,11 @@
 package sample;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
@@ -7,18 +13,48 @@ import javafx.collections.ObservableList;
 /**
  * Contains product fields and methods
  *
+ * A part the product needs several of is listed once among the associated parts with the quantity needed, so the
+ * list and the cost of adding and removing parts grow with the number of distinct parts rather than units.
+ *
  * @author Long Tran
  * */
 public class Product{
 
-    private ObservableList<Part> associatedParts = FXCollections.observableArrayList();
+    /**
+     * Compares and sets the stock, so stock can be adjusted from many threads without a lock
+     * */
+    private static final VarHandle STOCK;
+
+    static {
+        try {
+            STOCK = MethodHandles.lookup().findVarHandle(Product.class, "stock", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * The distinct associated parts, only changed through the methods of the product
+     * */
+    private final ObservableList<Part> parts = FXCollections.observableArrayList();
+    private final ObservableList<Part> associatedParts = FXCollections.unmodifiableObservableList(parts);
+
+    /**
+     * The number of units needed of every associated part, by part ID
+     * */
+    private IntIntMap quantities = new IntIntMap();
     private int id;
     private String name;
     private double price;
-    private int stock;
+    private volatile int stock;
     private int min;
     private int max;
 
+    /**
+     * The index told of every change to the associated parts while the product is in inventory, or null
+     * */
+    private volatile PartUsage usage;
+
     public Product(int id, String name, double price, int stock, int min, int max){
         this.id = id;
         this.name = name;
@@ -51,6 +87,25 @@ public class Product{
     public void setStock (int stock){
         this.stock = stock;
     }
+    /**
+     * Adds to the stock atomically, retrying if another thread changed it meanwhile
+     *
+     * @param delta the amount of the product added, or taken away if negative
+     * @return the stock this adjustment changed, which is now that plus delta, or {@link Part#NOT_ADJUSTED} if the
+     * stock was left unchanged because it would end up below min or above max
+     * */
+    public long adjustStock (int delta){
+        while (true) {
+            int current = stock;
+            long adjusted = (long) current + delta;
+            if (adjusted < min || adjusted > max) {
+                return Part.NOT_ADJUSTED;
+            }
+            if (STOCK.compareAndSet(this, current, (int) adjusted)) {
+                return current;
+            }
+        }
+    }
     /**
      * @param min the minimum amount of the product in inventory
      * */
@@ -100,24 +155,184 @@ public class Product{
         return max;
     }
     /**
-     * @param part the part to be associated with the product
+     * @param part the part to be associated with the product, one more unit if it already is
      * */
     public void addAssociatedPart(Part part){
-        getAllAssociatedParts().add(part);
+        addAssociatedPart(part, 1);
     }
     /**
+     * @param part the part to be associated with the product
+     * @param quantity the number of units of the part added, at least 1
+     * */
+    public void addAssociatedPart(Part part, int quantity){
+        if (quantity < 1) {
+            throw new IllegalArgumentException("Quantity must be at least 1: " + quantity);
+        }
+        int partId = part.getId();
+        int current = quantities.get(partId);
+        quantities.put(partId, current < 0 ? quantity : current + quantity);
+        if (current < 0) {
+            parts.add(part);
+        }
+        PartUsage tracker = usage;
+        if (tracker != null) {
+            if (current < 0) {
+                tracker.add(partId, id);
+            }
+            tracker.productChanged(id);
+        }
+    }
+    /**
+     * Removes one unit of a part, and the part itself once no units are left
+     *
      * @param selectedAssociatedPart the part associated with the product
      * @return if the selected part matches with the product's associated part*/
     public boolean deleteAssociatedPart(Part selectedAssociatedPart){
-        getAllAssociatedParts().remove(selectedAssociatedPart);
+        int partId = selectedAssociatedPart.getId();
+        int current = quantities.get(partId);
+        if (current < 0) {
+            return false;
+        }
+        if (current > 1) {
+            quantities.put(partId, current - 1);
+        } else {
+            quantities.remove(partId);
+            parts.remove(indexOf(partId));
+        }
+        PartUsage tracker = usage;
+        if (tracker != null) {
+            if (current == 1) {
+                tracker.remove(partId, id);
+            }
+            tracker.productChanged(id);
+        }
         return true;
     }
     /**
-     * @return all parts associated with products
+     * Puts parts in the place of others all at once, keeping the quantities needed, such as when parts are replaced
+     * in inventory. Parts trading IDs with each other keep their own quantities, and the quantities of a part
+     * replacing another part that is also associated are added together.
+     *
+     * @param replacements the part replacing each part to be replaced
+     * @return if any associated part was replaced
+     * */
+    public boolean replaceAssociatedParts(Map<? extends Part, ? extends Part> replacements){
+        List<Part> replaced = new ArrayList<>(parts.size());
+        IntIntMap replacedQuantities = new IntIntMap();
+        boolean changed = false;
+        for (Part part : parts) {
+            Part replacement = replacements.get(part);
+            Part next = replacement == null ? part : replacement;
+            changed |= replacement != null;
+            int quantity = quantities.get(part.getId());
+            int merged = replacedQuantities.get(next.getId());
+            if (merged < 0) {
+                replacedQuantities.put(next.getId(), quantity);
+                replaced.add(next);
+            } else {
+                replacedQuantities.put(next.getId(), merged + quantity);
+            }
+        }
+        if (!changed) {
+            return false;
+        }
+        int[] oldIds = getAssociatedPartIds();
+        quantities = replacedQuantities;
+        parts.setAll(replaced);
+        PartUsage tracker = usage;
+        if (tracker != null) {
+            tracker.removeProduct(id, oldIds);
+            tracker.addProduct(id, getAssociatedPartIds());
+            tracker.productChanged(id);
+        }
+        return true;
+    }
+    /**
+     * Makes the associated parts and their quantities those of another product, such as a copy edited in a form
+     *
+     * @param other the product whose associated parts are copied
+     * @return if the associated parts changed
+     * */
+    public boolean setAssociatedParts(Product other){
+        if (Arrays.equals(getAssociatedPartUnits(), other.getAssociatedPartUnits())) {
+            return false;
+        }
+        int[] oldIds = getAssociatedPartIds();
+        IntIntMap copied = new IntIntMap();
+        for (Part part : other.parts) {
+            copied.put(part.getId(), other.quantities.get(part.getId()));
+        }
+        quantities = copied;
+        parts.setAll(other.parts);
+        PartUsage tracker = usage;
+        if (tracker != null) {
+            tracker.removeProduct(id, oldIds);
+            tracker.addProduct(id, getAssociatedPartIds());
+            tracker.productChanged(id);
+        }
+        return true;
+    }
+    /**
+     * @return the distinct parts associated with the product, which cannot be changed through the list
      * */
     public ObservableList<Part> getAllAssociatedParts(){
         return associatedParts;
     }
+    /**
+     * @param partId the ID of a part
+     * @return the number of units of the part the product needs, 0 if it is not associated
+     * */
+    public int getAssociatedPartQuantity(int partId){
+        return Math.max(quantities.get(partId), 0);
+    }
+    /**
+     * @return the IDs of the distinct associated parts
+     * */
+    public int[] getAssociatedPartIds(){
+        int[] ids = new int[parts.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = parts.get(i).getId();
+        }
+        return ids;
+    }
+    /**
+     * @return the ID of every associated part repeated once per unit needed, the way the store and snapshots record
+     * them
+     * */
+    public int[] getAssociatedPartUnits(){
+        int count = 0;
+        for (Part part : parts) {
+            count += quantities.get(part.getId());
+        }
+        int[] units = new int[count];
+        int next = 0;
+        for (Part part : parts) {
+            int partId = part.getId();
+            for (int q = quantities.get(partId); q > 0; q--) {
+                units[next++] = partId;
+            }
+        }
+        return units;
+    }
+    /**
+     * @param partId the ID of an associated part
+     * @return the position of the part among the associated parts
+     * */
+    private int indexOf(int partId){
+        for (int i = 0; i < parts.size(); i++) {
+            if (parts.get(i).getId() == partId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    /**
+     * @param usage the index to be told of changes to the associated parts, or null once the product leaves
+     * inventory
+     * */
+    void setUsage(PartUsage usage){
+        this.usage = usage;
+    }
 
 
 }
\ No newline at end of file
@@ -0,0 +1,585 @@
+package sample;
+
+import java.util.Arrays;
+
+/**
+ * Item IDs ordered by a numeric value such as price or stock, so the items with values in a range are found by
+ * searching for the start of the range and reading on, rather than checking every item
+ *
+ * Entries are pairs of a key and an ID, ordered by key and then by ID, kept in leaves of at most {@link #LEAF_SIZE}
+ * entries in the manner of a B+ tree with a single level of inner nodes. Finding an entry searches the first entries
+ * of the leaves and then the leaf, and adding or removing one only moves entries within its leaf, so a change costs
+ * O(log n). A leaf only splits or merges after about a quarter of its entries have been added or removed, which
+ * shifts the later leaves along at a cost of O(n / LEAF_SIZE). The number of entries in the leaves is kept in a
+ * Fenwick tree, so a page at any offset into a range is found in O(log n) and its k entries read in O(k).
+ *
+ * Like {@link PartUsage}, the index is filled the first time it is needed and changes reported before then are
+ * ignored. Values changed by several threads at once without a lock, such as stock, are reported through
+ * {@link #move} once each change is made, in whatever order the threads get there.
+ *
+ * @author Long Tran
+ */
+public class RangeIndex {
+    /**
+     * The most entries a leaf holds; a full leaf is split in half
+     */
+    static final int LEAF_SIZE = 512;
+
+    /**
+     * The fewest entries a leaf holds before it is merged with or fills up from a neighbour
+     */
+    private static final int MIN_LEAF_SIZE = LEAF_SIZE / 4;
+
+    /**
+     * The most entries two neighbouring leaves hold for them to be merged, so the merged leaf does not split again
+     * soon after
+     */
+    private static final int MAX_MERGED_SIZE = LEAF_SIZE * 3 / 4;
+
+    /**
+     * The entries put in each leaf when the index is filled, leaving room for later additions
+     */
+    private static final int FILL_LEAF_SIZE = LEAF_SIZE * 3 / 4;
+
+    /**
+     * The leaves in order
+     */
+    private Leaf[] leaves = new Leaf[16];
+
+    /**
+     * The number of leaves
+     */
+    private int leafCount;
+
+    /**
+     * The number of entries
+     */
+    private int size;
+
+    /**
+     * The number of entries in the leaves as a Fenwick tree, where element k holds the entries of the leaves from
+     * k - (k & -k) up to but not including k
+     */
+    private int[] leafSizes = new int[17];
+
+    /**
+     * Whether {@link #leafSizes} matches the leaves; it is filled again when next needed after leaves are split,
+     * merged or evened out
+     */
+    private boolean leafSizesValid = false;
+
+    /**
+     * Entries moved by {@link #move} that are counted apart from the leaves, each with the number of times it is
+     * there beyond what the leaves hold. Moves made by several threads can arrive out of order, taking an entry
+     * away before the move adding it or adding one again before the move taking it away, and these counts stay
+     * until the remaining moves arrive. They are empty whenever no move is under way.
+     */
+    private int[] pendingIds = new int[4];
+    private long[] pendingKeys = new long[4];
+    private int[] pendingCounts = new int[4];
+    private int pendingCount;
+
+    /**
+     * Whether the index has been filled
+     */
+    private volatile boolean built = false;
+
+    /**
+     * The keys of the entries added while the index is being filled, which are sorted into leaves once it is done,
+     * or null if it is not being filled
+     */
+    private long[] fillKeys;
+
+    /**
+     * The IDs of the entries added while the index is being filled
+     */
+    private int[] fillIds;
+
+    /**
+     * @param value a price or other decimal value
+     * @return the key of the value, ordered the same way as values
+     */
+    public static long key(double value) {
+        //+0.0 so zero has one key, and the bits of negative values flipped so they order as longs
+        long bits = Double.doubleToLongBits(value + 0.0);
+        return bits ^ (bits >> 63 & Long.MAX_VALUE);
+    }
+
+    /**
+     * @param value a stock or other whole value
+     * @return the key of the value
+     */
+    public static long key(int value) {
+        return value;
+    }
+
+    /**
+     * @return if the index has been filled
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Fills the index unless it already has been. Other threads reporting changes meanwhile wait until it is done.
+     *
+     * @param fill adds every item
+     */
+    public synchronized void build(Runnable fill) {
+        if (built) {
+            return;
+        }
+        built = true;
+        fillKeys = new long[1024];
+        fillIds = new int[1024];
+        try {
+            fill.run();
+            load();
+        } catch (RuntimeException e) {
+            Arrays.fill(leaves, 0, leafCount, null);
+            leafCount = 0;
+            size = 0;
+            leafSizesValid = false;
+            built = false;
+            throw e;
+        } finally {
+            fillKeys = null;
+            fillIds = null;
+        }
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param id the ID of an item joining the index, or whose value has just changed
+     * @param key the key of the item's value
+     */
+    public synchronized void add(int id, long key) {
+        if (!built) {
+            return;
+        }
+        if (fillKeys != null) {
+            if (size == fillKeys.length) {
+                fillKeys = Arrays.copyOf(fillKeys, size * 2);
+                fillIds = Arrays.copyOf(fillIds, size * 2);
+            }
+            fillKeys[size] = key;
+            fillIds[size++] = id;
+            return;
+        }
+        insert(id, key);
+    }
+
+    /**
+     * @param id the ID of an item leaving the index, or whose value is about to change
+     * @param key the key of the item's value
+     * @return if the entry was in the index
+     */
+    public synchronized boolean remove(int id, long key) {
+        return built && delete(id, key);
+    }
+
+    /**
+     * Moves an item from the entry for its old value to the entry for its new one, once the value has been changed
+     * without holding the index. Several threads changing the same value may report their moves in any order; the
+     * index matches the last value once every move has been reported.
+     *
+     * The index must not be filled while values are being changed this way, or a change made during the fill would
+     * be counted both by the fill and by its move.
+     *
+     * @param id the ID of the item
+     * @param from the key of the value before the change
+     * @param to the key of the value after the change
+     */
+    public synchronized void move(int id, long from, long to) {
+        if (!built || from == to) {
+            return;
+        }
+        count(id, from, -1);
+        count(id, to, 1);
+    }
+
+    /**
+     * @param low the key of the lowest value
+     * @param high the key of the highest value
+     * @param offset the number of entries in the range skipped before the page
+     * @param limit the most IDs returned
+     * @return the IDs of a page of the entries with keys from low to high inclusive, ordered by key and then by ID
+     */
+    public synchronized int[] range(long low, long high, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset " + offset + ", limit " + limit);
+        }
+        if (low > high || leafCount == 0 || limit == 0) {
+            return new int[0];
+        }
+        int first = leafFor(low, Integer.MIN_VALUE);
+        //the position of the first entry of the page among all entries, found from the sizes of the leaves before it
+        long position = entriesBefore(first) + leaves[first].lowerBound(low) + (long) offset;
+        if (position >= size) {
+            return new int[0];
+        }
+        int i = leafAt((int) position);
+        int at = (int) (position - entriesBefore(i));
+        int[] ids = new int[Math.min(limit, 64)];
+        int count = 0;
+        for (; i < leafCount && count < limit; i++, at = 0) {
+            Leaf leaf = leaves[i];
+            for (; at < leaf.size && count < limit; at++) {
+                if (leaf.keys[at] > high) {
+                    return Arrays.copyOf(ids, count);
+                }
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, (int) Math.min(limit, count * 2L));
+                }
+                ids[count++] = leaf.ids[at];
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Sorts the entries added while filling the index and packs them into leaves, which is far quicker than adding
+     * them one at a time
+     */
+    private void load() {
+        long[] order = new long[size];
+        int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            //flipped so they sort unsigned in the same order as they compare signed
+            order[i] = (fillIds[i] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+            positions[i] = i;
+        }
+        //sorts by ID first, so the stable sort by key leaves equal keys ordered by ID
+        SortIndex.radixSort(order, positions);
+        for (int i = 0; i < size; i++) {
+            order[i] = fillKeys[positions[i]] ^ Long.MIN_VALUE;
+        }
+        SortIndex.radixSort(order, positions);
+        for (int from = 0; from < size; from += FILL_LEAF_SIZE) {
+            Leaf leaf = new Leaf();
+            leaf.size = Math.min(FILL_LEAF_SIZE, size - from);
+            for (int i = 0; i < leaf.size; i++) {
+                leaf.keys[i] = fillKeys[positions[from + i]];
+                leaf.ids[i] = fillIds[positions[from + i]];
+            }
+            insertLeaf(leafCount, leaf);
+        }
+    }
+
+    /**
+     * @return if the entry was added, or false if it was already there
+     */
+    private boolean insert(int id, long key) {
+        if (leafCount == 0) {
+            insertLeaf(0, new Leaf());
+        }
+        int i = leafFor(key, id);
+        Leaf leaf = leaves[i];
+        int at = leaf.search(key, id);
+        if (at >= 0) {
+            return false;
+        }
+        leaf.insert(-at - 1, key, id);
+        size++;
+        if (leaf.size == LEAF_SIZE) {
+            insertLeaf(i + 1, leaf.split());
+        } else {
+            leafSizeChanged(i, 1);
+        }
+        return true;
+    }
+
+    /**
+     * @return if the entry was removed, or false if it was not there
+     */
+    private boolean delete(int id, long key) {
+        if (leafCount == 0) {
+            return false;
+        }
+        int i = leafFor(key, id);
+        Leaf leaf = leaves[i];
+        int at = leaf.search(key, id);
+        if (at < 0) {
+            return false;
+        }
+        leaf.delete(at);
+        size--;
+        if (leaf.size == 0) {
+            removeLeaf(i);
+        } else if (leaf.size < MIN_LEAF_SIZE && leafCount > 1) {
+            rebalance(i + 1 < leafCount ? i : i - 1);
+        } else {
+            leafSizeChanged(i, -1);
+        }
+        return true;
+    }
+
+    /**
+     * Adds an entry once more or takes it away once, keeping it in the leaves while it is there once and counting it
+     * apart while a move arriving early has left it there less or more often
+     *
+     * @param id the ID of the item
+     * @param key the key of the entry
+     * @param delta 1 to add the entry, or -1 to take it away
+     */
+    private void count(int id, long key, int delta) {
+        int p = 0;
+        while (p < pendingCount && (pendingIds[p] != id || pendingKeys[p] != key)) {
+            p++;
+        }
+        int pending = p < pendingCount ? pendingCounts[p] : 0;
+        if (delta < 0 ? pending <= 0 && delete(id, key) : pending >= 0 && insert(id, key)) {
+            return;
+        }
+        pending += delta;
+        if (p == pendingCount) {
+            if (pendingCount == pendingIds.length) {
+                pendingIds = Arrays.copyOf(pendingIds, pendingCount * 2);
+                pendingKeys = Arrays.copyOf(pendingKeys, pendingCount * 2);
+                pendingCounts = Arrays.copyOf(pendingCounts, pendingCount * 2);
+            }
+            pendingIds[p] = id;
+            pendingKeys[p] = key;
+            pendingCount++;
+        }
+        if (pending != 0) {
+            pendingCounts[p] = pending;
+            return;
+        }
+        pendingCount--;
+        pendingIds[p] = pendingIds[pendingCount];
+        pendingKeys[p] = pendingKeys[pendingCount];
+        pendingCounts[p] = pendingCounts[pendingCount];
+    }
+
+    /**
+     * @param i the position of a leaf
+     * @return the number of entries in the leaves before it
+     */
+    private int entriesBefore(int i) {
+        fillLeafSizes();
+        int entries = 0;
+        for (int k = i; k > 0; k &= k - 1) {
+            entries += leafSizes[k];
+        }
+        return entries;
+    }
+
+    /**
+     * @param position the position of an entry among all entries, below {@link #size}
+     * @return the position of the leaf holding the entry
+     */
+    private int leafAt(int position) {
+        fillLeafSizes();
+        int i = 0;
+        for (int step = Integer.highestOneBit(leafCount); step > 0; step >>= 1) {
+            if (i + step <= leafCount && leafSizes[i + step] <= position) {
+                i += step;
+                position -= leafSizes[i];
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @param i the position of a leaf whose size changed without splitting or merging
+     * @param delta the change in its size
+     */
+    private void leafSizeChanged(int i, int delta) {
+        if (leafSizesValid) {
+            for (int k = i + 1; k <= leafCount; k += k & -k) {
+                leafSizes[k] += delta;
+            }
+        }
+    }
+
+    /**
+     * Fills the Fenwick tree of leaf sizes again if leaves have been split or merged since it was last filled
+     */
+    private void fillLeafSizes() {
+        if (leafSizesValid) {
+            return;
+        }
+        if (leafSizes.length <= leafCount) {
+            leafSizes = new int[leaves.length + 1];
+        } else {
+            Arrays.fill(leafSizes, 0);
+        }
+        for (int k = 1; k <= leafCount; k++) {
+            leafSizes[k] += leaves[k - 1].size;
+            int parent = k + (k & -k);
+            if (parent <= leafCount) {
+                leafSizes[parent] += leafSizes[k];
+            }
+        }
+        leafSizesValid = true;
+    }
+
+    /**
+     * @param key a key
+     * @param id an ID
+     * @return the last leaf whose first entry is not after the entry, or the first leaf if there is none
+     */
+    private int leafFor(long key, int id) {
+        int low = 1;
+        int high = leafCount - 1;
+        int found = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Leaf leaf = leaves[middle];
+            if (compare(leaf.keys[0], leaf.ids[0], key, id) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Merges two neighbouring leaves, one of which has become small, or evens them out if they would not fit in one
+     *
+     * @param i the position of the first leaf
+     */
+    private void rebalance(int i) {
+        Leaf first = leaves[i];
+        Leaf second = leaves[i + 1];
+        int total = first.size + second.size;
+        leafSizesValid = false;
+        if (total <= MAX_MERGED_SIZE) {
+            System.arraycopy(second.keys, 0, first.keys, first.size, second.size);
+            System.arraycopy(second.ids, 0, first.ids, first.size, second.size);
+            first.size = total;
+            removeLeaf(i + 1);
+            return;
+        }
+        int firstSize = total / 2;
+        if (first.size < firstSize) {
+            int moved = firstSize - first.size;
+            System.arraycopy(second.keys, 0, first.keys, first.size, moved);
+            System.arraycopy(second.ids, 0, first.ids, first.size, moved);
+            System.arraycopy(second.keys, moved, second.keys, 0, second.size - moved);
+            System.arraycopy(second.ids, moved, second.ids, 0, second.size - moved);
+        } else {
+            int moved = first.size - firstSize;
+            System.arraycopy(second.keys, 0, second.keys, moved, second.size);
+            System.arraycopy(second.ids, 0, second.ids, moved, second.size);
+            System.arraycopy(first.keys, firstSize, second.keys, 0, moved);
+            System.arraycopy(first.ids, firstSize, second.ids, 0, moved);
+        }
+        first.size = firstSize;
+        second.size = total - firstSize;
+    }
+
+    /**
+     * @param i the position of the new leaf
+     * @param leaf the leaf
+     */
+    private void insertLeaf(int i, Leaf leaf) {
+        if (leafCount == leaves.length) {
+            leaves = Arrays.copyOf(leaves, leafCount * 2);
+        }
+        System.arraycopy(leaves, i, leaves, i + 1, leafCount - i);
+        leaves[i] = leaf;
+        leafCount++;
+        leafSizesValid = false;
+    }
+
+    /**
+     * @param i the position of the leaf to be removed
+     */
+    private void removeLeaf(int i) {
+        System.arraycopy(leaves, i + 1, leaves, i, leafCount - i - 1);
+        leaves[--leafCount] = null;
+        leafSizesValid = false;
+    }
+
+    /**
+     * @return a negative number, zero or a positive number as the first entry is before, the same as or after the
+     * second
+     */
+    private static int compare(long key, int id, long otherKey, int otherId) {
+        int byKey = Long.compare(key, otherKey);
+        return byKey != 0 ? byKey : Integer.compare(id, otherId);
+    }
+
+    /**
+     * A run of consecutive entries
+     */
+    private static final class Leaf {
+        private final long[] keys = new long[LEAF_SIZE];
+        private final int[] ids = new int[LEAF_SIZE];
+        private int size;
+
+        /**
+         * @return the position of the entry, or -(insertion point) - 1 if it is not in the leaf
+         */
+        int search(long key, int id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int order = compare(keys[middle], ids[middle], key, id);
+                if (order < 0) {
+                    low = middle + 1;
+                } else if (order > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * @return the position of the first entry whose key is not below the given key
+         */
+        int lowerBound(long key) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle] < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        void insert(int at, long key, int id) {
+            System.arraycopy(keys, at, keys, at + 1, size - at);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            keys[at] = key;
+            ids[at] = id;
+            size++;
+        }
+
+        void delete(int at) {
+            System.arraycopy(keys, at + 1, keys, at, size - at - 1);
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+        }
+
+        /**
+         * @return a new leaf holding the upper half of this leaf's entries, which are taken out of this one
+         */
+        Leaf split() {
+            Leaf upper = new Leaf();
+            int half = size / 2;
+            upper.size = size - half;
+            System.arraycopy(keys, half, upper.keys, 0, upper.size);
+            System.arraycopy(ids, half, upper.ids, 0, upper.size);
+            size = half;
+            return upper;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package sample;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+
+/**
+ * Runs the search of one search box on a background thread once the user stops typing
+ *
+ * Every new search replaces the one still waiting, and the result of a search is only published if no newer
+ * search was submitted while it ran. Results are handed to the JavaFX Application Thread in one call.
+ *
+ * @param <T> the type of search result
+ * @author Long Tran
+ */
+public class SearchExecutor<T> {
+    /**
+     * The thread shared by every search box
+     */
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "inventory-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The time to wait after a keystroke before searching, in milliseconds
+     */
+    private final long delay;
+
+    /**
+     * The search waiting to run
+     */
+    private ScheduledFuture<?> pending;
+
+    /**
+     * The number of the latest search, used to drop results of older searches
+     */
+    private long generation = 0;
+
+    /**
+     * @param delay the time to wait after a keystroke before searching, in milliseconds
+     */
+    public SearchExecutor(long delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * @param search the search to be run in the background
+     * @param publisher the action given the result on the JavaFX Application Thread
+     */
+    public synchronized void submit(Callable<T> search, Consumer<T> publisher) {
+        cancelPending();
+        long current = ++generation;
+        pending = EXECUTOR.schedule(() -> {
+            if (!isCurrent(current)) {
+                return;
+            }
+            T result;
+            try {
+                result = search.call();
+            } catch (Exception e) {
+                e.printStackTrace();
+                return;
+            }
+            Platform.runLater(() -> {
+                if (isCurrent(current)) {
+                    publisher.accept(result);
+                }
+            });
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drops the waiting search and the result of any search still running
+     */
+    public synchronized void cancel() {
+        cancelPending();
+        generation++;
+    }
+
+    /**
+     * @param searchNumber the number of a search
+     * @return if no newer search has been submitted
+     */
+    private synchronized boolean isCurrent(long searchNumber) {
+        return searchNumber == generation;
+    }
+
+    /**
+     * Stops the waiting search from running
+     */
+    private void cancelPending() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+}
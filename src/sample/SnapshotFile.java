@@ -0,0 +1,555 @@
+package sample;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Columnar snapshot of inventory that is read in place through a memory-mapped file
+ *
+ * Every field of parts and products is stored as its own column of fixed-width values, names are stored as UTF-8
+ * bytes in a string heap addressed by an offset column, and outsourced company names are stored once in a
+ * dictionary and referenced by code. Opening a snapshot only maps the file and reads its header, so no part or
+ * product object is created until a row is asked for. Each table also has a column of (ID, row) pairs sorted by
+ * ID so a row can be found by binary search without loading anything. Offsets are ints, so a snapshot must stay
+ * below 2 GB.
+ *
+ * @author Long Tran
+ */
+public class SnapshotFile {
+    /**
+     * Marks the start of a snapshot file
+     */
+    private static final int MAGIC = 0x494D5332;
+
+    /**
+     * The format version of the snapshot file
+     */
+    private static final int VERSION = 2;
+
+    private static final byte IN_HOUSE = 0;
+    private static final byte OUTSOURCED = 1;
+
+    //The columns of the file, in the order they are written
+    private static final int PART_KIND = 0;
+    private static final int PART_ID = 1;
+    private static final int PART_PRICE = 2;
+    private static final int PART_STOCK = 3;
+    private static final int PART_MIN = 4;
+    private static final int PART_MAX = 5;
+    private static final int PART_EXTRA = 6;
+    private static final int PART_NAME_OFFSET = 7;
+    private static final int PART_NAMES = 8;
+    private static final int PART_BY_ID = 9;
+    private static final int COMPANY_OFFSET = 10;
+    private static final int COMPANY_NAMES = 11;
+    private static final int PRODUCT_ID = 12;
+    private static final int PRODUCT_PRICE = 13;
+    private static final int PRODUCT_STOCK = 14;
+    private static final int PRODUCT_MIN = 15;
+    private static final int PRODUCT_MAX = 16;
+    private static final int PRODUCT_NAME_OFFSET = 17;
+    private static final int PRODUCT_NAMES = 18;
+    private static final int PRODUCT_PARTS_OFFSET = 19;
+    private static final int PRODUCT_PARTS = 20;
+    private static final int PRODUCT_BY_ID = 21;
+    private static final int COLUMNS = 22;
+
+    /**
+     * The size of the header: magic, version, sequence, three counts and the column offsets
+     */
+    private static final int HEADER_SIZE = 28 + 4 * COLUMNS;
+
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The sequence number of the last journaled change contained in the snapshot
+     */
+    private final long sequence;
+
+    private final int partCount;
+    private final int productCount;
+
+    /**
+     * The start of every column in the file
+     */
+    private final int[] columns = new int[COLUMNS];
+
+    /**
+     * The decoded company names, filled in as they are first used so each name is only created once
+     */
+    private final String[] companies;
+
+    /**
+     * Maps a snapshot file for reading
+     *
+     * @param file the snapshot file
+     * @throws IOException if the file cannot be mapped or is not a snapshot
+     */
+    public SnapshotFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an inventory snapshot: " + file);
+        }
+        sequence = buffer.getLong(8);
+        partCount = buffer.getInt(16);
+        productCount = buffer.getInt(20);
+        companies = new String[buffer.getInt(24)];
+        for (int c = 0; c < COLUMNS; c++) {
+            columns[c] = buffer.getInt(28 + 4 * c);
+        }
+    }
+
+    /**
+     * @return the sequence number of the last journaled change contained in the snapshot
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the number of parts in the snapshot
+     */
+    public int getPartCount() {
+        return partCount;
+    }
+
+    /**
+     * @return the number of products in the snapshot
+     */
+    public int getProductCount() {
+        return productCount;
+    }
+
+    /**
+     * @return the highest part ID in the snapshot, or 0 if it has no parts
+     */
+    public int getMaxPartId() {
+        return partCount == 0 ? 0 : buffer.getInt(columns[PART_BY_ID] + 8 * (partCount - 1));
+    }
+
+    /**
+     * @return the highest product ID in the snapshot, or 0 if it has no products
+     */
+    public int getMaxProductId() {
+        return productCount == 0 ? 0 : buffer.getInt(columns[PRODUCT_BY_ID] + 8 * (productCount - 1));
+    }
+
+    /**
+     * @param row the row of the part
+     * @return the ID of the part
+     */
+    public int partId(int row) {
+        return buffer.getInt(columns[PART_ID] + 4 * row);
+    }
+
+    /**
+     * @param row the row of the part
+     * @return the name of the part
+     */
+    public String partName(int row) {
+        return string(PART_NAME_OFFSET, PART_NAMES, row);
+    }
+
+    /**
+     * @param row the row of the part
+     * @return a new part with the values stored in the row
+     */
+    public Part part(int row) {
+        int id = partId(row);
+        String name = partName(row);
+        if (isOutsourced(row)) {
+            return new Outsourced(id, name, partPrice(row), partStock(row), partMin(row), partMax(row),
+                    companyName(partExtra(row)));
+        }
+        return new InHouse(id, name, partPrice(row), partStock(row), partMin(row), partMax(row), partExtra(row));
+    }
+
+    /**
+     * @param row the row of the part
+     * @return if the part is outsourced rather than in-house
+     */
+    public boolean isOutsourced(int row) {
+        return buffer.get(columns[PART_KIND] + row) == OUTSOURCED;
+    }
+
+    /**
+     * @param row the row of the part
+     * @return the price of the part
+     */
+    public double partPrice(int row) {
+        return buffer.getDouble(columns[PART_PRICE] + 8 * row);
+    }
+
+    /**
+     * @param row the row of the part
+     * @return the stock of the part
+     */
+    public int partStock(int row) {
+        return buffer.getInt(columns[PART_STOCK] + 4 * row);
+    }
+
+    /**
+     * @param row the row of the part
+     * @return the min of the part
+     */
+    public int partMin(int row) {
+        return buffer.getInt(columns[PART_MIN] + 4 * row);
+    }
+
+    /**
+     * @param row the row of the part
+     * @return the max of the part
+     */
+    public int partMax(int row) {
+        return buffer.getInt(columns[PART_MAX] + 4 * row);
+    }
+
+    /**
+     * @param row the row of the part
+     * @return the machine ID of an in-house part, or the company code of an outsourced part
+     */
+    public int partExtra(int row) {
+        return buffer.getInt(columns[PART_EXTRA] + 4 * row);
+    }
+
+    /**
+     * @return the number of company names in the dictionary of outsourced parts
+     */
+    public int getCompanyCount() {
+        return companies.length;
+    }
+
+    /**
+     * @param id the ID of a part
+     * @return the row of the part, or -1 if the snapshot has no part with that ID
+     */
+    public int findPartRow(int id) {
+        return find(PART_BY_ID, partCount, id);
+    }
+
+    /**
+     * @param row the row of the product
+     * @return the ID of the product
+     */
+    public int productId(int row) {
+        return buffer.getInt(columns[PRODUCT_ID] + 4 * row);
+    }
+
+    /**
+     * @param row the row of the product
+     * @return the name of the product
+     */
+    public String productName(int row) {
+        return string(PRODUCT_NAME_OFFSET, PRODUCT_NAMES, row);
+    }
+
+    /**
+     * @param row the row of the product
+     * @return a new product with the values stored in the row and no associated parts
+     */
+    public Product product(int row) {
+        return new Product(productId(row), productName(row), productPrice(row), productStock(row),
+                buffer.getInt(columns[PRODUCT_MIN] + 4 * row),
+                buffer.getInt(columns[PRODUCT_MAX] + 4 * row));
+    }
+
+    /**
+     * @param row the row of the product
+     * @return the price of the product
+     */
+    public double productPrice(int row) {
+        return buffer.getDouble(columns[PRODUCT_PRICE] + 8 * row);
+    }
+
+    /**
+     * @param row the row of the product
+     * @return the stock of the product
+     */
+    public int productStock(int row) {
+        return buffer.getInt(columns[PRODUCT_STOCK] + 4 * row);
+    }
+
+    /**
+     * @param row the row of the product
+     * @return the IDs of the parts associated with the product
+     */
+    public int[] productPartIds(int row) {
+        int start = buffer.getInt(columns[PRODUCT_PARTS_OFFSET] + 4 * row);
+        int end = buffer.getInt(columns[PRODUCT_PARTS_OFFSET] + 4 * (row + 1));
+        int[] ids = new int[end - start];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = buffer.getInt(columns[PRODUCT_PARTS] + 4 * (start + i));
+        }
+        return ids;
+    }
+
+    /**
+     * @param id the ID of a product
+     * @return the row of the product, or -1 if the snapshot has no product with that ID
+     */
+    public int findProductRow(int id) {
+        return find(PRODUCT_BY_ID, productCount, id);
+    }
+
+    /**
+     * @param offsetColumn the column of string offsets
+     * @param heapColumn the column holding the string bytes
+     * @param row the row of the string
+     * @return the string stored for the row
+     */
+    private String string(int offsetColumn, int heapColumn, int row) {
+        int start = buffer.getInt(columns[offsetColumn] + 4 * row);
+        int end = buffer.getInt(columns[offsetColumn] + 4 * (row + 1));
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(columns[heapColumn] + start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param code the dictionary code of a company name, as returned by {@link #partExtra}
+     * @return the company name
+     */
+    public synchronized String companyName(int code) {
+        if (companies[code] == null) {
+            companies[code] = string(COMPANY_OFFSET, COMPANY_NAMES, code);
+        }
+        return companies[code];
+    }
+
+    /**
+     * @param column the column of (ID, row) pairs sorted by ID
+     * @param count the number of pairs
+     * @param id the ID to be searched
+     * @return the row with the ID, or -1 if there is none
+     */
+    private int find(int column, int count, int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = buffer.getInt(columns[column] + 8 * mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return buffer.getInt(columns[column] + 8 * mid + 4);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes inventory to a new snapshot file. Rows that have not been loaded from the previous snapshot are read
+     * from it without being kept in the lazily loaded lists.
+     *
+     * @param file the file to be written
+     * @param sequence the sequence number of the last journaled change contained in inventory
+     * @param parts every part in inventory
+     * @param products every product in inventory
+     * @param previous the snapshot that lazily loaded lists read from, or null if there is none
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, long sequence, List<Part> parts, List<Product> products,
+                             SnapshotFile previous) throws IOException {
+        int n = parts.size();
+        byte[] kind = new byte[n];
+        int[] partId = new int[n];
+        double[] partPrice = new double[n];
+        int[] partStock = new int[n];
+        int[] partMin = new int[n];
+        int[] partMax = new int[n];
+        int[] partExtra = new int[n];
+        String[] partName = new String[n];
+        LinkedHashMap<String, Integer> companyCodes = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            Part part = peek(parts, i);
+            if (part == null) {
+                int row = ((LazyRowList<Part>) parts).rowAt(i);
+                part = previous.part(row);
+            }
+            partId[i] = part.getId();
+            partName[i] = part.getName();
+            partPrice[i] = part.getPrice();
+            partStock[i] = part.getStock();
+            partMin[i] = part.getMin();
+            partMax[i] = part.getMax();
+            if (part instanceof Outsourced) {
+                kind[i] = OUTSOURCED;
+                String company = ((Outsourced) part).getCompanyName();
+                partExtra[i] = companyCodes.computeIfAbsent(company == null ? "" : company, c -> companyCodes.size());
+            } else {
+                kind[i] = IN_HOUSE;
+                partExtra[i] = ((InHouse) part).getMachineId();
+            }
+        }
+
+        int m = products.size();
+        int[] productId = new int[m];
+        double[] productPrice = new double[m];
+        int[] productStock = new int[m];
+        int[] productMin = new int[m];
+        int[] productMax = new int[m];
+        String[] productName = new String[m];
+        int[][] productParts = new int[m][];
+        for (int i = 0; i < m; i++) {
+            Product product = peek(products, i);
+            if (product == null) {
+                int row = ((LazyRowList<Product>) products).rowAt(i);
+                product = previous.product(row);
+                productParts[i] = previous.productPartIds(row);
+            } else {
+                productParts[i] = product.getAssociatedPartUnits();
+            }
+            productId[i] = product.getId();
+            productName[i] = product.getName();
+            productPrice[i] = product.getPrice();
+            productStock[i] = product.getStock();
+            productMin[i] = product.getMin();
+            productMax[i] = product.getMax();
+        }
+
+        int[] offsets = new int[COLUMNS];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.write(new byte[HEADER_SIZE]);
+            offsets[PART_KIND] = out.size();
+            out.write(kind);
+            offsets[PART_ID] = out.size();
+            writeInts(out, partId);
+            offsets[PART_PRICE] = out.size();
+            for (double price : partPrice) {
+                out.writeDouble(price);
+            }
+            offsets[PART_STOCK] = out.size();
+            writeInts(out, partStock);
+            offsets[PART_MIN] = out.size();
+            writeInts(out, partMin);
+            offsets[PART_MAX] = out.size();
+            writeInts(out, partMax);
+            offsets[PART_EXTRA] = out.size();
+            writeInts(out, partExtra);
+            writeStrings(out, partName, offsets, PART_NAME_OFFSET, PART_NAMES);
+            offsets[PART_BY_ID] = out.size();
+            writeSortedIds(out, partId);
+            writeStrings(out, companyCodes.keySet().toArray(new String[0]), offsets, COMPANY_OFFSET, COMPANY_NAMES);
+
+            offsets[PRODUCT_ID] = out.size();
+            writeInts(out, productId);
+            offsets[PRODUCT_PRICE] = out.size();
+            for (double price : productPrice) {
+                out.writeDouble(price);
+            }
+            offsets[PRODUCT_STOCK] = out.size();
+            writeInts(out, productStock);
+            offsets[PRODUCT_MIN] = out.size();
+            writeInts(out, productMin);
+            offsets[PRODUCT_MAX] = out.size();
+            writeInts(out, productMax);
+            writeStrings(out, productName, offsets, PRODUCT_NAME_OFFSET, PRODUCT_NAMES);
+            offsets[PRODUCT_PARTS_OFFSET] = out.size();
+            int total = 0;
+            for (int[] ids : productParts) {
+                out.writeInt(total);
+                total += ids.length;
+            }
+            out.writeInt(total);
+            offsets[PRODUCT_PARTS] = out.size();
+            for (int[] ids : productParts) {
+                writeInts(out, ids);
+            }
+            offsets[PRODUCT_BY_ID] = out.size();
+            writeSortedIds(out, productId);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(n).putInt(m).putInt(companyCodes.size());
+        for (int offset : offsets) {
+            header.putInt(offset);
+        }
+        header.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @param items a list of inventory items
+     * @param index the position of an item
+     * @param <T> the type of item
+     * @return the item, or null if it is a row of a lazily loaded list that has not been loaded
+     */
+    private static <T> T peek(List<T> items, int index) {
+        return items instanceof LazyRowList ? ((LazyRowList<T>) items).peek(index) : items.get(index);
+    }
+
+    /**
+     * @param out the stream to write to
+     * @param values the values to be written
+     * @throws IOException if the values cannot be written
+     */
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Writes a column of string offsets followed by the string bytes
+     *
+     * @param out the stream to write to
+     * @param strings the strings to be written
+     * @param offsets the column offsets being filled in
+     * @param offsetColumn the column of string offsets
+     * @param heapColumn the column holding the string bytes
+     * @throws IOException if the strings cannot be written
+     */
+    private static void writeStrings(DataOutputStream out, String[] strings, int[] offsets, int offsetColumn,
+                                     int heapColumn) throws IOException {
+        byte[][] encoded = new byte[strings.length][];
+        offsets[offsetColumn] = out.size();
+        int total = 0;
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = (strings[i] == null ? "" : strings[i]).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(total);
+            total += encoded[i].length;
+        }
+        out.writeInt(total);
+        offsets[heapColumn] = out.size();
+        for (byte[] bytes : encoded) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @param out the stream to write to
+     * @param ids the ID of every row
+     * @throws IOException if the pairs cannot be written
+     */
+    private static void writeSortedIds(DataOutputStream out, int[] ids) throws IOException {
+        long[] pairs = new long[ids.length];
+        for (int row = 0; row < ids.length; row++) {
+            //the ID in the high half sorts the pairs by ID, then by row
+            pairs[row] = ((long) ids[row] << 32) | row;
+        }
+        Arrays.sort(pairs);
+        for (long pair : pairs) {
+            out.writeInt((int) (pair >> 32));
+            out.writeInt((int) pair);
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package sample;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Sort orders of the parts or the products of inventory by the columns of a table, kept so that sorting by a column
+ * again, or after items change, does not sort the whole list again
+ *
+ * A column's order is worked out the first time it is asked for and kept as the IDs of the items in ascending
+ * order, ties going to the lower ID. Number columns are sorted with a radix sort over their values, and text
+ * columns by collation keys worked out once per item rather than comparing names through the collator on every
+ * comparison. From then on items added, removed or changed are merged into every kept order: each is placed by a
+ * binary search, then the order is rebuilt in a single pass rather than sorted again.
+ *
+ * Items are found by ID when an order is read, so inventory must only change on the thread using the index, and
+ * the index must be told of every change before the order is read again.
+ *
+ * @param <E> the type of item sorted
+ * @author Long Tran
+ */
+public class SortIndex<E> {
+    /**
+     * The number of values sorted at once by each pass of the radix sort
+     */
+    private static final int RADIX_BITS = 16;
+
+    /**
+     * The number of items removed at once up to which they are looked for by comparing IDs rather than hashing
+     */
+    private static final int FEW = 8;
+
+    /**
+     * Gives the ID of an item
+     */
+    private final ToIntFunction<? super E> idOf;
+
+    /**
+     * Finds an item in inventory by ID
+     */
+    private final IntFunction<? extends E> lookup;
+
+    /**
+     * The columns that can be sorted, by name
+     */
+    private final Map<String, Column<E>> columns = new HashMap<>();
+
+    /**
+     * @param idOf gives the ID of an item
+     * @param lookup finds an item in inventory by ID
+     */
+    public SortIndex(ToIntFunction<? super E> idOf, IntFunction<? extends E> lookup) {
+        this.idOf = idOf;
+        this.lookup = lookup;
+    }
+
+    /**
+     * @param name the name of the column, such as "stock"
+     * @param value gives the value of an item in the column
+     */
+    public void addIntColumn(String name, ToIntFunction<? super E> value) {
+        columns.put(name, new IntColumn<>(value));
+    }
+
+    /**
+     * @param name the name of the column, such as "price"
+     * @param value gives the value of an item in the column
+     */
+    public void addDoubleColumn(String name, ToDoubleFunction<? super E> value) {
+        columns.put(name, new DoubleColumn<>(value));
+    }
+
+    /**
+     * @param name the name of the column, such as "name"
+     * @param value gives the value of an item in the column
+     * @param collator orders the values, such as by the rules of the default locale
+     */
+    public void addTextColumn(String name, Function<? super E, String> value, Collator collator) {
+        columns.put(name, new TextColumn<>(value, collator));
+    }
+
+    /**
+     * @param name the name of a column
+     * @return if the index can sort by the column
+     */
+    public boolean hasColumn(String name) {
+        return columns.containsKey(name);
+    }
+
+    /**
+     * Works out the order of a column unless it is already kept
+     *
+     * @param name the name of the column
+     * @param items every item in inventory, in any order
+     */
+    public void sort(String name, List<? extends E> items) {
+        Column<E> column = column(name);
+        if (column.ids == null) {
+            column.ids = column.sort(items, idOf);
+            column.size = column.ids.length;
+        }
+    }
+
+    /**
+     * @param name the name of a column
+     * @return if the order of the column is kept
+     */
+    public boolean isSorted(String name) {
+        return column(name).ids != null;
+    }
+
+    /**
+     * @param name the name of a sorted column
+     * @param rank the position of an item in ascending order
+     * @return the ID of the item
+     */
+    public int idAt(String name, int rank) {
+        Column<E> column = column(name);
+        if (rank < 0 || rank >= column.size) {
+            throw new IndexOutOfBoundsException("Index: " + rank + ", Size: " + column.size);
+        }
+        return column.ids[rank];
+    }
+
+    /**
+     * @param name the name of a sorted column
+     * @param rank the position of an item in ascending order
+     * @return the item
+     */
+    public E get(String name, int rank) {
+        return lookup.apply(idAt(name, rank));
+    }
+
+    /**
+     * Removes items from every kept order
+     *
+     * @param items the items removed from inventory, or changed in place before being added again
+     * @param reported the name of the column whose positions are wanted, or null for none
+     * @return the position each item had in the reported column before any of them were removed, in the order of
+     * the items, or -1 for an item that was not in the order; empty if the column is not kept
+     */
+    public int[] removeAll(Collection<? extends E> items, String reported) {
+        IntSet ids = new IntSet(items.size());
+        for (E item : items) {
+            ids.add(idOf.applyAsInt(item));
+        }
+        int[] few = ids.size() <= FEW ? ids.toArray() : null;
+        int[] ranks = new int[0];
+        for (Map.Entry<String, Column<E>> entry : columns.entrySet()) {
+            Column<E> column = entry.getValue();
+            if (column.ids == null) {
+                continue;
+            }
+            boolean report = entry.getKey().equals(reported);
+            IntIntMap removedRanks = report ? new IntIntMap() : null;
+            //finds the items first, stopping once all are found, then closes the gaps they leave
+            int[] found = new int[ids.size()];
+            int count = 0;
+            for (int rank = 0; rank < column.size && count < found.length; rank++) {
+                if (few != null ? contains(few, column.ids[rank]) : ids.contains(column.ids[rank])) {
+                    found[count++] = rank;
+                    if (report) {
+                        removedRanks.put(column.ids[rank], rank);
+                    }
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                int from = found[i] + 1;
+                int to = i + 1 < count ? found[i + 1] : column.size;
+                System.arraycopy(column.ids, from, column.ids, from - i - 1, to - from);
+            }
+            column.size -= count;
+            if (report) {
+                ranks = new int[items.size()];
+                int i = 0;
+                for (E item : items) {
+                    ranks[i++] = removedRanks.get(idOf.applyAsInt(item));
+                }
+            }
+        }
+        return ranks;
+    }
+
+    /**
+     * Merges items into every kept order. The items must not already be in the index.
+     *
+     * @param items the items added to inventory, or changed in place after being removed
+     * @param reported the name of the column whose positions are wanted, or null for none
+     * @return the position each item has in the reported column after all of them were added, in the order of the
+     * items; empty if the column is not kept
+     */
+    public int[] addAll(Collection<? extends E> items, String reported) {
+        List<E> added = new ArrayList<>(items);
+        int[] ranks = new int[0];
+        for (Map.Entry<String, Column<E>> entry : columns.entrySet()) {
+            Column<E> column = entry.getValue();
+            if (column.ids == null || added.isEmpty()) {
+                continue;
+            }
+            Comparator<E> order = (a, b) -> {
+                int compared = column.compare(a, b);
+                return compared != 0 ? compared : Integer.compare(idOf.applyAsInt(a), idOf.applyAsInt(b));
+            };
+            //sorts the new items among themselves, then finds where each goes among the items already kept
+            Integer[] sorted = new Integer[added.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = i;
+            }
+            Arrays.sort(sorted, (a, b) -> order.compare(added.get(a), added.get(b)));
+            int[] before = new int[sorted.length];
+            for (int j = 0; j < sorted.length; j++) {
+                E item = added.get(sorted[j]);
+                int low = j == 0 ? 0 : before[j - 1];
+                int high = column.size;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (order.compare(lookup.apply(column.ids[middle]), item) < 0) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                before[j] = low;
+            }
+            if (column.size + sorted.length > column.ids.length) {
+                column.ids = Arrays.copyOf(column.ids, column.size + sorted.length + (column.size >> 3));
+            }
+            //merges from the back, so every kept ID moves at most once
+            int end = column.size;
+            for (int j = sorted.length - 1; j >= 0; j--) {
+                System.arraycopy(column.ids, before[j], column.ids, before[j] + j + 1, end - before[j]);
+                column.ids[before[j] + j] = idOf.applyAsInt(added.get(sorted[j]));
+                end = before[j];
+            }
+            column.size += sorted.length;
+            if (entry.getKey().equals(reported)) {
+                ranks = new int[sorted.length];
+                for (int j = 0; j < sorted.length; j++) {
+                    ranks[sorted[j]] = before[j] + j;
+                }
+            }
+        }
+        return ranks;
+    }
+
+    /**
+     * Drops every kept order
+     */
+    public void clear() {
+        for (Column<E> column : columns.values()) {
+            column.ids = null;
+            column.size = 0;
+        }
+    }
+
+    /**
+     * @param name the name of a column
+     * @return the column
+     */
+    private Column<E> column(String name) {
+        Column<E> column = columns.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("No such column: " + name);
+        }
+        return column;
+    }
+
+    /**
+     * @param ids a few IDs
+     * @param id an ID
+     * @return if the ID is one of them
+     */
+    private static boolean contains(int[] ids, int id) {
+        for (int candidate : ids) {
+            if (candidate == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sorts values by their keys, compared as unsigned numbers, with a least significant digit radix sort. Values
+     * with equal keys keep their order.
+     *
+     * @param keys the keys, reordered along with the values
+     * @param values the values
+     */
+    static void radixSort(long[] keys, int[] values) {
+        int n = keys.length;
+        long[] keySource = keys;
+        int[] valueSource = values;
+        long[] keyTarget = new long[n];
+        int[] valueTarget = new int[n];
+        int[] counts = new int[(1 << RADIX_BITS) + 1];
+        int mask = (1 << RADIX_BITS) - 1;
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[(int) (keySource[i] >>> shift & mask) + 1]++;
+            }
+            //a pass in which every key has the same digit would not move anything
+            if (n == 0 || counts[(int) (keySource[0] >>> shift & mask) + 1] == n) {
+                continue;
+            }
+            for (int digit = 0; digit < mask + 1; digit++) {
+                counts[digit + 1] += counts[digit];
+            }
+            for (int i = 0; i < n; i++) {
+                int at = counts[(int) (keySource[i] >>> shift & mask)]++;
+                keyTarget[at] = keySource[i];
+                valueTarget[at] = valueSource[i];
+            }
+            long[] keySwap = keySource;
+            keySource = keyTarget;
+            keyTarget = keySwap;
+            int[] valueSwap = valueSource;
+            valueSource = valueTarget;
+            valueTarget = valueSwap;
+        }
+        if (keySource != keys) {
+            System.arraycopy(keySource, 0, keys, 0, n);
+            System.arraycopy(valueSource, 0, values, 0, n);
+        }
+    }
+
+    /**
+     * A column that can be sorted, and its kept order
+     *
+     * @param <E> the type of item sorted
+     */
+    private abstract static class Column<E> {
+        /**
+         * The IDs of the items in ascending order, followed by room for more, or null if the order is not kept
+         */
+        int[] ids;
+
+        /**
+         * The number of IDs in the order
+         */
+        int size;
+
+        /**
+         * @param items the items to be sorted
+         * @param idOf gives the ID of an item
+         * @return the IDs of the items in ascending order, ties going to the lower ID
+         */
+        abstract int[] sort(List<? extends E> items, ToIntFunction<? super E> idOf);
+
+        /**
+         * @param a an item
+         * @param b another item
+         * @return the order of the items' values, without regard to their IDs
+         */
+        abstract int compare(E a, E b);
+    }
+
+    /**
+     * A column of whole numbers
+     *
+     * @param <E> the type of item sorted
+     */
+    private static final class IntColumn<E> extends Column<E> {
+        private final ToIntFunction<? super E> value;
+
+        IntColumn(ToIntFunction<? super E> value) {
+            this.value = value;
+        }
+
+        @Override
+        int[] sort(List<? extends E> items, ToIntFunction<? super E> idOf) {
+            int n = items.size();
+            long[] keys = new long[n];
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                E item = items.get(i);
+                ids[i] = idOf.applyAsInt(item);
+                //the value in the upper half and the ID in the lower, both flipped to sort unsigned
+                keys[i] = (long) (value.applyAsInt(item) ^ Integer.MIN_VALUE) << 32
+                        | (ids[i] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+            }
+            radixSort(keys, ids);
+            return ids;
+        }
+
+        @Override
+        int compare(E a, E b) {
+            return Integer.compare(value.applyAsInt(a), value.applyAsInt(b));
+        }
+    }
+
+    /**
+     * A column of decimal numbers
+     *
+     * @param <E> the type of item sorted
+     */
+    private static final class DoubleColumn<E> extends Column<E> {
+        private final ToDoubleFunction<? super E> value;
+
+        DoubleColumn(ToDoubleFunction<? super E> value) {
+            this.value = value;
+        }
+
+        @Override
+        int[] sort(List<? extends E> items, ToIntFunction<? super E> idOf) {
+            int n = items.size();
+            int[] ids = new int[n];
+            long[] valueKeys = new long[n];
+            long[] keys = new long[n];
+            int[] positions = new int[n];
+            for (int i = 0; i < n; i++) {
+                E item = items.get(i);
+                ids[i] = idOf.applyAsInt(item);
+                //flips the bits of negative numbers and the sign of the rest, so they sort unsigned like
+                //Double.compare
+                long bits = Double.doubleToLongBits(value.applyAsDouble(item));
+                valueKeys[i] = bits ^ (bits >> 63 | Long.MIN_VALUE);
+                keys[i] = (ids[i] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+                positions[i] = i;
+            }
+            //sorts by ID first, so the stable sort by value leaves ties ordered by ID
+            radixSort(keys, positions);
+            for (int i = 0; i < n; i++) {
+                keys[i] = valueKeys[positions[i]];
+            }
+            radixSort(keys, positions);
+            int[] sorted = new int[n];
+            for (int i = 0; i < n; i++) {
+                sorted[i] = ids[positions[i]];
+            }
+            return sorted;
+        }
+
+        @Override
+        int compare(E a, E b) {
+            return Double.compare(value.applyAsDouble(a), value.applyAsDouble(b));
+        }
+    }
+
+    /**
+     * A column of text, ordered by a collator
+     *
+     * @param <E> the type of item sorted
+     */
+    private static final class TextColumn<E> extends Column<E> {
+        private final Function<? super E, String> value;
+        private final Collator collator;
+
+        TextColumn(Function<? super E, String> value, Collator collator) {
+            this.value = value;
+            this.collator = collator;
+        }
+
+        @Override
+        int[] sort(List<? extends E> items, ToIntFunction<? super E> idOf) {
+            int n = items.size();
+            CollationKey[] keys = new CollationKey[n];
+            Integer[] positions = new Integer[n];
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                E item = items.get(i);
+                ids[i] = idOf.applyAsInt(item);
+                keys[i] = collator.getCollationKey(text(item));
+                positions[i] = i;
+            }
+            Arrays.sort(positions, (a, b) -> {
+                int compared = keys[a].compareTo(keys[b]);
+                return compared != 0 ? compared : Integer.compare(ids[a], ids[b]);
+            });
+            int[] sorted = new int[n];
+            for (int i = 0; i < n; i++) {
+                sorted[i] = ids[positions[i]];
+            }
+            return sorted;
+        }
+
+        @Override
+        int compare(E a, E b) {
+            return collator.compare(text(a), text(b));
+        }
+
+        /**
+         * @param item an item
+         * @return the item's text, or an empty string if it has none
+         */
+        private String text(E item) {
+            String text = value.apply(item);
+            return text == null ? "" : text;
+        }
+    }
+}
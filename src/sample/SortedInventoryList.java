@@ -0,0 +1,234 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+
+/**
+ * JavaFX view of an inventory list in the order of a table column, used as the items of a TableView so sorting
+ * by a column is read from a {@link SortIndex} rather than sorting the list
+ *
+ * The view starts out in inventory order. Sorting it by a column reports a single permutation, so the table keeps
+ * its selection. Changes to the inventory list are merged into the kept orders and reported at the positions the
+ * items have in the current order. Like an {@link ObservableInventoryList} without an owner thread, inventory must
+ * only be changed on the JavaFX Application Thread.
+ *
+ * @param <E> the type of item in the list
+ * @author Long Tran
+ */
+public class SortedInventoryList<E> extends ObservableListBase<E> implements RandomAccess {
+    /**
+     * The inventory list being viewed
+     */
+    private final ObservableList<E> source;
+
+    /**
+     * The kept orders of the columns
+     */
+    private final SortIndex<E> index;
+
+    /**
+     * Gives the ID of an item
+     */
+    private final ToIntFunction<? super E> idOf;
+
+    /**
+     * The column the view is sorted by, or null if it is in inventory order
+     */
+    private String column;
+
+    /**
+     * Whether the view is in descending order
+     */
+    private boolean descending;
+
+    /**
+     * @param source the inventory list to be viewed
+     * @param index the kept orders of the columns, used by this view alone
+     * @param idOf gives the ID of an item
+     */
+    public SortedInventoryList(ObservableList<E> source, SortIndex<E> index, ToIntFunction<? super E> idOf) {
+        this.source = source;
+        this.index = index;
+        this.idOf = idOf;
+        source.addListener(this::sourceChanged);
+    }
+
+    /**
+     * Sorts the view by a column, reusing the column's order if it is kept
+     *
+     * @param column the name of the column, or null for inventory order
+     * @param descending whether the view is in descending order
+     */
+    public void sortBy(String column, boolean descending) {
+        if (column == null ? this.column == null : column.equals(this.column) && descending == this.descending) {
+            return;
+        }
+        int size = source.size();
+        int[] oldIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            oldIds[i] = this.column == null ? idOf.applyAsInt(source.get(i)) : index.idAt(this.column, rank(i));
+        }
+        if (column != null) {
+            index.sort(column, source);
+        }
+        this.column = column;
+        this.descending = descending;
+        IntIntMap newPositions = new IntIntMap();
+        for (int i = 0; i < size; i++) {
+            newPositions.put(column == null ? idOf.applyAsInt(source.get(i)) : index.idAt(column, rank(i)), i);
+        }
+        int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            permutation[i] = newPositions.get(oldIds[i]);
+        }
+        beginChange();
+        try {
+            nextPermutation(0, size, permutation);
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * @return the column the view is sorted by, or null if it is in inventory order
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * @return if the view is in descending order
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    @Override
+    public E get(int index) {
+        if (column == null) {
+            return source.get(index);
+        }
+        if (index < 0 || index >= source.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + source.size());
+        }
+        return this.index.get(column, rank(index));
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+
+    /**
+     * Merges a change to the inventory list into the kept orders and reports it at the positions of this view
+     *
+     * @param change the change to the inventory list
+     */
+    private void sourceChanged(ListChangeListener.Change<? extends E> change) {
+        //an item changed in place may have moved in every order, so it is taken out and merged in again
+        Set<E> removed = new LinkedHashSet<>();
+        Set<E> added = new LinkedHashSet<>();
+        List<E> updated = new ArrayList<>();
+        while (change.next()) {
+            if (change.wasUpdated()) {
+                updated.addAll(source.subList(change.getFrom(), change.getTo()));
+            } else {
+                removed.addAll(change.getRemoved());
+                if (change.wasAdded()) {
+                    added.addAll(change.getAddedSubList());
+                }
+            }
+        }
+        removed.addAll(updated);
+        added.addAll(updated);
+        int oldSize = source.size() - added.size() + removed.size();
+        int[] removedRanks = index.removeAll(removed, column);
+        int[] addedRanks = index.addAll(added, column);
+        beginChange();
+        try {
+            if (column == null) {
+                change.reset();
+                while (change.next()) {
+                    if (change.wasUpdated()) {
+                        for (int i = change.getFrom(); i < change.getTo(); i++) {
+                            nextUpdate(i);
+                        }
+                    } else if (change.wasRemoved() && change.wasAdded()) {
+                        nextReplace(change.getFrom(), change.getTo(), change.getRemoved());
+                    } else if (change.wasRemoved()) {
+                        nextRemove(change.getFrom(), change.getRemoved());
+                    } else if (change.wasAdded()) {
+                        nextAdd(change.getFrom(), change.getTo());
+                    }
+                }
+            } else if (removed.size() == 1 && updated.size() == 1 && removedRanks[0] == addedRanks[0]) {
+                nextUpdate(position(removedRanks[0], oldSize));
+            } else {
+                reportRemoved(new ArrayList<>(removed), removedRanks, oldSize);
+                reportAdded(addedRanks, source.size());
+            }
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * @param items the items removed from the order
+     * @param ranks the rank each item had in the order before any were removed
+     * @param size the size of the view before any were removed
+     */
+    private void reportRemoved(List<E> items, int[] ranks, int size) {
+        long[] removals = new long[ranks.length];
+        for (int i = 0; i < ranks.length; i++) {
+            //the position in the upper half and the item in the lower, so sorting orders them by position
+            removals[i] = (long) position(ranks[i], size) << 32 | i;
+        }
+        Arrays.sort(removals);
+        //each removal moves the items after it up, so later positions are reported that much lower
+        for (int k = 0; k < removals.length; k++) {
+            nextRemove((int) (removals[k] >>> 32) - k,
+                    Collections.singletonList(items.get((int) removals[k])));
+        }
+    }
+
+    /**
+     * @param ranks the rank each added item has in the order after all were added
+     * @param size the size of the view after all were added
+     */
+    private void reportAdded(int[] ranks, int size) {
+        int[] positions = new int[ranks.length];
+        for (int i = 0; i < ranks.length; i++) {
+            positions[i] = position(ranks[i], size);
+        }
+        Arrays.sort(positions);
+        for (int at : positions) {
+            nextAdd(at, at + 1);
+        }
+    }
+
+    /**
+     * @param position a position in the view
+     * @return the rank of the item there in ascending order
+     */
+    private int rank(int position) {
+        return descending ? source.size() - 1 - position : position;
+    }
+
+    /**
+     * @param rank a rank in ascending order
+     * @param size the size of the view
+     * @return the position of the item in the view
+     */
+    private int position(int rank, int size) {
+        return descending ? size - 1 - rank : rank;
+    }
+}
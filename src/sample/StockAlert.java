@@ -0,0 +1,102 @@
+package sample;
+
+/**
+ * Reports that an item's stock has gone below its min or above its max, or is back between them
+ *
+ * An alert holds the stock, min and max the item had when the alert was raised, so a listener handed the alert on
+ * another thread sees the values that raised it. An item leaving inventory while it is alerting is reported as
+ * cleared.
+ *
+ * @param <T> the type of item
+ * @author Long Tran
+ */
+public class StockAlert<T> {
+    /**
+     * What an alert reports
+     */
+    public enum Kind {
+        /**
+         * The stock is below the min
+         */
+        LOW,
+        /**
+         * The stock is above the max
+         */
+        HIGH,
+        /**
+         * The stock is back between the min and the max, or the item left inventory
+         */
+        CLEARED
+    }
+
+    private final T item;
+    private final int id;
+    private final Kind kind;
+    private final int stock;
+    private final int min;
+    private final int max;
+
+    /**
+     * @param item the item
+     * @param id the ID of the item
+     * @param kind what the alert reports
+     * @param stock the stock of the item
+     * @param min the min of the item
+     * @param max the max of the item
+     */
+    public StockAlert(T item, int id, Kind kind, int stock, int min, int max) {
+        this.item = item;
+        this.id = id;
+        this.kind = kind;
+        this.stock = stock;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @return the item
+     */
+    public T getItem() {
+        return item;
+    }
+
+    /**
+     * @return the ID of the item
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return what the alert reports
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the stock of the item when the alert was raised
+     */
+    public int getStock() {
+        return stock;
+    }
+
+    /**
+     * @return the min of the item when the alert was raised
+     */
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * @return the max of the item when the alert was raised
+     */
+    public int getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + id + ": stock " + stock + ", min " + min + ", max " + max;
+    }
+}
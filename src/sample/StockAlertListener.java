@@ -0,0 +1,18 @@
+package sample;
+
+/**
+ * Listens for the stock of parts or products going below their min or above their max
+ *
+ * Like an {@link InventoryListener}, a listener is called on the thread that changed the stock while it still holds
+ * the inventory lock, and must not change inventory itself. Stock adjustments only share the lock, so a listener
+ * may be called from several threads, though never from two at once.
+ *
+ * @param <T> the type of item listened to
+ * @author Long Tran
+ */
+public interface StockAlertListener<T> {
+    /**
+     * @param alert the alert raised
+     */
+    void onAlert(StockAlert<T> alert);
+}
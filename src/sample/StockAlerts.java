@@ -0,0 +1,191 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Keeps the IDs of the items whose stock is below their min or above their max, raising a {@link StockAlert}
+ * whenever an item joins or leaves either set
+ *
+ * Inventory checks an item every time its stock, min or max changes, which costs the same however many items there
+ * are, so nothing ever scans inventory for items out of range. Like {@link PartUsage}, the sets are filled the first
+ * time they are needed, without raising alerts for what is found, and changes reported before then are ignored.
+ * Checks made by several threads at once are taken one at a time, and each reads the item's stock as it is then, so
+ * the last check leaves the sets matching the final stock.
+ *
+ * Stock adjustments are refused when they would take an item below its min or above its max, so they can only
+ * clear alerts. Items go out of range when their min, max or stock is set by editing or replacing them, or when
+ * they are imported or loaded that way.
+ *
+ * @param <T> the type of item
+ * @author Long Tran
+ */
+public class StockAlerts<T> {
+    /**
+     * The IDs of the items whose stock is below their min
+     */
+    private final IntSet low = new IntSet();
+
+    /**
+     * The IDs of the items whose stock is above their max
+     */
+    private final IntSet high = new IntSet();
+
+    /**
+     * The listeners told of every alert
+     */
+    private final List<StockAlertListener<T>> listeners = new CopyOnWriteArrayList<>();
+
+    private final ToIntFunction<? super T> idOf;
+    private final ToIntFunction<? super T> stockOf;
+    private final ToIntFunction<? super T> minOf;
+    private final ToIntFunction<? super T> maxOf;
+
+    /**
+     * Whether the sets have been filled
+     */
+    private volatile boolean built = false;
+
+    /**
+     * Whether the sets are being filled, during which no alerts are raised
+     */
+    private boolean filling = false;
+
+    /**
+     * @param idOf gives the ID of an item
+     * @param stockOf gives the stock of an item
+     * @param minOf gives the min of an item
+     * @param maxOf gives the max of an item
+     */
+    public StockAlerts(ToIntFunction<? super T> idOf, ToIntFunction<? super T> stockOf,
+                       ToIntFunction<? super T> minOf, ToIntFunction<? super T> maxOf) {
+        this.idOf = idOf;
+        this.stockOf = stockOf;
+        this.minOf = minOf;
+        this.maxOf = maxOf;
+    }
+
+    /**
+     * @param listener the listener to be told of every alert
+     */
+    public void addListener(StockAlertListener<T> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to be removed
+     */
+    public void removeListener(StockAlertListener<T> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return if the sets have been filled
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Fills the sets unless they already have been. Other threads checking items meanwhile wait until it is done.
+     *
+     * @param fill checks every item in inventory
+     */
+    public synchronized void build(Runnable fill) {
+        if (built) {
+            return;
+        }
+        built = true;
+        filling = true;
+        try {
+            fill.run();
+        } catch (RuntimeException e) {
+            low.clear();
+            high.clear();
+            built = false;
+            throw e;
+        } finally {
+            filling = false;
+        }
+    }
+
+    /**
+     * Raises an alert if an item has gone below its min or above its max, or is back between them
+     *
+     * @param item an item joining inventory, or whose stock, min or max changed
+     */
+    public synchronized void check(T item) {
+        if (!built) {
+            return;
+        }
+        int id = idOf.applyAsInt(item);
+        int stock = stockOf.applyAsInt(item);
+        int min = minOf.applyAsInt(item);
+        int max = maxOf.applyAsInt(item);
+        StockAlert.Kind kind = stock < min ? StockAlert.Kind.LOW
+                : stock > max ? StockAlert.Kind.HIGH : StockAlert.Kind.CLEARED;
+        boolean wasLow = low.contains(id);
+        boolean wasHigh = high.contains(id);
+        if (kind == StockAlert.Kind.LOW ? wasLow : kind == StockAlert.Kind.HIGH ? wasHigh : !wasLow && !wasHigh) {
+            return;
+        }
+        low.remove(id);
+        high.remove(id);
+        if (kind == StockAlert.Kind.LOW) {
+            low.add(id);
+        } else if (kind == StockAlert.Kind.HIGH) {
+            high.add(id);
+        }
+        if (!filling) {
+            publish(new StockAlert<>(item, id, kind, stock, min, max));
+        }
+    }
+
+    /**
+     * Clears any alert for an item leaving inventory
+     *
+     * @param item the item
+     */
+    public synchronized void remove(T item) {
+        if (!built) {
+            return;
+        }
+        int id = idOf.applyAsInt(item);
+        //both are removed whatever the first returns
+        if (low.remove(id) | high.remove(id)) {
+            publish(new StockAlert<>(item, id, StockAlert.Kind.CLEARED, stockOf.applyAsInt(item),
+                    minOf.applyAsInt(item), maxOf.applyAsInt(item)));
+        }
+    }
+
+    /**
+     * @param lookup finds an item in inventory by ID
+     * @return an alert for every item now below its min or above its max, holding its current values
+     */
+    public synchronized List<StockAlert<T>> current(IntFunction<? extends T> lookup) {
+        List<StockAlert<T>> alerts = new ArrayList<>(low.size() + high.size());
+        low.forEach(id -> alerts.add(alert(lookup.apply(id), id, StockAlert.Kind.LOW)));
+        high.forEach(id -> alerts.add(alert(lookup.apply(id), id, StockAlert.Kind.HIGH)));
+        return alerts;
+    }
+
+    /**
+     * @return an alert holding the item's current values
+     */
+    private StockAlert<T> alert(T item, int id, StockAlert.Kind kind) {
+        return new StockAlert<>(item, id, kind, stockOf.applyAsInt(item), minOf.applyAsInt(item),
+                maxOf.applyAsInt(item));
+    }
+
+    /**
+     * @param alert the alert to be handed to every listener
+     */
+    private void publish(StockAlert<T> alert) {
+        for (StockAlertListener<T> listener : listeners) {
+            listener.onAlert(alert);
+        }
+    }
+}
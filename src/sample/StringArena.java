@@ -0,0 +1,149 @@
+package sample;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only store of UTF-8 strings in direct buffers outside the Java heap, used for the names of off-heap
+ * {@link PartColumns}
+ *
+ * Strings are packed one after another into blocks that never move, and are referred to by the block and offset
+ * they were written at. Freeing a string only counts its bytes as dead; a block is dropped once none of its bytes
+ * are live, and its number is given to the next block allocated. Owners empty blocks that are mostly dead by adding
+ * the strings left in them again.
+ *
+ * @author Long Tran
+ */
+public class StringArena {
+    /**
+     * The size of a block; longer strings get a block of their own
+     */
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    /**
+     * The blocks written so far, followed by room for more. The array is replaced when it grows, but the blocks are
+     * never copied.
+     */
+    private volatile ByteBuffer[] blocks = new ByteBuffer[0];
+
+    /**
+     * The number of live bytes in every block
+     */
+    private int[] live = new int[0];
+
+    /**
+     * The number of blocks allocated, including dropped ones
+     */
+    private int blockCount;
+
+    /**
+     * The numbers of the dropped blocks, to be given to new blocks
+     */
+    private int[] dropped = new int[0];
+    private int droppedCount;
+
+    /**
+     * The block being written to, or -1 if there is none
+     */
+    private int current = -1;
+
+    /**
+     * The number of bytes written to the current block
+     */
+    private int used;
+
+    /**
+     * @param bytes the UTF-8 bytes of a string
+     * @return the reference of the string, its block in the upper 32 bits and its offset in the lower
+     */
+    public synchronized long add(byte[] bytes) {
+        if (current < 0 || used + bytes.length > blocks[current].capacity()) {
+            ByteBuffer[] all = blocks;
+            if (droppedCount > 0) {
+                current = dropped[--droppedCount];
+            } else {
+                if (blockCount == all.length) {
+                    all = Arrays.copyOf(all, Math.max(4, all.length * 2));
+                    live = Arrays.copyOf(live, all.length);
+                }
+                current = blockCount++;
+            }
+            all[current] = ByteBuffer.allocateDirect(Math.max(BLOCK_SIZE, bytes.length));
+            blocks = all;
+            used = 0;
+        }
+        long ref = (long) current << 32 | used;
+        blocks[current].put(used, bytes);
+        used += bytes.length;
+        live[current] += bytes.length;
+        return ref;
+    }
+
+    /**
+     * @param ref the reference returned when a string was added
+     * @param length the number of bytes of the string, which is no longer used
+     */
+    public synchronized void free(long ref, int length) {
+        live[block(ref)] -= length;
+    }
+
+    /**
+     * @return whether each block is at most half live and not being written to, so the strings left in it should be
+     * added again to empty it
+     */
+    public synchronized boolean[] sparseBlocks() {
+        boolean[] sparse = new boolean[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            sparse[i] = i != current && blocks[i] != null && live[i] <= blocks[i].capacity() / 2;
+        }
+        return sparse;
+    }
+
+    /**
+     * Drops every block with no live bytes other than the one being written to, so its memory can be freed
+     */
+    public synchronized void dropEmptyBlocks() {
+        for (int i = 0; i < blockCount; i++) {
+            if (i != current && blocks[i] != null && live[i] == 0) {
+                blocks[i] = null;
+                if (droppedCount == dropped.length) {
+                    dropped = Arrays.copyOf(dropped, Math.max(4, droppedCount * 2));
+                }
+                dropped[droppedCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * @param ref the reference of a string
+     * @return the number of the block holding the string
+     */
+    public static int block(long ref) {
+        return (int) (ref >>> 32);
+    }
+
+    /**
+     * @param ref the reference returned when the string was added
+     * @param length the number of bytes of the string
+     * @return the string
+     */
+    public String get(long ref, int length) {
+        byte[] bytes = new byte[length];
+        blocks[block(ref)].get((int) ref, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of bytes allocated outside the Java heap
+     */
+    public synchronized long getCapacity() {
+        long capacity = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (blocks[i] != null) {
+                capacity += blocks[i].capacity();
+            }
+        }
+        return capacity;
+    }
+}
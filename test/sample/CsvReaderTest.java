@@ -0,0 +1,123 @@
+package sample;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import org.junit.Test;
+
+/**
+ * Tests {@link CsvReader}, mostly quoted fields
+ *
+ * @author Long Tran
+ */
+public class CsvReaderTest {
+    @Test
+    public void splitsRecordsOnEveryKindOfLineEnd() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a,b\nc,d\r\ne,f\rg,h"), ',');
+        assertArrayEquals(new String[]{"a", "b"}, reader.next());
+        assertArrayEquals(new String[]{"c", "d"}, reader.next());
+        assertArrayEquals(new String[]{"e", "f"}, reader.next());
+        assertArrayEquals(new String[]{"g", "h"}, reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void keepsEmptyFields() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader(",x,\n"), ',');
+        assertArrayEquals(new String[]{"", "x", ""}, reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void quotedFieldsHoldDelimitersAndQuotes() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("\"a,b\",\"say \"\"hi\"\"\",\"\"\n"), ',');
+        assertArrayEquals(new String[]{"a,b", "say \"hi\"", ""}, reader.next());
+    }
+
+    @Test
+    public void quotedFieldsHoldLineBreaks() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("1,\"two\nlines\"\r\n2,\"cr\r\nlf\"\n3,x\n"), ',');
+        assertArrayEquals(new String[]{"1", "two\nlines"}, reader.next());
+        assertEquals(1, reader.getLine());
+        assertArrayEquals(new String[]{"2", "cr\r\nlf"}, reader.next());
+        assertEquals(3, reader.getLine());
+        assertArrayEquals(new String[]{"3", "x"}, reader.next());
+        assertEquals(5, reader.getLine());
+    }
+
+    @Test
+    public void quotesInsideAnUnquotedFieldAreKept() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("5\" bolt,x\n"), ',');
+        assertArrayEquals(new String[]{"5\" bolt", "x"}, reader.next());
+    }
+
+    @Test
+    public void splitsOnTheGivenDelimiter() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a,b\t\"c\td\"\n"), '\t');
+        assertArrayEquals(new String[]{"a,b", "c\td"}, reader.next());
+    }
+
+    @Test
+    public void parsesInputReadOneCharacterAtATime() throws IOException {
+        CsvReader reader = new CsvReader(new OneCharReader("\"a\"\"b\",c\r\n\"d\r\ne\"\r\n"), ',');
+        assertArrayEquals(new String[]{"a\"b", "c"}, reader.next());
+        assertArrayEquals(new String[]{"d\r\ne"}, reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void parsesRecordsAcrossChunks() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append(i).append(",\"name, ").append(i).append("\"\r\n");
+        }
+        CsvReader reader = new CsvReader(new StringReader(text.toString()), ',');
+        for (int i = 0; i < 20000; i++) {
+            assertArrayEquals(new String[]{String.valueOf(i), "name, " + i}, reader.next());
+        }
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void anUnterminatedQuoteIsAnError() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a\n\"b,c\nd"), ',');
+        reader.next();
+        try {
+            reader.next();
+            fail("read past an unterminated quote");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2:"));
+        }
+    }
+
+    /**
+     * Reader giving one character per read, so every character falls at the end of a chunk
+     */
+    private static final class OneCharReader extends Reader {
+        private final String text;
+        private int position;
+
+        OneCharReader(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == text.length()) {
+                return -1;
+            }
+            buffer[offset] = text.charAt(position++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package sample;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/**
+ * Tests {@link IntBitmap}, mostly blocks turning from arrays into bitmaps and back, checked against a TreeSet
+ *
+ * @author Long Tran
+ */
+public class IntBitmapTest {
+    @Test
+    public void blocksKeepTheirValuesWhenTheyChangeKind() {
+        IntBitmap bitmap = new IntBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        //every other value of the second block, so the block turns into a bitmap on the last
+        for (int i = 0; i <= IntBitmap.ARRAY_MAX; i++) {
+            int value = 65536 + 2 * i;
+            assertTrue(bitmap.add(value));
+            expected.add(value);
+        }
+        assertFalse(bitmap.add(65536));
+        assertSame(expected, bitmap);
+        //back to an array, then a bitmap again
+        assertTrue(bitmap.remove(65536));
+        expected.remove(65536);
+        assertFalse(bitmap.remove(65536));
+        assertFalse(bitmap.contains(65536));
+        assertSame(expected, bitmap);
+        assertTrue(bitmap.add(65537));
+        expected.add(65537);
+        assertSame(expected, bitmap);
+        for (int value : expected) {
+            assertTrue(bitmap.remove(value));
+        }
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.toArray().length);
+    }
+
+    @Test
+    public void joiningArraysPastTheLimitGivesABitmap() {
+        IntBitmap even = new IntBitmap();
+        IntBitmap odd = new IntBitmap();
+        TreeSet<Integer> all = new TreeSet<>();
+        for (int i = 0; i < IntBitmap.ARRAY_MAX; i++) {
+            even.add(2 * i);
+            odd.add(2 * i + 1);
+            all.add(2 * i);
+            all.add(2 * i + 1);
+        }
+        assertSame(all, even.or(odd));
+        IntBitmap joined = even.copy();
+        joined.addAll(odd);
+        assertSame(all, joined);
+        assertArrayEquals(even.toArray(), joined.andNot(odd).toArray());
+        assertArrayEquals(odd.toArray(), joined.and(odd).toArray());
+        assertTrue(even.and(odd).isEmpty());
+        //the bitmap turns back into an array once values are taken out
+        for (int value = IntBitmap.ARRAY_MAX; value < 2 * IntBitmap.ARRAY_MAX; value++) {
+            assertTrue(joined.remove(value));
+            all.remove(value);
+        }
+        assertSame(all, joined);
+        assertTrue(joined.add(2 * IntBitmap.ARRAY_MAX));
+        all.add(2 * IntBitmap.ARRAY_MAX);
+        assertSame(all, joined);
+    }
+
+    @Test
+    public void matchesTreeSetAcrossBothKinds() {
+        Random random = new Random(7);
+        int[] blockKeys = {0, 1, 5, 32767};
+        for (int round = 0; round < 20; round++) {
+            IntBitmap a = new IntBitmap();
+            IntBitmap b = new IntBitmap();
+            TreeSet<Integer> expectedA = new TreeSet<>();
+            TreeSet<Integer> expectedB = new TreeSet<>();
+            for (int blockKey : blockKeys) {
+                //dense enough in some rounds to pass the limit, and in others not
+                int count = random.nextInt(3 * IntBitmap.ARRAY_MAX);
+                int spread = 1 + random.nextInt(4);
+                for (int i = 0; i < count; i++) {
+                    int value = blockKey << 16 | random.nextInt(count * spread + 1) & 0xFFFF;
+                    if (random.nextBoolean()) {
+                        assertEquals(expectedA.add(value), a.add(value));
+                    } else {
+                        assertEquals(expectedB.add(value), b.add(value));
+                    }
+                }
+            }
+            for (int i = 0; i < 2000; i++) {
+                int value = blockKeys[random.nextInt(blockKeys.length)] << 16 | random.nextInt(65536);
+                assertEquals(expectedA.remove(value), a.remove(value));
+            }
+            assertSame(expectedA, a);
+            assertSame(expectedB, b);
+            TreeSet<Integer> both = new TreeSet<>(expectedA);
+            both.retainAll(expectedB);
+            assertSame(both, a.and(b));
+            TreeSet<Integer> either = new TreeSet<>(expectedA);
+            either.addAll(expectedB);
+            assertSame(either, a.or(b));
+            TreeSet<Integer> onlyA = new TreeSet<>(expectedA);
+            onlyA.removeAll(expectedB);
+            assertSame(onlyA, a.andNot(b));
+            a.addAll(b);
+            assertSame(either, a);
+            assertSame(expectedB, b);
+        }
+    }
+
+    @Test
+    public void largestValuesGoInTheLastBlock() {
+        IntBitmap bitmap = new IntBitmap();
+        bitmap.add(Integer.MAX_VALUE);
+        bitmap.add(0);
+        bitmap.add(65535);
+        bitmap.add(65536);
+        assertArrayEquals(new int[]{0, 65535, 65536, Integer.MAX_VALUE}, bitmap.toArray());
+        assertTrue(bitmap.contains(Integer.MAX_VALUE));
+        assertFalse(bitmap.contains(Integer.MAX_VALUE - 1));
+    }
+
+    /**
+     * Checks a set holds the same values as a TreeSet, through every way of reading it
+     */
+    private static void assertSame(TreeSet<Integer> expected, IntBitmap actual) {
+        int[] values = new int[expected.size()];
+        int i = 0;
+        for (int value : expected) {
+            values[i++] = value;
+            assertTrue(actual.contains(value));
+        }
+        assertArrayEquals(values, actual.toArray());
+        assertEquals(expected.size(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+    }
+}
@@ -0,0 +1,70 @@
+package sample;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests {@link IntIntMap}
+ *
+ * @author Long Tran
+ */
+public class IntIntMapTest {
+    @Test
+    public void missingKeysGiveMinusOne() {
+        IntIntMap map = new IntIntMap();
+        assertEquals(-1, map.get(3));
+        assertEquals(-1, map.put(3, 0));
+        assertEquals(0, map.put(3, 8));
+        assertEquals(8, map.remove(3));
+        assertEquals(-1, map.remove(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeValuesAreRejected() {
+        new IntIntMap().put(1, -1);
+    }
+
+    @Test
+    public void removingFromAWrappedRunKeepsTheRestReachable() {
+        //a new map has 16 slots, like the maps in IntMapTest
+        IntIntMap map = new IntIntMap();
+        List<Integer> wrapped = IntMapTest.keysWithHome(15, 3);
+        List<Integer> first = IntMapTest.keysWithHome(0, 2);
+        wrapped.forEach(key -> map.put(key, key));
+        first.forEach(key -> map.put(key, key));
+        map.remove(wrapped.get(0));
+        for (int key : wrapped.subList(1, 3)) {
+            assertEquals(key, map.get(key));
+        }
+        for (int key : first) {
+            assertEquals(key, map.get(key));
+        }
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomChanges() {
+        IntIntMap map = new IntIntMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(11);
+        for (int step = 0; step < 20000; step++) {
+            int key = random.nextInt(64);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.getOrDefault(key, -1).intValue(), map.remove(key));
+                expected.remove(key);
+            } else {
+                Integer old = expected.put(key, step);
+                assertEquals(old == null ? -1 : old, map.put(key, step));
+            }
+            assertEquals(expected.size(), map.size());
+            for (int probe = 0; probe < 64; probe++) {
+                assertEquals(expected.getOrDefault(probe, -1).intValue(), map.get(probe));
+            }
+        }
+    }
+}
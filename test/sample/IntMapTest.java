@@ -0,0 +1,140 @@
+package sample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests {@link IntMap}, mostly removals from probe runs that wrap around the end of the table
+ *
+ * @author Long Tran
+ */
+public class IntMapTest {
+    /**
+     * The mask of a map created for up to 8 entries, which has 16 slots
+     */
+    private static final int MASK = 15;
+
+    @Test
+    public void putReplacesAndReturnsTheOldValue() {
+        IntMap<String> map = new IntMap<>();
+        assertNull(map.put(7, "a"));
+        assertEquals("a", map.put(7, "b"));
+        assertEquals("b", map.get(7));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void puttingNullRemoves() {
+        IntMap<String> map = new IntMap<>();
+        map.put(7, "a");
+        assertEquals("a", map.put(7, null));
+        assertFalse(map.containsKey(7));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void removingTheHeadOfAWrappedRunKeepsTheRestReachable() {
+        IntMap<Integer> map = new IntMap<>(8);
+        int last = keysWithHome(MASK, 1).get(0);
+        List<Integer> first = keysWithHome(0, 2);
+        map.put(last, last);
+        for (int key : first) {
+            map.put(key, key);
+        }
+        map.remove(last);
+        //the entries at home in the first slots must not be moved back into the last slot
+        for (int key : first) {
+            assertEquals(Integer.valueOf(key), map.get(key));
+        }
+        assertNull(map.get(last));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void removingFromAWrappedRunMovesEntriesBackAcrossTheEnd() {
+        IntMap<Integer> map = new IntMap<>(8);
+        List<Integer> keys = keysWithHome(MASK, 4);
+        for (int key : keys) {
+            map.put(key, key);
+        }
+        map.remove(keys.get(0));
+        for (int key : keys.subList(1, keys.size())) {
+            assertEquals(Integer.valueOf(key), map.get(key));
+        }
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void removingAnEntryPastTheWrapKeepsEarlierEntriesInPlace() {
+        IntMap<Integer> map = new IntMap<>(8);
+        List<Integer> keys = keysWithHome(MASK - 1, 4);
+        for (int key : keys) {
+            map.put(key, key);
+        }
+        map.remove(keys.get(2));
+        map.remove(keys.get(3));
+        assertEquals(keys.get(0), map.get(keys.get(0)));
+        assertEquals(keys.get(1), map.get(keys.get(1)));
+        assertNull(map.get(keys.get(2)));
+        assertNull(map.get(keys.get(3)));
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomChanges() {
+        IntMap<Integer> map = new IntMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int step = 0; step < 20000; step++) {
+            int key = random.nextInt(64) - 8;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, step), map.put(key, step));
+            }
+            assertEquals(expected.size(), map.size());
+            for (int probe = -8; probe < 56; probe++) {
+                assertEquals(expected.get(probe), map.get(probe));
+            }
+        }
+    }
+
+    @Test
+    public void growsWithoutLosingEntries() {
+        IntMap<Integer> map = new IntMap<>();
+        for (int key = 0; key < 10000; key++) {
+            map.put(key * 31, key);
+        }
+        for (int key = 0; key < 10000; key++) {
+            assertEquals(Integer.valueOf(key), map.get(key * 31));
+        }
+        int[] sum = new int[1];
+        map.forEachValue(value -> sum[0] += value);
+        assertEquals(10000 * 9999 / 2, sum[0]);
+    }
+
+    /**
+     * @param home a slot of a table with 16 slots
+     * @param count the number of keys wanted
+     * @return the smallest non-negative keys whose home is the slot
+     */
+    static List<Integer> keysWithHome(int home, int count) {
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 0; keys.size() < count; key++) {
+            //the hash used by every int-keyed table in this package
+            int h = key * 0x9E3779B9;
+            if (((h ^ (h >>> 16)) & MASK) == home) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,84 @@
+package sample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Tests {@link IntSet}
+ *
+ * @author Long Tran
+ */
+public class IntSetTest {
+    @Test
+    public void addsEachValueOnce() {
+        IntSet set = new IntSet();
+        assertTrue(set.add(5));
+        assertFalse(set.add(5));
+        assertTrue(set.add(-5));
+        assertEquals(2, set.size());
+        int[] values = set.toArray();
+        Arrays.sort(values);
+        assertEquals("[-5, 5]", Arrays.toString(values));
+    }
+
+    @Test
+    public void removingFromAWrappedRunKeepsTheRestReachable() {
+        //a set created for 8 values has 16 slots, like the maps in IntMapTest
+        IntSet set = new IntSet(8);
+        int last = IntMapTest.keysWithHome(15, 1).get(0);
+        List<Integer> first = IntMapTest.keysWithHome(0, 2);
+        List<Integer> wrapped = IntMapTest.keysWithHome(15, 3).subList(1, 3);
+        set.add(last);
+        wrapped.forEach(set::add);
+        first.forEach(set::add);
+        assertTrue(set.remove(last));
+        for (int key : wrapped) {
+            assertTrue(set.contains(key));
+        }
+        for (int key : first) {
+            assertTrue(set.contains(key));
+        }
+        assertFalse(set.contains(last));
+        assertEquals(4, set.size());
+    }
+
+    @Test
+    public void matchesHashSetUnderRandomChanges() {
+        IntSet set = new IntSet();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int step = 0; step < 20000; step++) {
+            int key = random.nextInt(48);
+            if (random.nextBoolean()) {
+                assertEquals(expected.remove(key), set.remove(key));
+            } else {
+                assertEquals(expected.add(key), set.add(key));
+            }
+            assertEquals(expected.size(), set.size());
+            for (int probe = 0; probe < 48; probe++) {
+                assertEquals(expected.contains(probe), set.contains(probe));
+            }
+        }
+    }
+
+    @Test
+    public void clearKeepsTheSetUsable() {
+        IntSet set = new IntSet();
+        for (int i = 0; i < 100; i++) {
+            set.add(i);
+        }
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(3));
+        set.add(3);
+        assertTrue(set.contains(3));
+    }
+}
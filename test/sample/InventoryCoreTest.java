@@ -0,0 +1,129 @@
+package sample;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link InventoryCore}, in memory and with a store in a temporary directory
+ *
+ * @author Long Tran
+ */
+public class InventoryCoreTest {
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("inventory-core-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void productsFollowAPartReplacedAsItsSlotIsReclaimed() {
+        List<Part> parts = new ArrayList<>();
+        for (int id = 1; id <= PartColumns.CHUNK_SIZE + 1; id++) {
+            parts.add(new InHouse(id, "Widget", 5, 3, 0, 10, 1));
+        }
+        InventoryCore core = new InventoryCore(null, parts, Collections.emptyList());
+        Product bike = new Product(1000, "Bike", 200, 1, 0, 5);
+        bike.addAssociatedPart(core.lookupPart(1), 2);
+        core.addProduct(bike);
+        assertEquals(10, core.getPartCost(1000), 0);
+        //one release short of a reclamation, so replacing the part reclaims its slot
+        List<Part> deleted = new ArrayList<>();
+        for (int id = 2; id <= PartColumns.CHUNK_SIZE; id++) {
+            deleted.add(core.lookupPart(id));
+        }
+        core.deleteParts(deleted);
+        int index = core.getParts().indexOf(core.lookupPart(1));
+        core.updatePart(index, new InHouse(1, "Widget v2", 50, 3, 0, 10, 1));
+        Part part = core.lookupProduct(1000).getAllAssociatedParts().get(0);
+        assertEquals("Widget v2", part.getName());
+        assertEquals(50, part.getPrice(), 0);
+        assertEquals(2, core.lookupProduct(1000).getAssociatedPartQuantity(1));
+        assertEquals(100, core.getPartCost(1000), 0);
+    }
+
+    @Test
+    public void changesAreReportedEvenIfTheyCannotBeJournaled() throws IOException {
+        InventoryStore store = new InventoryStore(directory);
+        InventoryCore core = new InventoryCore(store, Collections.singletonList(
+                new InHouse(1, "Widget", 5, 3, 0, 10, 1)), Collections.emptyList());
+        List<InventoryChange<Part>> heard = new ArrayList<>();
+        core.addPartListener(heard::add);
+        store.close();
+        try {
+            core.addPart(new InHouse(2, "Bell", 1, 1, 0, 9, 1));
+            fail("the journal is closed");
+        } catch (UncheckedIOException expected) {
+            //the part was added in memory, so listeners must still hear of it
+        }
+        assertEquals(1, heard.size());
+        assertNotNull(core.lookupPart(2));
+    }
+
+    @Test
+    public void snapshotFailuresAreReportedApartFromChanges() throws IOException {
+        InventoryCore core = new InventoryCore(new InventoryStore(directory), Collections.singletonList(
+                new InHouse(1, "Widget", 5, 3, 0, 10, 1)), Collections.emptyList());
+        List<RuntimeException> failures = new ArrayList<>();
+        core.addCompactionFailureListener(failures::add);
+        //a directory where the snapshot is written first stops every snapshot being written
+        Path blocker = Files.createDirectory(directory.resolve("snapshot.tmp"));
+        for (int i = 0; i < InventoryStore.COMPACT_EVERY; i++) {
+            assertTrue(core.updatePartFields(1, new InHouse(1, "Widget " + i, 5, 3, 0, 10, 1)));
+        }
+        assertEquals(1, failures.size());
+        assertNotNull(core.getCompactionFailure());
+        Files.delete(blocker);
+        assertTrue(core.updatePartFields(1, new InHouse(1, "Widget", 5, 3, 0, 10, 1)));
+        assertNull(core.getCompactionFailure());
+        assertEquals(1, failures.size());
+        core.close();
+        InventoryCore reopened = new InventoryCore(new InventoryStore(directory), Collections.emptyList(),
+                Collections.emptyList());
+        assertEquals("Widget", reopened.lookupPart(1).getName());
+        reopened.close();
+    }
+
+    @Test
+    public void editedAssociatedPartsAreJournaledWithTheOtherFields() throws IOException {
+        InventoryCore core = new InventoryCore(new InventoryStore(directory), Arrays.asList(
+                new InHouse(1, "Widget", 5, 3, 0, 10, 1), new InHouse(2, "Bell", 2, 3, 0, 10, 1)),
+                Collections.singletonList(new Product(1000, "Bike", 200, 1, 0, 5)));
+        Product values = new Product(1000, "Bike", 200, 1, 0, 5);
+        values.addAssociatedPart(core.lookupPart(1), 2);
+        values.addAssociatedPart(core.lookupPart(2));
+        assertEquals(0, core.getPartCost(1000), 0);
+        assertTrue(core.updateProductFields(1000, values));
+        assertEquals(12, core.getPartCost(1000), 0);
+        core.close();
+        InventoryCore reopened = new InventoryCore(new InventoryStore(directory), Collections.emptyList(),
+                Collections.emptyList());
+        assertArrayEquals(new int[]{1, 1, 2}, reopened.lookupProduct(1000).getAssociatedPartUnits());
+        reopened.close();
+    }
+}
@@ -0,0 +1,171 @@
+package sample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link InventoryStore}, mostly replaying journals left by a crash
+ *
+ * @author Long Tran
+ */
+public class InventoryStoreTest {
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("inventory-store-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void replaysAddsUpdatesAndDeletes() throws IOException {
+        InventoryStore store = new InventoryStore(directory);
+        store.partsAdded(Arrays.asList(part(1, "Brakes"), part(2, "Seat"), part(3, "Bell")));
+        store.partUpdated(2, part(2, "Saddle"));
+        store.partDeleted(3);
+        store.close();
+        assertEquals("[1 Brakes 5, 2 Saddle 5]", parts(directory));
+    }
+
+    @Test
+    public void changingTheIdOfAnAddedPartKeepsItsPlace() throws IOException {
+        InventoryStore store = new InventoryStore(directory);
+        store.partsAdded(Arrays.asList(part(1, "Brakes"), part(2, "Seat"), part(3, "Bell")));
+        store.partUpdated(1, part(10, "Brakes"));
+        store.partUpdated(10, part(11, "Brake"));
+        store.partAdded(part(1, "Chain"));
+        store.close();
+        assertEquals("[11 Brake 5, 2 Seat 5, 3 Bell 5, 1 Chain 5]", parts(directory));
+    }
+
+    @Test
+    public void replaysStockAdjustmentsOverTheSnapshot() throws IOException {
+        InventoryStore store = new InventoryStore(directory);
+        store.compact(Arrays.asList(part(1, "Brakes"), part(2, "Seat")), Collections.emptyList());
+        store.partStockAdjusted(1, 3);
+        store.partStockAdjusted(1, -1);
+        store.partAdded(part(3, "Bell"));
+        store.partStockAdjusted(3, 2);
+        store.close();
+        assertEquals("[1 Brakes 7, 2 Seat 5, 3 Bell 7]", parts(directory));
+    }
+
+    @Test
+    public void dropsARecordCutShortByACrash() throws IOException {
+        InventoryStore store = new InventoryStore(directory);
+        store.partAdded(part(1, "Brakes"));
+        store.partAdded(part(2, "Seat"));
+        store.close();
+        Path journal = directory.resolve("journal.dat");
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        assertEquals("[1 Brakes 5]", parts(directory));
+
+        //the torn record is cut off, so records written afterwards are read again
+        store = new InventoryStore(directory);
+        store.partAdded(part(3, "Bell"));
+        store.close();
+        assertEquals("[1 Brakes 5, 3 Bell 5]", parts(directory));
+    }
+
+    @Test
+    public void stopsAtARecordWithABadChecksum() throws IOException {
+        InventoryStore store = new InventoryStore(directory);
+        store.partAdded(part(1, "Brakes"));
+        store.partAdded(part(2, "Seat"));
+        store.close();
+        Path journal = directory.resolve("journal.dat");
+        byte[] bytes = Files.readAllBytes(journal);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(journal, bytes);
+        assertEquals("[1 Brakes 5]", parts(directory));
+    }
+
+    @Test
+    public void compactionEmptiesTheJournalAndKeepsOneSnapshot() throws IOException {
+        InventoryStore store = new InventoryStore(directory);
+        store.partAdded(part(1, "Brakes"));
+        store.compact(Collections.singletonList(part(1, "Brakes")), Collections.emptyList());
+        store.partAdded(part(2, "Seat"));
+        store.compact(Arrays.asList(part(1, "Brakes"), part(2, "Seat")), Collections.emptyList());
+        store.close();
+        assertEquals(0, Files.size(directory.resolve("journal.dat")));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.getFileName().toString().startsWith("snapshot-")).count());
+        }
+        assertEquals("[1 Brakes 5, 2 Seat 5]", parts(directory));
+    }
+
+    @Test
+    public void anUnreadableNewestSnapshotIsNotSkipped() throws IOException {
+        InventoryStore store = new InventoryStore(directory);
+        store.compact(Collections.singletonList(part(1, "Brakes")), Collections.emptyList());
+        store.close();
+        Files.write(directory.resolve("snapshot-99.dat"), new byte[]{1, 2, 3});
+        try {
+            new InventoryStore(directory).close();
+            fail("opened a store whose newest snapshot is unreadable");
+        } catch (IOException e) {
+            assertTrue(Files.exists(directory.resolve("snapshot-99.dat")));
+        }
+    }
+
+    @Test
+    public void anEmptyDirectoryIsAnEmptyStore() throws IOException {
+        InventoryStore store = new InventoryStore(directory);
+        assertTrue(store.isEmpty());
+        store.partAdded(part(1, "Brakes"));
+        assertFalse(store.isEmpty());
+        store.close();
+    }
+
+    /**
+     * @param id the ID of the part
+     * @param name the name of the part
+     * @return an in-house part with a stock of 5
+     */
+    private static Part part(int id, String name) {
+        return new InHouse(id, name, 1.5, 5, 0, 10, 7);
+    }
+
+    /**
+     * @param directory the directory of a store
+     * @return the ID, name and stock of every part in the store, in inventory order
+     */
+    private static String parts(Path directory) throws IOException {
+        InventoryStore store = new InventoryStore(directory);
+        try {
+            List<String> parts = new ArrayList<>();
+            for (Part part : store.createPartList()) {
+                parts.add(part.getId() + " " + part.getName() + " " + part.getStock());
+            }
+            return parts.toString();
+        } finally {
+            store.close();
+        }
+    }
+}
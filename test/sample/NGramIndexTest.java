@@ -0,0 +1,84 @@
+package sample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Tests {@link NGramIndex}
+ *
+ * @author Long Tran
+ */
+public class NGramIndexTest {
+    @Test
+    public void shortQueriesAreAnsweredExactly() {
+        NGramIndex index = new NGramIndex();
+        index.add(1, "Brakes", "1");
+        index.add(2, "Rake", "2");
+        index.add(3, "Seat", "3");
+        assertEquals("[1, 2]", ids(index.candidates("rak")));
+        assertEquals("[2]", ids(index.candidates("2")));
+        assertTrue(index.isExact("rak"));
+    }
+
+    @Test
+    public void textIsIndexedInLowerCase() {
+        NGramIndex index = new NGramIndex();
+        index.add(1, "BRAKES", "1");
+        assertEquals("[1]", ids(index.candidates("bra")));
+        assertEquals("[]", ids(index.candidates("BRA")));
+    }
+
+    @Test
+    public void longQueriesGiveEveryItemHoldingAllTheirTrigrams() {
+        NGramIndex index = new NGramIndex();
+        index.add(1, "Brakes", "1");
+        index.add(2, "bra rak ake kes", "2");
+        index.add(3, "Brake pads", "3");
+        //the second item holds every trigram without holding the query, so it must be checked by the caller
+        assertEquals("[1, 2]", ids(index.candidates("brakes")));
+        assertFalse(index.isExact("brakes"));
+        assertEquals("[]", ids(index.candidates("brakez")));
+    }
+
+    @Test
+    public void addingAgainReplacesTheOldText() {
+        NGramIndex index = new NGramIndex();
+        index.add(1, "Brakes", "1");
+        index.add(1, "Seat", "1");
+        assertEquals("[]", ids(index.candidates("bra")));
+        assertEquals("[1]", ids(index.candidates("sea")));
+    }
+
+    @Test
+    public void removedItemsAreNoLongerFound() {
+        NGramIndex index = new NGramIndex();
+        index.add(1, "Brakes", "1");
+        index.add(2, "Brakes", "2");
+        index.remove(1);
+        index.remove(1);
+        assertEquals("[2]", ids(index.candidates("brakes")));
+        assertEquals("[2]", ids(index.candidates("b")));
+    }
+
+    @Test
+    public void candidatesAreACopy() {
+        NGramIndex index = new NGramIndex();
+        index.add(1, "Brakes", "1");
+        index.candidates("bra").add(9);
+        assertEquals("[1]", ids(index.candidates("bra")));
+    }
+
+    /**
+     * @param set a set of IDs
+     * @return the IDs in increasing order
+     */
+    private static String ids(IntSet set) {
+        int[] ids = set.toArray();
+        Arrays.sort(ids);
+        return Arrays.toString(ids);
+    }
+}
@@ -0,0 +1,176 @@
+package sample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Tests {@link PartColumns} on and off the heap, mostly views of released and reclaimed slots
+ *
+ * @author Long Tran
+ */
+public class PartColumnsTest {
+    /**
+     * More parts than one reclamation frees, so slots are reused
+     */
+    private static final int CHURN = 20000;
+
+    @Test
+    public void viewsReadAndWriteTheirSlot() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            PartColumns columns = new PartColumns(null, offHeap);
+            int brakes = columns.add(new InHouse(1, "Brakes", 1.5, 3, 0, 10, 101));
+            int seat = columns.add(new Outsourced(2, "Seat", 10, 4, 1, 40, "Car Parts"));
+            Outsourced view = (Outsourced) columns.view(seat);
+            assertEquals("Seat", view.getName());
+            assertEquals("Car Parts", view.getCompanyName());
+            view.setName("Saddle");
+            view.setCompanyName("Bike Parts");
+            assertEquals("Saddle", columns.view(seat).getName());
+            assertEquals("Bike Parts", columns.getCompanyName(seat));
+            assertEquals(101, ((InHouse) columns.view(brakes)).getMachineId());
+            assertEquals(1.5, columns.getPrice(brakes), 0);
+        }
+    }
+
+    @Test
+    public void viewsOfTheSameSlotAreEqual() {
+        PartColumns columns = new PartColumns(null, false);
+        int slot = columns.add(new InHouse(1, "Brakes", 1.5, 3, 0, 10, 101));
+        int other = columns.add(new InHouse(2, "Bell", 1.5, 3, 0, 10, 101));
+        assertEquals(columns.view(slot), columns.view(slot));
+        assertEquals(columns.view(slot).hashCode(), columns.view(slot).hashCode());
+        assertNotEquals(columns.view(slot), columns.view(other));
+    }
+
+    @Test
+    public void findsPartsByTheirCurrentId() {
+        PartColumns columns = new PartColumns(null, false);
+        int slot = columns.add(new InHouse(1, "Brakes", 1.5, 3, 0, 10, 101));
+        columns.setId(slot, 7);
+        assertEquals(-1, columns.find(1));
+        assertEquals(slot, columns.find(7));
+        assertEquals(7, columns.getMaxId());
+        columns.release(slot);
+        assertEquals(-1, columns.find(7));
+    }
+
+    @Test
+    public void adjustingStockKeepsItWithinMinAndMax() {
+        PartColumns columns = new PartColumns(null, false);
+        int slot = columns.add(new InHouse(1, "Brakes", 1.5, 3, 1, 10, 101));
+        assertEquals(3, columns.adjustStock(slot, 7));
+        assertEquals(Part.NOT_ADJUSTED, columns.adjustStock(slot, 1));
+        assertEquals(Part.NOT_ADJUSTED, columns.adjustStock(slot, -10));
+        assertEquals(10, columns.getStock(slot));
+    }
+
+    @Test
+    public void snapshotRowsAreTheFirstSlots() throws IOException {
+        Path file = Files.createTempFile("part-columns-test", ".dat");
+        try {
+            SnapshotFile.write(file, 1, Arrays.asList(new InHouse(4, "Brakes", 1.5, 3, 0, 10, 101),
+                    new Outsourced(9, "Seat", 10, 4, 1, 40, "Car Parts")), Collections.emptyList(), null);
+            PartColumns columns = new PartColumns(new SnapshotFile(file), false);
+            assertEquals(2, columns.size());
+            assertEquals(1, columns.find(9));
+            assertEquals("Seat", columns.view(1).getName());
+            assertEquals("Car Parts", columns.getCompanyName(1));
+            columns.setName(0, "Brake");
+            assertEquals("Brake", columns.getName(0));
+            columns.release(1);
+            assertEquals(-1, columns.find(9));
+            assertEquals(2, columns.add(new InHouse(9, "Bell", 2, 1, 0, 5, 3)));
+            assertEquals(2, columns.find(9));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void releasedSlotsAreReusedWithoutChangingOldViews() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            PartColumns columns = new PartColumns(null, offHeap);
+            List<Part> released = new ArrayList<>();
+            Part kept = columns.view(columns.add(new InHouse(0, "Kept", 1, 1, 0, 99, 1)));
+            for (int id = 1; id <= CHURN; id++) {
+                int slot = columns.add(new Outsourced(id, "Part " + id, id, 2, 0, 9, "Co " + id % 7));
+                released.add(columns.view(slot));
+                columns.release(slot);
+            }
+            assertTrue("slots were not reused: " + columns.size(), columns.size() < CHURN / 2);
+            for (int id = 1; id <= CHURN; id++) {
+                Outsourced part = (Outsourced) released.get(id - 1);
+                assertEquals(id, part.getId());
+                assertEquals("Part " + id, part.getName());
+                assertEquals(id, part.getPrice(), 0);
+                assertEquals("Co " + id % 7, part.getCompanyName());
+            }
+            //views of reclaimed slots hold their own copies, so they no longer equal views of the slot
+            Part reused = columns.view(1);
+            assertNotEquals(reused.getName(), released.get(0).getName());
+            assertFalse(released.get(0).equals(reused));
+            kept.setStock(5);
+            assertEquals(5, columns.getStock(0));
+            assertEquals("Kept", kept.getName());
+        }
+    }
+
+    @Test
+    public void viewsStayMapKeysOnceTheirSlotIsReclaimed() {
+        PartColumns columns = new PartColumns(null, false);
+        int slot = columns.add(new InHouse(1, "Widget", 5, 3, 0, 10, 1));
+        Part key = columns.view(slot);
+        Part other = columns.view(slot);
+        Map<Part, String> map = new HashMap<>();
+        map.put(key, "old");
+        columns.release(slot);
+        for (int id = 2; id <= PartColumns.CHUNK_SIZE; id++) {
+            columns.release(columns.add(new InHouse(id, "Part " + id, 1, 1, 0, 9, 1)));
+        }
+        //fills every reclaimed slot, so one of the new parts is in the old part's slot
+        Part reused = null;
+        for (int id = 1; id <= PartColumns.CHUNK_SIZE; id++) {
+            int added = columns.add(new InHouse(id, "Bell", 1, 1, 0, 9, 1));
+            if (added == slot) {
+                reused = columns.view(added);
+            }
+        }
+        assertEquals("Widget", other.getName());
+        assertEquals("old", map.get(other));
+        assertEquals(key, other);
+        assertEquals(key.hashCode(), other.hashCode());
+        assertFalse(map.containsKey(reused));
+        assertNotEquals(reused, other);
+    }
+
+    @Test
+    public void namesSurviveTheArenaBeingCompacted() {
+        PartColumns columns = new PartColumns(null, true);
+        List<Integer> live = new ArrayList<>();
+        for (int id = 1; id <= CHURN; id++) {
+            int slot = columns.add(new InHouse(id, "A name long enough to fill arena blocks " + id, 1, 1, 0, 9, 1));
+            if (id % 4 == 0) {
+                live.add(slot);
+            } else {
+                columns.release(slot);
+            }
+        }
+        for (int slot : live) {
+            int id = columns.getId(slot);
+            assertEquals("A name long enough to fill arena blocks " + id, columns.getName(slot));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package sample;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Tests the quantities of the parts associated with a {@link Product}
+ *
+ * @author Long Tran
+ */
+public class ProductTest {
+    private final Part brakes = new InHouse(1, "Brakes", 1.5, 3, 0, 10, 101);
+    private final Part seat = new Outsourced(2, "Seat", 10, 4, 1, 40, "Car Parts");
+    private final Product bike = new Product(1000, "Bike", 100, 2, 1, 5);
+
+    @Test
+    public void partsAddedAgainAreListedOnce() {
+        bike.addAssociatedPart(brakes);
+        bike.addAssociatedPart(seat, 2);
+        bike.addAssociatedPart(brakes, 3);
+        assertEquals(2, bike.getAllAssociatedParts().size());
+        assertEquals(4, bike.getAssociatedPartQuantity(1));
+        assertEquals(2, bike.getAssociatedPartQuantity(2));
+        assertEquals(0, bike.getAssociatedPartQuantity(3));
+        assertArrayEquals(new int[]{1, 2}, bike.getAssociatedPartIds());
+        assertArrayEquals(new int[]{1, 1, 1, 1, 2, 2}, bike.getAssociatedPartUnits());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quantitiesMustBePositive() {
+        bike.addAssociatedPart(brakes, 0);
+    }
+
+    @Test
+    public void deletingRemovesOneUnitAtATime() {
+        bike.addAssociatedPart(brakes, 2);
+        bike.addAssociatedPart(seat);
+        assertTrue(bike.deleteAssociatedPart(brakes));
+        assertEquals(1, bike.getAssociatedPartQuantity(1));
+        assertEquals(2, bike.getAllAssociatedParts().size());
+        assertTrue(bike.deleteAssociatedPart(brakes));
+        assertFalse(bike.deleteAssociatedPart(brakes));
+        assertArrayEquals(new int[]{2}, bike.getAssociatedPartUnits());
+    }
+
+    @Test
+    public void replacingMergesTheQuantitiesOfPartsBecomingOne() {
+        bike.addAssociatedPart(brakes, 2);
+        bike.addAssociatedPart(seat, 3);
+        Map<Part, Part> replacements = new HashMap<>();
+        replacements.put(brakes, seat);
+        assertTrue(bike.replaceAssociatedParts(replacements));
+        assertEquals(1, bike.getAllAssociatedParts().size());
+        assertEquals(0, bike.getAssociatedPartQuantity(1));
+        assertEquals(5, bike.getAssociatedPartQuantity(2));
+    }
+
+    @Test
+    public void partsTradingIdsKeepTheirOwnQuantities() {
+        bike.addAssociatedPart(brakes, 2);
+        bike.addAssociatedPart(seat, 3);
+        Part newBrakes = new InHouse(2, "Brakes", 1.5, 3, 0, 10, 101);
+        Part newSeat = new Outsourced(1, "Seat", 10, 4, 1, 40, "Car Parts");
+        Map<Part, Part> replacements = new HashMap<>();
+        replacements.put(brakes, newBrakes);
+        replacements.put(seat, newSeat);
+        assertTrue(bike.replaceAssociatedParts(replacements));
+        assertEquals(2, bike.getAssociatedPartQuantity(2));
+        assertEquals(3, bike.getAssociatedPartQuantity(1));
+        assertArrayEquals(new int[]{2, 2, 1, 1, 1}, bike.getAssociatedPartUnits());
+        assertFalse(bike.replaceAssociatedParts(new HashMap<>()));
+    }
+
+    @Test
+    public void associatedPartsAreCopiedWithTheirQuantities() {
+        bike.addAssociatedPart(brakes, 2);
+        Product draft = new Product(1000, "Bike", 100, 2, 1, 5);
+        assertTrue(draft.setAssociatedParts(bike));
+        draft.addAssociatedPart(seat);
+        draft.deleteAssociatedPart(brakes);
+        assertArrayEquals(new int[]{1, 1}, bike.getAssociatedPartUnits());
+        assertTrue(bike.setAssociatedParts(draft));
+        assertArrayEquals(new int[]{1, 2}, bike.getAssociatedPartUnits());
+        assertFalse(bike.setAssociatedParts(draft));
+    }
+}
@@ -0,0 +1,146 @@
+package sample;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/**
+ * Tests {@link RangeIndex}, checking pages of ranges against a TreeSet as leaves split and merge
+ *
+ * @author Long Tran
+ */
+public class RangeIndexTest {
+    /**
+     * Entries as a key and an ID, in the order of the index
+     */
+    private final TreeSet<long[]> expected = new TreeSet<>(Comparator.<long[]>comparingLong(entry -> entry[0])
+            .thenComparingLong(entry -> entry[1]));
+
+    private final RangeIndex index = new RangeIndex();
+
+    @Test
+    public void keysOrderLikeTheirValues() {
+        double[] prices = {Double.NEGATIVE_INFINITY, -2.5, -Double.MIN_VALUE, 0.0, Double.MIN_VALUE, 1, 2.5,
+                Double.POSITIVE_INFINITY};
+        for (int i = 1; i < prices.length; i++) {
+            assertTrue(RangeIndex.key(prices[i - 1]) < RangeIndex.key(prices[i]));
+        }
+        assertEquals(RangeIndex.key(0.0), RangeIndex.key(-0.0));
+        assertTrue(RangeIndex.key(-1) < RangeIndex.key(0));
+    }
+
+    @Test
+    public void changesBeforeTheFillAreIgnored() {
+        index.add(1, 5);
+        assertFalse(index.remove(1, 5));
+        index.build(() -> index.add(2, 5));
+        assertEquals(1, index.size());
+        assertArrayEquals(new int[]{2}, index.range(Long.MIN_VALUE, Long.MAX_VALUE, 0, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeOffsetsAreRejected() {
+        index.build(() -> { });
+        index.range(0, 1, -1, 10);
+    }
+
+    @Test
+    public void leavesSplitAndMergeWithoutLosingEntries() {
+        Random random = new Random(13);
+        int count = 20 * RangeIndex.LEAF_SIZE;
+        index.build(() -> {
+            for (int id = 0; id < count; id += 2) {
+                add(id, random.nextInt(100));
+            }
+        });
+        assertRanges(random);
+        //a few changes at a time, too few to split or merge a leaf
+        for (int i = 0; i < 20; i++) {
+            long[] entry = expected.pollFirst();
+            assertTrue(index.remove((int) entry[1], entry[0]));
+            add(count + i, 50);
+            assertRanges(random);
+        }
+        //odd IDs go in between, splitting the leaves
+        for (int id = 1; id < count; id += 2) {
+            add(id, random.nextInt(100));
+        }
+        assertRanges(random);
+        //then most entries go, merging them
+        List<long[]> entries = new ArrayList<>(expected);
+        for (long[] entry : entries) {
+            if (random.nextInt(10) != 0) {
+                assertTrue(index.remove((int) entry[1], entry[0]));
+                expected.remove(entry);
+            }
+        }
+        assertFalse(index.remove(-1, 0));
+        assertRanges(random);
+        for (long[] entry : new ArrayList<>(expected)) {
+            assertTrue(index.remove((int) entry[1], entry[0]));
+            expected.remove(entry);
+        }
+        assertEquals(0, index.size());
+        assertEquals(0, index.range(Long.MIN_VALUE, Long.MAX_VALUE, 0, 10).length);
+    }
+
+    @Test
+    public void movesArrivingOutOfOrderEndAtTheLastValue() {
+        index.build(() -> add(1, 3));
+        //the move from 5 to 7 is reported before the move from 3 to 5 that came first
+        index.move(1, 5, 7);
+        index.move(1, 3, 5);
+        assertArrayEquals(new int[]{1}, index.range(7, 7, 0, 10));
+        assertEquals(0, index.range(3, 5, 0, 10).length);
+        //the same the other way, with an item already at the key
+        index.add(2, 9);
+        index.move(1, 9, 11);
+        index.move(1, 7, 9);
+        assertArrayEquals(new int[]{2, 1}, index.range(0, 20, 0, 10));
+        assertArrayEquals(new int[]{1}, index.range(11, 11, 0, 10));
+        assertEquals(2, index.size());
+    }
+
+    /**
+     * Adds an entry to both the index and the expected entries
+     */
+    private void add(int id, long key) {
+        index.add(id, key);
+        expected.add(new long[]{key, id});
+    }
+
+    /**
+     * Checks the whole index and random pages of random ranges against the expected entries
+     */
+    private void assertRanges(Random random) {
+        assertEquals(expected.size(), index.size());
+        assertArrayEquals(ids(Long.MIN_VALUE, Long.MAX_VALUE, 0, Integer.MAX_VALUE),
+                index.range(Long.MIN_VALUE, Long.MAX_VALUE, 0, Integer.MAX_VALUE));
+        for (int i = 0; i < 200; i++) {
+            long low = random.nextInt(110) - 5;
+            long high = low + random.nextInt(30) - 3;
+            int offset = random.nextInt(2 * RangeIndex.LEAF_SIZE);
+            int limit = random.nextInt(3 * RangeIndex.LEAF_SIZE);
+            assertArrayEquals(ids(low, high, offset, limit), index.range(low, high, offset, limit));
+        }
+    }
+
+    /**
+     * @return the IDs of a page of the expected entries with keys from low to high
+     */
+    private int[] ids(long low, long high, int offset, int limit) {
+        if (low > high) {
+            return new int[0];
+        }
+        return expected.subSet(new long[]{low, Integer.MIN_VALUE}, true, new long[]{high, Integer.MAX_VALUE}, true)
+                .stream().skip(offset).limit(limit).mapToInt(entry -> (int) entry[1]).toArray();
+    }
+}
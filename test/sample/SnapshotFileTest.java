@@ -0,0 +1,150 @@
+package sample;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link SnapshotFile}
+ *
+ * @author Long Tran
+ */
+public class SnapshotFileTest {
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("snapshot-file-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void readsBackEveryPartField() throws IOException {
+        SnapshotFile snapshot = write(parts(), Collections.emptyList());
+        assertEquals(42, snapshot.getSequence());
+        assertEquals(3, snapshot.getPartCount());
+        assertEquals(9, snapshot.getMaxPartId());
+        //both outsourced parts share one dictionary entry
+        assertEquals(1, snapshot.getCompanyCount());
+
+        assertFalse(snapshot.isOutsourced(0));
+        InHouse brakes = (InHouse) snapshot.part(0);
+        assertEquals(5, brakes.getId());
+        assertEquals("Brakes", brakes.getName());
+        assertEquals(1.25, brakes.getPrice(), 0);
+        assertEquals(3, brakes.getStock());
+        assertEquals(1, brakes.getMin());
+        assertEquals(10, brakes.getMax());
+        assertEquals(101, brakes.getMachineId());
+
+        assertTrue(snapshot.isOutsourced(1));
+        Outsourced seat = (Outsourced) snapshot.part(1);
+        assertEquals("Sitz \u00fcber", seat.getName());
+        assertEquals("Car Parts", seat.getCompanyName());
+        assertEquals("Car Parts", ((Outsourced) snapshot.part(2)).getCompanyName());
+    }
+
+    @Test
+    public void findsRowsById() throws IOException {
+        SnapshotFile snapshot = write(parts(), products());
+        assertEquals(0, snapshot.findPartRow(5));
+        assertEquals(1, snapshot.findPartRow(2));
+        assertEquals(2, snapshot.findPartRow(9));
+        assertEquals(-1, snapshot.findPartRow(3));
+        assertEquals(1, snapshot.findProductRow(1000));
+        assertEquals(-1, snapshot.findProductRow(5));
+    }
+
+    @Test
+    public void readsBackProductsAndTheirPartUnits() throws IOException {
+        SnapshotFile snapshot = write(parts(), products());
+        assertEquals(2, snapshot.getProductCount());
+        assertEquals(1001, snapshot.getMaxProductId());
+        Product bike = snapshot.product(1);
+        assertEquals("Giant Bike", bike.getName());
+        assertEquals(300, bike.getPrice(), 0);
+        assertEquals(50, bike.getStock());
+        assertEquals(10, bike.getMin());
+        assertEquals(100, bike.getMax());
+        assertTrue(bike.getAllAssociatedParts().isEmpty());
+        int[] units = snapshot.productPartIds(1);
+        Arrays.sort(units);
+        assertArrayEquals(new int[]{2, 5, 5}, units);
+        assertArrayEquals(new int[0], snapshot.productPartIds(0));
+    }
+
+    @Test
+    public void copiesRowsNotLoadedFromThePreviousSnapshot() throws IOException {
+        SnapshotFile previous = write(parts(), products());
+        LazyRowList<Product> unloaded = new LazyRowList<>(previous.getProductCount(), row -> {
+            throw new AssertionError("row " + row + " was loaded");
+        });
+        Path file = directory.resolve("snapshot-43.dat");
+        SnapshotFile.write(file, 43, parts(), unloaded, previous);
+        SnapshotFile snapshot = new SnapshotFile(file);
+        assertEquals("Giant Bike", snapshot.productName(1));
+        assertEquals(3, snapshot.productPartIds(1).length);
+    }
+
+    @Test
+    public void rejectsAFileThatIsNotASnapshot() throws IOException {
+        Path file = directory.resolve("snapshot-1.dat");
+        Files.write(file, new byte[64]);
+        try {
+            new SnapshotFile(file);
+            fail("read a file of zeros as a snapshot");
+        } catch (IOException expected) {
+            //the magic number does not match
+        }
+    }
+
+    /**
+     * @return an in-house part and two outsourced parts from the same company, out of ID order
+     */
+    private static List<Part> parts() {
+        return Arrays.asList(
+                new InHouse(5, "Brakes", 1.25, 3, 1, 10, 101),
+                new Outsourced(2, "Sitz \u00fcber", 10, 4, 2, 40, "Car Parts"),
+                new Outsourced(9, "Bell", 2, 1, 0, 5, "Car Parts"));
+    }
+
+    /**
+     * @return a product with no parts and one needing two of part 5 and one of part 2
+     */
+    private static List<Product> products() {
+        Product tricycle = new Product(1001, "Tricycle", 100, 30, 10, 100);
+        Product bike = new Product(1000, "Giant Bike", 300, 50, 10, 100);
+        bike.addAssociatedPart(new InHouse(5, "Brakes", 1.25, 3, 1, 10, 101), 2);
+        bike.addAssociatedPart(new Outsourced(2, "Seat", 10, 4, 2, 40, "Car Parts"));
+        return Arrays.asList(tricycle, bike);
+    }
+
+    /**
+     * @return a snapshot of the parts and products with sequence number 42
+     */
+    private SnapshotFile write(List<Part> parts, List<Product> products) throws IOException {
+        Path file = directory.resolve("snapshot-42.dat");
+        SnapshotFile.write(file, 42, parts, products, null);
+        return new SnapshotFile(file);
+    }
+}
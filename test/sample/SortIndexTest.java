@@ -0,0 +1,180 @@
+package sample;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link SortIndex}, checking every order against a list sorted by a comparator
+ *
+ * @author Long Tran
+ */
+public class SortIndexTest {
+    private final Map<Integer, Part> parts = new HashMap<>();
+    private SortIndex<Part> index;
+
+    @Before
+    public void setUp() {
+        index = new SortIndex<>(Part::getId, parts::get);
+        index.addIntColumn("stock", Part::getStock);
+        index.addDoubleColumn("price", Part::getPrice);
+        index.addTextColumn("name", Part::getName, Collator.getInstance(Locale.ENGLISH));
+    }
+
+    @Test
+    public void radixSortIsUnsignedAndStable() {
+        long[] keys = {-1L, 5L, 0L, Long.MIN_VALUE, 5L, 1L << 40, 0L};
+        int[] values = {0, 1, 2, 3, 4, 5, 6};
+        SortIndex.radixSort(keys, values);
+        assertArrayEquals(new long[]{0L, 0L, 5L, 5L, 1L << 40, Long.MIN_VALUE, -1L}, keys);
+        assertArrayEquals(new int[]{2, 6, 1, 4, 5, 3, 0}, values);
+    }
+
+    @Test
+    public void pricesSortLikeDoubleCompare() {
+        double[] prices = {Double.NaN, 0.0, -0.0, 2.5, -2.5, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                -0.0, Double.MIN_VALUE, -Double.MAX_VALUE, 0.0, Double.NaN};
+        for (int i = 0; i < prices.length; i++) {
+            add(i + 1, "Part", prices[i], 0);
+        }
+        index.sort("price", new ArrayList<>(parts.values()));
+        assertOrder("price", Part::getPrice);
+        assertEquals(6, index.idAt("price", 0));
+        //-0.0 comes before 0.0, each tie going to the lower ID, and NaN last
+        assertEquals(Arrays.asList(3, 8, 2, 11), ids("price").subList(3, 7));
+        assertEquals(Arrays.asList(1, 12), ids("price").subList(10, 12));
+    }
+
+    @Test
+    public void stockSortsSignedWithTiesByID() {
+        Random random = new Random(3);
+        for (int id = 1; id <= 5000; id++) {
+            int stock = random.nextInt(5) == 0 ? (random.nextBoolean() ? Integer.MIN_VALUE : Integer.MAX_VALUE)
+                    : random.nextInt(200) - 100;
+            add(id, "Part", 1, stock);
+        }
+        index.sort("stock", new ArrayList<>(parts.values()));
+        assertOrder("stock", Part::getStock);
+    }
+
+    @Test
+    public void namesSortByTheCollator() {
+        add(1, "bell", 1, 0);
+        add(2, "Brakes", 1, 0);
+        add(3, "axle", 1, 0);
+        add(4, null, 1, 0);
+        index.sort("name", new ArrayList<>(parts.values()));
+        assertEquals(Arrays.asList(4, 3, 1, 2), ids("name"));
+    }
+
+    @Test
+    public void changesMergeIntoEveryKeptOrder() {
+        Random random = new Random(5);
+        double[] prices = {Double.NaN, -0.0, 0.0, 1.25, -3};
+        for (int id = 1; id <= 300; id++) {
+            add(id, "Part " + random.nextInt(50), prices[random.nextInt(prices.length)], random.nextInt(20));
+        }
+        for (String column : new String[]{"stock", "price", "name"}) {
+            index.sort(column, new ArrayList<>(parts.values()));
+        }
+        for (int round = 0; round < 50; round++) {
+            List<Part> changed = new ArrayList<>();
+            for (int i = random.nextInt(12); i >= 0; i--) {
+                Part part = parts.get(1 + random.nextInt(parts.size()));
+                if (!changed.contains(part)) {
+                    changed.add(part);
+                }
+            }
+            int[] before = index.removeAll(changed, "price");
+            List<Integer> order = ids("price", parts.size() - changed.size());
+            for (int i = 0; i < changed.size(); i++) {
+                assertEquals(-1, order.indexOf(changed.get(i).getId()));
+                assertTrue(before[i] >= 0);
+            }
+            for (Part part : changed) {
+                part.setPrice(prices[random.nextInt(prices.length)]);
+                part.setStock(random.nextInt(20));
+            }
+            int[] after = index.addAll(changed, "price");
+            for (int i = 0; i < changed.size(); i++) {
+                assertEquals(changed.get(i).getId(), index.idAt("price", after[i]));
+            }
+            assertOrder("stock", Part::getStock);
+            assertOrder("price", Part::getPrice);
+        }
+        Comparator<Part> byName = Comparator.comparing(Part::getName, Collator.getInstance(Locale.ENGLISH));
+        assertEquals(sorted(byName), ids("name"));
+    }
+
+    @Test
+    public void removedItemsNotInTheOrderReportMinusOne() {
+        add(1, "Part", 1, 0);
+        index.sort("stock", new ArrayList<>(parts.values()));
+        assertFalse(index.isSorted("price"));
+        Part missing = new InHouse(2, "Part", 1, 0, 0, 10, 1);
+        assertArrayEquals(new int[]{-1, 0}, index.removeAll(Arrays.asList(missing, parts.get(1)), "stock"));
+        assertEquals(0, index.removeAll(Collections.singletonList(missing), "price").length);
+    }
+
+    /**
+     * Adds a part to inventory, without telling the index
+     */
+    private void add(int id, String name, double price, int stock) {
+        parts.put(id, new InHouse(id, name, price, stock, Integer.MIN_VALUE, Integer.MAX_VALUE, 1));
+    }
+
+    /**
+     * @param column the name of a sorted column holding every part
+     * @return the IDs in the column's kept order
+     */
+    private List<Integer> ids(String column) {
+        return ids(column, parts.size());
+    }
+
+    /**
+     * @param column the name of a sorted column
+     * @param size the number of IDs in the order
+     * @return the IDs in the column's kept order
+     */
+    private List<Integer> ids(String column, int size) {
+        List<Integer> ids = new ArrayList<>();
+        for (int rank = 0; rank < size; rank++) {
+            ids.add(index.idAt(column, rank));
+        }
+        return ids;
+    }
+
+    /**
+     * @param order an order of parts, without regard to their IDs
+     * @return the IDs of inventory sorted by the order, ties going to the lower ID
+     */
+    private List<Integer> sorted(Comparator<Part> order) {
+        List<Part> all = new ArrayList<>(parts.values());
+        all.sort(order.thenComparingInt(Part::getId));
+        List<Integer> ids = new ArrayList<>();
+        all.forEach(part -> ids.add(part.getId()));
+        return ids;
+    }
+
+    /**
+     * Checks a kept order of numbers against one sorted with Double.compare
+     */
+    private void assertOrder(String column, ToDoubleFunction<Part> value) {
+        assertEquals(sorted((a, b) -> Double.compare(value.applyAsDouble(a), value.applyAsDouble(b))), ids(column));
+    }
+}